@@ -0,0 +1,195 @@
+package com.template.benchmarks;
+
+import com.template.flows.ChangeInformationFlow;
+import com.template.flows.DeleteInformationFlow;
+import com.template.flows.RegisterInformationFlow;
+import com.template.flows.ReserveResidentFlow;
+import com.template.states.ResidentInformationState;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.node.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.template.flows.ReserveResidentFlow.failedAtNotary;
+import static net.corda.testing.common.internal.ParametersUtilitiesKt.testNetworkParameters;
+
+/**
+ * Measures the work wasted when several flows change the same resident at once, with the soft locks
+ * of the [ReserveResidentFlow] turned off and then on.
+ *
+ * Each resident registered in CityA is the target of "conflicts" flows started together on CityA: moves
+ * to CityB and one deletion. Only one of them can succeed. Without locking the others collect their signatures
+ * and fail at the notary, which is wasted work; with locking they wait for the winner and fail before
+ * any remote work. The outcomes and the elapsed time of both runs are printed and written as JSON.
+ *
+ * Usage: ContentionBenchmark [--residents=N] [--conflicts=N] [--concurrency=N] [--output=file]
+ */
+public class ContentionBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(ContentionBenchmark.class);
+
+    private static final String USAGE =
+            "Usage: ContentionBenchmark [--residents=N] [--conflicts=N] [--concurrency=N] [--output=file]";
+
+    private final int residents;
+    private final int conflicts;
+    private final int concurrency;
+
+    public ContentionBenchmark(int residents, int conflicts, int concurrency) {
+        this.residents = residents;
+        this.conflicts = conflicts;
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * The outcomes of the conflicting flows of one run.
+     */
+    static class Outcome {
+        final boolean locking;
+        final AtomicInteger succeeded = new AtomicInteger();
+        // Failed at the notary after collecting signatures: the wasted work.
+        final AtomicInteger notaryConflicts = new AtomicInteger();
+        // Failed before contacting the counterparties or the notary.
+        final AtomicInteger earlyFailures = new AtomicInteger();
+        long elapsedNanos;
+
+        Outcome(boolean locking) {
+            this.locking = locking;
+        }
+
+        int attempts() {
+            return succeeded.get() + notaryConflicts.get() + earlyFailures.get();
+        }
+
+        double wastedWorkRate() {
+            return attempts() == 0 ? 0.0 : (double) notaryConflicts.get() / attempts();
+        }
+
+        String toJson() {
+            return String.format(Locale.ROOT,
+                    "{\"locking\":%b,\"attempts\":%d,\"succeeded\":%d,\"notaryConflicts\":%d,\"earlyFailures\":%d," +
+                            "\"wastedWorkRate\":%.4f,\"elapsedMillis\":%.1f}",
+                    locking, attempts(), succeeded.get(), notaryConflicts.get(), earlyFailures.get(),
+                    wastedWorkRate(), elapsedNanos / 1e6);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "locking=%-5b attempts=%d succeeded=%d notaryConflicts=%d earlyFailures=%d wasted=%.1f%% elapsed=%.0fms",
+                    locking, attempts(), succeeded.get(), notaryConflicts.get(), earlyFailures.get(),
+                    wastedWorkRate() * 100, elapsedNanos / 1e6);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException(USAGE);
+            }
+            int separator = arg.indexOf('=');
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        ContentionBenchmark benchmark = new ContentionBenchmark(
+                Integer.parseInt(options.getOrDefault("residents", "200")),
+                Integer.parseInt(options.getOrDefault("conflicts", "4")),
+                Integer.parseInt(options.getOrDefault("concurrency", "32")));
+
+        List<Outcome> outcomes = Arrays.asList(benchmark.run(false), benchmark.run(true));
+        outcomes.forEach(outcome -> logger.info("{}", outcome));
+        String json = String.format(Locale.ROOT, "{\"residents\":%d,\"conflicts\":%d,\"concurrency\":%d,\"results\":[%s,%s]}",
+                benchmark.residents, benchmark.conflicts, benchmark.concurrency,
+                outcomes.get(0).toJson(), outcomes.get(1).toJson());
+        System.out.println(json);
+
+        String output = options.get("output");
+        if (output != null) {
+            write(Paths.get(output), json);
+        }
+    }
+
+    private static void write(Path path, String json) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        Files.write(path, json.getBytes(StandardCharsets.UTF_8));
+        logger.info("Results written to {}", path.toAbsolutePath());
+    }
+
+    /* run
+     * Starts a fresh network with locking on or off, registers the residents and runs the conflicting flows.
+     */
+    public Outcome run(boolean locking) throws Exception {
+        // Every node runs on its own thread and messages are delivered without runNetwork(),
+        // so that the conflicting flows really run at the same time.
+        MockNetwork mockNetwork = new MockNetwork(new MockNetworkParameters()
+                .withCordappsForAllNodes(Arrays.asList(
+                        TestCordapp.findCordapp("com.template.flows").withConfig(
+                                Collections.singletonMap(ReserveResidentFlow.ENABLED_CONFIG, locking)),
+                        TestCordapp.findCordapp("com.template.contracts")))
+                .withNetworkParameters(testNetworkParameters(Collections.emptyList(), 4))
+                .withThreadPerNode(true)
+                .withNetworkSendManuallyPumped(false));
+        try {
+            StartedMockNode a = mockNetwork.createNode(new MockNodeParameters().withLegalName(new CordaX500Name("CityA", "London", "GB")));
+            StartedMockNode b = mockNetwork.createNode(new MockNodeParameters().withLegalName(new CordaX500Name("CityB", "New York", "US")));
+            Party aCity = a.getInfo().getLegalIdentities().get(0);
+            Party bCity = b.getInfo().getLegalIdentities().get(0);
+
+            // 1. Register the residents.
+            List<UniqueIdentifier> linearIds = new ArrayList<>();
+            for (int i = 0; i < residents; i++) {
+                SignedTransaction stx = a.startFlow(new RegisterInformationFlow.InitiatorFlow(
+                        "Resident " + i, String.format("%012d", i), aCity, "CityA " + i, "1990-01-01")).get();
+                linearIds.add(((ResidentInformationState) stx.getTx().getOutputStates().get(0)).getLinearId());
+            }
+
+            // 2. Start the conflicting flows of each resident together, the deletion last.
+            logger.info("Running {} conflicting flows on each of {} residents, locking {}",
+                    conflicts, residents, locking ? "on" : "off");
+            Outcome outcome = new Outcome(locking);
+            Semaphore inFlight = new Semaphore(concurrency);
+            CountDownLatch finished = new CountDownLatch(residents * conflicts);
+            long start = System.nanoTime();
+            for (int i = 0; i < residents; i++) {
+                for (int j = 0; j < conflicts; j++) {
+                    inFlight.acquire();
+                    CordaFuture<SignedTransaction> future = j < conflicts - 1
+                            ? a.startFlow(new ChangeInformationFlow.InitiatorFlow(linearIds.get(i), bCity, "CityB " + i + "-" + j))
+                            : a.startFlow(new DeleteInformationFlow.InitiatorFlow(linearIds.get(i), aCity));
+                    future.toCompletableFuture().whenComplete((stx, error) -> {
+                        if (error == null) {
+                            outcome.succeeded.incrementAndGet();
+                        } else if (failedAtNotary(error)) {
+                            outcome.notaryConflicts.incrementAndGet();
+                        } else {
+                            outcome.earlyFailures.incrementAndGet();
+                        }
+                        inFlight.release();
+                        finished.countDown();
+                    });
+                }
+            }
+            finished.await();
+            outcome.elapsedNanos = System.nanoTime() - start;
+            logger.info("{}", outcome);
+            return outcome;
+        } finally {
+            mockNetwork.stopNodes();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.template.benchmarks;
+
+import com.template.flows.ChangeInformationFlow;
+import com.template.flows.DeleteInformationFlow;
+import com.template.flows.RegisterInformationFlow;
+import com.template.states.ResidentInformationState;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.node.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiConsumer;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+
+import static net.corda.testing.common.internal.ParametersUtilitiesKt.testNetworkParameters;
+
+/**
+ * Measures the end-to-end throughput and latency of the Register, Change and Delete flows
+ * on a MockNetwork of two cities and one or more notaries.
+ *
+ * Each phase keeps at most "concurrency" flows in flight. The residents registered in the first phase
+ * are moved from CityA to CityB in the second one, and deleted by CityB in the last one.
+ * The results are printed and written as JSON to the output file.
+ *
+ * Usage: FlowThroughputBenchmark [--flows=N] [--concurrency=N] [--warmup=N] [--notaries=N] [--output=file]
+ */
+public class FlowThroughputBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(FlowThroughputBenchmark.class);
+
+    private final int flows;
+    private final int concurrency;
+    private final int warmup;
+    private final int notaries;
+
+    private MockNetwork mockNetwork;
+    private StartedMockNode a, b;
+    private Party aCity, bCity;
+
+    public FlowThroughputBenchmark(int flows, int concurrency, int warmup, int notaries) {
+        this.flows = flows;
+        this.concurrency = concurrency;
+        this.warmup = warmup;
+        this.notaries = notaries;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        FlowThroughputBenchmark benchmark = new FlowThroughputBenchmark(
+                Integer.parseInt(options.getOrDefault("flows", "1000")),
+                Integer.parseInt(options.getOrDefault("concurrency", "16")),
+                Integer.parseInt(options.getOrDefault("warmup", "100")),
+                Integer.parseInt(options.getOrDefault("notaries", "1")));
+
+        List<PhaseResult> results = benchmark.run();
+        String json = benchmark.toJson(results);
+        results.forEach(result -> logger.info("{}", result));
+        System.out.println(json);
+
+        String output = options.get("output");
+        if (output != null) {
+            Path path = Paths.get(output);
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            Files.write(path, json.getBytes(StandardCharsets.UTF_8));
+            logger.info("Results written to {}", path.toAbsolutePath());
+        }
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Usage: FlowThroughputBenchmark [--flows=N] [--concurrency=N] " +
+                        "[--warmup=N] [--notaries=N] [--output=file]");
+            }
+            int separator = arg.indexOf('=');
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        return options;
+    }
+
+    /* run
+     * Starts the network, runs a warmup round whose results are discarded, then the measured round.
+     */
+    public List<PhaseResult> run() throws InterruptedException {
+        startNetwork();
+        try {
+            if (warmup > 0) {
+                logger.info("Warming up with {} flows of each type", warmup);
+                runRound("warmup", warmup);
+            }
+            logger.info("Running {} flows of each type with {} in flight", flows, concurrency);
+            return runRound("", flows);
+        } finally {
+            mockNetwork.stopNodes();
+        }
+    }
+
+    private void startNetwork() {
+        List<MockNetworkNotarySpec> notarySpecs = new ArrayList<>();
+        for (int i = 1; i <= notaries; i++) {
+            notarySpecs.add(new MockNetworkNotarySpec(new CordaX500Name("Notary" + i, "London", "GB")));
+        }
+        // Every node runs on its own thread and messages are delivered without runNetwork(),
+        // so that flows run concurrently as they would on real nodes.
+        MockNetworkParameters mockNetworkParameters = new MockNetworkParameters()
+                .withCordappsForAllNodes(Arrays.asList(
+                        TestCordapp.findCordapp("com.template.flows"),
+                        TestCordapp.findCordapp("com.template.contracts")))
+                .withNetworkParameters(testNetworkParameters(Collections.emptyList(), 4))
+                .withNotarySpecs(notarySpecs)
+                .withThreadPerNode(true)
+                .withNetworkSendManuallyPumped(false);
+        mockNetwork = new MockNetwork(mockNetworkParameters);
+
+        a = mockNetwork.createNode(new MockNodeParameters().withLegalName(new CordaX500Name("CityA", "London", "GB")));
+        b = mockNetwork.createNode(new MockNodeParameters().withLegalName(new CordaX500Name("CityB", "New York", "US")));
+        aCity = a.getInfo().getLegalIdentities().get(0);
+        bCity = b.getInfo().getLegalIdentities().get(0);
+    }
+
+    private List<PhaseResult> runRound(String prefix, int count) throws InterruptedException {
+        UniqueIdentifier[] linearIds = new UniqueIdentifier[count];
+
+        // 1. Register the residents in CityA.
+        PhaseResult register = runPhase(prefix + "register", count,
+                i -> a.startFlow(new RegisterInformationFlow.InitiatorFlow(
+                        "Resident " + i, String.format("%012d", i), aCity, "CityA " + i, "1990-01-01")),
+                (i, stx) -> linearIds[i] = ((ResidentInformationState) stx.getTx().getOutputStates().get(0)).getLinearId());
+
+        List<UniqueIdentifier> registered = Arrays.stream(linearIds).filter(Objects::nonNull).collect(Collectors.toList());
+
+        // 2. Move every registered resident from CityA to CityB.
+        PhaseResult change = runPhase(prefix + "change", registered.size(),
+                i -> a.startFlow(new ChangeInformationFlow.InitiatorFlow(registered.get(i), bCity, "CityB " + i)),
+                (i, stx) -> { });
+
+        // 3. Delete them from CityB.
+        PhaseResult delete = runPhase(prefix + "delete", registered.size(),
+                i -> b.startFlow(new DeleteInformationFlow.InitiatorFlow(registered.get(i), bCity)),
+                (i, stx) -> { });
+
+        return Arrays.asList(register, change, delete);
+    }
+
+    /* runPhase
+     * Starts count flows, keeping at most concurrency of them in flight, and waits for all of them to finish.
+     */
+    private PhaseResult runPhase(String name, int count, IntFunction<CordaFuture<SignedTransaction>> startFlow,
+                                 BiConsumer<Integer, SignedTransaction> onSuccess) throws InterruptedException {
+        PhaseResult result = new PhaseResult(name, count, concurrency);
+        Semaphore inFlight = new Semaphore(concurrency);
+
+        result.start();
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            inFlight.acquire();
+            long started = System.nanoTime();
+            try {
+                startFlow.apply(index).toCompletableFuture().whenComplete((stx, error) -> {
+                    if (error == null) {
+                        result.recordSuccess(System.nanoTime() - started);
+                        onSuccess.accept(index, stx);
+                    } else {
+                        result.recordFailure();
+                        logger.warn("{} flow {} failed: {}", name, index, error.getMessage());
+                    }
+                    inFlight.release();
+                });
+            } catch (RuntimeException e) {
+                result.recordFailure();
+                logger.warn("{} flow {} could not be started: {}", name, index, e.getMessage());
+                inFlight.release();
+            }
+        }
+        // Wait for the last flows in flight.
+        inFlight.acquire(concurrency);
+        result.end();
+        inFlight.release(concurrency);
+
+        logger.info("{}", result);
+        return result;
+    }
+
+    private String toJson(List<PhaseResult> results) {
+        return String.format(Locale.ROOT,
+                "{\"flows\":%d,\"concurrency\":%d,\"warmup\":%d,\"notaries\":%d,\"results\":[%s]}",
+                flows, concurrency, warmup, notaries,
+                results.stream().map(PhaseResult::toJson).collect(Collectors.joining(",")));
+    }
+}
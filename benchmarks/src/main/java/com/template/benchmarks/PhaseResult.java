@@ -0,0 +1,74 @@
+package com.template.benchmarks;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the latency of every flow of one benchmark phase, and reports
+ * its throughput and latency percentiles.
+ */
+public class PhaseResult {
+    private final String flow;
+    private final int concurrency;
+    private final long[] latencyNanos;
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicLong failed = new AtomicLong();
+    private long startNanos;
+    private long endNanos;
+
+    public PhaseResult(String flow, int flows, int concurrency) {
+        this.flow = flow;
+        this.concurrency = concurrency;
+        this.latencyNanos = new long[flows];
+    }
+
+    void start() { startNanos = System.nanoTime(); }
+
+    void end() { endNanos = System.nanoTime(); }
+
+    void recordSuccess(long nanos) { latencyNanos[completed.getAndIncrement()] = nanos; }
+
+    void recordFailure() { failed.incrementAndGet(); }
+
+    public String getFlow() { return flow; }
+
+    public int getCompleted() { return completed.get(); }
+
+    public long getFailed() { return failed.get(); }
+
+    public double flowsPerSecond() {
+        double seconds = (endNanos - startNanos) / 1e9;
+        return seconds == 0 ? 0.0 : completed.get() / seconds;
+    }
+
+    /* percentileMillis
+     * Returns the latency under which the given fraction of the completed flows finished, e.g. 0.99 for p99.
+     */
+    public double percentileMillis(double fraction) {
+        int count = completed.get();
+        if (count == 0) {
+            return 0.0;
+        }
+        long[] sorted = Arrays.copyOf(latencyNanos, count);
+        Arrays.sort(sorted);
+        int index = Math.max(0, (int) Math.ceil(fraction * count) - 1);
+        return sorted[index] / 1e6;
+    }
+
+    public String toJson() {
+        return String.format(Locale.ROOT,
+                "{\"flow\":\"%s\",\"concurrency\":%d,\"completed\":%d,\"failed\":%d,\"durationMs\":%.1f," +
+                        "\"flowsPerSecond\":%.2f,\"p50Ms\":%.3f,\"p99Ms\":%.3f,\"p999Ms\":%.3f}",
+                flow, concurrency, completed.get(), failed.get(), (endNanos - startNanos) / 1e6,
+                flowsPerSecond(), percentileMillis(0.5), percentileMillis(0.99), percentileMillis(0.999));
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%-8s %6d ok %4d failed %9.2f flows/s  p50=%.1fms p99=%.1fms p999=%.1fms",
+                flow, completed.get(), failed.get(), flowsPerSecond(),
+                percentileMillis(0.5), percentileMillis(0.99), percentileMillis(0.999));
+    }
+}
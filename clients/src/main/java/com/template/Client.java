@@ -1,36 +1,95 @@
 package com.template;
 
-import net.corda.client.rpc.CordaRPCClient;
-import net.corda.core.messaging.CordaRPCOps;
-import net.corda.core.node.NodeInfo;
-import net.corda.core.utilities.NetworkHostAndPort;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.List;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 import static net.corda.core.utilities.NetworkHostAndPort.parse;
 
 /**
- * Connects to a Corda node via RPC and performs RPC operations on the node.
+ * Connects to a Corda node via RPC and drives load against it with a [LoadGenerator].
  *
- * The RPC connection is configured using command line arguments.
+ * The RPC connection is configured using command line arguments, followed by optional load settings:
+ * --connections=N --rate=N (flows/sec, 0 for a fixed concurrency) --concurrency=N --threads=N
+ * --duration=seconds --warmup=seconds --mix=register:50,change:30,delete:20 --counterparty=X500name --output=file
  */
 public class Client {
     private static final Logger logger = LoggerFactory.getLogger(Client.class);
 
-    public static void main(String[] args) {
+    private static final String USAGE = "Usage: Client <node address> <rpc username> <rpc password> [--option=value ...]";
+
+    public static void main(String[] args) throws InterruptedException, IOException {
         // Create an RPC connection to the node.
-        if (args.length != 3) throw new IllegalArgumentException("Usage: Client <node address> <rpc username> <rpc password>");
-        final NetworkHostAndPort nodeAddress = parse(args[0]);
-        final String rpcUsername = args[1];
-        final String rpcPassword = args[2];
-        final CordaRPCClient client = new CordaRPCClient(nodeAddress);
-        final CordaRPCOps proxy = client.start(rpcUsername, rpcPassword).getProxy();
+        if (args.length < 3) throw new IllegalArgumentException(USAGE);
+        final LoadGenerator.Options options = new LoadGenerator.Options();
+        options.nodeAddress = parse(args[0]);
+        options.username = args[1];
+        options.password = args[2];
+        String output = null;
+
+        for (int i = 3; i < args.length; i++) {
+            String arg = args[i];
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) throw new IllegalArgumentException(USAGE);
+            String value = arg.substring(separator + 1);
+            switch (arg.substring(2, separator)) {
+                case "connections": options.connections = Integer.parseInt(value); break;
+                case "rate": options.rate = Integer.parseInt(value); break;
+                case "concurrency": options.concurrency = Integer.parseInt(value); break;
+                case "threads": options.threads = Integer.parseInt(value); break;
+                case "duration": options.durationSeconds = Integer.parseInt(value); break;
+                case "warmup": options.warmupSeconds = Integer.parseInt(value); break;
+                case "mix": parseMix(options, value); break;
+                case "counterparty": options.counterparty = value; break;
+                case "myNumberPrefix": options.myNumberPrefix = value; break;
+                case "output": output = value; break;
+                default: throw new IllegalArgumentException("Unknown option " + arg + "\n" + USAGE);
+            }
+        }
 
         // Interact with the node.
-        // For example, here we print the nodes on the network.
-        final List<NodeInfo> nodes = proxy.networkMapSnapshot();
-        logger.info("{}", nodes);
+        final LoadGenerator generator = new LoadGenerator(options);
+        final LoadGenerator.Report report;
+        generator.connect();
+        try {
+            report = generator.run();
+        } finally {
+            generator.close();
+        }
+
+        for (LoadGenerator.Operation operation : LoadGenerator.Operation.values()) {
+            logger.info("{} failed={} latency (ms):", operation, report.getFailures(operation));
+            report.getHistogram(operation).outputPercentileDistribution(System.out, 1000.0);
+        }
+        final String json = report.toJson();
+        logger.info("{}", json);
+        if (output != null) {
+            Path path = Paths.get(output);
+            Files.write(path, json.getBytes(StandardCharsets.UTF_8));
+            logger.info("Results written to {}", path.toAbsolutePath());
+        }
+    }
+
+    // e.g. register:50,change:30,delete:20
+    private static void parseMix(LoadGenerator.Options options, String mix) {
+        options.registerWeight = 0;
+        options.changeWeight = 0;
+        options.deleteWeight = 0;
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.split(":");
+            if (parts.length != 2) throw new IllegalArgumentException("Invalid mix entry " + entry);
+            int weight = Integer.parseInt(parts[1].trim());
+            switch (parts[0].trim().toLowerCase()) {
+                case "register": options.registerWeight = weight; break;
+                case "change": options.changeWeight = weight; break;
+                case "delete": options.deleteWeight = weight; break;
+                default: throw new IllegalArgumentException("Unknown operation " + parts[0]);
+            }
+        }
     }
-}
\ No newline at end of file
+}
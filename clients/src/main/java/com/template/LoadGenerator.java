@@ -0,0 +1,315 @@
+package com.template;
+
+import com.template.flows.ChangeInformationFlow;
+import com.template.flows.DeleteInformationFlow;
+import com.template.flows.RegisterInformationFlow;
+import com.template.states.ResidentInformationState;
+import net.corda.client.rpc.CordaRPCClient;
+import net.corda.client.rpc.CordaRPCConnection;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.node.NodeInfo;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.utilities.NetworkHostAndPort;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+/**
+ * Drives a mix of Register, Change and Delete flows against a node over several RPC connections.
+ *
+ * With a target rate, flows are started on a fixed schedule (open loop) and each latency is measured from
+ * the time the flow was due to start, so a slow node cannot hide its queueing delay (coordinated omission).
+ * Without a rate, "concurrency" workers start a new flow as soon as their previous one finishes (closed loop),
+ * and each latency is measured from the time the flow was started. There is no schedule to measure from, so these
+ * latencies are left uncorrected: they are the flows' service times, not what clients arriving at a steady rate
+ * would see, and the report says so. Use a rate to measure the latency under load.
+ *
+ * Registered residents are kept in a pool; a change moves a resident to the counterparty city and a delete
+ * removes it, so each resident is only used by one flow at a time. The myNumbers of a run start with a prefix
+ * of its own, random unless set, so that a run does not register the myNumbers of residents left by earlier runs.
+ */
+public class LoadGenerator {
+    private static final Logger logger = LoggerFactory.getLogger(LoadGenerator.class);
+
+    public enum Operation { REGISTER, CHANGE, DELETE }
+
+    private final Options options;
+    private final List<CordaRPCConnection> connections = new ArrayList<>();
+    private final List<CordaRPCOps> proxies = new ArrayList<>();
+    private final AtomicInteger nextProxy = new AtomicInteger();
+    private final Queue<UniqueIdentifier> residents = new ConcurrentLinkedQueue<>();
+    private final AtomicLong nextResident = new AtomicLong();
+    private final String myNumberPrefix;
+
+    private final Map<Operation, Histogram> histograms = new EnumMap<>(Operation.class);
+    private final Map<Operation, AtomicLong> failures = new EnumMap<>(Operation.class);
+
+    private Party ourCity;
+    private Party counterparty;
+    private volatile long measureFromNanos;
+
+    public LoadGenerator(Options options) {
+        this.options = options;
+        this.myNumberPrefix = options.myNumberPrefix != null
+                ? options.myNumberPrefix
+                : String.format("%06d", ThreadLocalRandom.current().nextInt(1_000_000));
+        if (!myNumberPrefix.matches("[0-9]{1,11}")) {
+            throw new IllegalArgumentException("The myNumber prefix must have 1 to 11 digits: " + myNumberPrefix);
+        }
+        for (Operation operation : Operation.values()) {
+            // Latencies in microseconds, with three significant digits.
+            histograms.put(operation, new ConcurrentHistogram(3));
+            failures.put(operation, new AtomicLong());
+        }
+    }
+
+    /* connect
+     * Opens the RPC connections, and finds our city and the city the residents are moved to.
+     */
+    public void connect() {
+        CordaRPCClient client = new CordaRPCClient(options.nodeAddress);
+        for (int i = 0; i < options.connections; i++) {
+            CordaRPCConnection connection = client.start(options.username, options.password);
+            connections.add(connection);
+            proxies.add(connection.getProxy());
+        }
+
+        CordaRPCOps proxy = proxies.get(0);
+        ourCity = proxy.nodeInfo().getLegalIdentities().get(0);
+        if (options.counterparty != null) {
+            counterparty = proxy.wellKnownPartyFromX500Name(CordaX500Name.parse(options.counterparty));
+            if (counterparty == null) {
+                throw new IllegalArgumentException("Unknown counterparty " + options.counterparty);
+            }
+        } else {
+            List<Party> notaries = proxy.notaryIdentities();
+            counterparty = proxy.networkMapSnapshot().stream()
+                    .map(NodeInfo::getLegalIdentities).map(identities -> identities.get(0))
+                    .filter(party -> !party.equals(ourCity) && !notaries.contains(party))
+                    .sorted(Comparator.comparing(party -> party.getName().toString()))
+                    .findFirst().orElse(null);
+        }
+        logger.info("Connected {} times to {} as {}, moving residents to {}, registering myNumbers from {}",
+                options.connections, options.nodeAddress, ourCity, counterparty, myNumberPrefix);
+    }
+
+    public void close() {
+        connections.forEach(CordaRPCConnection::notifyServerAndClose);
+    }
+
+    /* run
+     * Runs the warmup, whose latencies are discarded, and then the measured period.
+     */
+    public Report run() throws InterruptedException {
+        long start = System.nanoTime();
+        measureFromNanos = start + TimeUnit.SECONDS.toNanos(options.warmupSeconds);
+        long end = measureFromNanos + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+
+        if (options.rate > 0) {
+            runAtRate(start, end);
+        } else {
+            runAtConcurrency(end);
+        }
+        return report(TimeUnit.NANOSECONDS.toSeconds(end - measureFromNanos));
+    }
+
+    // Open loop: a flow is due every 1/rate seconds, whether or not the previous ones have finished.
+    private void runAtRate(long start, long end) throws InterruptedException {
+        ExecutorService starters = Executors.newFixedThreadPool(options.threads);
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / options.rate;
+        AtomicLong inFlight = new AtomicLong();
+
+        for (long intended = start; intended < end; intended += intervalNanos) {
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            final long intendedStart = intended;
+            inFlight.incrementAndGet();
+            starters.execute(() -> execute(nextOperation(), intendedStart, inFlight::decrementAndGet));
+        }
+        starters.shutdown();
+        // Wait for the last flows in flight.
+        while (inFlight.get() > 0) {
+            Thread.sleep(100);
+        }
+    }
+
+    // Closed loop: each worker starts its next flow once the previous one has finished.
+    private void runAtConcurrency(long end) throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(options.concurrency);
+        for (int i = 0; i < options.concurrency; i++) {
+            workers.execute(() -> {
+                while (System.nanoTime() < end) {
+                    CountDownLatch done = new CountDownLatch(1);
+                    execute(nextOperation(), System.nanoTime(), done::countDown);
+                    try {
+                        done.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    // A change or delete needs a registered resident, so it becomes a register while the pool is empty.
+    private Operation nextOperation() {
+        int pick = ThreadLocalRandom.current().nextInt(options.totalWeight());
+        Operation operation = pick < options.registerWeight ? Operation.REGISTER
+                : pick < options.registerWeight + options.changeWeight ? Operation.CHANGE
+                : Operation.DELETE;
+        if (operation == Operation.CHANGE && counterparty == null) {
+            operation = Operation.DELETE;
+        }
+        return operation;
+    }
+
+    private void execute(Operation operation, long intendedStart, Runnable done) {
+        UniqueIdentifier linearId = operation == Operation.REGISTER ? null : residents.poll();
+        if (linearId == null) {
+            operation = Operation.REGISTER;
+        }
+        final Operation started = operation;
+        CordaRPCOps proxy = proxies.get(Math.floorMod(nextProxy.getAndIncrement(), proxies.size()));
+
+        CompletableFuture<SignedTransaction> result;
+        try {
+            result = start(proxy, started, linearId);
+        } catch (RuntimeException e) {
+            failed(started, e);
+            done.run();
+            return;
+        }
+        result.whenComplete((stx, error) -> {
+            if (error != null) {
+                failed(started, error);
+            } else {
+                if (started == Operation.REGISTER) {
+                    residents.offer(stx.getTx().outputsOfType(ResidentInformationState.class).get(0).getLinearId());
+                }
+                long now = System.nanoTime();
+                if (intendedStart >= measureFromNanos) {
+                    histograms.get(started).recordValue(TimeUnit.NANOSECONDS.toMicros(now - intendedStart));
+                }
+            }
+            done.run();
+        });
+    }
+
+    private CompletableFuture<SignedTransaction> start(CordaRPCOps proxy, Operation operation, UniqueIdentifier linearId) {
+        switch (operation) {
+            case CHANGE:
+                return proxy.startFlowDynamic(ChangeInformationFlow.InitiatorFlow.class,
+                        linearId, counterparty, "Relocated " + linearId).getReturnValue().toCompletableFuture();
+            case DELETE:
+                return proxy.startFlowDynamic(DeleteInformationFlow.InitiatorFlow.class,
+                        linearId, ourCity).getReturnValue().toCompletableFuture();
+            case REGISTER:
+            default:
+                long number = nextResident.incrementAndGet();
+                String myNumber = myNumberPrefix + String.format("%0" + (12 - myNumberPrefix.length()) + "d", number);
+                return proxy.startFlowDynamic(RegisterInformationFlow.InitiatorFlow.class,
+                        "Load Resident " + number, myNumber, ourCity,
+                        "Load Address " + number, "1990-01-01").getReturnValue().toCompletableFuture();
+        }
+    }
+
+    private void failed(Operation operation, Throwable error) {
+        // The resident is not put back in the pool, as we do not know whether it was consumed.
+        failures.get(operation).incrementAndGet();
+        logger.warn("{} flow failed: {}", operation, error.getMessage());
+    }
+
+    private Report report(long seconds) {
+        return new Report(options, seconds, histograms, failures.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().get())));
+    }
+
+    /**
+     * The settings of a load run.
+     */
+    public static class Options {
+        public NetworkHostAndPort nodeAddress;
+        public String username;
+        public String password;
+        // Number of RPC connections the flows are spread over.
+        public int connections = 4;
+        // Flows started per second. 0 runs at a fixed concurrency instead.
+        public int rate = 0;
+        // Number of flows in flight when running at a fixed concurrency.
+        public int concurrency = 16;
+        // Number of threads starting the flows when running at a rate.
+        public int threads = 32;
+        public int durationSeconds = 60;
+        public int warmupSeconds = 10;
+        public int registerWeight = 50;
+        public int changeWeight = 30;
+        public int deleteWeight = 20;
+        // X500 name of the city residents are moved to. Defaults to the first other city on the network.
+        public String counterparty;
+        // The first digits of the registered myNumbers, followed by a sequence number. Random 6 digits by default.
+        public String myNumberPrefix;
+
+        int totalWeight() {
+            int total = registerWeight + changeWeight + deleteWeight;
+            if (total <= 0) {
+                throw new IllegalArgumentException("The operation mix must have a positive weight.");
+            }
+            return total;
+        }
+    }
+
+    /**
+     * The latency histograms and failure counts of a load run.
+     */
+    public static class Report {
+        private final Options options;
+        private final long seconds;
+        private final Map<Operation, Histogram> histograms;
+        private final Map<Operation, Long> failures;
+
+        Report(Options options, long seconds, Map<Operation, Histogram> histograms, Map<Operation, Long> failures) {
+            this.options = options;
+            this.seconds = seconds;
+            this.histograms = histograms;
+            this.failures = failures;
+        }
+
+        public Histogram getHistogram(Operation operation) { return histograms.get(operation); }
+
+        public long getFailures(Operation operation) { return failures.get(operation); }
+
+        public String toJson() {
+            String results = Arrays.stream(Operation.values()).map(operation -> {
+                Histogram histogram = histograms.get(operation);
+                return String.format(Locale.ROOT,
+                        "{\"flow\":\"%s\",\"completed\":%d,\"failed\":%d,\"flowsPerSecond\":%.2f," +
+                                "\"p50Ms\":%.3f,\"p99Ms\":%.3f,\"p999Ms\":%.3f,\"maxMs\":%.3f}",
+                        operation.name().toLowerCase(Locale.ROOT), histogram.getTotalCount(), failures.get(operation),
+                        seconds == 0 ? 0.0 : (double) histogram.getTotalCount() / seconds,
+                        histogram.getValueAtPercentile(50) / 1e3, histogram.getValueAtPercentile(99) / 1e3,
+                        histogram.getValueAtPercentile(99.9) / 1e3, histogram.getMaxValue() / 1e3);
+            }).collect(Collectors.joining(","));
+            return String.format(Locale.ROOT,
+                    "{\"mode\":\"%s\",\"rate\":%d,\"concurrency\":%d,\"connections\":%d,\"durationSeconds\":%d," +
+                            "\"latencyFrom\":\"%s\",\"results\":[%s]}",
+                    options.rate > 0 ? "rate" : "concurrency", options.rate, options.concurrency,
+                    options.connections, seconds, options.rate > 0 ? "intendedStart" : "flowStart", results);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.template.exports;
+
+import com.template.states.ResidentInformationState;
+import com.template.webserver.ResidentPager;
+import net.corda.client.rpc.CordaRPCClient;
+import net.corda.client.rpc.CordaRPCConnection;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.messaging.CordaRPCOps;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.zip.GZIPOutputStream;
+
+import static net.corda.core.utilities.NetworkHostAndPort.parse;
+
+/**
+ * Exports the current register of a city from a node to an NDJSON file, gzipped if the file name ends in .gz.
+ * The city is the node's own by default.
+ *
+ * Usage: ExportResidents <node address> <rpc username> <rpc password> <file> [--city=X500 name] [--pageSize=N]
+ */
+public class ExportResidents {
+
+    private static final String USAGE = "Usage: ExportResidents <node address> <rpc username> <rpc password> <file> " +
+            "[--city=X500 name] [--pageSize=N]";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4) throw new IllegalArgumentException(USAGE);
+        Path file = Paths.get(args[3]);
+        String city = null;
+        int pageSize = 1000;
+
+        for (int i = 4; i < args.length; i++) {
+            int separator = args[i].indexOf('=');
+            if (!args[i].startsWith("--") || separator < 0) throw new IllegalArgumentException(USAGE);
+            String value = args[i].substring(separator + 1);
+            switch (args[i].substring(2, separator)) {
+                case "city": city = value; break;
+                case "pageSize": pageSize = Integer.parseInt(value); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i] + "\n" + USAGE);
+            }
+        }
+
+        CordaRPCConnection connection = new CordaRPCClient(parse(args[0])).start(args[1], args[2]);
+        try {
+            CordaRPCOps proxy = connection.getProxy();
+            Party cityParty = city == null
+                    ? proxy.nodeInfo().getLegalIdentities().get(0)
+                    : proxy.wellKnownPartyFromX500Name(CordaX500Name.parse(city));
+            if (cityParty == null) throw new IllegalArgumentException("Unknown party " + city);
+
+            ResidentExporter exporter = new ResidentExporter(new ResidentPager((criteria, paging, sort) ->
+                    proxy.vaultQueryBy(criteria, paging, sort, ResidentInformationState.class)), pageSize);
+            try (OutputStream out = open(file)) {
+                exporter.export(cityParty, out);
+            }
+        } finally {
+            connection.notifyServerAndClose();
+        }
+    }
+
+    private static OutputStream open(Path file) throws IOException {
+        OutputStream out = new BufferedOutputStream(Files.newOutputStream(file));
+        return file.getFileName().toString().endsWith(".gz") ? new GZIPOutputStream(out, 64 * 1024) : out;
+    }
+}
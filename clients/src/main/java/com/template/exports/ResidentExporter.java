@@ -0,0 +1,75 @@
+package com.template.exports;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.template.states.ResidentInformationState;
+import com.template.webserver.ResidentCursor;
+import com.template.webserver.ResidentJson;
+import com.template.webserver.ResidentPager;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.identity.Party;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the unconsumed residents of a city as NDJSON, one JSON object per line.
+ *
+ * The residents are read one page at a time with a [ResidentPager] and each page is written and flushed
+ * before the next one is read, so memory use depends on the page size and not on the number of residents.
+ */
+public class ResidentExporter {
+    private static final Logger logger = LoggerFactory.getLogger(ResidentExporter.class);
+
+    private final ResidentPager pager;
+    private final int pageSize;
+    private final JsonFactory jsonFactory = new JsonFactory()
+            .setRootValueSeparator(null)
+            // The caller owns the stream, which may be a gzip stream still to be finished.
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    public ResidentExporter(ResidentPager pager, int pageSize) {
+        if (pageSize < 1) throw new IllegalArgumentException("pageSize must be at least 1");
+        this.pager = pager;
+        this.pageSize = pageSize;
+    }
+
+    /* export
+     * Writes every unconsumed resident of the city to out and returns how many were written.
+     */
+    public long export(Party city, OutputStream out) throws IOException {
+        long started = System.nanoTime();
+        long exported = 0;
+        long nextProgress = 10_000;
+        try (JsonGenerator json = jsonFactory.createGenerator(out)) {
+            ResidentCursor after = null;
+            ResidentPager.Page page;
+            do {
+                page = pager.read(city, after, pageSize);
+                for (StateAndRef<ResidentInformationState> resident : page.residents) {
+                    ResidentJson.write(json, resident.getState().getData());
+                    json.writeRaw('\n');
+                }
+                json.flush();
+                exported += page.size();
+                if (page.size() > 0) {
+                    after = page.cursorAt(page.size() - 1);
+                }
+                if (exported >= nextProgress) {
+                    logProgress(city, exported, started, "Exported");
+                    nextProgress += 10_000;
+                }
+            } while (page.size() == pageSize);
+        }
+        logProgress(city, exported, started, "Export completed:");
+        return exported;
+    }
+
+    private static void logProgress(Party city, long exported, long started, String prefix) {
+        double seconds = (System.nanoTime() - started) / 1e9;
+        logger.info("{} {} residents of {} in {}s, {} rows/sec", prefix, exported, city.getName(),
+                String.format("%.1f", seconds), seconds == 0 ? 0 : String.format("%.1f", exported / seconds));
+    }
+}
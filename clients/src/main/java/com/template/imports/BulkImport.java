@@ -0,0 +1,287 @@
+package com.template.imports;
+
+import com.template.flows.BulkRegisterInformationFlow;
+import com.template.flows.BulkRegisterInformationFlow.Outcome;
+import com.template.flows.BulkRegisterInformationFlow.Resident;
+import com.template.schemas.ResidentInformationQueries;
+import com.template.states.ResidentInformationState;
+import net.corda.client.rpc.CordaRPCClient;
+import net.corda.client.rpc.CordaRPCConnection;
+import net.corda.core.identity.Party;
+import net.corda.core.messaging.CordaRPCOps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static net.corda.core.utilities.NetworkHostAndPort.parse;
+
+/**
+ * Imports a city's register of residents from a CSV or NDJSON file into the city node.
+ *
+ * The file is read row by row and valid rows are registered in chunks with [BulkRegisterInformationFlow],
+ * keeping at most inFlight flows running. Invalid rows and residents the flow rejects are written to the
+ * rejects file. The last committed row is saved to the checkpoint file, and a new run with the same file
+ * resumes after it. The rows up to the last row the previous run submitted may have been registered without
+ * being committed, so they are first looked up by myNumber and are not registered twice. Rows already in the
+ * rejects file are not written to it again.
+ *
+ * Usage: BulkImport <node address> <rpc username> <rpc password> <file>
+ *        [--format=csv|ndjson] [--chunkSize=N] [--inFlight=N] [--checkpoint=file] [--rejects=file]
+ */
+public class BulkImport {
+    private static final Logger logger = LoggerFactory.getLogger(BulkImport.class);
+
+    private static final String USAGE = "Usage: BulkImport <node address> <rpc username> <rpc password> <file> " +
+            "[--format=csv|ndjson] [--chunkSize=N] [--inFlight=N] [--checkpoint=file] [--rejects=file]";
+
+    private final CordaRPCOps proxy;
+    private final Party city;
+    private final int chunkSize;
+    private final int inFlight;
+    private final ImportCheckpoint checkpoint;
+    private final BufferedWriter rejects;
+    private final Set<Long> alreadyRejected;
+    private final Semaphore slots;
+
+    private final AtomicLong registered = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private volatile Throwable failure;
+
+    public BulkImport(CordaRPCOps proxy, int chunkSize, int inFlight, ImportCheckpoint checkpoint, BufferedWriter rejects,
+                      Set<Long> alreadyRejected) {
+        this.proxy = proxy;
+        this.city = proxy.nodeInfo().getLegalIdentities().get(0);
+        this.chunkSize = chunkSize;
+        this.inFlight = inFlight;
+        this.checkpoint = checkpoint;
+        this.rejects = rejects;
+        this.alreadyRejected = alreadyRejected;
+        this.slots = new Semaphore(inFlight);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4) throw new IllegalArgumentException(USAGE);
+        Path file = Paths.get(args[3]);
+        String name = file.getFileName().toString();
+        ResidentFileReader.Format format = name.endsWith(".ndjson") || name.endsWith(".jsonl")
+                ? ResidentFileReader.Format.NDJSON : ResidentFileReader.Format.CSV;
+        int chunkSize = BulkRegisterInformationFlow.DEFAULT_CHUNK_SIZE;
+        int inFlight = 4;
+        Path checkpointFile = Paths.get(args[3] + ".checkpoint");
+        Path rejectsFile = Paths.get(args[3] + ".rejects");
+
+        for (int i = 4; i < args.length; i++) {
+            int separator = args[i].indexOf('=');
+            if (!args[i].startsWith("--") || separator < 0) throw new IllegalArgumentException(USAGE);
+            String value = args[i].substring(separator + 1);
+            switch (args[i].substring(2, separator)) {
+                case "format": format = ResidentFileReader.Format.valueOf(value.toUpperCase()); break;
+                case "chunkSize": chunkSize = Integer.parseInt(value); break;
+                case "inFlight": inFlight = Integer.parseInt(value); break;
+                case "checkpoint": checkpointFile = Paths.get(value); break;
+                case "rejects": rejectsFile = Paths.get(value); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i] + "\n" + USAGE);
+            }
+        }
+
+        ImportCheckpoint checkpoint = ImportCheckpoint.load(checkpointFile);
+        Set<Long> alreadyRejected = rejectedRows(rejectsFile, checkpoint.getCommittedRow());
+
+        CordaRPCConnection connection = new CordaRPCClient(parse(args[0])).start(args[1], args[2]);
+        boolean completed;
+        try (ResidentFileReader reader = new ResidentFileReader(file, format);
+             BufferedWriter rejects = Files.newBufferedWriter(rejectsFile, StandardCharsets.UTF_8,
+                     StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            BulkImport bulkImport = new BulkImport(connection.getProxy(), chunkSize, inFlight, checkpoint, rejects,
+                    alreadyRejected);
+            completed = bulkImport.run(reader);
+        } finally {
+            connection.notifyServerAndClose();
+        }
+        if (!completed) {
+            System.exit(1);
+        }
+    }
+
+    /* rejectedRows
+     * The rows after afterRow that a previous run has written to the rejects file.
+     * A line cut short by a crash is ignored.
+     */
+    static Set<Long> rejectedRows(Path rejectsFile, long afterRow) throws IOException {
+        Set<Long> rows = new HashSet<>();
+        if (!Files.exists(rejectsFile)) {
+            return rows;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(rejectsFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.indexOf(',');
+                if (separator <= 0) continue;
+                try {
+                    long row = Long.parseLong(line.substring(0, separator));
+                    if (row > afterRow) rows.add(row);
+                } catch (NumberFormatException e) {
+                    // Not a row of ours.
+                }
+            }
+        }
+        return rows;
+    }
+
+    /* run
+     * Imports the rows after the checkpoint. Returns false if a chunk failed, in which case
+     * the import stops and can be resumed by running it again.
+     */
+    public boolean run(ResidentFileReader reader) throws IOException, InterruptedException {
+        long resumeAfter = checkpoint.getCommittedRow();
+        // Rows up to here may have been registered by chunks that were in flight when the last run stopped.
+        long uncertainUntil = checkpoint.getSubmittedRow();
+        if (resumeAfter > 0) {
+            logger.info("Resuming after row {}", resumeAfter);
+        }
+
+        long started = System.nanoTime();
+        long firstRow = resumeAfter + 1;
+        long lastRow = resumeAfter;
+        List<Resident> chunk = new ArrayList<>(chunkSize);
+        List<Long> chunkRows = new ArrayList<>(chunkSize);
+
+        ResidentFileReader.Row row;
+        while (failure == null && (row = reader.next()) != null) {
+            if (row.number <= resumeAfter) {
+                continue;
+            }
+            lastRow = row.number;
+            if (row.error != null) {
+                reject(row.number, row.resident == null ? null : row.resident.myNumber, row.error);
+            } else if (row.number <= uncertainUntil && isRegistered(row.resident.myNumber)) {
+                skipped.incrementAndGet();
+            } else {
+                chunk.add(row.resident);
+                chunkRows.add(row.number);
+            }
+
+            if (chunk.size() == chunkSize) {
+                submit(firstRow, lastRow, chunk, chunkRows);
+                firstRow = lastRow + 1;
+                chunk = new ArrayList<>(chunkSize);
+                chunkRows = new ArrayList<>(chunkSize);
+            }
+            if (row.number % 10_000 == 0) {
+                logProgress(row.number, started);
+            }
+        }
+        if (failure == null && lastRow >= firstRow) {
+            submit(firstRow, lastRow, chunk, chunkRows);
+        }
+
+        // Wait for the last chunks in flight.
+        slots.acquire(inFlight);
+        slots.release(inFlight);
+        rejects.flush();
+        logProgress(lastRow, started);
+
+        if (failure != null) {
+            logger.error("Import stopped after committed row {}: {}. Run it again to resume.",
+                    checkpoint.getCommittedRow(), failure.getMessage());
+            return false;
+        }
+        logger.info("Import completed: {} registered, {} rejected, {} already registered",
+                registered.get(), rejected.get(), skipped.get());
+        return true;
+    }
+
+    /* submit
+     * Registers the residents of rows firstRow to lastRow, once fewer than inFlight chunks are running.
+     */
+    private void submit(long firstRow, long lastRow, List<Resident> chunk, List<Long> chunkRows)
+            throws IOException, InterruptedException {
+        if (chunk.isEmpty()) {
+            // Every row of the range was rejected or already registered.
+            finish(firstRow, lastRow);
+            return;
+        }
+        slots.acquire();
+        try {
+            checkpoint.submit(lastRow);
+        } catch (IOException e) {
+            slots.release();
+            throw e;
+        }
+        try {
+            proxy.startFlowDynamic(BulkRegisterInformationFlow.InitiatorFlow.class, chunk, city, chunkSize)
+                    .getReturnValue().toCompletableFuture()
+                    .whenComplete((outcomes, error) -> {
+                        try {
+                            if (error != null) {
+                                failure = error;
+                                return;
+                            }
+                            for (int i = 0; i < outcomes.size(); i++) {
+                                Outcome outcome = outcomes.get(i);
+                                if (outcome.registered()) {
+                                    registered.incrementAndGet();
+                                } else {
+                                    reject(chunkRows.get(i), outcome.myNumber, outcome.error);
+                                }
+                            }
+                            finish(firstRow, lastRow);
+                        } catch (IOException e) {
+                            failure = e;
+                        } finally {
+                            slots.release();
+                        }
+                    });
+        } catch (RuntimeException e) {
+            failure = e;
+            slots.release();
+        }
+    }
+
+    private boolean isRegistered(String myNumber) {
+        return !proxy.vaultQueryByCriteria(
+                ResidentInformationQueries.byMyNumber(myNumber).and(ResidentInformationQueries.byCurrentCity(city)),
+                ResidentInformationState.class).getStates().isEmpty();
+    }
+
+    // The rejects of the rows are written out before the rows are committed, so a crash cannot lose them.
+    private void finish(long firstRow, long lastRow) throws IOException {
+        synchronized (rejects) {
+            rejects.flush();
+        }
+        checkpoint.finish(firstRow, lastRow);
+    }
+
+    private void reject(long rowNumber, String myNumber, String error) throws IOException {
+        rejected.incrementAndGet();
+        if (alreadyRejected.contains(rowNumber)) {
+            return;
+        }
+        synchronized (rejects) {
+            rejects.write(rowNumber + "," + (myNumber == null ? "" : myNumber) + "," + error.replace('\n', ' '));
+            rejects.newLine();
+        }
+    }
+
+    private void logProgress(long rowNumber, long started) {
+        double seconds = (System.nanoTime() - started) / 1e9;
+        logger.info("Read up to row {}, committed row {}: {} registered, {} rejected, {} skipped, {} rows/sec",
+                rowNumber, checkpoint.getCommittedRow(), registered.get(), rejected.get(), skipped.get(),
+                seconds == 0 ? 0 : String.format("%.1f", (registered.get() + rejected.get() + skipped.get()) / seconds));
+    }
+}
@@ -0,0 +1,86 @@
+package com.template.imports;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.TreeMap;
+
+/**
+ * Tracks the last committed row of an import, and the last row submitted to the node, and saves them to a file.
+ *
+ * Chunks finish out of order, so a row is only committed once it and every row before it have finished.
+ * The last submitted row is saved before its chunk is sent, so after a crash the rows that may have been
+ * registered without being committed are exactly those after the committed row up to the submitted one.
+ * The file is replaced atomically, so a crash leaves either the previous or the new checkpoint.
+ */
+public class ImportCheckpoint {
+    private final Path file;
+    private long committedRow;
+    private long submittedRow;
+    // Finished chunks that are not yet contiguous with the committed rows: first row -> last row.
+    private final TreeMap<Long, Long> finished = new TreeMap<>();
+
+    private ImportCheckpoint(Path file, long committedRow, long submittedRow) {
+        this.file = file;
+        this.committedRow = committedRow;
+        this.submittedRow = submittedRow;
+    }
+
+    /* load
+     * Reads the checkpoint of a previous import, or starts from row 0 if there is none.
+     * A checkpoint holding the committed row only has no rows submitted after it.
+     */
+    public static ImportCheckpoint load(Path file) throws IOException {
+        long committedRow = 0;
+        long submittedRow = 0;
+        if (Files.exists(file)) {
+            String[] rows = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim().split("\\s+");
+            committedRow = Long.parseLong(rows[0]);
+            submittedRow = rows.length > 1 ? Long.parseLong(rows[1]) : committedRow;
+        }
+        return new ImportCheckpoint(file, committedRow, Math.max(committedRow, submittedRow));
+    }
+
+    public synchronized long getCommittedRow() {
+        return committedRow;
+    }
+
+    public synchronized long getSubmittedRow() {
+        return submittedRow;
+    }
+
+    /* submit
+     * Records that the rows up to lastRow are about to be sent to the node, and saves the checkpoint
+     * before they are.
+     */
+    public synchronized void submit(long lastRow) throws IOException {
+        if (lastRow > submittedRow) {
+            submittedRow = lastRow;
+            save();
+        }
+    }
+
+    /* finish
+     * Records that the rows firstRow to lastRow have finished, and saves the checkpoint if it moved.
+     */
+    public synchronized void finish(long firstRow, long lastRow) throws IOException {
+        finished.put(firstRow, lastRow);
+        long committed = committedRow;
+        while (!finished.isEmpty() && finished.firstKey() == committed + 1) {
+            committed = finished.pollFirstEntry().getValue();
+        }
+        if (committed != committedRow) {
+            committedRow = committed;
+            submittedRow = Math.max(submittedRow, committed);
+            save();
+        }
+    }
+
+    private void save() throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temporary, (committedRow + "\n" + submittedRow).getBytes(StandardCharsets.UTF_8));
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
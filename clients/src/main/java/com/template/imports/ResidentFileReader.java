@@ -0,0 +1,155 @@
+package com.template.imports;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.template.flows.BulkRegisterInformationFlow.Resident;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads residents one row at a time from a CSV or NDJSON file, so the file is never held in memory.
+ *
+ * A CSV file starts with a header naming the columns residentName, myNumber, currentAddress and birthday,
+ * in any order; fields may be quoted with double quotes. An NDJSON file holds one JSON object per line
+ * with the same fields. Rows are numbered from 1, not counting the header or blank lines.
+ */
+public class ResidentFileReader implements Closeable {
+
+    public enum Format { CSV, NDJSON }
+
+    static final List<String> COLUMNS = Arrays.asList("residentName", "myNumber", "currentAddress", "birthday");
+
+    private final BufferedReader reader;
+    private final Format format;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private int[] columnIndexes;
+    private long rowNumber;
+
+    public ResidentFileReader(Path file, Format format) throws IOException {
+        this.reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        this.format = format;
+        if (format == Format.CSV) {
+            readHeader();
+        }
+    }
+
+    private void readHeader() throws IOException {
+        String header = reader.readLine();
+        if (header == null) {
+            throw new IOException("The CSV file is empty");
+        }
+        List<String> names = parseCsvLine(header.startsWith("\uFEFF") ? header.substring(1) : header);
+        columnIndexes = new int[COLUMNS.size()];
+        for (int i = 0; i < COLUMNS.size(); i++) {
+            columnIndexes[i] = names.indexOf(COLUMNS.get(i));
+            if (columnIndexes[i] < 0) {
+                throw new IOException("The CSV header has no " + COLUMNS.get(i) + " column");
+            }
+        }
+    }
+
+    /* next
+     * Returns the next row, or null at the end of the file.
+     */
+    public Row next() throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+            if (line == null) {
+                return null;
+            }
+        } while (line.trim().isEmpty());
+        rowNumber++;
+
+        try {
+            String[] values = new String[COLUMNS.size()];
+            if (format == Format.CSV) {
+                List<String> fields = parseCsvLine(line);
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = columnIndexes[i] < fields.size() ? fields.get(columnIndexes[i]) : null;
+                }
+            } else {
+                Map<?, ?> object = mapper.readValue(line, Map.class);
+                for (int i = 0; i < values.length; i++) {
+                    Object value = object.get(COLUMNS.get(i));
+                    values[i] = value == null ? null : value.toString();
+                }
+            }
+            Resident resident = new Resident(values[0], values[1], values[2], values[3]);
+            return new Row(rowNumber, resident, validate(resident));
+        } catch (IOException | RuntimeException e) {
+            return new Row(rowNumber, null, "Unreadable row: " + e.getMessage());
+        }
+    }
+
+    /* validate
+     * Checks the rules the contract applies to a newly registered resident, so that an invalid row
+     * is rejected here instead of failing the transaction of its whole chunk.
+     */
+    static String validate(Resident resident) {
+        if (resident.residentName == null || resident.residentName.isEmpty()) return "A resident must have a resident Name.";
+        if (resident.myNumber == null || resident.myNumber.isEmpty()) return "A resident must have a myNumber.";
+        if (resident.currentAddress == null || resident.currentAddress.isEmpty()) return "A resident must have a current address.";
+        if (resident.birthday == null) return "A resident must have a birthday.";
+        return null;
+    }
+
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quoted field");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * One row of the file. error is set when the row cannot be registered.
+     */
+    public static class Row {
+        public final long number;
+        public final Resident resident;
+        public final String error;
+
+        Row(long number, Resident resident, String error) {
+            this.number = number;
+            this.resident = resident;
+            this.error = error;
+        }
+    }
+}
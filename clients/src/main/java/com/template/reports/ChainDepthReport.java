@@ -0,0 +1,56 @@
+package com.template.reports;
+
+import com.template.flows.ChainDepthReportFlow;
+import net.corda.client.rpc.CordaRPCClient;
+import net.corda.client.rpc.CordaRPCConnection;
+
+import static net.corda.core.utilities.NetworkHostAndPort.parse;
+
+/**
+ * Prints the backchain depth of a node's residents, as reported by the [ChainDepthReportFlow].
+ *
+ * Usage: ChainDepthReport <node address> <rpc username> <rpc password> [--deepest=N]
+ */
+public class ChainDepthReport {
+
+    private static final String USAGE = "Usage: ChainDepthReport <node address> <rpc username> <rpc password> [--deepest=N]";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) throw new IllegalArgumentException(USAGE);
+        int deepest = 20;
+
+        for (int i = 3; i < args.length; i++) {
+            int separator = args[i].indexOf('=');
+            if (!args[i].startsWith("--") || separator < 0) throw new IllegalArgumentException(USAGE);
+            String value = args[i].substring(separator + 1);
+            switch (args[i].substring(2, separator)) {
+                case "deepest": deepest = Integer.parseInt(value); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i] + "\n" + USAGE);
+            }
+        }
+
+        CordaRPCConnection connection = new CordaRPCClient(parse(args[0])).start(args[1], args[2]);
+        try {
+            ChainDepthReportFlow.Report report = connection.getProxy()
+                    .startFlowDynamic(ChainDepthReportFlow.class, deepest).getReturnValue().get();
+
+            System.out.printf("residents: %d, max depth: %d, average depth: %.2f, reissued at depth: %s%n",
+                    report.residents, report.maxDepth, report.averageDepth,
+                    report.reissueDepth == 0 ? "never" : Integer.toString(report.reissueDepth));
+            System.out.println("depth\tresidents");
+            for (int depth = 0; depth < report.residentsByDepth.length; depth++) {
+                if (report.residentsByDepth[depth] == 0) continue;
+                boolean last = depth == report.residentsByDepth.length - 1;
+                System.out.println(depth + (last ? "+" : "") + "\t" + report.residentsByDepth[depth]);
+            }
+            if (!report.deepest.isEmpty()) {
+                System.out.println("linearId\tdepth\ttransactions");
+                for (ChainDepthReportFlow.ChainDepth chain : report.deepest) {
+                    System.out.println(chain.linearId + "\t" + chain.depth + "\t" + chain.transactions);
+                }
+            }
+        } finally {
+            connection.notifyServerAndClose();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.template.reports;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Joins the span logs written by the nodes' SpanLog into one timeline per trace, so that the time of a move
+ * can be split between the origin city, the destination city and the notary.
+ *
+ * The logs are given as files, or directories whose spans-*.ndjson files are read. By default the slowest
+ * traces are printed; --trace and --tx select one trace by its ID or by its transaction's ID.
+ * The nodes' clocks should be synchronised, as the spans of different nodes are placed by their wall-clock start.
+ *
+ * Usage: TraceTimeline <span log or directory>... [--trace=ID] [--tx=ID] [--slowest=N]
+ */
+public class TraceTimeline {
+
+    private static final String USAGE = "Usage: TraceTimeline <span log or directory>... [--trace=ID] [--tx=ID] [--slowest=N]";
+
+    /**
+     * One span of one node's flow.
+     */
+    static class Span {
+        final String traceId;
+        final String txId;
+        final String node;
+        final String flow;
+        final String name;
+        final Instant start;
+        final long durationMicros;
+
+        Span(JsonNode json) {
+            this.traceId        = json.get("traceId").asText();
+            this.txId           = json.get("txId").isNull() ? null : json.get("txId").asText();
+            this.node           = json.get("node").asText();
+            this.flow           = json.get("flow").asText();
+            this.name           = json.get("span").asText();
+            this.start          = Instant.parse(json.get("start").asText());
+            this.durationMicros = json.get("durationMicros").asLong();
+        }
+
+        Instant end() {
+            return start.plus(Duration.ofNanos(durationMicros * 1000));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<Path> logs = new ArrayList<>();
+        String traceId = null;
+        String txId = null;
+        int slowest = 10;
+
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                logs.add(Paths.get(arg));
+                continue;
+            }
+            int separator = arg.indexOf('=');
+            if (separator < 0) throw new IllegalArgumentException(USAGE);
+            String value = arg.substring(separator + 1);
+            switch (arg.substring(2, separator)) {
+                case "trace": traceId = value; break;
+                case "tx": txId = value; break;
+                case "slowest": slowest = Integer.parseInt(value); break;
+                default: throw new IllegalArgumentException("Unknown option " + arg + "\n" + USAGE);
+            }
+        }
+        if (logs.isEmpty()) throw new IllegalArgumentException(USAGE);
+
+        // Step 1. Group the spans of every log by trace.
+        Map<String, List<Span>> traces = new HashMap<>();
+        for (Span span : read(logs)) {
+            traces.computeIfAbsent(span.traceId, id -> new ArrayList<>()).add(span);
+        }
+
+        // Step 2. Select the traces to print.
+        List<List<Span>> selected = new ArrayList<>();
+        for (List<Span> trace : traces.values()) {
+            if (traceId != null && !trace.get(0).traceId.equals(traceId)) continue;
+            if (txId != null && trace.stream().noneMatch(span -> txId.equalsIgnoreCase(span.txId))) continue;
+            selected.add(trace);
+        }
+        selected.sort(Comparator.comparing(TraceTimeline::duration).reversed());
+        if (traceId == null && txId == null && selected.size() > slowest) {
+            selected = selected.subList(0, slowest);
+        }
+
+        // Step 3. Print each trace as a timeline from its first span.
+        System.out.println(traces.size() + " traces");
+        for (List<Span> trace : selected) {
+            print(trace);
+        }
+    }
+
+    private static List<Span> read(List<Path> logs) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        List<Span> spans = new ArrayList<>();
+        for (Path log : logs) {
+            List<Path> files = new ArrayList<>();
+            if (Files.isDirectory(log)) {
+                try (Stream<Path> children = Files.list(log)) {
+                    children.filter(file -> file.getFileName().toString().matches("spans-.*\\.ndjson"))
+                            .forEach(files::add);
+                }
+            } else {
+                files.add(log);
+            }
+            for (Path file : files) {
+                try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        // A node that stopped while writing may leave a partial last line.
+                        if (line.isEmpty() || !line.endsWith("}")) continue;
+                        spans.add(new Span(mapper.readTree(line)));
+                    }
+                }
+            }
+        }
+        return spans;
+    }
+
+    private static Duration duration(List<Span> trace) {
+        Instant first = trace.stream().map(span -> span.start).min(Comparator.naturalOrder()).get();
+        Instant last = trace.stream().map(Span::end).max(Comparator.naturalOrder()).get();
+        return Duration.between(first, last);
+    }
+
+    private static void print(List<Span> trace) {
+        trace.sort(Comparator.comparing((Span span) -> span.start).thenComparing(span -> span.node));
+        Instant first = trace.get(0).start;
+        String txId = trace.stream().map(span -> span.txId).filter(Objects::nonNull).findFirst().orElse("-");
+
+        System.out.println();
+        System.out.printf("trace %s  tx %s  %.1f ms%n", trace.get(0).traceId, txId, duration(trace).toNanos() / 1e6);
+        System.out.printf("%10s %10s  %-36s %-40s %s%n", "start ms", "took ms", "node", "flow", "span");
+        for (Span span : trace) {
+            System.out.printf("%10.1f %10.1f  %-36s %-40s %s%n",
+                    Duration.between(first, span.start).toNanos() / 1e6, span.durationMicros / 1e3,
+                    span.node, span.flow, span.name);
+        }
+    }
+}
@@ -1,27 +1,422 @@
 package com.template.webserver;
 
-import net.corda.core.messaging.CordaRPCOps;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.template.exports.ResidentExporter;
+import com.template.flows.ChangeInformationFlow;
+import com.template.flows.DeleteInformationFlow;
+import com.template.flows.FlowStepMetricsFlow;
+import com.template.flows.RegisterInformationFlow;
+import com.template.flows.ResidentHistoryFlow;
+import com.template.services.ResidentAddressHistory;
+import com.template.states.ResidentInformationState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.messaging.FlowHandle;
+import net.corda.core.transactions.SignedTransaction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Define your API endpoints here.
+ *
+ * The write endpoints start a flow and return without holding a servlet thread until finality.
+ * If the flow has not finished within the endpoint's timeout, they answer 202 Accepted with the flow ID,
+ * whose result can then be polled at /flows/{flowId}.
  */
 @RestController
 @RequestMapping("/") // The paths for HTTP requests are relative to this base path.
 public class Controller {
-    private final CordaRPCOps proxy;
+    private final NodeRPCPool rpc;
+    private final FlowResults flowResults;
+    private final ResidentFeed residentFeed;
+    private final ResidentCache residentCache;
+    private final WebserverMetrics metrics;
+    private final JsonFactory jsonFactory = new JsonFactory();
     private final static Logger logger = LoggerFactory.getLogger(Controller.class);
 
-    public Controller(NodeRPCConnection rpc) {
-        this.proxy = rpc.proxy;
+    @Value("${config.flow.timeout.register:30000}")
+    private long registerTimeoutMillis;
+    @Value("${config.flow.timeout.change:30000}")
+    private long changeTimeoutMillis;
+    @Value("${config.flow.timeout.delete:30000}")
+    private long deleteTimeoutMillis;
+    @Value("${config.residents.maxPageSize:500}")
+    private int maxPageSize;
+
+    public Controller(NodeRPCPool rpc, FlowResults flowResults, ResidentFeed residentFeed,
+                      ResidentCache residentCache, WebserverMetrics metrics) {
+        this.rpc = rpc;
+        this.flowResults = flowResults;
+        this.residentFeed = residentFeed;
+        this.residentCache = residentCache;
+        this.metrics = metrics;
     }
 
     @GetMapping(value = "/templateendpoint", produces = "text/plain")
     private String templateendpoint() {
         return "Define an endpoint here.";
     }
-}
\ No newline at end of file
+
+    /**
+     * Registers a resident in the city, our primary node's city by default, on that city's node.
+     */
+    @PostMapping(value = "/residents", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<Map<String, Object>>> register(@RequestParam String residentName,
+                                                                        @RequestParam String myNumber,
+                                                                        @RequestParam String currentAddress,
+                                                                        @RequestParam String birthday,
+                                                                        @RequestParam(required = false) String city) {
+        return startFlow(registerTimeoutMillis, HttpStatus.CREATED, () -> {
+            Party currentCity = city == null ? rpc.primaryCity() : wellKnownParty(city);
+            return rpc.startFlow(currentCity, RegisterInformationFlow.InitiatorFlow.class,
+                    residentName, myNumber, currentCity, currentAddress, birthday);
+        }, this::cacheOutputs);
+    }
+
+    /**
+     * Moves a resident to newCity, given by its X500 name. The flow runs on the node of the resident's
+     * current city, our primary node's city by default.
+     */
+    @PostMapping(value = "/residents/{linearId}/relocation", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<Map<String, Object>>> change(@PathVariable String linearId,
+                                                                      @RequestParam String newCity,
+                                                                      @RequestParam String newAddress,
+                                                                      @RequestParam(required = false) String city) {
+        return startFlow(changeTimeoutMillis, HttpStatus.OK, () -> {
+            Party currentCity = city == null ? rpc.primaryCity() : wellKnownParty(city);
+            Party newCityParty = wellKnownParty(newCity);
+            return rpc.startFlow(currentCity, ChangeInformationFlow.InitiatorFlow.class,
+                    UniqueIdentifier.Companion.fromString(linearId), newCityParty, newAddress);
+        }, this::cacheOutputs);
+    }
+
+    /**
+     * Deletes a resident on the node of its current city, our primary node's city by default.
+     */
+    @DeleteMapping(value = "/residents/{linearId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<Map<String, Object>>> delete(@PathVariable String linearId,
+                                                                      @RequestParam(required = false) String city) {
+        UniqueIdentifier id = UniqueIdentifier.Companion.fromString(linearId);
+        return startFlow(deleteTimeoutMillis, HttpStatus.OK, () -> {
+            Party currentCity = city == null ? rpc.primaryCity() : wellKnownParty(city);
+            return rpc.startFlow(currentCity, DeleteInformationFlow.InitiatorFlow.class, id, currentCity);
+        }, stx -> residentCache.invalidate(id));
+    }
+
+    /**
+     * Returns an unconsumed resident by linearId, served from the [ResidentCache] when possible.
+     */
+    @GetMapping(value = "/residents/{linearId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> resident(@PathVariable String linearId) {
+        return found(residentCache.byLinearId(UniqueIdentifier.Companion.fromString(linearId)));
+    }
+
+    /**
+     * Returns an unconsumed resident by myNumber, served from the [ResidentCache] when possible.
+     */
+    @GetMapping(value = "/residents/by-my-number/{myNumber}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> residentByMyNumber(@PathVariable String myNumber) {
+        return found(residentCache.byMyNumber(myNumber));
+    }
+
+    /**
+     * Returns every address a resident has lived at, oldest first, from the address history of the node
+     * of city, our primary node's city by default. Answers 404 if that node has no history of the resident.
+     */
+    @GetMapping(value = "/residents/{linearId}/history", produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<List<Map<String, Object>>>> history(@PathVariable String linearId,
+                                                                               @RequestParam(required = false) String city) {
+        UniqueIdentifier id = UniqueIdentifier.Companion.fromString(linearId);
+        Party node = city == null ? null : wellKnownParty(city);
+        FlowHandle<List<ResidentAddressHistory.Residence>> handle =
+                rpc.startFlow(node, ResidentHistoryFlow.class, id);
+        return handle.getReturnValue().toCompletableFuture().thenApply(residences -> {
+            if (residences.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+            }
+            List<Map<String, Object>> body = new ArrayList<>(residences.size());
+            for (ResidentAddressHistory.Residence residence : residences) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("city", residence.city);
+                entry.put("address", residence.address);
+                entry.put("from", residence.from.toString());
+                entry.put("to", residence.to == null ? null : residence.to.toString());
+                entry.put("fromTxId", residence.fromTxId.toString());
+                entry.put("toTxId", residence.toTxId == null ? null : residence.toTxId.toString());
+                body.add(entry);
+            }
+            return ResponseEntity.ok(body);
+        });
+    }
+
+    @GetMapping(value = "/residents-cache/statistics", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Map<String, Object> cacheStatistics() {
+        return residentCache.getStatistics();
+    }
+
+    /**
+     * Lists the unconsumed residents of a city, ours by default, at most limit at a time.
+     * The response holds a nextCursor while there are more residents, to be passed as cursor for the next page.
+     */
+    @GetMapping(value = "/residents", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> residents(@RequestParam(required = false) String city,
+                                                           @RequestParam(required = false) String cursor,
+                                                           @RequestParam(defaultValue = "100") int limit) {
+        if (limit < 1 || limit > maxPageSize) {
+            throw new IllegalArgumentException("limit must be between 1 and " + maxPageSize);
+        }
+        Party cityParty = city == null ? rpc.primaryCity() : wellKnownParty(city);
+        ResidentCursor after = cursor == null ? null : ResidentCursor.decode(cursor);
+
+        // Step 1. Read one resident more than the limit, to know whether there is a next page.
+        ResidentPager.Page page = pager(cityParty).read(cityParty, after, limit + 1);
+        List<StateAndRef<ResidentInformationState>> residents = page.residents;
+
+        // Step 2. The cursor of the next page is the last resident of this one.
+        String nextCursor = null;
+        if (residents.size() > limit) {
+            residents.remove(limit);
+            nextCursor = page.cursorAt(limit - 1).encode();
+        }
+
+        // Step 3. Encode the residents straight to the response.
+        final String next = nextCursor;
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator json = jsonFactory.createGenerator(out)) {
+                json.writeStartObject();
+                json.writeArrayFieldStart("residents");
+                for (StateAndRef<ResidentInformationState> resident : residents) {
+                    ResidentJson.write(json, resident.getState().getData());
+                }
+                json.writeEndArray();
+                json.writeStringField("nextCursor", next);
+                json.writeEndObject();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    /**
+     * Exports every unconsumed resident of a city, ours by default, as NDJSON, gzipped on request.
+     * The residents are written page by page as they are read, so the export is never held in memory.
+     */
+    @GetMapping(value = "/residents/export")
+    public ResponseEntity<StreamingResponseBody> exportResidents(@RequestParam(required = false) String city,
+                                                                 @RequestParam(defaultValue = "false") boolean gzip) {
+        Party cityParty = city == null ? rpc.primaryCity() : wellKnownParty(city);
+        ResidentExporter exporter = new ResidentExporter(pager(cityParty), maxPageSize);
+        String fileName = "residents-" + cityParty.getName().getLocality() + (gzip ? ".ndjson.gz" : ".ndjson");
+
+        StreamingResponseBody body = out -> {
+            if (gzip) {
+                GZIPOutputStream compressed = new GZIPOutputStream(out, 64 * 1024);
+                exporter.export(cityParty, compressed);
+                compressed.finish();
+            } else {
+                exporter.export(cityParty, out);
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(gzip ? "application/gzip" : "application/x-ndjson"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+                .body(body);
+    }
+
+    // Only the city's own node holds its residents, so a city without a node in the pool cannot be listed.
+    private ResidentPager pager(Party city) {
+        if (!rpc.hasNode(city)) {
+            throw new IllegalArgumentException("No node of " + city.getName() + " is configured in this webserver");
+        }
+        return new ResidentPager((criteria, paging, sort) -> rpc.call(city, "vaultQueryBy",
+                proxy -> proxy.vaultQueryBy(criteria, paging, sort, ResidentInformationState.class)));
+    }
+
+    /**
+     * Returns the result of a flow started by one of the write endpoints.
+     */
+    @GetMapping(value = "/flows/{flowId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> flowResult(@PathVariable String flowId) {
+        CompletableFuture<Map<String, Object>> result = flowResults.get(UUID.fromString(flowId));
+        if (result == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Collections.singletonMap("flowId", flowId));
+        }
+        if (!result.isDone()) {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(running(flowId));
+        }
+        try {
+            return ResponseEntity.ok(result.join());
+        } catch (CompletionException e) {
+            return ResponseEntity.badRequest().body(failed(flowId, e));
+        }
+    }
+
+    /* startFlow
+     * Starts the flow and completes the returned DeferredResult from the flow's return value,
+     * or with 202 Accepted and the flow ID once timeoutMillis has passed.
+     * onCompleted is called with the flow's transaction once it has finished.
+     */
+    private DeferredResult<ResponseEntity<Map<String, Object>>> startFlow(long timeoutMillis, HttpStatus status,
+                                                                         Supplier<FlowHandle<SignedTransaction>> start,
+                                                                         Consumer<SignedTransaction> onCompleted) {
+        FlowHandle<SignedTransaction> handle;
+        try {
+            handle = start.get();
+        } catch (RuntimeException e) {
+            DeferredResult<ResponseEntity<Map<String, Object>>> rejected = new DeferredResult<>();
+            HttpStatus rejectedStatus = e instanceof IllegalStateException ? HttpStatus.SERVICE_UNAVAILABLE : HttpStatus.BAD_REQUEST;
+            rejected.setResult(ResponseEntity.status(rejectedStatus).body(Collections.singletonMap("error", e.getMessage())));
+            return rejected;
+        }
+
+        String flowId = handle.getId().getUuid().toString();
+        DeferredResult<ResponseEntity<Map<String, Object>>> deferred = new DeferredResult<>(timeoutMillis,
+                ResponseEntity.status(HttpStatus.ACCEPTED).body(running(flowId)));
+
+        CompletableFuture<Map<String, Object>> result = handle.getReturnValue().toCompletableFuture()
+                .thenApply(stx -> {
+                    // Update the cache before answering, so that the caller reads its own write.
+                    onCompleted.accept(stx);
+                    return completed(flowId, stx);
+                });
+        flowResults.put(handle.getId().getUuid(), result);
+        result.whenComplete((body, error) -> {
+            if (error == null) {
+                deferred.setResult(ResponseEntity.status(status).body(body));
+            } else {
+                Map<String, Object> failure = failed(flowId, error);
+                logger.warn("Flow {} failed: {}", flowId, failure.get("error"));
+                deferred.setResult(ResponseEntity.badRequest().body(failure));
+            }
+        });
+        return deferred;
+    }
+
+    /**
+     * Returns the number of pending, published, conflated and dropped events of the WebSocket feed.
+     */
+    @GetMapping(value = "/residents-feed/statistics", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Map<String, Long> feedStatistics() {
+        return residentFeed.getStatistics();
+    }
+
+    /**
+     * Returns the address, city, healthy connections and in-flight calls of each node of the RPC pool.
+     */
+    @GetMapping(value = "/rpc/statistics", produces = MediaType.APPLICATION_JSON_VALUE)
+    public List<Map<String, Object>> rpcStatistics() {
+        return rpc.getStatistics();
+    }
+
+    /**
+     * Returns the webserver's timers, counters and gauges in the Prometheus text format.
+     */
+    @GetMapping(value = "/metrics", produces = "text/plain; version=0.0.4; charset=utf-8")
+    public String metrics() {
+        return metrics.prometheusText();
+    }
+
+    /**
+     * Returns the step timings of the resident flows on the node of city, our primary node's by default,
+     * in the Prometheus text format.
+     */
+    @GetMapping(value = "/metrics/flow-steps", produces = "text/plain; version=0.0.4; charset=utf-8")
+    public CompletableFuture<String> flowStepMetrics(@RequestParam(required = false) String city) {
+        Party node = city == null ? null : wellKnownParty(city);
+        FlowHandle<String> handle = rpc.startFlow(node, FlowStepMetricsFlow.class);
+        return handle.getReturnValue().toCompletableFuture();
+    }
+
+    // A node that is down or whose connections are all busy.
+    @ExceptionHandler(IllegalStateException.class)
+    public ResponseEntity<Map<String, Object>> unavailable(IllegalStateException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Collections.singletonMap("error", e.getMessage()));
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, Object>> badRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(Collections.singletonMap("error", e.getMessage()));
+    }
+
+    // A resident moved to another city is no longer in our vault, so it is removed instead.
+    private void cacheOutputs(SignedTransaction stx) {
+        Party ourCity = rpc.primaryCity();
+        for (ResidentInformationState state : stx.getTx().outputsOfType(ResidentInformationState.class)) {
+            if (state.currentCity.equals(ourCity)) {
+                residentCache.put(state);
+            } else {
+                residentCache.invalidate(state.getLinearId());
+            }
+        }
+    }
+
+    private static ResponseEntity<Map<String, Object>> found(ResidentInformationState state) {
+        if (state == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        return ResponseEntity.ok(ResidentJson.toMap(state));
+    }
+
+    private Party wellKnownParty(String x500Name) {
+        Party party = rpc.call(null, "wellKnownPartyFromX500Name",
+                proxy -> proxy.wellKnownPartyFromX500Name(CordaX500Name.parse(x500Name)));
+        if (party == null) {
+            throw new IllegalArgumentException("Unknown party " + x500Name);
+        }
+        return party;
+    }
+
+    private static Map<String, Object> running(String flowId) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("flowId", flowId);
+        body.put("status", "RUNNING");
+        body.put("poll", "/flows/" + flowId);
+        return body;
+    }
+
+    private static Map<String, Object> completed(String flowId, SignedTransaction stx) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("flowId", flowId);
+        body.put("status", "COMPLETED");
+        body.put("txId", stx.getId().toString());
+        List<ResidentInformationState> outputs = stx.getTx().outputsOfType(ResidentInformationState.class);
+        if (!outputs.isEmpty()) {
+            body.put("linearId", outputs.get(0).getLinearId().toString());
+        }
+        return body;
+    }
+
+    private static Map<String, Object> failed(String flowId, Throwable error) {
+        // The flow's exception reaches us wrapped by the CompletableFuture.
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("flowId", flowId);
+        body.put("status", "FAILED");
+        body.put("error", error.getMessage());
+        return body;
+    }
+}
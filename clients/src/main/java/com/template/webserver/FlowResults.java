@@ -0,0 +1,50 @@
+package com.template.webserver;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the results of the flows started by the [Controller], so that a client whose request
+ * timed out can poll for the result with the flow ID.
+ *
+ * A result is kept for config.flow.retention milliseconds after its flow finished.
+ */
+@Component
+public class FlowResults {
+    private final Map<UUID, CompletableFuture<Map<String, Object>>> results = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService expiry = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "flow-results-expiry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${config.flow.retention:600000}")
+    private long retentionMillis;
+
+    public void put(UUID flowId, CompletableFuture<Map<String, Object>> result) {
+        results.put(flowId, result);
+        result.whenComplete((body, error) ->
+                expiry.schedule(() -> results.remove(flowId), retentionMillis, TimeUnit.MILLISECONDS));
+    }
+
+    /* get
+     * Returns the result of the flow, or null if the flow is unknown or its result has expired.
+     */
+    public CompletableFuture<Map<String, Object>> get(UUID flowId) {
+        return results.get(flowId);
+    }
+
+    @PreDestroy
+    public void close() {
+        expiry.shutdownNow();
+    }
+}
@@ -0,0 +1,86 @@
+package com.template.webserver;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Times every HTTP request into the [WebserverMetrics], labelled by the matched path pattern, such as
+ * /residents/{linearId}, so that each endpoint has one timer however many residents it is called for.
+ *
+ * The write endpoints answer asynchronously, so their requests are timed until the response is completed
+ * rather than until the servlet thread is released.
+ */
+@Component
+public class HttpMetricsFilter extends OncePerRequestFilter {
+    private final WebserverMetrics metrics;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public HttpMetricsFilter(WebserverMetrics metrics) {
+        this.metrics = metrics;
+        metrics.gauge("webserver_http_requests_in_flight", "HTTP requests that have not been answered yet.",
+                null, () -> Collections.singletonMap("", inFlight.get()));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        inFlight.incrementAndGet();
+        boolean async = false;
+        boolean failed = true;
+        try {
+            chain.doFilter(request, response);
+            failed = false;
+            if (request.isAsyncStarted()) {
+                async = true;
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        HttpServletResponse supplied = (HttpServletResponse) event.getSuppliedResponse();
+                        completed(request, supplied.getStatus(), start);
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            }
+        } finally {
+            if (!async) {
+                // An exception escaping the chain is answered with 500 by the servlet container.
+                completed(request, failed ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR : response.getStatus(), start);
+            }
+        }
+    }
+
+    private void completed(HttpServletRequest request, int statusCode, long start) {
+        inFlight.decrementAndGet();
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        // Requests no handler matched are counted together, so unknown paths do not each get a timer.
+        String path = pattern == null ? "unmatched" : pattern.toString();
+        String status = Integer.toString(statusCode);
+        metrics.httpRequests.record(System.nanoTime() - start, request.getMethod(), path, status);
+        if (statusCode >= 400) {
+            metrics.httpErrors.increment(request.getMethod(), path, status);
+        }
+    }
+}
@@ -0,0 +1,402 @@
+package com.template.webserver;
+
+import net.corda.client.rpc.CordaRPCClient;
+import net.corda.client.rpc.CordaRPCConnection;
+import net.corda.client.rpc.RPCException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.identity.Party;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.messaging.FlowHandle;
+import net.corda.core.utilities.NetworkHostAndPort;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * A pool of RPC connections to one or more city nodes, replacing a single connection to a single node.
+ *
+ * The primary node is config.rpc.host:config.rpc.port; config.rpc.nodes adds other city nodes as a
+ * comma-separated list of host:port. Each node gets config.rpc.connectionsPerNode connections, each
+ * allowing at most config.rpc.maxInFlightPerConnection calls at a time. A flow holds a connection only while
+ * startFlowDynamic runs; the flows running on a node are limited by config.rpc.maxFlowsPerNode instead.
+ * Neither limit waits: a call or flow over the limit fails at once with an IllegalStateException, which the
+ * [Controller] answers with 503, so no request thread is parked on a busy node.
+ *
+ * Every config.rpc.healthCheckInterval milliseconds each connection is checked, and broken connections
+ * are reopened. Listeners registered with onReconnect are told when a node's subscription connection
+ * has been reopened, so they can subscribe again.
+ *
+ * Each call is timed into the [WebserverMetrics], labelled by the node's address: the round trip of the call
+ * or of startFlowDynamic, and the time until a flow's return value.
+ */
+@Component
+public class NodeRPCPool {
+    private final static Logger logger = LoggerFactory.getLogger(NodeRPCPool.class);
+
+    // The host of the primary node we are connecting to.
+    @Value("${config.rpc.host}")
+    private String host;
+    // The RPC port of the primary node we are connecting to.
+    @Value("${config.rpc.port}")
+    private int rpcPort;
+    // The other city nodes, as host:port,host:port.
+    @Value("${config.rpc.nodes:}")
+    private String otherNodes;
+    // The username for logging into the RPC client.
+    @Value("${config.rpc.username}")
+    private String username;
+    // The password for logging into the RPC client.
+    @Value("${config.rpc.password}")
+    private String password;
+    @Value("${config.rpc.connectionsPerNode:4}")
+    private int connectionsPerNode;
+    @Value("${config.rpc.maxInFlightPerConnection:64}")
+    private int maxInFlightPerConnection;
+    @Value("${config.rpc.maxFlowsPerNode:256}")
+    private int maxFlowsPerNode;
+    @Value("${config.rpc.healthCheckInterval:5000}")
+    private long healthCheckIntervalMillis;
+
+    private final WebserverMetrics metrics;
+    private final List<Node> nodes = new ArrayList<>();
+    private final ScheduledExecutorService healthCheck = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "rpc-health-check");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public NodeRPCPool(WebserverMetrics metrics) {
+        this.metrics = metrics;
+        metrics.gauge("webserver_rpc_in_flight", "RPC calls and flows in flight on the connections to a node.",
+                "node", () -> perNode(Node::inFlight));
+        metrics.gauge("webserver_flows_in_flight", "Flows started on a node whose return value has not come yet.",
+                "node", () -> perNode(Node::flowsInFlight));
+        metrics.gauge("webserver_rpc_healthy_connections", "Healthy RPC connections to a node.",
+                "node", () -> perNode(Node::healthyConnections));
+    }
+
+    @PostConstruct
+    public void initialiseNodeRPCPool() {
+        nodes.add(new Node(new NetworkHostAndPort(host, rpcPort)));
+        for (String address : otherNodes.split(",")) {
+            if (!address.trim().isEmpty()) {
+                nodes.add(new Node(NetworkHostAndPort.parse(address.trim())));
+            }
+        }
+        // The primary node must be up, as before; the other nodes are retried by the health check.
+        primary().connectAll(true);
+        for (Node node : nodes.subList(1, nodes.size())) {
+            node.connectAll(false);
+        }
+        healthCheck.scheduleWithFixedDelay(this::checkHealth,
+                healthCheckIntervalMillis, healthCheckIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void close() {
+        healthCheck.shutdownNow();
+        nodes.forEach(Node::closeAll);
+    }
+
+    public Node primary() {
+        return nodes.get(0);
+    }
+
+    public Party primaryCity() {
+        return primary().getCity();
+    }
+
+    /* node
+     * Returns the node of the city, or the primary node when city is null.
+     */
+    public Node node(Party city) {
+        if (city == null) {
+            return primary();
+        }
+        for (Node node : nodes) {
+            if (city.equals(node.city)) {
+                return node;
+            }
+        }
+        throw new IllegalArgumentException("No node is configured for " + city.getName());
+    }
+
+    /* hasNode
+     * Whether one of the configured nodes is the city's node.
+     */
+    public boolean hasNode(Party city) {
+        return nodes.stream().anyMatch(node -> city.equals(node.city));
+    }
+
+    /* call
+     * Runs an RPC call on one of the connections to the city's node, within its in-flight limit.
+     * method names the call in the metrics.
+     */
+    public <T> T call(Party city, String method, Function<CordaRPCOps, T> call) {
+        Node node = node(city);
+        PooledConnection connection = node.acquire(method);
+        long start = System.nanoTime();
+        try {
+            T result = connection.call(call);
+            metrics.rpcCalls.record(System.nanoTime() - start, node.label, method);
+            return result;
+        } catch (RuntimeException e) {
+            metrics.rpcErrors.increment(node.label, method, e instanceof RPCException ? "rpc" : "call");
+            throw e;
+        } finally {
+            connection.permits.release();
+        }
+    }
+
+    /* startFlow
+     * Starts a flow on the city's node. The flow holds a connection until the node has accepted it, and counts
+     * towards the node's flow limit until it finishes.
+     */
+    public <T> FlowHandle<T> startFlow(Party city, Class<? extends FlowLogic<? extends T>> flowClass, Object... args) {
+        Node node = node(city);
+        // RegisterInformationFlow$InitiatorFlow, as the node's own metrics name the flow.
+        String flow = flowClass.getName().substring(flowClass.getName().lastIndexOf('.') + 1);
+        if (!node.flows.tryAcquire()) {
+            metrics.rpcErrors.increment(node.label, flow, "too_many_flows");
+            throw new IllegalStateException(maxFlowsPerNode + " flows are already running on " + node.address);
+        }
+        long start = System.nanoTime();
+        FlowHandle<T> handle;
+        try {
+            PooledConnection connection = node.acquire(flow);
+            try {
+                handle = connection.call(proxy -> proxy.startFlowDynamic(flowClass, args));
+            } finally {
+                connection.permits.release();
+            }
+        } catch (RuntimeException e) {
+            node.flows.release();
+            metrics.rpcErrors.increment(node.label, flow, e instanceof RPCException ? "rpc" : "start_flow");
+            throw e;
+        }
+        long started = System.nanoTime();
+        metrics.flowStarts.record(started - start, node.label, flow);
+        handle.getReturnValue().toCompletableFuture().whenComplete((result, error) -> {
+            node.flows.release();
+            metrics.flows.record(System.nanoTime() - started, node.label, flow, error == null ? "completed" : "failed");
+            if (error != null) {
+                metrics.rpcErrors.increment(node.label, flow, "flow_failed");
+            }
+        });
+        return handle;
+    }
+
+    private void checkHealth() {
+        for (Node node : nodes) {
+            try {
+                node.checkHealth();
+            } catch (RuntimeException e) {
+                logger.warn("Health check of {} failed: {}", node.address, e.getMessage());
+            }
+        }
+    }
+
+    private Map<String, Integer> perNode(Function<Node, Integer> value) {
+        Map<String, Integer> values = new LinkedHashMap<>();
+        for (Node node : nodes) {
+            values.put(node.label, value.apply(node));
+        }
+        return values;
+    }
+
+    public List<Map<String, Object>> getStatistics() {
+        List<Map<String, Object>> statistics = new ArrayList<>();
+        for (Node node : nodes) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("address", node.address.toString());
+            entry.put("city", node.city == null ? null : node.city.getName().toString());
+            entry.put("healthyConnections", node.healthyConnections());
+            entry.put("connections", node.connections.size());
+            entry.put("inFlight", node.inFlight());
+            entry.put("flowsInFlight", node.flowsInFlight());
+            statistics.add(entry);
+        }
+        return statistics;
+    }
+
+    /**
+     * The connections to one city node.
+     */
+    public class Node {
+        private final NetworkHostAndPort address;
+        // The node's label in the metrics.
+        private final String label;
+        private final CordaRPCClient client;
+        private final List<PooledConnection> connections = new ArrayList<>();
+        private final AtomicInteger next = new AtomicInteger();
+        private final List<Runnable> reconnectListeners = new CopyOnWriteArrayList<>();
+        // The flows started on the node and not finished yet.
+        private final Semaphore flows = new Semaphore(maxFlowsPerNode);
+        private volatile Party city;
+
+        Node(NetworkHostAndPort address) {
+            this.address = address;
+            this.label = address.toString();
+            this.client = new CordaRPCClient(address);
+            for (int i = 0; i < connectionsPerNode; i++) {
+                connections.add(new PooledConnection(this, maxInFlightPerConnection));
+            }
+        }
+
+        public Party getCity() {
+            if (city == null) {
+                throw new IllegalStateException("The node at " + address + " has not connected yet");
+            }
+            return city;
+        }
+
+        /* subscriptionProxy
+         * The proxy to subscribe to the node's observables with. Subscriptions are lost when the node
+         * disconnects, so subscribers should also register with onReconnect.
+         */
+        public CordaRPCOps subscriptionProxy() {
+            PooledConnection first = connections.get(0);
+            if (!first.healthy) {
+                throw new IllegalStateException("The node at " + address + " is not connected");
+            }
+            return first.connection.getProxy();
+        }
+
+        public void onReconnect(Runnable listener) {
+            reconnectListeners.add(listener);
+        }
+
+        int healthyConnections() {
+            return (int) connections.stream().filter(c -> c.healthy).count();
+        }
+
+        int inFlight() {
+            return connections.stream().mapToInt(c -> maxInFlightPerConnection - c.permits.availablePermits()).sum();
+        }
+
+        int flowsInFlight() {
+            return maxFlowsPerNode - flows.availablePermits();
+        }
+
+        void connectAll(boolean required) {
+            for (PooledConnection connection : connections) {
+                try {
+                    connection.connect();
+                } catch (RuntimeException e) {
+                    if (required) throw e;
+                    logger.warn("Could not connect to {}: {}", address, e.getMessage());
+                    return;
+                }
+            }
+        }
+
+        void checkHealth() {
+            for (int i = 0; i < connections.size(); i++) {
+                PooledConnection connection = connections.get(i);
+                if (connection.healthy && connection.isAlive()) {
+                    continue;
+                }
+                connection.close();
+                connection.connect();
+                logger.info("Reconnected to {} ({})", address, city);
+                if (i == 0) {
+                    reconnectListeners.forEach(Runnable::run);
+                }
+            }
+        }
+
+        void closeAll() {
+            connections.forEach(PooledConnection::close);
+        }
+
+        /* acquire
+         * Takes a permit on the next healthy connection with one free, without waiting.
+         * A failure is counted against method.
+         */
+        PooledConnection acquire(String method) {
+            int size = connections.size();
+            int start = Math.floorMod(next.getAndIncrement(), size);
+            boolean anyHealthy = false;
+            for (int i = 0; i < size; i++) {
+                PooledConnection connection = connections.get((start + i) % size);
+                if (!connection.healthy) continue;
+                anyHealthy = true;
+                if (connection.permits.tryAcquire()) return connection;
+            }
+            if (!anyHealthy) {
+                metrics.rpcErrors.increment(label, method, "no_connection");
+                throw new IllegalStateException("No healthy RPC connection to " + address);
+            }
+            metrics.rpcErrors.increment(label, method, "busy");
+            throw new IllegalStateException("All RPC connections to " + address + " are busy");
+        }
+    }
+
+    /**
+     * One RPC connection and its in-flight limit.
+     */
+    private class PooledConnection {
+        private final Node node;
+        private final Semaphore permits;
+        private volatile CordaRPCConnection connection;
+        private volatile boolean healthy;
+
+        PooledConnection(Node node, int maxInFlight) {
+            this.node = node;
+            this.permits = new Semaphore(maxInFlight);
+        }
+
+        void connect() {
+            connection = node.client.start(username, password);
+            if (node.city == null) {
+                node.city = connection.getProxy().nodeInfo().getLegalIdentities().get(0);
+            }
+            healthy = true;
+        }
+
+        boolean isAlive() {
+            try {
+                connection.getProxy().currentNodeTime();
+                return true;
+            } catch (RuntimeException e) {
+                healthy = false;
+                return false;
+            }
+        }
+
+        <T> T call(Function<CordaRPCOps, T> call) {
+            CordaRPCConnection current = connection;
+            if (current == null) {
+                throw new IllegalStateException("The RPC connection to " + node.address + " is closed");
+            }
+            try {
+                return call.apply(current.getProxy());
+            } catch (RPCException e) {
+                // The connection is broken; the health check reopens it.
+                healthy = false;
+                throw e;
+            }
+        }
+
+        void close() {
+            healthy = false;
+            CordaRPCConnection current = connection;
+            connection = null;
+            if (current != null) {
+                try {
+                    current.forceClose();
+                } catch (RuntimeException e) {
+                    logger.debug("Closing a broken RPC connection failed", e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.template.webserver;
+
+import com.template.schemas.ResidentInformationQueries;
+import com.template.services.ChangeGenerations;
+import com.template.states.ResidentInformationState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.messaging.DataFeed;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.node.services.vault.Sort;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import rx.Subscription;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+/**
+ * Caches the unconsumed residents read through the webserver, by linearId and by myNumber,
+ * so that repeated reads do not cost an RPC round trip and a vault query each.
+ *
+ * The cache is warmed from a vault snapshot and kept exact by the vault updates of the same feed:
+ * a consumed state is removed and a produced one replaces it. Entries are evicted when the cache holds
+ * more than config.cache.maxSize residents (least recently used first) or are older than config.cache.ttl.
+ * The [Controller] also puts the results of its own flows, so a caller reads its own writes.
+ *
+ * A miss is loaded with a vault query over RPC, and a vault update, an own flow or a rewarm may change the resident
+ * while the query runs. [ChangeGenerations] keeps the loaded state out of the cache then.
+ */
+@Component
+public class ResidentCache {
+    private final static Logger logger = LoggerFactory.getLogger(ResidentCache.class);
+
+    private final NodeRPCPool rpc;
+
+    @Value("${config.cache.maxSize:100000}")
+    private int maxSize;
+    @Value("${config.cache.ttl:300000}")
+    private long ttlMillis;
+    @Value("${config.cache.warmSize:10000}")
+    private int warmSize;
+
+    private final Map<UUID, Entry> byLinearId = new LinkedHashMap<UUID, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, Entry> eldest) {
+            if (size() > maxSize) {
+                byMyNumber.remove(eldest.getValue().state.myNumber, eldest.getKey());
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+    private final Map<String, UUID> byMyNumber = new HashMap<>();
+
+    // Guarded by byLinearId.
+    private final ChangeGenerations<UUID> changes = new ChangeGenerations<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong hitAgeMillis = new AtomicLong();
+    private volatile long lastUpdateMillis = System.currentTimeMillis();
+
+    private volatile Subscription subscription;
+
+    public ResidentCache(NodeRPCPool rpc) {
+        this.rpc = rpc;
+    }
+
+    @PostConstruct
+    public void start() {
+        warm();
+        // Updates were missed while the node was unreachable, so the cache is rebuilt once it is back.
+        rpc.primary().onReconnect(this::warm);
+    }
+
+    private synchronized void warm() {
+        if (subscription != null) subscription.unsubscribe();
+        DataFeed<Vault.Page<ResidentInformationState>, Vault.Update<ResidentInformationState>> feed =
+                rpc.primary().subscriptionProxy().vaultTrackBy(new QueryCriteria.VaultQueryCriteria(),
+                        new PageSpecification(DEFAULT_PAGE_NUM, warmSize), new Sort(Collections.emptySet()),
+                        ResidentInformationState.class);
+        synchronized (byLinearId) {
+            byLinearId.clear();
+            byMyNumber.clear();
+            changes.changedAll();
+            feed.getSnapshot().getStates().forEach(stateAndRef -> cache(stateAndRef.getState().getData()));
+        }
+        subscription = feed.getUpdates().subscribe(this::apply,
+                error -> logger.error("Resident vault updates failed, the cache is no longer invalidated", error));
+        lastUpdateMillis = System.currentTimeMillis();
+        logger.info("ResidentCache warmed with {} residents", size());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (subscription != null) subscription.unsubscribe();
+    }
+
+    private void apply(Vault.Update<ResidentInformationState> update) {
+        synchronized (byLinearId) {
+            for (StateAndRef<ResidentInformationState> consumed : update.getConsumed()) {
+                UUID linearId = consumed.getState().getData().getLinearId().getId();
+                changes.changed(linearId);
+                if (remove(linearId)) {
+                    invalidations.incrementAndGet();
+                }
+            }
+            for (StateAndRef<ResidentInformationState> produced : update.getProduced()) {
+                put(produced.getState().getData());
+            }
+        }
+        lastUpdateMillis = System.currentTimeMillis();
+    }
+
+    /* byLinearId
+     * Returns the unconsumed resident with the linearId, from the cache or else from the node.
+     * Returns null if there is none.
+     */
+    public ResidentInformationState byLinearId(UniqueIdentifier linearId) {
+        ResidentInformationState cached = cached(linearId.getId());
+        if (cached != null) {
+            return cached;
+        }
+        QueryCriteria criteria = new QueryCriteria.LinearStateQueryCriteria(null, Collections.singletonList(linearId.getId()));
+        return load(criteria);
+    }
+
+    /* byMyNumber
+     * Returns the unconsumed resident with the myNumber, from the cache or else from the node.
+     * Returns null if there is none.
+     */
+    public ResidentInformationState byMyNumber(String myNumber) {
+        UUID linearId;
+        synchronized (byLinearId) {
+            linearId = byMyNumber.get(myNumber);
+        }
+        ResidentInformationState cached = linearId == null ? null : cached(linearId);
+        if (cached != null) {
+            return cached;
+        }
+        return load(ResidentInformationQueries.byMyNumber(myNumber));
+    }
+
+    private ResidentInformationState cached(UUID linearId) {
+        synchronized (byLinearId) {
+            Entry entry = byLinearId.get(linearId);
+            if (entry != null) {
+                long age = System.currentTimeMillis() - entry.cachedAtMillis;
+                if (age <= ttlMillis) {
+                    hits.incrementAndGet();
+                    hitAgeMillis.addAndGet(age);
+                    return entry.state;
+                }
+                remove(linearId);
+                expirations.incrementAndGet();
+            }
+        }
+        return null;
+    }
+
+    private ResidentInformationState load(QueryCriteria criteria) {
+        misses.incrementAndGet();
+        long startedAtGeneration;
+        synchronized (byLinearId) {
+            startedAtGeneration = changes.startLoad();
+        }
+        ResidentInformationState loaded = null;
+        try {
+            List<StateAndRef<ResidentInformationState>> states = rpc.call(null, "vaultQueryByCriteria",
+                    proxy -> proxy.vaultQueryByCriteria(criteria, ResidentInformationState.class).getStates());
+            loaded = states.isEmpty() ? null : states.get(0).getState().getData();
+        } finally {
+            synchronized (byLinearId) {
+                // Cached only if no vault update or own flow changed the resident while the query ran.
+                if (loaded != null && changes.unchangedSince(loaded.getLinearId().getId(), startedAtGeneration)) {
+                    cache(loaded);
+                }
+                changes.endLoad(startedAtGeneration);
+            }
+        }
+        return loaded;
+    }
+
+    /* put
+     * Caches the resident. Called with the states produced by the webserver's own flows.
+     */
+    public void put(ResidentInformationState state) {
+        synchronized (byLinearId) {
+            changes.changed(state.getLinearId().getId());
+            cache(state);
+        }
+    }
+
+    // Called with byLinearId held.
+    private void cache(ResidentInformationState state) {
+        UUID linearId = state.getLinearId().getId();
+        remove(linearId);
+        byLinearId.put(linearId, new Entry(state, System.currentTimeMillis()));
+        byMyNumber.put(state.myNumber, linearId);
+    }
+
+    /* invalidate
+     * Removes the resident. Called when the webserver's own flows consume it.
+     */
+    public void invalidate(UniqueIdentifier linearId) {
+        synchronized (byLinearId) {
+            changes.changed(linearId.getId());
+            if (remove(linearId.getId())) {
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    private boolean remove(UUID linearId) {
+        Entry removed = byLinearId.remove(linearId);
+        if (removed == null) {
+            return false;
+        }
+        byMyNumber.remove(removed.state.myNumber, linearId);
+        return true;
+    }
+
+    public int size() {
+        synchronized (byLinearId) {
+            return byLinearId.size();
+        }
+    }
+
+    public Map<String, Object> getStatistics() {
+        long hitCount = hits.get();
+        long lookups = hitCount + misses.get();
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("size", size());
+        statistics.put("maxSize", maxSize);
+        statistics.put("hits", hitCount);
+        statistics.put("misses", misses.get());
+        statistics.put("hitRate", lookups == 0 ? 0.0 : (double) hitCount / lookups);
+        statistics.put("evictions", evictions.get());
+        statistics.put("expirations", expirations.get());
+        statistics.put("invalidations", invalidations.get());
+        // How old the cached residents served were on average, and how long ago the vault last updated the cache.
+        statistics.put("averageHitAgeMillis", hitCount == 0 ? 0 : hitAgeMillis.get() / hitCount);
+        statistics.put("millisSinceLastUpdate", System.currentTimeMillis() - lastUpdateMillis);
+        return statistics;
+    }
+
+    private static class Entry {
+        final ResidentInformationState state;
+        final long cachedAtMillis;
+
+        Entry(ResidentInformationState state, long cachedAtMillis) {
+            this.state = state;
+            this.cachedAtMillis = cachedAtMillis;
+        }
+    }
+}
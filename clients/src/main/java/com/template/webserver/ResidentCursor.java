@@ -0,0 +1,58 @@
+package com.template.webserver;
+
+import net.corda.core.contracts.StateRef;
+import net.corda.core.crypto.SecureHash;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * A position in the listing of residents, ordered by recorded time and then by state reference.
+ *
+ * The cursor names the last resident of a page, so the next page starts right after it even if
+ * residents were recorded or consumed in between, unlike a page number.
+ */
+public class ResidentCursor {
+    public final Instant recordedTime;
+    public final String txId;
+    public final int index;
+
+    public ResidentCursor(Instant recordedTime, StateRef ref) {
+        this(recordedTime, ref.getTxhash().toString(), ref.getIndex());
+    }
+
+    private ResidentCursor(Instant recordedTime, String txId, int index) {
+        this.recordedTime = recordedTime;
+        this.txId = txId;
+        this.index = index;
+    }
+
+    /* precedes
+     * Whether the resident recorded at otherRecordedTime with the given ref comes after this cursor.
+     * The order matches the vault query's sort: recorded time, transaction ID, output index.
+     */
+    public boolean precedes(Instant otherRecordedTime, StateRef ref) {
+        int byTime = otherRecordedTime.compareTo(recordedTime);
+        if (byTime != 0) return byTime > 0;
+        int byTx = ref.getTxhash().toString().compareTo(txId);
+        if (byTx != 0) return byTx > 0;
+        return ref.getIndex() > index;
+    }
+
+    public String encode() {
+        String plain = recordedTime.getEpochSecond() + ":" + recordedTime.getNano() + ":" + txId + ":" + index;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(plain.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static ResidentCursor decode(String cursor) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+            Instant recordedTime = Instant.ofEpochSecond(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+            // Parsing checks that the transaction ID is a valid hash.
+            return new ResidentCursor(recordedTime, SecureHash.parse(parts[2]).toString(), Integer.parseInt(parts[3]));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor " + cursor, e);
+        }
+    }
+}
@@ -0,0 +1,413 @@
+package com.template.webserver;
+
+import com.template.schemas.ResidentAddressHistorySchemaV1.PersistentResidence;
+import com.template.states.ResidentInformationState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.messaging.DataFeed;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.Builder;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.node.services.vault.Sort;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+import rx.Subscription;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.lang.reflect.Field;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+/**
+ * Publishes the register, change, delete and reissue events of residents to the WebSocket subscribers.
+ *
+ * The feed subscribes once to the node's vault updates. The RPC thread only puts the states in a bounded
+ * buffer that keeps the latest state of each resident, and a single thread sends them to the broker,
+ * so a slow subscriber can neither stall the RPC observable nor grow the buffer without limit.
+ * When the buffer is full the oldest state is dropped.
+ *
+ * The only participant of a resident's state is its current city, so a vault update cannot tell a move
+ * from a registration or a deletion. Before publishing, the dispatcher reads the residences the states hold
+ * in the node's address history ([PersistentResidence]) with one vault query, and classifies the events by
+ * how the residences began and ended. A state exited for a reissue is not published: the reissue that follows is.
+ * A state whose residence the node has not indexed yet is tried again with the next batch, a few times, and then
+ * reported as registered if produced, deleted if consumed.
+ *
+ * Each event goes to /topic/residents and to /topic/residents/{city} of the cities it involves,
+ * where city is the organisation name of the city, e.g. /topic/residents/CityA.
+ */
+@Component
+public class ResidentFeed {
+    private final static Logger logger = LoggerFactory.getLogger(ResidentFeed.class);
+
+    public static final String TOPIC = "/topic/residents";
+
+    public enum EventType { REGISTER, CHANGE, DELETE, REISSUE }
+
+    // How many batches a state waits for the node to index its residence, and the pause before each retry.
+    static final int MAX_ATTEMPTS = 10;
+    private static final long RETRY_PAUSE_MILLIS = 500;
+
+    private final NodeRPCPool rpc;
+    private final SimpMessagingTemplate messagingTemplate;
+
+    @Value("${config.feed.bufferSize:10000}")
+    private int bufferSize;
+
+    // Pending states by linearId, oldest first. A new state of a resident replaces its pending one.
+    private final LinkedHashMap<UUID, Pending> pending = new LinkedHashMap<>();
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong conflated = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile Subscription subscription;
+    private Thread dispatcher;
+
+    public ResidentFeed(NodeRPCPool rpc, SimpMessagingTemplate messagingTemplate) {
+        this.rpc = rpc;
+        this.messagingTemplate = messagingTemplate;
+    }
+
+    @PostConstruct
+    public void start() {
+        subscribe();
+        // The subscription is lost with the connection, so subscribe again once the node is back.
+        rpc.primary().onReconnect(this::subscribe);
+
+        dispatcher = new Thread(this::dispatch, "resident-feed");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    private synchronized void subscribe() {
+        if (subscription != null) subscription.unsubscribe();
+        // We only need the updates, so the snapshot is limited to a single state.
+        DataFeed<Vault.Page<ResidentInformationState>, Vault.Update<ResidentInformationState>> feed =
+                rpc.primary().subscriptionProxy().vaultTrackBy(new QueryCriteria.VaultQueryCriteria(),
+                        new PageSpecification(DEFAULT_PAGE_NUM, 1), new Sort(Collections.emptySet()),
+                        ResidentInformationState.class);
+        subscription = feed.getUpdates().subscribe(this::onUpdate,
+                error -> logger.error("Resident vault updates failed", error));
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (subscription != null) subscription.unsubscribe();
+        if (dispatcher != null) dispatcher.interrupt();
+    }
+
+    private void onUpdate(Vault.Update<ResidentInformationState> update) {
+        if (update.getType() == Vault.UpdateType.NOTARY_CHANGE) {
+            return;
+        }
+        Set<UUID> produced = new HashSet<>();
+        for (StateAndRef<ResidentInformationState> stateAndRef : update.getProduced()) {
+            produced.add(stateAndRef.getState().getData().getLinearId().getId());
+            offer(new Pending(stateAndRef, true));
+        }
+        for (StateAndRef<ResidentInformationState> stateAndRef : update.getConsumed()) {
+            if (!produced.contains(stateAndRef.getState().getData().getLinearId().getId())) {
+                offer(new Pending(stateAndRef, false));
+            }
+        }
+    }
+
+    private void offer(Pending state) {
+        synchronized (pending) {
+            UUID linearId = state.stateAndRef.getState().getData().getLinearId().getId();
+            if (pending.containsKey(linearId)) {
+                conflated.incrementAndGet();
+            } else if (pending.size() >= bufferSize) {
+                Iterator<UUID> eldest = pending.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+                dropped.incrementAndGet();
+            }
+            pending.put(linearId, state);
+            pending.notify();
+        }
+    }
+
+    private void dispatch() {
+        while (!Thread.currentThread().isInterrupted()) {
+            List<Pending> batch;
+            synchronized (pending) {
+                while (pending.isEmpty()) {
+                    try {
+                        pending.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                batch = new ArrayList<>(pending.values());
+                pending.clear();
+            }
+            List<Pending> unindexed = new ArrayList<>();
+            for (Event event : classify(batch, unindexed)) {
+                try {
+                    messagingTemplate.convertAndSend(TOPIC, event);
+                    for (String city : event.cities()) {
+                        messagingTemplate.convertAndSend(TOPIC + "/" + city, event);
+                    }
+                    published.incrementAndGet();
+                } catch (RuntimeException e) {
+                    dropped.incrementAndGet();
+                    logger.warn("Resident event {} could not be published: {}", event.linearId, e.getMessage());
+                }
+            }
+            if (!unindexed.isEmpty()) {
+                try {
+                    Thread.sleep(RETRY_PAUSE_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                retry(unindexed);
+            }
+        }
+    }
+
+    // Puts the states back, unless a newer state of the same resident has come meanwhile.
+    private void retry(List<Pending> states) {
+        synchronized (pending) {
+            for (Pending state : states) {
+                pending.putIfAbsent(state.stateAndRef.getState().getData().getLinearId().getId(), state.retried());
+            }
+            pending.notify();
+        }
+    }
+
+    /* classify
+     * Turns the pending states into events, from the residences they hold. The states whose residence
+     * is not indexed yet are added to unindexed, until their last attempt.
+     */
+    private List<Event> classify(List<Pending> batch, List<Pending> unindexed) {
+        List<Residence> residences;
+        try {
+            residences = residences(batch);
+        } catch (RuntimeException e) {
+            logger.warn("The residences of {} resident events could not be read: {}", batch.size(), e.getMessage());
+            residences = Collections.emptyList();
+        }
+        Map<StateRef, Residence> byState = new HashMap<>();
+        Set<String> residentsStaying = new HashSet<>();
+        for (Residence residence : residences) {
+            byState.put(residence.heldBy, residence);
+            if (residence.toTime == null) {
+                residentsStaying.add(residence.linearId);
+            }
+        }
+
+        List<Event> events = new ArrayList<>(batch.size());
+        for (Pending state : batch) {
+            Residence held = byState.get(state.stateAndRef.getRef());
+            if (!isIndexed(state, held) && state.attempts < MAX_ATTEMPTS) {
+                unindexed.add(state);
+                continue;
+            }
+            String linearId = state.stateAndRef.getState().getData().getLinearId().getId().toString();
+            Event event = event(state, held, residentsStaying.contains(linearId));
+            if (event != null) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    /* residences
+     * The residences of the residents of the batch, in one query on the linearId index of the address history.
+     * The vault only returns the columns of a custom schema as the groups of an aggregate, so the query groups
+     * the rows by the columns needed, one group per residence.
+     */
+    private List<Residence> residences(List<Pending> batch) {
+        Set<String> linearIds = new HashSet<>();
+        for (Pending state : batch) {
+            linearIds.add(state.stateAndRef.getState().getData().getLinearId().getId().toString());
+        }
+        List<Field> columns = Arrays.asList(column("linearId"), column("stateTransactionId"), column("stateOutputIndex"),
+                column("toTime"), column("toTransactionId"), column("fromCity"), column("toCity"), column("reissuedBy"));
+        QueryCriteria criteria = new QueryCriteria.VaultCustomQueryCriteria(
+                Builder.in(column("linearId"), linearIds), Vault.StateStatus.ALL)
+                .and(new QueryCriteria.VaultCustomQueryCriteria(
+                        Builder.max(column("fromTime"), columns), Vault.StateStatus.ALL));
+        // A resident's residences are few, but each move adds one.
+        PageSpecification paging = new PageSpecification(DEFAULT_PAGE_NUM, Math.max(100, linearIds.size() * 10));
+        List<Object> results = rpc.call(null, "vaultQueryBy", proxy -> proxy.vaultQueryBy(criteria, paging,
+                new Sort(Collections.emptySet()), ResidentInformationState.class).getOtherResults());
+
+        // Each group is the aggregate, then the columns in the order grouped by.
+        int width = columns.size() + 1;
+        List<Residence> residences = new ArrayList<>(results.size() / width);
+        for (int i = 0; i + width <= results.size(); i += width) {
+            residences.add(new Residence(
+                    (String) results.get(i + 1),
+                    new StateRef(SecureHash.parse((String) results.get(i + 2)), (Integer) results.get(i + 3)),
+                    (Instant) results.get(i + 4),
+                    (String) results.get(i + 5),
+                    (String) results.get(i + 6),
+                    (String) results.get(i + 7),
+                    (String) results.get(i + 8)));
+        }
+        return residences;
+    }
+
+    private static Field column(String name) {
+        try {
+            return PersistentResidence.class.getDeclaredField(name);
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /* isIndexed
+     * Whether the node has indexed the transaction that produced or consumed the state. A produced state always
+     * holds a residence once indexed; a consumed one still holds it, unmarked, until then.
+     */
+    static boolean isIndexed(Pending state, Residence held) {
+        if (state.produced) {
+            return held != null;
+        }
+        return held == null || held.toTime != null || held.toTransactionId != null;
+    }
+
+    /* event
+     * The event of a state, from the residence it holds, or null if it is not published. residentStays tells
+     * whether the resident still has a residence on the node, as after a reissue.
+     */
+    static Event event(Pending state, Residence held, boolean residentStays) {
+        ResidentInformationState resident = state.stateAndRef.getState().getData();
+        String city = organisation(resident.currentCity.getName());
+        if (state.produced) {
+            String txId = state.stateAndRef.getRef().getTxhash().toString();
+            if (held != null && txId.equals(held.reissuedBy)) {
+                return new Event(EventType.REISSUE, txId, null, city, resident);
+            }
+            if (held != null && held.fromCity != null) {
+                return new Event(EventType.CHANGE, txId, organisation(held.fromCity), city, resident);
+            }
+            return new Event(EventType.REGISTER, txId, null, city, resident);
+        }
+        if (held == null) {
+            // A state reissued meanwhile no longer holds the residence; otherwise the node does not know it.
+            return residentStays ? null : new Event(EventType.DELETE, null, city, null, resident);
+        }
+        if (held.toTime == null) {
+            // Exited for a reissue, or never indexed.
+            return held.toTransactionId != null ? null : new Event(EventType.DELETE, null, city, null, resident);
+        }
+        if (held.toCity != null) {
+            return new Event(EventType.CHANGE, held.toTransactionId, city, organisation(held.toCity), resident);
+        }
+        return new Event(EventType.DELETE, held.toTransactionId, city, null, resident);
+    }
+
+    private static String organisation(String city) {
+        return organisation(CordaX500Name.parse(city));
+    }
+
+    private static String organisation(CordaX500Name city) {
+        return city.getOrganisation();
+    }
+
+    public Map<String, Long> getStatistics() {
+        Map<String, Long> statistics = new LinkedHashMap<>();
+        synchronized (pending) {
+            statistics.put("pending", (long) pending.size());
+        }
+        statistics.put("published", published.get());
+        statistics.put("conflated", conflated.get());
+        statistics.put("dropped", dropped.get());
+        return statistics;
+    }
+
+    /**
+     * A state of a resident from a vault update, waiting to be classified and published.
+     */
+    static class Pending {
+        final StateAndRef<ResidentInformationState> stateAndRef;
+        final boolean produced;
+        // The batches this state has been classified in, waiting for its residence to be indexed.
+        final int attempts;
+
+        Pending(StateAndRef<ResidentInformationState> stateAndRef, boolean produced) {
+            this(stateAndRef, produced, 0);
+        }
+
+        private Pending(StateAndRef<ResidentInformationState> stateAndRef, boolean produced, int attempts) {
+            this.stateAndRef = stateAndRef;
+            this.produced = produced;
+            this.attempts = attempts;
+        }
+
+        Pending retried() {
+            return new Pending(stateAndRef, produced, attempts + 1);
+        }
+    }
+
+    /**
+     * A residence of the address history, as read for classifying: the state holding it, how it began and ended.
+     * The cities are X500 names.
+     */
+    static class Residence {
+        final String linearId;
+        final StateRef heldBy;
+        // Null while the resident lives there.
+        final Instant toTime;
+        // The transaction that ended the residence, or that exited its state for a reissue.
+        final String toTransactionId;
+        final String fromCity;
+        final String toCity;
+        final String reissuedBy;
+
+        Residence(String linearId, StateRef heldBy, Instant toTime, String toTransactionId,
+                  String fromCity, String toCity, String reissuedBy) {
+            this.linearId        = linearId;
+            this.heldBy          = heldBy;
+            this.toTime          = toTime;
+            this.toTransactionId = toTransactionId;
+            this.fromCity        = fromCity;
+            this.toCity          = toCity;
+            this.reissuedBy      = reissuedBy;
+        }
+    }
+
+    /**
+     * A register, change, delete or reissue of a resident, as sent to the subscribers.
+     */
+    public static class Event {
+        public final EventType type;
+        // The transaction of the event, if known.
+        public final String txId;
+        public final String linearId;
+        // The city the resident left, for a change or delete.
+        public final String fromCity;
+        // The city the resident is in, for a register, change or reissue.
+        public final String toCity;
+        public final Map<String, Object> resident;
+
+        Event(EventType type, String txId, String fromCity, String toCity, ResidentInformationState state) {
+            this.type = type;
+            this.txId = txId;
+            this.linearId = state.getLinearId().getId().toString();
+            this.fromCity = fromCity;
+            this.toCity = toCity;
+            this.resident = ResidentJson.toMap(state);
+        }
+
+        Set<String> cities() {
+            Set<String> cities = new LinkedHashSet<>();
+            if (fromCity != null) cities.add(fromCity);
+            if (toCity != null) cities.add(toCity);
+            return cities;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.template.webserver;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.template.states.ResidentInformationState;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The JSON form of a [ResidentInformationState] served by the webserver.
+ */
+public class ResidentJson {
+
+    private ResidentJson() { }
+
+    /* write
+     * Writes the resident as a JSON object directly to the generator, without building an intermediate tree.
+     */
+    public static void write(JsonGenerator json, ResidentInformationState state) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("linearId", state.getLinearId().toString());
+        json.writeStringField("residentName", state.residentName);
+        json.writeStringField("myNumber", state.myNumber);
+        json.writeStringField("currentCity", state.currentCity.getName().toString());
+        json.writeStringField("currentAddress", state.currentAddress);
+        json.writeStringField("birthday", state.birthday);
+        json.writeStringField("oldAddress", state.oldAddress);
+        json.writeEndObject();
+    }
+
+    public static Map<String, Object> toMap(ResidentInformationState state) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("linearId", state.getLinearId().toString());
+        map.put("residentName", state.residentName);
+        map.put("myNumber", state.myNumber);
+        map.put("currentCity", state.currentCity.getName().toString());
+        map.put("currentAddress", state.currentAddress);
+        map.put("birthday", state.birthday);
+        map.put("oldAddress", state.oldAddress);
+        return map;
+    }
+}
@@ -0,0 +1,96 @@
+package com.template.webserver;
+
+import com.template.schemas.ResidentInformationQueries;
+import com.template.states.ResidentInformationState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.identity.Party;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.*;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads the unconsumed residents of a city page by page, in the order they were recorded,
+ * with a [ResidentCursor] marking where the next page starts.
+ */
+public class ResidentPager {
+
+    /**
+     * Runs a vault query of residents on a node.
+     */
+    public interface Query {
+        Vault.Page<ResidentInformationState> query(QueryCriteria criteria, PageSpecification paging, Sort sort);
+    }
+
+    // Residents are read in the order they were recorded, so that a cursor stays valid between pages.
+    private final static Sort RECORDED_ORDER = new Sort(Arrays.asList(
+            new Sort.SortColumn(new SortAttribute.Standard(Sort.VaultStateAttribute.RECORDED_TIME), Sort.Direction.ASC),
+            new Sort.SortColumn(new SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF_TXN_ID), Sort.Direction.ASC),
+            new Sort.SortColumn(new SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF_INDEX), Sort.Direction.ASC)));
+
+    private final Query query;
+
+    public ResidentPager(Query query) {
+        this.query = query;
+    }
+
+    /* read
+     * Reads up to count unconsumed residents of the city that come after the cursor, in recorded order.
+     * Residents recorded at the cursor's time are read again and skipped up to the cursor itself.
+     */
+    public Page read(Party city, ResidentCursor after, int count) {
+        QueryCriteria criteria = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED);
+        if (after != null) {
+            criteria = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED)
+                    .withTimeCondition(new QueryCriteria.TimeCondition(QueryCriteria.TimeInstantType.RECORDED,
+                            new ColumnPredicate.BinaryComparison<>(
+                                    BinaryComparisonOperator.GREATER_THAN_OR_EQUAL, after.recordedTime)));
+        }
+        criteria = criteria.and(ResidentInformationQueries.byCurrentCity(city));
+
+        Page result = new Page(count);
+        for (int pageNumber = QueryCriteriaUtils.DEFAULT_PAGE_NUM; result.size() < count; pageNumber++) {
+            Vault.Page<ResidentInformationState> page =
+                    query.query(criteria, new PageSpecification(pageNumber, count), RECORDED_ORDER);
+            List<StateAndRef<ResidentInformationState>> states = page.getStates();
+            for (int i = 0; i < states.size() && result.size() < count; i++) {
+                Instant recordedTime = page.getStatesMetadata().get(i).getRecordedTime();
+                if (after == null || after.precedes(recordedTime, states.get(i).getRef())) {
+                    result.residents.add(states.get(i));
+                    result.recordedTimes.add(recordedTime);
+                }
+            }
+            if (states.size() < count) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The residents read by one call, with the time each was recorded.
+     */
+    public static class Page {
+        public final List<StateAndRef<ResidentInformationState>> residents;
+        public final List<Instant> recordedTimes;
+
+        Page(int capacity) {
+            this.residents = new ArrayList<>(capacity);
+            this.recordedTimes = new ArrayList<>(capacity);
+        }
+
+        public int size() {
+            return residents.size();
+        }
+
+        /* cursorAt
+         * The cursor of the resident at the index, from which the next read starts.
+         */
+        public ResidentCursor cursorAt(int index) {
+            return new ResidentCursor(recordedTimes.get(index), residents.get(index).getRef());
+        }
+    }
+}
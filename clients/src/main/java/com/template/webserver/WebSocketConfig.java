@@ -0,0 +1,52 @@
+package com.template.webserver;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
+import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
+import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
+import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+
+/**
+ * The STOMP over WebSocket endpoint of the [ResidentFeed].
+ *
+ * Clients connect to /residents-feed and subscribe to /topic/residents, or to /topic/residents/{city}
+ * for the events of one city. A session whose messages cannot be sent within the send time and buffer
+ * limits is closed, so a slow subscriber does not hold messages for the others.
+ */
+@Configuration
+@EnableWebSocketMessageBroker
+public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
+
+    @Value("${config.feed.sendTimeLimit:10000}")
+    private int sendTimeLimitMillis;
+    @Value("${config.feed.sendBufferSizeLimit:524288}")
+    private int sendBufferSizeLimit;
+    @Value("${config.feed.outboundThreads:8}")
+    private int outboundThreads;
+    @Value("${config.feed.outboundQueueCapacity:10000}")
+    private int outboundQueueCapacity;
+
+    @Override
+    public void registerStompEndpoints(StompEndpointRegistry registry) {
+        registry.addEndpoint("/residents-feed").setAllowedOrigins("*");
+    }
+
+    @Override
+    public void configureMessageBroker(MessageBrokerRegistry registry) {
+        registry.enableSimpleBroker("/topic");
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendTimeLimit(sendTimeLimitMillis).setSendBufferSizeLimit(sendBufferSizeLimit);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor().corePoolSize(outboundThreads).maxPoolSize(outboundThreads)
+                .queueCapacity(outboundQueueCapacity);
+    }
+}
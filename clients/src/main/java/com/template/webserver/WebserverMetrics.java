@@ -0,0 +1,225 @@
+package com.template.webserver;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * The timers, counters and gauges of the webserver, rendered in the Prometheus text format at GET /metrics.
+ *
+ * Timers record into HdrHistogram Recorders, which cost a few nanoseconds per value and never block the request
+ * threads. A scrape moves what was recorded since the last one into a running total, and renders it as a Prometheus
+ * histogram, so that quantiles can be computed over any window with histogram_quantile(rate(...)).
+ */
+@Component
+public class WebserverMetrics {
+
+    // The upper bounds of the rendered buckets, in seconds.
+    private static final double[] BUCKET_BOUNDS_SECONDS =
+            {0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60};
+
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    public final Timer httpRequests = register(new Timer("webserver_http_request_seconds",
+            "Time from receiving an HTTP request to completing its response.", "method", "path", "status"));
+    public final Counter httpErrors = register(new Counter("webserver_http_errors_total",
+            "HTTP responses with a 4xx or 5xx status.", "method", "path", "status"));
+    public final Timer rpcCalls = register(new Timer("webserver_rpc_call_seconds",
+            "Round trip of an RPC call to a node.", "node", "method"));
+    public final Timer flowStarts = register(new Timer("webserver_rpc_start_flow_seconds",
+            "Round trip of startFlowDynamic, until the node has accepted the flow.", "node", "flow"));
+    public final Timer flows = register(new Timer("webserver_flow_seconds",
+            "Time from the node accepting a flow to its return value.", "node", "flow", "outcome"));
+    public final Counter rpcErrors = register(new Counter("webserver_rpc_errors_total",
+            "RPC calls and flows that failed, by the reason they failed.", "node", "method", "reason"));
+
+    /* gauge
+     * Registers a gauge whose values, one per value of its only label, are read at each scrape.
+     */
+    public void gauge(String name, String help, String label, Supplier<Map<String, ? extends Number>> values) {
+        register(new Gauge(name, help, label, values));
+    }
+
+    /* prometheusText
+     * Renders every metric in the Prometheus text exposition format, version 0.0.4.
+     */
+    public String prometheusText() {
+        StringBuilder text = new StringBuilder();
+        for (Family family : families.values()) {
+            text.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            text.append("# TYPE ").append(family.name).append(' ').append(family.type()).append('\n');
+            family.render(text);
+        }
+        return text.toString();
+    }
+
+    private <F extends Family> F register(F family) {
+        if (families.putIfAbsent(family.name, family) != null) {
+            throw new IllegalArgumentException("The metric " + family.name + " is already registered");
+        }
+        return family;
+    }
+
+    private static String labels(String[] names, String[] values) {
+        if (values.length != names.length) {
+            throw new IllegalArgumentException("Expected the labels " + Arrays.toString(names));
+        }
+        StringBuilder labels = new StringBuilder();
+        for (int i = 0; i < names.length; i++) {
+            if (i > 0) labels.append(',');
+            labels.append(names[i]).append("=\"").append(escape(values[i])).append('"');
+        }
+        return labels.toString();
+    }
+
+    private static String escape(String value) {
+        return String.valueOf(value).replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static void sample(StringBuilder text, String name, String labels, String value) {
+        text.append(name);
+        if (!labels.isEmpty()) {
+            text.append('{').append(labels).append('}');
+        }
+        text.append(' ').append(value).append('\n');
+    }
+
+    /**
+     * A metric and its samples, one per combination of label values.
+     */
+    private abstract static class Family {
+        final String name;
+        final String help;
+
+        Family(String name, String help) {
+            this.name = name;
+            this.help = help;
+        }
+
+        abstract String type();
+
+        abstract void render(StringBuilder text);
+    }
+
+    /**
+     * Durations, kept as an HdrHistogram per combination of label values.
+     */
+    public static class Timer extends Family {
+        private final String[] labelNames;
+        private final Map<String, Recorded> recorded = new ConcurrentHashMap<>();
+
+        Timer(String name, String help, String... labelNames) {
+            super(name, help);
+            this.labelNames = labelNames;
+        }
+
+        /* record
+         * Records a duration measured with System.nanoTime(), for the given values of the timer's labels.
+         */
+        public void record(long nanos, String... labelValues) {
+            String labels = labels(labelNames, labelValues);
+            Recorded values = recorded.get(labels);
+            if (values == null) {
+                values = recorded.computeIfAbsent(labels, key -> new Recorded());
+            }
+            values.record(nanos);
+        }
+
+        @Override
+        String type() {
+            return "histogram";
+        }
+
+        @Override
+        void render(StringBuilder text) {
+            for (Map.Entry<String, Recorded> entry : new TreeMap<>(recorded).entrySet()) {
+                entry.getValue().render(text, name, entry.getKey());
+            }
+        }
+    }
+
+    // The values of one timer for one combination of label values, in microseconds.
+    private static class Recorded {
+        private final Recorder recorder = new Recorder(3);
+        private final Histogram total = new Histogram(3);
+        private final LongAdder totalNanos = new LongAdder();
+        private Histogram interval;
+
+        void record(long nanos) {
+            recorder.recordValue(Math.max(0, nanos / 1000));
+            totalNanos.add(nanos);
+        }
+
+        synchronized void render(StringBuilder text, String name, String labels) {
+            interval = recorder.getIntervalHistogram(interval);
+            total.add(interval);
+            String prefix = labels.isEmpty() ? "" : labels + ",";
+            for (double bound : BUCKET_BOUNDS_SECONDS) {
+                long count = total.getCountBetweenValues(0, total.highestEquivalentValue((long) (bound * 1_000_000)));
+                sample(text, name + "_bucket", prefix + "le=\"" + bound + "\"", Long.toString(count));
+            }
+            sample(text, name + "_bucket", prefix + "le=\"+Inf\"", Long.toString(total.getTotalCount()));
+            sample(text, name + "_sum", labels, String.format(Locale.ROOT, "%.6f", totalNanos.sum() / 1e9));
+            sample(text, name + "_count", labels, Long.toString(total.getTotalCount()));
+        }
+    }
+
+    /**
+     * A count that only goes up, per combination of label values.
+     */
+    public static class Counter extends Family {
+        private final String[] labelNames;
+        private final Map<String, LongAdder> counts = new ConcurrentHashMap<>();
+
+        Counter(String name, String help, String... labelNames) {
+            super(name, help);
+            this.labelNames = labelNames;
+        }
+
+        public void increment(String... labelValues) {
+            counts.computeIfAbsent(labels(labelNames, labelValues), key -> new LongAdder()).increment();
+        }
+
+        @Override
+        String type() {
+            return "counter";
+        }
+
+        @Override
+        void render(StringBuilder text) {
+            for (Map.Entry<String, LongAdder> entry : new TreeMap<>(counts).entrySet()) {
+                sample(text, name, entry.getKey(), Long.toString(entry.getValue().sum()));
+            }
+        }
+    }
+
+    private static class Gauge extends Family {
+        private final String label;
+        private final Supplier<Map<String, ? extends Number>> values;
+
+        Gauge(String name, String help, String label, Supplier<Map<String, ? extends Number>> values) {
+            super(name, help);
+            this.label = label;
+            this.values = values;
+        }
+
+        @Override
+        String type() {
+            return "gauge";
+        }
+
+        @Override
+        void render(StringBuilder text) {
+            for (Map.Entry<String, ? extends Number> entry : new TreeMap<>(values.get()).entrySet()) {
+                String labels = label == null ? "" : labels(new String[]{label}, new String[]{entry.getKey()});
+                sample(text, name, labels, entry.getValue().toString());
+            }
+        }
+    }
+}
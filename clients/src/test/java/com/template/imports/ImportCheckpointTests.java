@@ -0,0 +1,91 @@
+package com.template.imports;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Set;
+
+public class ImportCheckpointTests {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file(String name) {
+        return folder.getRoot().toPath().resolve(name);
+    }
+
+    /**
+     * Task 1.
+     * Chunks finishing out of order only commit the rows up to the first unfinished chunk.
+     */
+    @Test
+    public void onlyContiguousFinishedRowsAreCommitted() throws Exception {
+        ImportCheckpoint checkpoint = ImportCheckpoint.load(file("import.checkpoint"));
+        assert (checkpoint.getCommittedRow() == 0);
+
+        checkpoint.finish(11, 20);
+        assert (checkpoint.getCommittedRow() == 0);
+        checkpoint.finish(1, 10);
+        assert (checkpoint.getCommittedRow() == 20);
+        checkpoint.finish(31, 40);
+        assert (checkpoint.getCommittedRow() == 20);
+    }
+
+    /**
+     * Task 2.
+     * A new run reads back the committed row and the last submitted row, which bounds the rows
+     * that may have been registered without being committed.
+     */
+    @Test
+    public void committedAndSubmittedRowsAreReadBack() throws Exception {
+        Path file = file("import.checkpoint");
+        ImportCheckpoint checkpoint = ImportCheckpoint.load(file);
+        checkpoint.submit(10);
+        checkpoint.submit(25);
+        checkpoint.submit(37);
+        checkpoint.finish(1, 10);
+
+        ImportCheckpoint resumed = ImportCheckpoint.load(file);
+        assert (resumed.getCommittedRow() == 10);
+        assert (resumed.getSubmittedRow() == 37);
+    }
+
+    /**
+     * Task 3.
+     * A checkpoint holding only the committed row has nothing submitted after it.
+     */
+    @Test
+    public void checkpointWithOnlyTheCommittedRowIsRead() throws Exception {
+        Path file = file("import.checkpoint");
+        Files.write(file, "42\n".getBytes(StandardCharsets.UTF_8));
+
+        ImportCheckpoint checkpoint = ImportCheckpoint.load(file);
+        assert (checkpoint.getCommittedRow() == 42);
+        assert (checkpoint.getSubmittedRow() == 42);
+    }
+
+    /**
+     * Task 4.
+     * The rows a previous run rejected after the committed row are found in the rejects file,
+     * so that a resumed run does not write them again. A line cut short by a crash is ignored.
+     */
+    @Test
+    public void rejectedRowsAfterTheCheckpointAreFound() throws Exception {
+        Path rejects = file("import.rejects");
+        Files.write(rejects, Arrays.asList(
+                "3,123456789012,A resident must have a birthday.",
+                "12,,Unreadable row: Unterminated quoted field",
+                "15,123456789013,The myNumber is already registered.",
+                "1"), StandardCharsets.UTF_8);
+
+        Set<Long> rows = BulkImport.rejectedRows(rejects, 10);
+        assert (rows.size() == 2);
+        assert (rows.contains(12L) && rows.contains(15L));
+        assert (BulkImport.rejectedRows(file("missing.rejects"), 0).isEmpty());
+    }
+}
@@ -0,0 +1,98 @@
+package com.template.imports;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+public class ResidentFileReaderTests {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private Path write(String name, String... lines) throws IOException {
+        Path file = folder.getRoot().toPath().resolve(name);
+        Files.write(file, Arrays.asList(lines), StandardCharsets.UTF_8);
+        return file;
+    }
+
+    /**
+     * Task 1.
+     * Quoted fields may hold commas and escaped double quotes.
+     */
+    @Test
+    public void quotedFieldsAreParsed() {
+        List<String> fields = ResidentFileReader.parseCsvLine("Yamada Taro,\"ACity, XXX-YYY\",\"say \"\"hi\"\"\",");
+        assert (fields.equals(Arrays.asList("Yamada Taro", "ACity, XXX-YYY", "say \"hi\"", "")));
+    }
+
+    /**
+     * Task 2.
+     * The columns are found by the header in any order, even after a byte order mark, and rows are
+     * numbered from 1 without counting the header or blank lines.
+     */
+    @Test
+    public void rowsAreReadByTheHeaderColumns() throws Exception {
+        Path file = write("residents.csv",
+                "\uFEFFmyNumber,birthday,residentName,currentAddress",
+                "123456789012,1990-02-10,Yamada Taro,\"ACity, XXX-YYY\"",
+                "",
+                "123456789013,1991-03-11,Suzuki Hanako,ACity YYY-ZZZ");
+
+        try (ResidentFileReader reader = new ResidentFileReader(file, ResidentFileReader.Format.CSV)) {
+            ResidentFileReader.Row first = reader.next();
+            assert (first.number == 1);
+            assert (first.error == null);
+            assert (first.resident.residentName.equals("Yamada Taro"));
+            assert (first.resident.myNumber.equals("123456789012"));
+            assert (first.resident.currentAddress.equals("ACity, XXX-YYY"));
+            assert (first.resident.birthday.equals("1990-02-10"));
+
+            ResidentFileReader.Row second = reader.next();
+            assert (second.number == 2);
+            assert (second.resident.residentName.equals("Suzuki Hanako"));
+            assert (reader.next() == null);
+        }
+    }
+
+    /**
+     * Task 3.
+     * A row breaking the contract's rules or that cannot be parsed is returned with an error,
+     * and the rows after it are still read.
+     */
+    @Test
+    public void invalidRowsAreReturnedWithAnError() throws Exception {
+        Path file = write("residents.csv",
+                "residentName,myNumber,currentAddress,birthday",
+                ",123456789012,ACity XXX-YYY,1990-02-10",
+                "Yamada Taro,\"123456789013,ACity XXX-YYY,1990-02-10",
+                "Suzuki Hanako,123456789014,ACity YYY-ZZZ,1991-03-11");
+
+        try (ResidentFileReader reader = new ResidentFileReader(file, ResidentFileReader.Format.CSV)) {
+            ResidentFileReader.Row missingName = reader.next();
+            assert (missingName.error.equals("A resident must have a resident Name."));
+            ResidentFileReader.Row unterminated = reader.next();
+            assert (unterminated.resident == null);
+            assert (unterminated.error.startsWith("Unreadable row"));
+            ResidentFileReader.Row valid = reader.next();
+            assert (valid.number == 3);
+            assert (valid.error == null);
+        }
+    }
+
+    /**
+     * Task 4.
+     * A CSV file without one of the columns is refused before any row is read.
+     */
+    @Test(expected = IOException.class)
+    public void headerWithoutAColumnIsRefused() throws Exception {
+        Path file = write("residents.csv", "residentName,myNumber,currentAddress");
+        new ResidentFileReader(file, ResidentFileReader.Format.CSV).close();
+    }
+}
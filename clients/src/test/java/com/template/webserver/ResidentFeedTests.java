@@ -0,0 +1,129 @@
+package com.template.webserver;
+
+import com.template.contracts.ResidentInformationContract;
+import com.template.states.ResidentInformationState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.contracts.TransactionState;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.testing.core.TestIdentity;
+import org.junit.Test;
+
+import java.time.Instant;
+
+public class ResidentFeedTests {
+
+    private static final Party ACity = new TestIdentity(new CordaX500Name("ACity", "TestLand", "US")).getParty();
+    private static final Party BCity = new TestIdentity(new CordaX500Name("BCity", "TestCity", "US")).getParty();
+    private static final Party Notary = new TestIdentity(new CordaX500Name("Notary", "TestCity", "US")).getParty();
+
+    private static ResidentFeed.Pending pending(Party city, boolean produced) {
+        ResidentInformationState state = new ResidentInformationState(
+                "Yamada Taro", "123456789012", city, "Address in " + city.getName().getOrganisation(), "1990-02-10", null);
+        return new ResidentFeed.Pending(new StateAndRef<>(
+                new TransactionState<>(state, ResidentInformationContract.IOU_CONTRACT_ID, Notary),
+                new StateRef(SecureHash.randomSHA256(), 0)), produced);
+    }
+
+    // The residence held by the state, ended by toTransactionId at toTime if given.
+    private static ResidentFeed.Residence residence(ResidentFeed.Pending state, Instant toTime, String toTransactionId,
+                                                    Party fromCity, Party toCity, String reissuedBy) {
+        return new ResidentFeed.Residence(
+                state.stateAndRef.getState().getData().getLinearId().getId().toString(), state.stateAndRef.getRef(),
+                toTime, toTransactionId,
+                fromCity == null ? null : fromCity.getName().toString(),
+                toCity == null ? null : toCity.getName().toString(),
+                reissuedBy);
+    }
+
+    /**
+     * Task 1.
+     * A move is reported as a CHANGE between the two cities, whether the feed's node is the old or the new city.
+     */
+    @Test
+    public void moveIsReportedAsAChange() {
+        String move = SecureHash.randomSHA256().toString();
+
+        ResidentFeed.Pending left = pending(ACity, false);
+        ResidentFeed.Event onOldCity = ResidentFeed.event(left,
+                residence(left, Instant.now(), move, null, BCity, null), false);
+        assert (onOldCity.type == ResidentFeed.EventType.CHANGE);
+        assert (onOldCity.txId.equals(move));
+        assert (onOldCity.fromCity.equals("ACity"));
+        assert (onOldCity.toCity.equals("BCity"));
+
+        ResidentFeed.Pending arrived = pending(BCity, true);
+        ResidentFeed.Event onNewCity = ResidentFeed.event(arrived,
+                residence(arrived, null, null, ACity, null, null), true);
+        assert (onNewCity.type == ResidentFeed.EventType.CHANGE);
+        assert (onNewCity.txId.equals(arrived.stateAndRef.getRef().getTxhash().toString()));
+        assert (onNewCity.fromCity.equals("ACity"));
+        assert (onNewCity.toCity.equals("BCity"));
+    }
+
+    /**
+     * Task 2.
+     * A reissue is reported once, as a REISSUE, and not as a deletion followed by a registration,
+     * whether or not the reissue was indexed when the exit is classified.
+     */
+    @Test
+    public void reissueIsReportedOnce() {
+        ResidentFeed.Pending exited = pending(ACity, false);
+        String exit = SecureHash.randomSHA256().toString();
+        assert (ResidentFeed.event(exited, residence(exited, null, exit, null, null, null), true) == null);
+        assert (ResidentFeed.event(exited, null, true) == null);
+
+        ResidentFeed.Pending reissued = pending(ACity, true);
+        String reissue = reissued.stateAndRef.getRef().getTxhash().toString();
+        ResidentFeed.Event event = ResidentFeed.event(reissued,
+                residence(reissued, null, null, BCity, null, reissue), true);
+        assert (event.type == ResidentFeed.EventType.REISSUE);
+        assert (event.fromCity == null);
+        assert (event.toCity.equals("ACity"));
+    }
+
+    /**
+     * Task 3.
+     * Registrations and deletions are told from their residences, and a state the node does not know
+     * falls back to a registration if produced and a deletion if consumed.
+     */
+    @Test
+    public void otherEventsAreReportedByResidence() {
+        ResidentFeed.Pending registered = pending(ACity, true);
+        assert (ResidentFeed.event(registered, residence(registered, null, null, null, null, null), true).type
+                == ResidentFeed.EventType.REGISTER);
+
+        ResidentFeed.Pending deleted = pending(ACity, false);
+        String delete = SecureHash.randomSHA256().toString();
+        ResidentFeed.Event event = ResidentFeed.event(deleted, residence(deleted, Instant.now(), delete, null, null, null), false);
+        assert (event.type == ResidentFeed.EventType.DELETE);
+        assert (event.txId.equals(delete));
+        assert (event.fromCity.equals("ACity"));
+        assert (event.toCity == null);
+
+        assert (ResidentFeed.event(pending(ACity, true), null, false).type == ResidentFeed.EventType.REGISTER);
+        ResidentFeed.Event unknown = ResidentFeed.event(pending(ACity, false), null, false);
+        assert (unknown.type == ResidentFeed.EventType.DELETE);
+        assert (unknown.txId == null);
+    }
+
+    /**
+     * Task 4.
+     * A state is classified only once the node has indexed its transaction: a produced state then holds
+     * a residence, and a consumed one's residence is ended or marked by the exit.
+     */
+    @Test
+    public void statesWaitForTheirResidence() {
+        ResidentFeed.Pending produced = pending(ACity, true);
+        assert (!ResidentFeed.isIndexed(produced, null));
+        assert (ResidentFeed.isIndexed(produced, residence(produced, null, null, null, null, null)));
+
+        ResidentFeed.Pending consumed = pending(ACity, false);
+        assert (!ResidentFeed.isIndexed(consumed, residence(consumed, null, null, null, null, null)));
+        assert (ResidentFeed.isIndexed(consumed, residence(consumed, Instant.now(), "tx", null, null, null)));
+        assert (ResidentFeed.isIndexed(consumed, residence(consumed, null, "exit", null, null, null)));
+        assert (ResidentFeed.isIndexed(consumed, null));
+    }
+}
@@ -0,0 +1,91 @@
+package com.template.contracts;
+
+import com.template.states.ResidentInformationState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.transactions.LedgerTransaction;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.testing.core.TestIdentity;
+import net.corda.testing.node.MockServices;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of {@link ResidentInformationContract#verify} per command type,
+ * for transactions of one resident and of a bulk chunk of residents.
+ *
+ * Run with ./gradlew contracts:jmh, which also reports the allocation per call (-prof gc).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResidentInformationContractBenchmark {
+
+    private static final TestIdentity ACity = new TestIdentity(new CordaX500Name("ACity", "TestLand", "US"));
+    private static final TestIdentity BCity = new TestIdentity(new CordaX500Name("BCity", "TestCity", "US"));
+    private static final TestIdentity Notary = new TestIdentity(new CordaX500Name("Notary", "TestCity", "US"));
+
+    // Number of residents in each transaction.
+    @Param({"1", "100"})
+    public int residents;
+
+    private final ResidentInformationContract contract = new ResidentInformationContract();
+
+    private LedgerTransaction registerTx;
+    private LedgerTransaction changeTx;
+    private LedgerTransaction deleteTx;
+
+    @Setup
+    public void setup() {
+        MockServices services = new MockServices(Collections.singletonList("com.template.contracts"), ACity, BCity);
+
+        TransactionBuilder register = new TransactionBuilder(Notary.getParty());
+        for (int i = 0; i < residents; i++) {
+            register.addOutputState(new ResidentInformationState(
+                    "Resident " + i, String.format("%012d", i), ACity.getParty(), "ACity XXX-" + i, "1990-02-10", null),
+                    ResidentInformationContract.IOU_CONTRACT_ID);
+        }
+        register.addCommand(new ResidentInformationContract.Commands.RegisterInformation(), ACity.getPublicKey());
+        SignedTransaction registerStx = services.signInitialTransaction(register);
+        services.recordTransactions(registerStx);
+
+        TransactionBuilder change = new TransactionBuilder(Notary.getParty());
+        TransactionBuilder delete = new TransactionBuilder(Notary.getParty());
+        for (int i = 0; i < residents; i++) {
+            StateAndRef<ResidentInformationState> registered = registerStx.getTx().outRef(i);
+            change.addInputState(registered);
+            change.addOutputState(registered.getState().getData().withNewCurrentCity(BCity.getParty(), "BCity YYY-" + i),
+                    ResidentInformationContract.IOU_CONTRACT_ID);
+            delete.addInputState(registered);
+        }
+        change.addCommand(new ResidentInformationContract.Commands.ChangeInformation(),
+                Arrays.asList(ACity.getPublicKey(), BCity.getPublicKey()));
+        delete.addCommand(new ResidentInformationContract.Commands.DeleteInformation(), ACity.getPublicKey());
+
+        registerTx = register.toLedgerTransaction(services);
+        changeTx = change.toLedgerTransaction(services);
+        deleteTx = delete.toLedgerTransaction(services);
+    }
+
+    @Benchmark
+    public void verifyRegister() {
+        contract.verify(registerTx);
+    }
+
+    @Benchmark
+    public void verifyChange() {
+        contract.verify(changeTx);
+    }
+
+    @Benchmark
+    public void verifyDelete() {
+        contract.verify(deleteTx);
+    }
+}
@@ -1,19 +1,19 @@
 package com.template.contracts;
 
 import net.corda.core.contracts.*;
-import net.corda.core.identity.AbstractParty;
+import net.corda.core.crypto.TransactionSignature;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.FilteredTransaction;
 import net.corda.core.transactions.LedgerTransaction;
 
+import static com.template.contracts.ResidentRules.require;
 import static net.corda.core.contracts.ContractsDSL.requireSingleCommand;
-import static net.corda.core.contracts.ContractsDSL.requireThat;
+import static net.corda.core.crypto.CryptoUtils.isFulfilledBy;
 import com.template.states.ResidentInformationState;
 
 import java.security.PublicKey;
-import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.Objects;
 
 // ************
 // * Contract *
@@ -25,129 +25,180 @@ public class ResidentInformationContract implements Contract {
 
     /**
      * The IOUContract can handle three transaction types involving [ResidentInformationState]s.
-     * - RegisterInformation: Issuing a new [ResidentInformationState] on the ledger.
-     * - ChangeInformation: Re-assigning the currentCity.
-     * - DeleteInformation: deleting  [ResidentInformationState] on the ledger.
+     * - RegisterInformation: Issuing one or more new [ResidentInformationState]s of the same currentCity on the ledger.
+     * - ChangeInformation: Re-assigning the currentCity of one or more [ResidentInformationState]s between two cities.
+     * - DeleteInformation: deleting one or more [ResidentInformationState]s of the same currentCity on the ledger.
+     * - ExitForReissue: ending the backchain of one or more residents, under the same rules as DeleteInformation.
+     *   The command also shows the exited residents, which must be the inputs, so that a Reissue can prove them.
+     * - Reissue: registering again the residents whose states were exited, under the same rules as RegisterInformation.
+     *   The command carries the exit transaction, filtered down to its inputs, its notary and its ExitForReissue
+     *   command, and the notary's signature over it. The link to the old chain is verified: the exit must be signed
+     *   by the notary of the Reissue, and each output must be the resident exited by the input at the same position,
+     *   with the same linearId. The old chain itself is not resolved.
      */
     public interface Commands extends CommandData {
         class RegisterInformation extends TypeOnlyCommandData implements Commands{}
         class ChangeInformation extends TypeOnlyCommandData implements Commands{}
         class DeleteInformation extends TypeOnlyCommandData implements Commands{}
+        class ExitForReissue implements Commands {
+            // The exited residents, at the positions of the inputs.
+            public final List<ResidentInformationState> exited;
+
+            public ExitForReissue(List<ResidentInformationState> exited) {
+                this.exited = exited;
+            }
+        }
+        class Reissue implements Commands {
+            // The exit, revealing its inputs, its notary and its ExitForReissue command only.
+            public final FilteredTransaction exit;
+            // The signature of the exit's notary, which shows the exited states were consumed by it.
+            public final TransactionSignature exitNotarySignature;
+
+            public Reissue(FilteredTransaction exit, TransactionSignature exitNotarySignature) {
+                this.exit                = exit;
+                this.exitNotarySignature = exitNotarySignature;
+            }
+
+            // The exited state each output replaces, at the same position.
+            public List<StateRef> reissuedFrom() {
+                return exit.getInputs();
+            }
+        }
     }
 
     // A transaction is valid if the verify() function of the contract of all the transaction's input and output states
     // does not throw an exception.
+    //
+    // This runs for every transaction and every backchain resolution, on every node and the notary, so the
+    // command is dispatched by type and the states are checked straight from the transaction's own lists,
+    // without building temporary lists or sets when a transaction holds a single resident.
     @Override
     public void verify(LedgerTransaction tx) {
 
         // We can use the requireSingleCommand function to extract command data from transaction.
         final CommandWithParties<Commands> command = requireSingleCommand(tx.getCommands(), Commands.class);
         final Commands commandData = command.getValue();
-        String commandName = commandData.getClass().getSimpleName();
-
-        if (commandData.equals(new Commands.RegisterInformation())) {
-
-            requireThat(require -> {
-
-                require.using("No inputs should be consumed when issuing an IOU.", tx.getInputStates().size() == 0);
-                require.using( "Only one output state should be created when issuing an IOU.", tx.getOutputStates().size() == 1);
-
-                List<ResidentInformationState> desiredOutputStates = tx.outputsOfType(ResidentInformationState.class);
-                ResidentInformationState outputState = desiredOutputStates.get(0);
-                require.using( "A newly issued RegisterInformation must have a resident Name.", !outputState.getResidentName().equals(""));
-                require.using( "A newly issued RegisterInformation must have a myNumber.", !outputState.getMyNumber().equals(""));
-                require.using( "A newly issued RegisterInformation must have a current address.", !outputState.getCurrentAddress().equals(""));
-
-                final List<PublicKey> requiredSigners = command.getSigners();
-                List<PublicKey> expectedSigners = new ArrayList<>();
-                expectedSigners.add(outputState.currentCity.getOwningKey());
-
-                // Verifies right number of signers are required in the command
-                if ( requiredSigners.size() != expectedSigners.size()) {
-                    throw new IllegalArgumentException(String.format("%s requires exactly %d signers.", commandName, expectedSigners.size()));
-                }
-
-                // Verifies required signers covers all participants in the purchase order
-                if( !requiredSigners.containsAll(expectedSigners) ) {
-                    throw new IllegalArgumentException(String.format("%s requires signatures from all contract participants."));
-                }
-
-                return null;
-            });
-
 
+        if (commandData instanceof Commands.RegisterInformation) {
+            RULES.verifyRegister(tx, command.getSigners());
         }
-        else if (commandData.equals(new Commands.ChangeInformation())) {
-
-            requireThat(require -> {
-
-                require.using("An IOU change transaction should only consume one input state.", tx.getInputStates().size() == 1);
-                require.using("An IOU change transaction should only create one output state.", tx.getOutputStates().size() == 1);
-
-                // Copy of input with new currentCity;
-                ResidentInformationState inputState = tx.inputsOfType(ResidentInformationState.class).get(0);
-                ResidentInformationState outputState = tx.outputsOfType(ResidentInformationState.class).get(0);
-
-                require.using("residentName is same between input state and output state.",
-                        inputState.residentName.equals(outputState.residentName));
-
-                require.using("myNumber is same between input state and output state.",
-                        inputState.myNumber.equals(outputState.myNumber));
-
-                require.using("birthday is same between input state and output state.",
-                        inputState.birthday.equals(outputState.birthday));
-
-                require.using("input state's currentAddress and output state's oldAddress must be equals.",
-                        inputState.currentAddress.equals(outputState.oldAddress));
+        else if (commandData instanceof Commands.ChangeInformation) {
+            RULES.verifyChange(tx, command.getSigners());
+        }
+        else if (commandData instanceof Commands.DeleteInformation) {
+            RULES.verifyDelete(tx, command.getSigners());
+        }
+        else if (commandData instanceof Commands.ExitForReissue) {
+            verifyExitForReissue(tx, command.getSigners(), (Commands.ExitForReissue) commandData);
+        }
+        else if (commandData instanceof Commands.Reissue) {
+            verifyReissue(tx, command.getSigners(), (Commands.Reissue) commandData);
+        }
+        else {
+            throw new IllegalArgumentException("Unrecognised command.");
+        }
+    }
 
-                require.using("input state's currentAddress and output state's currentAddress must change.",
-                        !inputState.currentAddress.equals(outputState.currentAddress));
+    // The field checks of the state; who may sign and how residents are grouped is checked by [ResidentRules].
+    private static final ResidentRules<ResidentInformationState> RULES = new ResidentRules<ResidentInformationState>(ResidentInformationState.class) {
+        @Override
+        Party currentCity(ResidentInformationState state) {
+            return state.currentCity;
+        }
 
-                require.using("The currentCity property must change in a transfer.", !inputState.currentCity.getOwningKey().equals(outputState.currentCity.getOwningKey()));
+        @Override
+        void requireRegistrable(ResidentInformationState residentState) {
+            require("A newly issued RegisterInformation must have a resident Name.", !residentState.getResidentName().equals(""));
+            require("A newly issued RegisterInformation must have a myNumber.", !residentState.getMyNumber().equals(""));
+            require("A newly issued RegisterInformation must have a current address.", !residentState.getCurrentAddress().equals(""));
+        }
 
-                // Compare State key and Signers key for equality.
-                List<PublicKey> listOfPublicKeys = new ArrayList<>();
-                listOfPublicKeys.add(outputState.currentCity.getOwningKey());
-                listOfPublicKeys.add(inputState.currentCity.getOwningKey());
-                Set<PublicKey> setOfPublicKeys = new HashSet<>(listOfPublicKeys);
+        @Override
+        void requireSameResident(ResidentInformationState inputState, ResidentInformationState outputState) {
+            require("residentName is same between input state and output state.",
+                    inputState.residentName.equals(outputState.residentName));
 
-                List<PublicKey> arrayOfSigners = command.getSigners();
-                Set<PublicKey> setOfSigners = new HashSet<>(arrayOfSigners);
-                require.using("The borrower, old city and new city only must sign an IOU change transaction", setOfSigners.equals(setOfPublicKeys) && setOfSigners.size() == 2);
+            require("myNumber is same between input state and output state.",
+                    inputState.myNumber.equals(outputState.myNumber));
 
-                return null;
-            });
+            require("birthday is same between input state and output state.",
+                    inputState.birthday.equals(outputState.birthday));
 
+            require("input state's currentAddress and output state's oldAddress must be equals.",
+                    inputState.currentAddress.equals(outputState.oldAddress));
 
+            require("input state's currentAddress and output state's currentAddress must change.",
+                    !inputState.currentAddress.equals(outputState.currentAddress));
         }
-        else if (commandData.equals(new Commands.DeleteInformation())) {
-
-            requireThat(require -> {
-
-                require.using("No inputs should be consumed when issuing an IOU.", tx.getInputStates().size() == 1);
-                require.using( "Only one output state should be created when issuing an IOU.", tx.getOutputStates().size() == 0);
-
-                ResidentInformationState inputState = tx.inputsOfType(ResidentInformationState.class).get(0);
-
-                final List<PublicKey> requiredSigners = command.getSigners();
-                List<PublicKey> expectedSigners = new ArrayList<>();
-                expectedSigners.add(inputState.currentCity.getOwningKey());
+    };
+
+    // Exiting ends the states like a deletion does, and shows them for the Reissue that follows.
+    private static void verifyExitForReissue(LedgerTransaction tx, List<PublicKey> requiredSigners,
+                                             Commands.ExitForReissue exit) {
+        RULES.verifyDelete(tx, requiredSigners);
+
+        final List<StateAndRef<ContractState>> inputs = tx.getInputs();
+        require("An ExitForReissue must show one exited resident per input.",
+                exit.exited != null && exit.exited.size() == inputs.size());
+        for (int i = 0; i < inputs.size(); i++) {
+            require("An ExitForReissue must show the exited residents as they are.",
+                    sameResident((ResidentInformationState) inputs.get(i).getState().getData(), exit.exited.get(i)));
+        }
+    }
 
-                // Verifies right number of signers are required in the command
-                if ( requiredSigners.size() != expectedSigners.size()) {
-                    throw new IllegalArgumentException(String.format("%s requires exactly %d signers.", commandName, expectedSigners.size()));
-                }
+    // The exit is proved by the notary's signature over it, and the exited residents by its Merkle tree,
+    // so the old chain the reissue cuts does not have to be resolved.
+    private static void verifyReissue(LedgerTransaction tx, List<PublicKey> requiredSigners, Commands.Reissue reissue) {
+        RULES.verifyRegister(tx, requiredSigners);
+
+        final FilteredTransaction exit = reissue.exit;
+        final TransactionSignature signature = reissue.exitNotarySignature;
+        require("A Reissue must carry its exit and the notary's signature over it.", exit != null && signature != null);
+        try {
+            exit.verify();
+            exit.checkAllComponentsVisible(ComponentGroupEnum.INPUTS_GROUP);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Failed requirement: The exit of a Reissue must be complete and unaltered.", e);
+        }
 
-                // Verifies required signers covers all participants in the purchase order
-                if( !requiredSigners.containsAll(expectedSigners) ) {
-                    throw new IllegalArgumentException(String.format("%s requires signatures from all contract participants."));
-                }
+        final Party notary = tx.getNotary();
+        require("A Reissue must be notarised by the notary of its exit.", notary != null && notary.equals(exit.getNotary()));
+        require("The exit of a Reissue must be signed by its notary.",
+                isFulfilledBy(notary.getOwningKey(), signature.getBy()) && isValid(signature, exit));
 
-                return null;
-            });
+        Commands.ExitForReissue exitCommand = null;
+        for (Command<?> command : exit.getCommands()) {
+            if (command.getValue() instanceof Commands.ExitForReissue) {
+                exitCommand = (Commands.ExitForReissue) command.getValue();
+            }
+        }
+        require("The exit of a Reissue must be an ExitForReissue.", exitCommand != null);
+
+        final List<TransactionState<ContractState>> outputs = tx.getOutputs();
+        require("A Reissue must have one output per exited resident.",
+                exit.getInputs().size() == outputs.size() && exitCommand.exited.size() == outputs.size());
+        for (int i = 0; i < outputs.size(); i++) {
+            require("Each reissued resident must be the exited resident at the same position.",
+                    sameResident(exitCommand.exited.get(i), (ResidentInformationState) outputs.get(i).getData()));
+        }
+    }
 
+    private static boolean isValid(TransactionSignature signature, FilteredTransaction exit) {
+        try {
+            return signature.isValid(exit.getId());
+        } catch (Exception e) {
+            return false;
         }
+    }
 
+    private static boolean sameResident(ResidentInformationState a, ResidentInformationState b) {
+        return a.getLinearId().equals(b.getLinearId())
+                && Objects.equals(a.residentName, b.residentName)
+                && Objects.equals(a.myNumber, b.myNumber)
+                && a.currentCity.equals(b.currentCity)
+                && Objects.equals(a.currentAddress, b.currentAddress)
+                && Objects.equals(a.birthday, b.birthday)
+                && Objects.equals(a.oldAddress, b.oldAddress);
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,172 @@
+package com.template.contracts;
+
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.LinearState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.TransactionState;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.LedgerTransaction;
+
+import java.security.PublicKey;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The rules of the RegisterInformation, ChangeInformation and DeleteInformation commands of
+ * [ResidentInformationContract]. The contract supplies the checks of the fields of its state;
+ * who may sign and how residents are grouped is checked here.
+ *
+ * The states are checked straight from the transaction's own lists, without building temporary lists
+ * or sets when a transaction holds a single resident.
+ */
+abstract class ResidentRules<S extends LinearState> {
+
+    private final Class<S> stateClass;
+    private final String statesName;
+
+    ResidentRules(Class<S> stateClass) {
+        this.stateClass = stateClass;
+        this.statesName = stateClass.getSimpleName() + "s";
+    }
+
+    // The city the resident is registered in.
+    abstract Party currentCity(S state);
+
+    // Checks the fields of a newly registered resident.
+    abstract void requireRegistrable(S state);
+
+    // Checks that a moved resident is the same person, with a new address.
+    abstract void requireSameResident(S input, S output);
+
+    void verifyRegister(LedgerTransaction tx, List<PublicKey> requiredSigners) {
+        final List<TransactionState<ContractState>> outputs = tx.getOutputs();
+
+        require("No inputs should be consumed when registering residents.", tx.getInputs().isEmpty());
+        require("At least one output state should be created when registering residents.", !outputs.isEmpty());
+
+        // Several residents of the same city may be registered together under one command.
+        final int size = outputs.size();
+        final Set<UniqueIdentifier> registeredLinearIds = size > 1 ? new HashSet<>(size * 2) : null;
+        PublicKey cityKey = null;
+        for (int i = 0; i < size; i++) {
+            final S residentState = cast("output", outputs.get(i).getData());
+            requireRegistrable(residentState);
+
+            final PublicKey residentCityKey = currentCity(residentState).getOwningKey();
+            if (cityKey == null) {
+                cityKey = residentCityKey;
+            }
+            require("All residents registered together must have the same currentCity.", residentCityKey.equals(cityKey));
+            if (registeredLinearIds != null) {
+                require("A resident must not be registered twice in one transaction.", registeredLinearIds.add(residentState.getLinearId()));
+            }
+        }
+
+        requireOnlySigner("RegisterInformation", requiredSigners, cityKey);
+    }
+
+    void verifyChange(LedgerTransaction tx, List<PublicKey> requiredSigners) {
+        final List<StateAndRef<ContractState>> inputs = tx.getInputs();
+        final List<TransactionState<ContractState>> outputs = tx.getOutputs();
+
+        require("A change transaction should consume at least one input state.", !inputs.isEmpty());
+        require("A change transaction should create one output state per input state.", outputs.size() == inputs.size());
+
+        // Several residents may move between the same two cities together.
+        // Each output is the copy of the input at the same position, with new currentCity.
+        PublicKey oldCityKey = null;
+        PublicKey newCityKey = null;
+        for (int i = 0; i < inputs.size(); i++) {
+            final S inputState = cast("input", inputs.get(i).getState().getData());
+            final S outputState = cast("output", outputs.get(i).getData());
+
+            require("linearId is same between input state and output state.",
+                    inputState.getLinearId().equals(outputState.getLinearId()));
+            requireSameResident(inputState, outputState);
+
+            final PublicKey inputCityKey = currentCity(inputState).getOwningKey();
+            final PublicKey outputCityKey = currentCity(outputState).getOwningKey();
+            require("The currentCity property must change in a transfer.", !inputCityKey.equals(outputCityKey));
+
+            if (oldCityKey == null) {
+                oldCityKey = inputCityKey;
+                newCityKey = outputCityKey;
+            }
+            require("All input states must have the same currentCity.", inputCityKey.equals(oldCityKey));
+            require("All output states must have the same currentCity.", outputCityKey.equals(newCityKey));
+        }
+
+        // Compare State key and Signers key for equality: every signer is the old or the new city, and both sign.
+        boolean oldCitySigns = false;
+        boolean newCitySigns = false;
+        boolean onlyCitiesSign = true;
+        for (int i = 0; i < requiredSigners.size(); i++) {
+            final PublicKey signer = requiredSigners.get(i);
+            if (signer.equals(oldCityKey)) {
+                oldCitySigns = true;
+            } else if (signer.equals(newCityKey)) {
+                newCitySigns = true;
+            } else {
+                onlyCitiesSign = false;
+            }
+        }
+        require("The old city and new city only must sign a change transaction",
+                oldCitySigns && newCitySigns && onlyCitiesSign);
+    }
+
+    void verifyDelete(LedgerTransaction tx, List<PublicKey> requiredSigners) {
+        final List<StateAndRef<ContractState>> inputs = tx.getInputs();
+
+        require("At least one input should be consumed when deleting residents.", !inputs.isEmpty());
+        require("No output state should be created when deleting residents.", tx.getOutputs().isEmpty());
+
+        // Several residents of the same city may be deleted together under one command.
+        final int size = inputs.size();
+        final Set<UniqueIdentifier> deletedLinearIds = size > 1 ? new HashSet<>(size * 2) : null;
+        PublicKey cityKey = null;
+        for (int i = 0; i < size; i++) {
+            final S residentState = cast("input", inputs.get(i).getState().getData());
+
+            final PublicKey residentCityKey = currentCity(residentState).getOwningKey();
+            if (cityKey == null) {
+                cityKey = residentCityKey;
+            }
+            require("All residents deleted together must have the same currentCity.", residentCityKey.equals(cityKey));
+            if (deletedLinearIds != null) {
+                require("A resident must not be deleted twice in one transaction.", deletedLinearIds.add(residentState.getLinearId()));
+            }
+        }
+
+        requireOnlySigner("DeleteInformation", requiredSigners, cityKey);
+    }
+
+    private S cast(String kind, ContractState state) {
+        if (!stateClass.isInstance(state)) {
+            throw new IllegalArgumentException("Failed requirement: All " + kind + " states must be " + statesName + ".");
+        }
+        return stateClass.cast(state);
+    }
+
+    // Verifies that the command is signed by the currentCity only.
+    static void requireOnlySigner(String commandName, List<PublicKey> requiredSigners, PublicKey expectedSigner) {
+
+        // Verifies right number of signers are required in the command
+        if (requiredSigners.size() != 1) {
+            throw new IllegalArgumentException(String.format("%s requires exactly %d signers.", commandName, 1));
+        }
+
+        // Verifies required signers covers all participants in the purchase order
+        if (!requiredSigners.get(0).equals(expectedSigner)) {
+            throw new IllegalArgumentException(String.format("%s requires signatures from all contract participants.", commandName));
+        }
+    }
+
+    // Same failure message as requireThat, without allocating a lambda and a Requirements per check.
+    static void require(String message, boolean expr) {
+        if (!expr) {
+            throw new IllegalArgumentException("Failed requirement: " + message);
+        }
+    }
+}
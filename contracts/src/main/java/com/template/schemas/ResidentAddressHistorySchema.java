@@ -0,0 +1,6 @@
+package com.template.schemas;
+
+/**
+ * The family of schemas for the address history of residents.
+ */
+public class ResidentAddressHistorySchema { }
@@ -0,0 +1,133 @@
+package com.template.schemas;
+
+import net.corda.core.schemas.MappedSchema;
+import net.corda.core.schemas.PersistentState;
+import net.corda.core.schemas.PersistentStateRef;
+import org.jetbrains.annotations.Nullable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * The address history of residents: one row per residence, from the transaction that moved the resident
+ * to an address until the transaction that moved or deleted it.
+ *
+ * A row is keyed by the state that began the residence. The state that currently holds it is kept apart,
+ * as a notary change or a contract upgrade replaces the state without ending the residence.
+ * Rows are indexed by linearId, so a resident's whole history is one indexed query.
+ *
+ * A move links the two residences it ends and begins by their cities, and a reissue marks the residence it takes
+ * over, so the transaction that began or ended a state's residence can be told from the row alone.
+ *
+ * The high-water mark keeps how far the node's recorded transactions have been indexed, so the transactions
+ * recorded while the history was not running are indexed when the node starts.
+ */
+public class ResidentAddressHistorySchemaV1 extends MappedSchema {
+    public ResidentAddressHistorySchemaV1() {
+        super(ResidentAddressHistorySchema.class, 1, Arrays.asList(PersistentResidence.class, PersistentIndexMark.class));
+    }
+
+    @Nullable
+    @Override
+    public String getMigrationResource() {
+        return "resident-address-history.changelog-master";
+    }
+
+    @Entity
+    @Table(name = "resident_address_history",
+            indexes = {
+                    @Index(name = "address_history_linear_id_idx", columnList = "linear_id, from_time"),
+                    @Index(name = "address_history_state_ref_idx", columnList = "state_transaction_id, state_output_index")
+            })
+    public static class PersistentResidence extends PersistentState {
+        @Column(name = "linear_id") private String linearId;
+        @Column(name = "city") private String city;
+        @Column(name = "address") private String address;
+        @Column(name = "from_time") private Instant fromTime;
+        @Column(name = "to_time") private Instant toTime;
+        @Column(name = "to_transaction_id") private String toTransactionId;
+        @Column(name = "state_transaction_id") private String stateTransactionId;
+        @Column(name = "state_output_index") private Integer stateOutputIndex;
+        @Column(name = "from_city") private String fromCity;
+        @Column(name = "to_city") private String toCity;
+        @Column(name = "reissued_by") private String reissuedBy;
+
+        public PersistentResidence(PersistentStateRef startedBy, String linearId, String city, String address,
+                                   Instant fromTime) {
+            super(startedBy);
+            this.linearId           = linearId;
+            this.city               = city;
+            this.address            = address;
+            this.fromTime           = fromTime;
+            this.stateTransactionId = startedBy == null ? null : startedBy.getTxId();
+            this.stateOutputIndex   = startedBy == null ? null : startedBy.getIndex();
+        }
+
+        // Default constructor required by hibernate.
+        public PersistentResidence() {
+            this(null, null, null, null, null);
+        }
+
+        public String getLinearId() { return linearId; }
+
+        public String getCity() { return city; }
+
+        public String getAddress() { return address; }
+
+        public Instant getFromTime() { return fromTime; }
+
+        // Null while the resident still lives at the address.
+        public Instant getToTime() { return toTime; }
+
+        // The transaction that ended the residence, or that exited its state for a reissue while it goes on.
+        public String getToTransactionId() { return toTransactionId; }
+
+        public String getStateTransactionId() { return stateTransactionId; }
+
+        public Integer getStateOutputIndex() { return stateOutputIndex; }
+
+        // The city the resident moved from, null if the residence began with a registration.
+        public String getFromCity() { return fromCity; }
+
+        public void setFromCity(String fromCity) { this.fromCity = fromCity; }
+
+        // The city the resident moved to, null unless the residence ended with a move.
+        public String getToCity() { return toCity; }
+
+        public void setToCity(String toCity) { this.toCity = toCity; }
+
+        // The Reissue that last took the residence over, or began it.
+        public String getReissuedBy() { return reissuedBy; }
+
+        public void setReissuedBy(String reissuedBy) { this.reissuedBy = reissuedBy; }
+    }
+
+    @Entity
+    @Table(name = "resident_address_history_mark")
+    public static class PersistentIndexMark {
+        @Id @Column(name = "name") private String name;
+        // Every transaction the node recorded before this time has been indexed.
+        @Column(name = "indexed_until") private Instant indexedUntil;
+
+        public PersistentIndexMark(String name, Instant indexedUntil) {
+            this.name         = name;
+            this.indexedUntil = indexedUntil;
+        }
+
+        // Default constructor required by hibernate.
+        public PersistentIndexMark() {
+            this(null, null);
+        }
+
+        public String getName() { return name; }
+
+        public Instant getIndexedUntil() { return indexedUntil; }
+
+        public void setIndexedUntil(Instant indexedUntil) { this.indexedUntil = indexedUntil; }
+    }
+}
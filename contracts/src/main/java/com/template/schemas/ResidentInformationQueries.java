@@ -0,0 +1,53 @@
+package com.template.schemas;
+
+import com.template.schemas.ResidentInformationSchemaV1.PersistentResidentInformation;
+import net.corda.core.identity.Party;
+import net.corda.core.node.services.vault.Builder;
+import net.corda.core.node.services.vault.CriteriaExpression;
+import net.corda.core.node.services.vault.FieldInfo;
+import net.corda.core.node.services.vault.QueryCriteria;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.getField;
+
+/**
+ * Query criteria helpers on the indexed columns of [ResidentInformationSchemaV1].
+ * The criteria only match unconsumed states, and can be combined with and() / or().
+ *
+ * e.g. getVaultService().queryBy(ResidentInformationState.class, ResidentInformationQueries.byMyNumber("123456789012"))
+ */
+public class ResidentInformationQueries {
+
+    private ResidentInformationQueries() { }
+
+    public static QueryCriteria byMyNumber(String myNumber) {
+        return equalTo("myNumber", myNumber);
+    }
+
+    public static QueryCriteria byResidentName(String residentName) {
+        return equalTo("residentName", residentName);
+    }
+
+    public static QueryCriteria byCurrentAddress(String currentAddress) {
+        return equalTo("currentAddress", currentAddress);
+    }
+
+    public static QueryCriteria byBirthday(String birthday) {
+        return equalTo("birthday", birthday);
+    }
+
+    public static QueryCriteria byCurrentCity(Party currentCity) {
+        return equalTo("currentCity", currentCity.getName().toString());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static QueryCriteria equalTo(String fieldName, String value) {
+        FieldInfo field;
+        try {
+            field = getField(fieldName, PersistentResidentInformation.class);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Unknown column of PersistentResidentInformation: " + fieldName, e);
+        }
+        CriteriaExpression expression = Builder.equal(field, value);
+        return new QueryCriteria.VaultCustomQueryCriteria(expression);
+    }
+}
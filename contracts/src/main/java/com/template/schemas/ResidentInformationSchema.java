@@ -0,0 +1,6 @@
+package com.template.schemas;
+
+/**
+ * The family of schemas for [ResidentInformationState].
+ */
+public class ResidentInformationSchema { }
@@ -0,0 +1,78 @@
+package com.template.schemas;
+
+import net.corda.core.schemas.MappedSchema;
+import net.corda.core.schemas.PersistentState;
+import org.jetbrains.annotations.Nullable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.util.Collections;
+
+/**
+ * A [ResidentInformationState] schema.
+ * Every column that residents are looked up by is indexed, so a lookup is one indexed SQL query
+ * instead of a scan over every unconsumed state in the vault.
+ */
+public class ResidentInformationSchemaV1 extends MappedSchema {
+    public ResidentInformationSchemaV1() {
+        super(ResidentInformationSchema.class, 1, Collections.singletonList(PersistentResidentInformation.class));
+    }
+
+    @Nullable
+    @Override
+    public String getMigrationResource() {
+        return "resident-information.changelog-master";
+    }
+
+    @Entity
+    @Table(name = "resident_information_states",
+            indexes = {
+                    @Index(name = "resident_my_number_idx", columnList = "my_number"),
+                    @Index(name = "resident_name_idx", columnList = "resident_name"),
+                    @Index(name = "resident_current_address_idx", columnList = "current_address"),
+                    @Index(name = "resident_birthday_idx", columnList = "birthday"),
+                    @Index(name = "resident_current_city_idx", columnList = "current_city"),
+                    @Index(name = "resident_linear_id_idx", columnList = "linear_id")
+            })
+    public static class PersistentResidentInformation extends PersistentState {
+        @Column(name = "resident_name") private final String residentName;
+        @Column(name = "my_number") private final String myNumber;
+        @Column(name = "current_city") private final String currentCity;
+        @Column(name = "current_address") private final String currentAddress;
+        @Column(name = "birthday") private final String birthday;
+        @Column(name = "old_address") private final String oldAddress;
+        @Column(name = "linear_id") private final String linearId;
+
+        public PersistentResidentInformation(String residentName, String myNumber, String currentCity, String currentAddress,
+                                             String birthday, String oldAddress, String linearId) {
+            this.residentName   = residentName;
+            this.myNumber       = myNumber;
+            this.currentCity    = currentCity;
+            this.currentAddress = currentAddress;
+            this.birthday       = birthday;
+            this.oldAddress     = oldAddress;
+            this.linearId       = linearId;
+        }
+
+        // Default constructor required by hibernate.
+        public PersistentResidentInformation() {
+            this(null, null, null, null, null, null, null);
+        }
+
+        public String getResidentName() { return residentName; }
+
+        public String getMyNumber() { return myNumber; }
+
+        public String getCurrentCity() { return currentCity; }
+
+        public String getCurrentAddress() { return currentAddress; }
+
+        public String getBirthday() { return birthday; }
+
+        public String getOldAddress() { return oldAddress; }
+
+        public String getLinearId() { return linearId; }
+    }
+}
@@ -1,23 +1,28 @@
 package com.template.states;
 
 import com.template.contracts.ResidentInformationContract;
+import com.template.schemas.ResidentInformationSchemaV1;
 import net.corda.core.contracts.BelongsToContract;
 import net.corda.core.contracts.ContractState;
 import net.corda.core.contracts.LinearState;
 import net.corda.core.contracts.UniqueIdentifier;
 import net.corda.core.identity.AbstractParty;
 import net.corda.core.identity.Party;
+import net.corda.core.schemas.MappedSchema;
+import net.corda.core.schemas.PersistentState;
+import net.corda.core.schemas.QueryableState;
 import net.corda.core.serialization.ConstructorForDeserialization;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 // *********
 // * State *
 // *********
 @BelongsToContract(ResidentInformationContract.class)
-public class ResidentInformationState implements ContractState,LinearState  {
+public class ResidentInformationState implements ContractState,LinearState,QueryableState  {
 
     public final String     residentName;
     public final String     myNumber;
@@ -67,11 +72,36 @@ public class ResidentInformationState implements ContractState,LinearState  {
         return Arrays.asList(currentCity);
     }
 
+    @NotNull
+    @Override
+    public PersistentState generateMappedObject(@NotNull MappedSchema schema) {
+        if (schema instanceof ResidentInformationSchemaV1) {
+            return new ResidentInformationSchemaV1.PersistentResidentInformation(
+                    residentName,
+                    myNumber,
+                    currentCity.getName().toString(),
+                    currentAddress,
+                    birthday,
+                    oldAddress,
+                    linearId.getId().toString()
+            );
+        } else {
+            throw new IllegalArgumentException("Unrecognised schema " + schema);
+        }
+    }
+
+    @NotNull
+    @Override
+    public Iterable<MappedSchema> supportedSchemas() {
+        return Collections.singletonList(new ResidentInformationSchemaV1());
+    }
+
     /* withNewCurrentCity
      * change currentcity and Address.
+     * The linearId is kept, so the resident can be followed across cities.
      */
     public ResidentInformationState withNewCurrentCity(Party newCurrentCity,String newCurrentAddress) {
-        return new ResidentInformationState(residentName, myNumber,newCurrentCity, newCurrentAddress,birthday, currentAddress);
+        return new ResidentInformationState(residentName, myNumber,newCurrentCity, newCurrentAddress,birthday, currentAddress, linearId);
     }
 
 }
\ No newline at end of file
@@ -169,4 +169,56 @@ public class ChangeInformationTest {
         });
     }
 
+    @Test
+    public void mustHandleManyResidentsBetweenTwoCities() {
+
+        ResidentInformationState residentA =
+                new ResidentInformationState(
+                        "Yamada Taro",
+                        "123456789012",
+                        BCity.getParty(),
+                        "BCity YYY-ZZZ",
+                        "1990-02-10",
+                        "ACity XXX-YYY"
+                );
+
+        ResidentInformationState residentB =
+                new ResidentInformationState(
+                        "Yamada Hanako",
+                        "123456789013",
+                        BCity.getParty(),
+                        "BCity YYY-ZZZ",
+                        "1992-05-01",
+                        null
+                );
+
+        ledger(ledgerServices, l -> {
+            l.transaction(tx -> {
+                tx.input(ResidentInformationContract.IOU_CONTRACT_ID, residentA);
+                tx.input(ResidentInformationContract.IOU_CONTRACT_ID, residentB);
+                tx.output(ResidentInformationContract.IOU_CONTRACT_ID, residentA.withNewCurrentCity(XCity.getParty(),"XCity 000-111"));
+                tx.output(ResidentInformationContract.IOU_CONTRACT_ID, residentB.withNewCurrentCity(YCity.getParty(),"YCity 000-111")); // Different new city fails.
+                tx.command(Arrays.asList(XCity.getPublicKey(), YCity.getPublicKey(), BCity.getPublicKey()), new ResidentInformationContract.Commands.ChangeInformation());
+                return tx.fails();
+            });
+            l.transaction(tx -> {
+                tx.input(ResidentInformationContract.IOU_CONTRACT_ID, residentA);
+                tx.input(ResidentInformationContract.IOU_CONTRACT_ID, residentB);
+                tx.output(ResidentInformationContract.IOU_CONTRACT_ID, residentB.withNewCurrentCity(XCity.getParty(),"XCity 000-222")); // Wrong pairing fails.
+                tx.output(ResidentInformationContract.IOU_CONTRACT_ID, residentA.withNewCurrentCity(XCity.getParty(),"XCity 000-111"));
+                tx.command(Arrays.asList(XCity.getPublicKey(), BCity.getPublicKey()), new ResidentInformationContract.Commands.ChangeInformation());
+                return tx.fails();
+            });
+            l.transaction(tx -> {
+                tx.input(ResidentInformationContract.IOU_CONTRACT_ID, residentA);
+                tx.input(ResidentInformationContract.IOU_CONTRACT_ID, residentB);
+                tx.output(ResidentInformationContract.IOU_CONTRACT_ID, residentA.withNewCurrentCity(XCity.getParty(),"XCity 000-111"));
+                tx.output(ResidentInformationContract.IOU_CONTRACT_ID, residentB.withNewCurrentCity(XCity.getParty(),"XCity 000-222"));
+                tx.command(Arrays.asList(XCity.getPublicKey(), BCity.getPublicKey()), new ResidentInformationContract.Commands.ChangeInformation()); // Correct type.
+                return tx.verifies();
+            });
+            return null;
+        });
+    }
+
 }
\ No newline at end of file
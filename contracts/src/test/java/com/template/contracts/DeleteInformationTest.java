@@ -99,10 +99,10 @@ public class DeleteInformationTest {
 
     /**
      * Task 3.
-     * Make sure that only one input is allowed in one Transaction.
+     * Make sure that the same resident cannot be deleted twice in one Transaction.
      */
     @Test
-    public void issueTransactionMustHaveOneInput() {
+    public void issueTransactionMustNotDeleteSameResidentTwice() {
 
         ResidentInformationState iou =
                 new ResidentInformationState(
@@ -116,7 +116,7 @@ public class DeleteInformationTest {
 
         ledger(ledgerServices, l -> {
             l.transaction(tx -> {
-                tx.input(ResidentInformationContract.IOU_CONTRACT_ID, iou); // Two outputs fails.
+                tx.input(ResidentInformationContract.IOU_CONTRACT_ID, iou); // Same resident twice fails.
                 tx.input(ResidentInformationContract.IOU_CONTRACT_ID, iou);
                 tx.command(BCity.getPublicKey(), new ResidentInformationContract.Commands.DeleteInformation()); // Wrong type.
                 return tx.fails();
@@ -130,6 +130,61 @@ public class DeleteInformationTest {
         });
     }
 
+    /**
+     * Task 3-2.
+     * Make sure that several residents of the same currentCity can be deleted in one Transaction,
+     * and that residents of different cities cannot.
+     */
+    @Test
+    public void issueTransactionCanHaveManyInputsOfSameCity() {
+
+        ResidentInformationState residentA =
+                new ResidentInformationState(
+                        "Yamada Taro",
+                        "123456789012",
+                        BCity.getParty(),
+                        "BCity YYY-ZZZ",
+                        "1990-02-10",
+                        "ACity XXX-YYY"
+                );
+
+        ResidentInformationState residentB =
+                new ResidentInformationState(
+                        "Yamada Hanako",
+                        "123456789013",
+                        BCity.getParty(),
+                        "BCity YYY-ZZZ",
+                        "1992-05-01",
+                        null
+                );
+
+        ResidentInformationState residentX =
+                new ResidentInformationState(
+                        "Suzuki Jiro",
+                        "123456789014",
+                        XCity.getParty(),
+                        "XCity aaa-bbb",
+                        "1985-11-23",
+                        null
+                );
+
+        ledger(ledgerServices, l -> {
+            l.transaction(tx -> {
+                tx.input(ResidentInformationContract.IOU_CONTRACT_ID, residentA);
+                tx.input(ResidentInformationContract.IOU_CONTRACT_ID, residentX); // Different currentCity fails.
+                tx.command(Arrays.asList(BCity.getPublicKey(), XCity.getPublicKey()), new ResidentInformationContract.Commands.DeleteInformation());
+                return tx.fails();
+            });
+            l.transaction(tx -> {
+                tx.input(ResidentInformationContract.IOU_CONTRACT_ID, residentA);
+                tx.input(ResidentInformationContract.IOU_CONTRACT_ID, residentB);
+                tx.command(BCity.getPublicKey(), new ResidentInformationContract.Commands.DeleteInformation()); // Correct type.
+                return tx.verifies();
+            });
+            return null;
+        });
+    }
+
     /**
      * Task 4.
      * Make sure that only the signature of currentCity is valid.
@@ -100,10 +100,10 @@ public class RegisterInformationTest {
 
     /**
      * Task 3.
-     * Make sure that only one output is allowed in one Transaction.
+     * Make sure that the same resident cannot be registered twice in one Transaction.
      */
     @Test
-    public void issueTransactionMustHaveOneOutput() {
+    public void issueTransactionMustNotRegisterSameResidentTwice() {
 
        ResidentInformationState iou =
                new ResidentInformationState(
@@ -117,7 +117,7 @@ public class RegisterInformationTest {
 
        ledger(ledgerServices, l -> {
            l.transaction(tx -> {
-               tx.output(ResidentInformationContract.IOU_CONTRACT_ID, iou); // Two outputs fails.
+               tx.output(ResidentInformationContract.IOU_CONTRACT_ID, iou); // Same resident twice fails.
                tx.output(ResidentInformationContract.IOU_CONTRACT_ID, iou);
                tx.command(BCity.getPublicKey(), new ResidentInformationContract.Commands.RegisterInformation()); // Wrong type.
                return tx.fails();
@@ -131,6 +131,61 @@ public class RegisterInformationTest {
        });
     }
 
+    /**
+     * Task 3-2.
+     * Make sure that several residents of the same currentCity can be registered in one Transaction,
+     * and that residents of different cities cannot.
+     */
+    @Test
+    public void issueTransactionCanHaveManyOutputsOfSameCity() {
+
+        ResidentInformationState residentA =
+                new ResidentInformationState(
+                        "Yamada Taro",
+                        "123456789012",
+                        BCity.getParty(),
+                        "BCity YYY-ZZZ",
+                        "1990-02-10",
+                        null
+                );
+
+        ResidentInformationState residentB =
+                new ResidentInformationState(
+                        "Yamada Hanako",
+                        "123456789013",
+                        BCity.getParty(),
+                        "BCity YYY-ZZZ",
+                        "1992-05-01",
+                        null
+                );
+
+        ResidentInformationState residentX =
+                new ResidentInformationState(
+                        "Suzuki Jiro",
+                        "123456789014",
+                        XCity.getParty(),
+                        "XCity aaa-bbb",
+                        "1985-11-23",
+                        null
+                );
+
+        ledger(ledgerServices, l -> {
+            l.transaction(tx -> {
+                tx.output(ResidentInformationContract.IOU_CONTRACT_ID, residentA);
+                tx.output(ResidentInformationContract.IOU_CONTRACT_ID, residentX); // Different currentCity fails.
+                tx.command(Arrays.asList(BCity.getPublicKey(), XCity.getPublicKey()), new ResidentInformationContract.Commands.RegisterInformation());
+                return tx.fails();
+            });
+            l.transaction(tx -> {
+                tx.output(ResidentInformationContract.IOU_CONTRACT_ID, residentA);
+                tx.output(ResidentInformationContract.IOU_CONTRACT_ID, residentB);
+                tx.command(BCity.getPublicKey(), new ResidentInformationContract.Commands.RegisterInformation()); // Correct type.
+                return tx.verifies();
+            });
+            return null;
+        });
+    }
+
     /**
      * Task 4.
      * Make sure to return an error if the residentName is null.
@@ -0,0 +1,173 @@
+package com.template.contracts;
+
+import com.template.states.ResidentInformationState;
+import static com.template.TestUtils.*;
+import net.corda.core.contracts.Command;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.crypto.Crypto;
+import net.corda.core.crypto.SignableData;
+import net.corda.core.crypto.SignatureMetadata;
+import net.corda.core.crypto.TransactionSignature;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.FilteredTransaction;
+import net.corda.core.transactions.WireTransaction;
+import net.corda.testing.core.TestIdentity;
+import net.corda.testing.node.MockServices;
+import static net.corda.testing.node.NodeTestUtils.ledger;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+
+public class ReissueInformationTest {
+
+    static private final MockServices ledgerServices = new MockServices(
+            Arrays.asList("com.template", "net.corda.finance.contracts")
+    );
+
+    static private final TestIdentity Notary = new TestIdentity(new CordaX500Name("Notary", "TestCity", "US"));
+
+    private final ResidentInformationState iou =
+            new ResidentInformationState(
+                    "Yamada Taro",
+                    "123456789012",
+                    BCity.getParty(),
+                    "BCity YYY-ZZZ",
+                    "1990-02-10",
+                    "ACity XXX-YYY"
+            );
+
+    private static ResidentInformationContract.Commands.ExitForReissue exitOf(ResidentInformationState... residents) {
+        return new ResidentInformationContract.Commands.ExitForReissue(Arrays.asList(residents));
+    }
+
+    // The exit as ReissueResidentFlow reveals it: its inputs, its notary and its ExitForReissue command.
+    private static FilteredTransaction proof(WireTransaction exit) {
+        return exit.buildFilteredTransaction(component ->
+                component instanceof StateRef || component instanceof Party
+                        || (component instanceof Command
+                            && ((Command<?>) component).getValue() instanceof ResidentInformationContract.Commands.ExitForReissue));
+    }
+
+    private static TransactionSignature sign(TestIdentity signer, WireTransaction exit) {
+        return Crypto.doSign(signer.getKeyPair(), new SignableData(exit.getId(),
+                new SignatureMetadata(4, Crypto.findSignatureScheme(signer.getPublicKey()).getSchemeNumberID())));
+    }
+
+    private static ResidentInformationContract.Commands.Reissue reissueOf(WireTransaction exit) {
+        return new ResidentInformationContract.Commands.Reissue(proof(exit), sign(Notary, exit));
+    }
+
+    /**
+     * Task 1.
+     * Make sure the "ExitForReissue" command ends a resident under the same rules as "DeleteInformation",
+     * and shows the exited residents as they are.
+     */
+    @Test
+    public void exitForReissueFollowsDeleteRules() {
+
+        ledger(ledgerServices, Notary.getParty(), l -> {
+            l.transaction(tx -> {
+                tx.input(ResidentInformationContract.IOU_CONTRACT_ID, iou);
+                tx.output(ResidentInformationContract.IOU_CONTRACT_ID, iou); // Outputs fail.
+                tx.command(BCity.getPublicKey(), exitOf(iou));
+                return tx.fails();
+            });
+            l.transaction(tx -> {
+                tx.input(ResidentInformationContract.IOU_CONTRACT_ID, iou);
+                tx.command(ACity.getPublicKey(), exitOf(iou)); // Wrong signer.
+                return tx.fails();
+            });
+            l.transaction(tx -> {
+                tx.input(ResidentInformationContract.IOU_CONTRACT_ID, iou);
+                tx.command(BCity.getPublicKey(), exitOf(new ResidentInformationState(
+                        "Yamada Taro", "123456789012", BCity.getParty(), "BCity ZZZ-ZZZ", "1990-02-10", "ACity XXX-YYY"))); // Not the input.
+                return tx.fails();
+            });
+            l.transaction(tx -> {
+                tx.input(ResidentInformationContract.IOU_CONTRACT_ID, iou);
+                tx.command(BCity.getPublicKey(), exitOf(iou));
+                return tx.verifies();
+            });
+            return null;
+        });
+    }
+
+    /**
+     * Task 2.
+     * Make sure "Reissue" registers residents under the same rules as "RegisterInformation".
+     */
+    @Test
+    public void reissueFollowsRegisterRules() {
+
+        ledger(ledgerServices, Notary.getParty(), l -> {
+            WireTransaction exit = l.transaction(tx -> {
+                tx.input(ResidentInformationContract.IOU_CONTRACT_ID, iou);
+                tx.command(BCity.getPublicKey(), exitOf(iou));
+                return tx.verifies();
+            });
+            l.transaction(tx -> {
+                tx.input(ResidentInformationContract.IOU_CONTRACT_ID, iou); // Inputs fail.
+                tx.output(ResidentInformationContract.IOU_CONTRACT_ID, iou);
+                tx.command(BCity.getPublicKey(), reissueOf(exit));
+                return tx.fails();
+            });
+            l.transaction(tx -> {
+                tx.output(ResidentInformationContract.IOU_CONTRACT_ID, iou);
+                tx.command(ACity.getPublicKey(), reissueOf(exit)); // Wrong signer.
+                return tx.fails();
+            });
+            l.transaction(tx -> {
+                tx.output(ResidentInformationContract.IOU_CONTRACT_ID, iou);
+                tx.command(BCity.getPublicKey(), reissueOf(exit));
+                return tx.verifies();
+            });
+            return null;
+        });
+    }
+
+    /**
+     * Task 3.
+     * Make sure "Reissue" proves its exit: the exit must be signed by the notary, reveal its ExitForReissue
+     * command, and have exited the same residents, with the same linearIds, one per output.
+     */
+    @Test
+    public void reissueMustProveItsExit() {
+
+        ledger(ledgerServices, Notary.getParty(), l -> {
+            WireTransaction exit = l.transaction(tx -> {
+                tx.input(ResidentInformationContract.IOU_CONTRACT_ID, iou);
+                tx.command(BCity.getPublicKey(), exitOf(iou));
+                return tx.verifies();
+            });
+            l.transaction(tx -> {
+                tx.output(ResidentInformationContract.IOU_CONTRACT_ID, iou);
+                tx.command(BCity.getPublicKey(), new ResidentInformationContract.Commands.Reissue(
+                        proof(exit), sign(BCity, exit))); // Not signed by the notary.
+                return tx.fails();
+            });
+            l.transaction(tx -> {
+                tx.output(ResidentInformationContract.IOU_CONTRACT_ID, iou);
+                tx.command(BCity.getPublicKey(), new ResidentInformationContract.Commands.Reissue(
+                        exit.buildFilteredTransaction(component -> component instanceof StateRef || component instanceof Party),
+                        sign(Notary, exit))); // The ExitForReissue command is hidden.
+                return tx.fails();
+            });
+            l.transaction(tx -> {
+                tx.output(ResidentInformationContract.IOU_CONTRACT_ID, new ResidentInformationState(
+                        "Yamada Taro", "123456789012", BCity.getParty(), "BCity YYY-ZZZ", "1990-02-10", "ACity XXX-YYY")); // Another linearId.
+                tx.command(BCity.getPublicKey(), reissueOf(exit));
+                return tx.fails();
+            });
+            l.transaction(tx -> {
+                tx.output(ResidentInformationContract.IOU_CONTRACT_ID, iou);
+                tx.output(ResidentInformationContract.IOU_CONTRACT_ID, new ResidentInformationState(
+                        "Yamada Hanako", "123456789013", BCity.getParty(), "BCity YYY-ZZZ", "1992-05-01", null));
+                tx.command(BCity.getPublicKey(), reissueOf(exit)); // Two outputs for one exited resident.
+                return tx.fails();
+            });
+            return null;
+        });
+    }
+}
@@ -1,5 +1,6 @@
 package com.template.states;
 
+import com.template.schemas.ResidentInformationSchemaV1;
 import net.corda.core.identity.Party;
 import org.junit.Test;
 import java.lang.reflect.Field;
@@ -147,6 +148,34 @@ public class ResidentInformationStateTests {
 
        assertEquals(XCity.getParty(), residentA.withNewCurrentCity(XCity.getParty(),"XCity aaa-bbb").getCurrentCity());
        assertEquals("XCity aaa-bbb", residentA.withNewCurrentCity(XCity.getParty(),"XCity aaa-bbb").getCurrentAddress());
+       assertEquals(residentA.getLinearId(), residentA.withNewCurrentCity(XCity.getParty(),"XCity aaa-bbb").getLinearId());
+    }
+
+    /**
+     * Task 12.
+     * Make sure that the state is mapped to the indexed columns of {@link ResidentInformationSchemaV1}.
+     */
+    @Test
+    public void generatesPersistentResidentInformation() {
+        ResidentInformationState residentA =
+                new ResidentInformationState(
+                        "Yamada Taro",
+                        "123456789012",
+                        BCity.getParty(),
+                        "BCity YYY-ZZZ",
+                        "1990-02-10",
+                        "ACity XXX-YYY"
+                );
+
+        ResidentInformationSchemaV1.PersistentResidentInformation persistent =
+                (ResidentInformationSchemaV1.PersistentResidentInformation) residentA.generateMappedObject(new ResidentInformationSchemaV1());
+
+        assertEquals("Yamada Taro", persistent.getResidentName());
+        assertEquals("123456789012", persistent.getMyNumber());
+        assertEquals(BCity.getParty().getName().toString(), persistent.getCurrentCity());
+        assertEquals("BCity YYY-ZZZ", persistent.getCurrentAddress());
+        assertEquals("1990-02-10", persistent.getBirthday());
+        assertEquals(residentA.getLinearId().getId().toString(), persistent.getLinearId());
     }
 
 }
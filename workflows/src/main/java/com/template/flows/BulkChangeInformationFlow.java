@@ -0,0 +1,344 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.sun.istack.NotNull;
+import com.template.contracts.ResidentInformationContract;
+import com.template.contracts.ResidentInformationContract.Commands.ChangeInformation;
+import com.template.services.BackchainPolicy;
+import com.template.services.NotarySelector;
+import com.template.states.ResidentInformationState;
+import net.corda.core.contracts.Command;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.contracts.TransactionState;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.contracts.TimeWindow;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.node.services.vault.Sort;
+import net.corda.core.node.services.vault.SortAttribute;
+import net.corda.core.serialization.CordaSerializable;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.ProgressTracker;
+
+import java.security.PublicKey;
+import java.util.*;
+
+import static net.corda.core.contracts.ContractsDSL.requireThat;
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+// ******************
+// * Initiator flow *
+// ******************
+public class BulkChangeInformationFlow {
+
+    // Number of residents moved in one transaction when no chunk size is given.
+    public static final int DEFAULT_CHUNK_SIZE = 50;
+
+    // Number of states read from the vault per page when resolving the linearIds.
+    static final int QUERY_PAGE_SIZE = 500;
+
+    // The error of a resident that another flow on this node holds the soft lock of.
+    static final String BEING_CHANGED = "The resident is being changed by another flow.";
+
+    // Pages of a query are only stable in a fixed order.
+    static final Sort STATE_REF_ORDER = new Sort(Arrays.asList(
+            new Sort.SortColumn(new SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF_TXN_ID), Sort.Direction.ASC),
+            new Sort.SortColumn(new SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF_INDEX), Sort.Direction.ASC)));
+
+    /**
+     * One resident to move, and the address in the new city.
+     */
+    @CordaSerializable
+    public static class Relocation {
+        public final UniqueIdentifier linearId;
+        public final String newAddress;
+
+        public Relocation(UniqueIdentifier linearId, String newAddress) {
+            this.linearId   = linearId;
+            this.newAddress = newAddress;
+        }
+    }
+
+    /**
+     * The outcome of one relocation, in the same position as the relocation in the request.
+     * - moved: txId is set.
+     * - otherwise: error describes why the resident was not moved.
+     */
+    @CordaSerializable
+    public static class Outcome {
+        public final UniqueIdentifier linearId;
+        public final SecureHash txId;
+        public final String error;
+
+        public Outcome(UniqueIdentifier linearId, SecureHash txId, String error) {
+            this.linearId = linearId;
+            this.txId     = txId;
+            this.error    = error;
+        }
+
+        public boolean moved() { return error == null; }
+    }
+
+    @InitiatingFlow
+    @StartableByRPC
+    public static class InitiatorFlow extends FlowLogic<List<Outcome>> {
+        private final ProgressTracker progressTracker = new ProgressTracker();
+
+        private final List<Relocation> relocations;
+        private final Party newCity;
+        private final int chunkSize;
+
+        public InitiatorFlow(List<Relocation> relocations, Party newCity, int chunkSize) {
+            if (chunkSize < 1) throw new IllegalArgumentException("chunkSize must be at least 1.");
+            this.relocations = relocations;
+            this.newCity     = newCity;
+            this.chunkSize   = chunkSize;
+        }
+
+        public InitiatorFlow(List<Relocation> relocations, Party newCity) {
+            this(relocations, newCity, DEFAULT_CHUNK_SIZE);
+        }
+
+        @Override
+        public ProgressTracker getProgressTracker() {
+            return progressTracker;
+        }
+
+        @Suspendable
+        @Override
+        public List<Outcome> call() throws FlowException {
+
+            final Party oldCity = getOurIdentity();
+            if (newCity.getOwningKey().equals(oldCity.getOwningKey())) {
+                throw new IllegalArgumentException("The currentCity property must change in a transfer.");
+            }
+
+            // 1. Retrieve all the states to move from the vault with one LinearStateQueryCriteria.
+            List<UUID> listOfLinearIds = new ArrayList<>(relocations.size());
+            for (Relocation relocation : relocations) {
+                listOfLinearIds.add(relocation.linearId.getId());
+            }
+            Map<UUID, StateAndRef<ResidentInformationState>> unconsumedStates = queryUnconsumed(listOfLinearIds);
+
+            // 2. Check every relocation before any remote work.
+            List<Outcome> outcomes = new ArrayList<>(Collections.nCopies(relocations.size(), null));
+            Set<UUID> seenLinearIds = new HashSet<>();
+            List<Integer> validIndexes = new ArrayList<>();
+            List<StateAndRef<ResidentInformationState>> validStates = new ArrayList<>();
+            for (int i = 0; i < relocations.size(); i++) {
+                Relocation relocation = relocations.get(i);
+                StateAndRef<ResidentInformationState> stateAndRef = unconsumedStates.get(relocation.linearId.getId());
+                String error = validate(relocation, stateAndRef, oldCity, seenLinearIds);
+                if (error != null) {
+                    outcomes.set(i, new Outcome(relocation.linearId, null, error));
+                    continue;
+                }
+                validIndexes.add(i);
+                validStates.add(stateAndRef);
+            }
+
+            // Soft lock the valid residents, so that a change or deletion of one of them started on this node
+            // meanwhile waits for this flow, see [ReserveResidentFlow]. A resident another flow holds is skipped
+            // here rather than failing its whole chunk at the notary.
+            Set<StateRef> heldByOthers = ReserveResidentFlow.reserveAll(this, validStates);
+
+            // The residents are grouped by the notary chosen with the NotarySelector, as all inputs of
+            // a transaction must share one notary. A state pinned to another notary is moved to the chosen one.
+            // A resident whose backchain is too deep is reissued first, see [BackchainPolicy].
+            NotarySelector notarySelector = getServiceHub().cordaService(NotarySelector.class);
+            BackchainPolicy backchainPolicy = getServiceHub().cordaService(BackchainPolicy.class);
+            Map<Party, List<Integer>> indexesByNotary = new LinkedHashMap<>();
+            for (int i : validIndexes) {
+                Relocation relocation = relocations.get(i);
+                StateAndRef<ResidentInformationState> stateAndRef = unconsumedStates.get(relocation.linearId.getId());
+                if (heldByOthers.contains(stateAndRef.getRef())) {
+                    outcomes.set(i, new Outcome(relocation.linearId, null, BEING_CHANGED));
+                    continue;
+                }
+                StateRef lockedRef = stateAndRef.getRef();
+                if (backchainPolicy.shouldReissue(stateAndRef)) {
+                    stateAndRef = subFlow(new ReissueResidentFlow.InitiatorFlow(relocation.linearId)).getTx().outRef(0);
+                    unconsumedStates.put(relocation.linearId.getId(), stateAndRef);
+                }
+                Party notary = notarySelector.selectFor(stateAndRef, relocation.linearId);
+                if (!notary.equals(stateAndRef.getState().getNotary())) {
+                    stateAndRef = subFlow(new NotaryChangeFlow<>(stateAndRef, notary,
+                            AbstractStateReplacementFlow.Instigator.Companion.tracker()));
+                    unconsumedStates.put(relocation.linearId.getId(), stateAndRef);
+                }
+                // The replacement of a reissued or moved state is locked as well.
+                if (!stateAndRef.getRef().equals(lockedRef)
+                        && !ReserveResidentFlow.reserveAll(this, Collections.singletonList(stateAndRef)).isEmpty()) {
+                    outcomes.set(i, new Outcome(relocation.linearId, null, BEING_CHANGED));
+                    continue;
+                }
+                indexesByNotary.computeIfAbsent(notary, key -> new ArrayList<>()).add(i);
+            }
+
+            // Pack the valid relocations of each notary into chunks.
+            List<List<Integer>> chunks = new ArrayList<>();
+            List<Party> chunkNotaries = new ArrayList<>();
+            for (Map.Entry<Party, List<Integer>> entry : indexesByNotary.entrySet()) {
+                List<Integer> indexes = entry.getValue();
+                for (int from = 0; from < indexes.size(); from += chunkSize) {
+                    chunks.add(new ArrayList<>(indexes.subList(from, Math.min(from + chunkSize, indexes.size()))));
+                    chunkNotaries.add(entry.getKey());
+                }
+            }
+            if (chunks.isEmpty()) {
+                return outcomes;
+            }
+
+            // 3. We should now get some of the components required for to execute the transactions.
+            List<PublicKey> listOfRequiredSigners = Arrays.asList(oldCity.getOwningKey(), newCity.getOwningKey());
+
+            // 4. Each chunk has its own session to the new city, so a chunk that fails on either side ends
+            // its session only, and the next chunks go on. On a session we tell the new city whether another
+            // transaction is coming.
+            for (int chunkNumber = 0; chunkNumber < chunks.size(); chunkNumber++) {
+                List<Integer> chunkIndexes = chunks.get(chunkNumber);
+                Party notary = chunkNotaries.get(chunkNumber);
+
+                // 5. Add input and output states and one command for the whole chunk.
+                TransactionBuilder tb = new TransactionBuilder(notary);
+                for (int index : chunkIndexes) {
+                    Relocation relocation = relocations.get(index);
+                    StateAndRef<ResidentInformationState> inputStateAndRefToChange = unconsumedStates.get(relocation.linearId.getId());
+                    ResidentInformationState inputStateToChange = inputStateAndRefToChange.getState().getData();
+                    tb.addInputState(inputStateAndRefToChange);
+                    tb.addOutputState(inputStateToChange.withNewCurrentCity(newCity, relocation.newAddress), ResidentInformationContract.IOU_CONTRACT_ID);
+                }
+                tb.addCommand(new Command<>(new ChangeInformation(), listOfRequiredSigners));
+                // Dates the relocations in the ResidentAddressHistory.
+                tb.setTimeWindow(TimeWindow.fromOnly(getServiceHub().getClock().instant()));
+
+                // 6. Verify and sign the transaction.
+                // Every pair is checked by the contract here, before the new city is asked to sign.
+                SignedTransaction partiallySignedTransaction;
+                try {
+                    tb.verify(getServiceHub());
+                    partiallySignedTransaction = getServiceHub().signInitialTransaction(tb);
+                } catch (FlowException e) {
+                    String error = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+                    for (int index : chunkIndexes) {
+                        outcomes.set(index, new Outcome(relocations.get(index).linearId, null, error));
+                    }
+                    continue;
+                }
+
+                // 7. Collect the signature of the new city once for the chunk, and finalise it.
+                FlowSession newCitySession = initiateFlow(newCity);
+                List<FlowSession> sessions = Collections.singletonList(newCitySession);
+                SecureHash txId = partiallySignedTransaction.getId();
+                String error = null;
+                try {
+                    newCitySession.send(true);
+                    SignedTransaction fullySignedTransaction = subFlow(new CollectSignaturesFlow(partiallySignedTransaction, sessions));
+                    final Stopwatch finality = Stopwatch.start();
+                    subFlow(new FinalityFlow(fullySignedTransaction, sessions));
+                    notarySelector.recordLatency(notary, finality.elapsedNanos());
+                    newCitySession.send(false);
+                } catch (FlowException | UnexpectedFlowEndException e) {
+                    // A chunk notarised before the failure has moved its residents all the same.
+                    if (getServiceHub().getValidatedTransactions().getTransaction(txId) == null) {
+                        error = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+                        txId = null;
+                    }
+                    getLogger().warn("Chunk {} of a bulk relocation to {} failed: {}", chunkNumber, newCity, e.getMessage());
+                }
+                for (int index : chunkIndexes) {
+                    outcomes.set(index, new Outcome(relocations.get(index).linearId, txId, error));
+                }
+            }
+
+            return outcomes;
+        }
+
+        /* validate
+         * Returns why the resident can not be moved, or null if it can.
+         */
+        static String validate(Relocation relocation, StateAndRef<ResidentInformationState> stateAndRef,
+                               Party oldCity, Set<UUID> seenLinearIds) {
+            if (stateAndRef == null) return "No unconsumed resident was found for this linearId.";
+            if (!seenLinearIds.add(relocation.linearId.getId())) return "The linearId appears more than once in this request.";
+            ResidentInformationState state = stateAndRef.getState().getData();
+            if (!state.currentCity.getOwningKey().equals(oldCity.getOwningKey())) return "This flow must be run by the current city.";
+            if (relocation.newAddress == null || relocation.newAddress.equals("")) return "The resident must have a new address.";
+            if (relocation.newAddress.equals(state.currentAddress)) return "input state's currentAddress and output state's currentAddress must change.";
+            return null;
+        }
+
+        /* queryUnconsumed
+         * Reads the unconsumed states of all the linearIds with one criteria, page by page.
+         */
+        private Map<UUID, StateAndRef<ResidentInformationState>> queryUnconsumed(List<UUID> listOfLinearIds) {
+            QueryCriteria queryCriteria = new QueryCriteria.LinearStateQueryCriteria(null, listOfLinearIds);
+            Map<UUID, StateAndRef<ResidentInformationState>> states = new HashMap<>();
+            int pageNumber = DEFAULT_PAGE_NUM;
+            while (true) {
+                Vault.Page<ResidentInformationState> results = getServiceHub().getVaultService().queryBy(
+                        ResidentInformationState.class, queryCriteria, new PageSpecification(pageNumber, QUERY_PAGE_SIZE),
+                        STATE_REF_ORDER);
+                for (StateAndRef<ResidentInformationState> stateAndRef : results.getStates()) {
+                    states.put(stateAndRef.getState().getData().getLinearId().getId(), stateAndRef);
+                }
+                if ((long) pageNumber * QUERY_PAGE_SIZE >= results.getTotalStatesAvailable()) break;
+                pageNumber++;
+            }
+            return states;
+        }
+    }
+
+    /**
+     * This is the flow which signs the chunks of a bulk relocation, one chunk per session.
+     * The signing of each chunk is handled by the [SignTransactionFlow].
+     */
+    @InitiatedBy(BulkChangeInformationFlow.InitiatorFlow.class)
+    public static class Responder extends FlowLogic<Void> {
+
+        private final FlowSession otherPartyFlow;
+
+        public Responder(FlowSession otherPartyFlow) {
+            this.otherPartyFlow = otherPartyFlow;
+        }
+
+        @Suspendable
+        @Override
+        public Void call() throws FlowException {
+            final Party ourIdentity = getOurIdentity();
+
+            class SignTxFlow extends SignTransactionFlow {
+                private SignTxFlow(FlowSession otherPartyFlow, ProgressTracker progressTracker) {
+                    super(otherPartyFlow, progressTracker);
+                }
+
+                @Override
+                @NotNull
+                protected void checkTransaction(SignedTransaction stx) {
+                    requireThat(require -> {
+                        for (TransactionState<ContractState> output : stx.getTx().getOutputs()) {
+                            require.using("This must be an IOU transaction", output.getData() instanceof ResidentInformationState);
+                            require.using("Every resident must move to our city.",
+                                    ((ResidentInformationState) output.getData()).currentCity.getOwningKey().equals(ourIdentity.getOwningKey()));
+                        }
+                        return null;
+                    });
+                }
+            }
+
+            while (otherPartyFlow.receive(Boolean.class).unwrap(anotherChunk -> anotherChunk)) {
+                // Sign the chunk, then run the ReceiveFinalityFlow to persist it to the vault.
+                SignedTransaction signedTransaction = subFlow(new SignTxFlow(otherPartyFlow, SignTransactionFlow.Companion.tracker()));
+                subFlow(new ReceiveFinalityFlow(otherPartyFlow, signedTransaction.getId()));
+            }
+            return null;
+        }
+    }
+}
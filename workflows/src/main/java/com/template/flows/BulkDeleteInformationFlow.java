@@ -0,0 +1,236 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.contracts.ResidentInformationContract;
+import com.template.services.NotarySelector;
+import com.template.states.ResidentInformationState;
+import net.corda.core.contracts.Command;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.contracts.TimeWindow;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.serialization.CordaSerializable;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.ProgressTracker;
+
+import java.util.*;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+// ******************
+// * Initiator flow *
+// ******************
+public class BulkDeleteInformationFlow {
+
+    // Number of residents deleted in one transaction when no chunk size is given.
+    public static final int DEFAULT_CHUNK_SIZE = 100;
+
+    // Number of states read from the vault per page when resolving the linearIds.
+    static final int QUERY_PAGE_SIZE = 500;
+
+    /**
+     * The outcome of a bulk deletion.
+     * - deleted: the linearIds consumed by this flow, with the transactions that consumed them.
+     * - alreadyConsumed: the linearIds that are known to the vault but have no unconsumed state.
+     * - notOwned: the linearIds whose unconsumed state has another currentCity, which alone may delete it.
+     * - notFound: the linearIds that are not known to the vault.
+     * - failed: the linearIds whose transaction could not be verified or notarised, or that another flow
+     *   on this node was changing or deleting.
+     */
+    @CordaSerializable
+    public static class Result {
+        public final List<UniqueIdentifier> deleted;
+        public final List<SecureHash> txIds;
+        public final List<UniqueIdentifier> alreadyConsumed;
+        public final List<UniqueIdentifier> notOwned;
+        public final List<UniqueIdentifier> notFound;
+        public final List<UniqueIdentifier> failed;
+
+        public Result(List<UniqueIdentifier> deleted, List<SecureHash> txIds, List<UniqueIdentifier> alreadyConsumed,
+                      List<UniqueIdentifier> notOwned, List<UniqueIdentifier> notFound, List<UniqueIdentifier> failed) {
+            this.deleted         = deleted;
+            this.txIds           = txIds;
+            this.alreadyConsumed = alreadyConsumed;
+            this.notOwned        = notOwned;
+            this.notFound        = notFound;
+            this.failed          = failed;
+        }
+    }
+
+    @InitiatingFlow(version = 2)
+    @StartableByRPC
+    public static class InitiatorFlow extends FlowLogic<Result> {
+        private final ProgressTracker progressTracker = new ProgressTracker();
+
+        private final List<UniqueIdentifier> stateLinearIds;
+        private final int chunkSize;
+
+        public InitiatorFlow(List<UniqueIdentifier> stateLinearIds, int chunkSize) {
+            if (chunkSize < 1) throw new IllegalArgumentException("chunkSize must be at least 1.");
+            this.stateLinearIds = stateLinearIds;
+            this.chunkSize      = chunkSize;
+        }
+
+        public InitiatorFlow(List<UniqueIdentifier> stateLinearIds) {
+            this(stateLinearIds, DEFAULT_CHUNK_SIZE);
+        }
+
+        @Override
+        public ProgressTracker getProgressTracker() {
+            return progressTracker;
+        }
+
+        @Suspendable
+        @Override
+        public Result call() throws FlowException {
+
+            final Party currentCity = getOurIdentity();
+
+            // 1. Retrieve the consumed and unconsumed states of all the linearIds with one LinearStateQueryCriteria.
+            Set<UUID> requestedIds = new LinkedHashSet<>();
+            for (UniqueIdentifier stateLinearId : stateLinearIds) {
+                requestedIds.add(stateLinearId.getId());
+            }
+            Map<UUID, StateAndRef<ResidentInformationState>> unconsumedStates = new HashMap<>();
+            Set<UUID> knownIds = new HashSet<>();
+            queryAll(new ArrayList<>(requestedIds), unconsumedStates, knownIds);
+
+            // 2. Sort the linearIds by what the vault knows about them.
+            List<UniqueIdentifier> alreadyConsumed = new ArrayList<>();
+            List<UniqueIdentifier> notOwned = new ArrayList<>();
+            List<UniqueIdentifier> notFound = new ArrayList<>();
+            List<StateAndRef<ResidentInformationState>> toDelete = new ArrayList<>();
+            Set<UUID> seenIds = new HashSet<>();
+            for (UniqueIdentifier stateLinearId : stateLinearIds) {
+                if (!seenIds.add(stateLinearId.getId())) continue;
+                StateAndRef<ResidentInformationState> stateAndRef = unconsumedStates.get(stateLinearId.getId());
+                if (stateAndRef != null) {
+                    if (stateAndRef.getState().getData().currentCity.getOwningKey().equals(currentCity.getOwningKey())) {
+                        toDelete.add(stateAndRef);
+                    } else {
+                        notOwned.add(stateLinearId);
+                    }
+                } else if (knownIds.contains(stateLinearId.getId())) {
+                    alreadyConsumed.add(stateLinearId);
+                } else {
+                    notFound.add(stateLinearId);
+                }
+            }
+
+            // Soft lock the residents, so that a change or deletion of one of them started on this node meanwhile
+            // waits for this flow, see [ReserveResidentFlow]. A resident another flow holds is reported as failed
+            // here rather than failing its whole chunk at the notary.
+            List<UniqueIdentifier> failed = new ArrayList<>();
+            Set<StateRef> heldByOthers = ReserveResidentFlow.reserveAll(this, toDelete);
+
+            // Step 3. Group the residents by the notary chosen with the NotarySelector, as all inputs of
+            // a transaction must share one notary. A state pinned to another notary is moved to the chosen one.
+            final NotarySelector notarySelector = getServiceHub().cordaService(NotarySelector.class);
+            Map<Party, List<StateAndRef<ResidentInformationState>>> toDeleteByNotary = new LinkedHashMap<>();
+            for (StateAndRef<ResidentInformationState> stateAndRef : toDelete) {
+                UniqueIdentifier linearId = stateAndRef.getState().getData().getLinearId();
+                if (heldByOthers.contains(stateAndRef.getRef())) {
+                    failed.add(linearId);
+                    continue;
+                }
+                Party notary = notarySelector.selectFor(stateAndRef, linearId);
+                if (!notary.equals(stateAndRef.getState().getNotary())) {
+                    stateAndRef = subFlow(new NotaryChangeFlow<>(stateAndRef, notary,
+                            AbstractStateReplacementFlow.Instigator.Companion.tracker()));
+                    // The replacement is locked as well.
+                    if (!ReserveResidentFlow.reserveAll(this, Collections.singletonList(stateAndRef)).isEmpty()) {
+                        failed.add(linearId);
+                        continue;
+                    }
+                }
+                toDeleteByNotary.computeIfAbsent(notary, key -> new ArrayList<>()).add(stateAndRef);
+            }
+
+            List<UniqueIdentifier> deleted = new ArrayList<>();
+            List<SecureHash> txIds = new ArrayList<>();
+            for (Map.Entry<Party, List<StateAndRef<ResidentInformationState>>> entry : toDeleteByNotary.entrySet()) {
+                List<StateAndRef<ResidentInformationState>> notaryStates = entry.getValue();
+                for (int from = 0; from < notaryStates.size(); from += chunkSize) {
+                    List<StateAndRef<ResidentInformationState>> chunk =
+                            new ArrayList<>(notaryStates.subList(from, Math.min(from + chunkSize, notaryStates.size())));
+                    SecureHash txId = deleteChunk(notarySelector, entry.getKey(), currentCity, chunk);
+                    List<UniqueIdentifier> chunkOutcome = txId != null ? deleted : failed;
+                    for (StateAndRef<ResidentInformationState> stateAndRef : chunk) {
+                        chunkOutcome.add(stateAndRef.getState().getData().getLinearId());
+                    }
+                    if (txId != null) txIds.add(txId);
+                }
+            }
+
+            return new Result(deleted, txIds, alreadyConsumed, notOwned, notFound, failed);
+        }
+
+        /* deleteChunk
+         * Consumes all states of the chunk in one notarised transaction.
+         * Returns the id of the transaction, or null if it could not be finalised.
+         */
+        @Suspendable
+        private SecureHash deleteChunk(NotarySelector notarySelector, Party notary, Party currentCity,
+                                       List<StateAndRef<ResidentInformationState>> chunk) {
+
+            // Step 4. Create one delete command for the whole chunk.
+            final Command<ResidentInformationContract.Commands.DeleteInformation> deleteCommand = new Command<>(
+                    new ResidentInformationContract.Commands.DeleteInformation(), currentCity.getOwningKey());
+
+            // Step 5. Add every resident as an input state, as well as the command to the transaction builder.
+            final TransactionBuilder builder = new TransactionBuilder(notary);
+            for (StateAndRef<ResidentInformationState> stateAndRef : chunk) {
+                builder.addInputState(stateAndRef);
+            }
+            builder.addCommand(deleteCommand);
+            builder.setTimeWindow(TimeWindow.fromOnly(getServiceHub().getClock().instant()));
+
+            try {
+                // Step 6. Verify and sign it with our KeyPair.
+                builder.verify(getServiceHub());
+                final SignedTransaction ptx = getServiceHub().signInitialTransaction(builder);
+
+                // Step 7. No signatures on other nodes are needed.
+                List<FlowSession> sessions = Collections.emptyList();
+                final Stopwatch finality = Stopwatch.start();
+                final SecureHash txId = subFlow(new FinalityFlow(ptx, sessions)).getId();
+                notarySelector.recordLatency(notary, finality.elapsedNanos());
+                return txId;
+            } catch (FlowException e) {
+                getLogger().warn("Could not delete a chunk of " + chunk.size() + " residents: " + e.getMessage());
+                return null;
+            }
+        }
+
+        /* queryAll
+         * Reads every state of the linearIds, consumed or not, with one criteria, page by page.
+         */
+        private void queryAll(List<UUID> listOfLinearIds, Map<UUID, StateAndRef<ResidentInformationState>> unconsumedStates,
+                              Set<UUID> knownIds) {
+            QueryCriteria queryCriteria = new QueryCriteria.LinearStateQueryCriteria(null, listOfLinearIds, Vault.StateStatus.ALL, null);
+            int pageNumber = DEFAULT_PAGE_NUM;
+            while (true) {
+                Vault.Page<ResidentInformationState> results = getServiceHub().getVaultService().queryBy(
+                        ResidentInformationState.class, queryCriteria, new PageSpecification(pageNumber, QUERY_PAGE_SIZE),
+                        BulkChangeInformationFlow.STATE_REF_ORDER);
+                for (int i = 0; i < results.getStates().size(); i++) {
+                    StateAndRef<ResidentInformationState> stateAndRef = results.getStates().get(i);
+                    UUID id = stateAndRef.getState().getData().getLinearId().getId();
+                    knownIds.add(id);
+                    if (results.getStatesMetadata().get(i).getStatus() == Vault.StateStatus.UNCONSUMED) {
+                        unconsumedStates.put(id, stateAndRef);
+                    }
+                }
+                if ((long) pageNumber * QUERY_PAGE_SIZE >= results.getTotalStatesAvailable()) break;
+                pageNumber++;
+            }
+        }
+    }
+}
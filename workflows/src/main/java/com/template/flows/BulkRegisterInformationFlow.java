@@ -0,0 +1,226 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.contracts.ResidentInformationContract;
+import com.template.services.MyNumberIndex;
+import com.template.services.NotarySelector;
+import com.template.states.ResidentInformationState;
+import net.corda.core.contracts.Command;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.contracts.TimeWindow;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.serialization.CordaSerializable;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.ProgressTracker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// ******************
+// * Initiator flow *
+// ******************
+public class BulkRegisterInformationFlow {
+
+    // Number of residents packed into one transaction when no chunk size is given.
+    public static final int DEFAULT_CHUNK_SIZE = 100;
+
+    /**
+     * The data of one resident to be registered.
+     * The currentCity is common to the whole batch and is given to the flow itself.
+     */
+    @CordaSerializable
+    public static class Resident {
+        public final String residentName;
+        public final String myNumber;
+        public final String currentAddress;
+        public final String birthday;
+
+        public Resident(String residentName, String myNumber, String currentAddress, String birthday) {
+            this.residentName   = residentName;
+            this.myNumber       = myNumber;
+            this.currentAddress = currentAddress;
+            this.birthday       = birthday;
+        }
+    }
+
+    /**
+     * The outcome of one resident, in the same position as the resident in the request.
+     * - registered: linearId and txId are set.
+     * - otherwise: error describes why the resident was not registered.
+     */
+    @CordaSerializable
+    public static class Outcome {
+        public final String myNumber;
+        public final UniqueIdentifier linearId;
+        public final SecureHash txId;
+        public final String error;
+
+        public Outcome(String myNumber, UniqueIdentifier linearId, SecureHash txId, String error) {
+            this.myNumber = myNumber;
+            this.linearId = linearId;
+            this.txId     = txId;
+            this.error    = error;
+        }
+
+        public boolean registered() { return error == null; }
+    }
+
+    @InitiatingFlow(version = 2)
+    @StartableByRPC
+    public static class InitiatorFlow extends FlowLogic<List<Outcome>> {
+        private final ProgressTracker progressTracker = new ProgressTracker();
+
+        private final List<Resident> residents;
+        private final Party currentCity;
+        private final int chunkSize;
+
+        public InitiatorFlow(List<Resident> residents, Party currentCity, int chunkSize) {
+            if (chunkSize < 1) throw new IllegalArgumentException("chunkSize must be at least 1.");
+            this.residents   = residents;
+            this.currentCity = currentCity;
+            this.chunkSize   = chunkSize;
+        }
+
+        public InitiatorFlow(List<Resident> residents, Party currentCity) {
+            this(residents, currentCity, DEFAULT_CHUNK_SIZE);
+        }
+
+        @Override
+        public ProgressTracker getProgressTracker() {
+            return progressTracker;
+        }
+
+        @Suspendable
+        @Override
+        public List<Outcome> call() throws FlowException {
+
+            // Ensure that this flow is being executed by the currentCity of the residents.
+            if (!currentCity.getOwningKey().equals(getOurIdentity().getOwningKey())) {
+                throw new IllegalArgumentException("This flow must be run by the currentCity.");
+            }
+
+            // Step 1. Get the NotarySelector, which chooses the notary service of each chunk.
+            final NotarySelector notarySelector = getServiceHub().cordaService(NotarySelector.class);
+
+            // Step 2. Validate every resident against the contract rules before building anything,
+            // and pack the valid ones into chunks of chunkSize outputs.
+            List<Outcome> outcomes = new ArrayList<>(Collections.nCopies(residents.size(), null));
+            final MyNumberIndex myNumberIndex = getServiceHub().cordaService(MyNumberIndex.class);
+            Set<String> seenMyNumbers = new HashSet<>();
+            // The myNumbers reserved and not yet registered, released however the flow ends.
+            Set<String> reserved = new HashSet<>();
+            List<Integer> chunkIndexes = new ArrayList<>(chunkSize);
+            List<ResidentInformationState> chunk = new ArrayList<>(chunkSize);
+
+            try {
+                for (int i = 0; i < residents.size(); i++) {
+                    Resident resident = residents.get(i);
+                    String error = validate(resident, seenMyNumbers, myNumberIndex);
+                    if (error != null) {
+                        outcomes.set(i, new Outcome(resident == null ? null : resident.myNumber, null, null, error));
+                        continue;
+                    }
+                    reserved.add(resident.myNumber);
+
+                    chunkIndexes.add(i);
+                    chunk.add(new ResidentInformationState(
+                            resident.residentName,
+                            resident.myNumber,
+                            currentCity,
+                            resident.currentAddress,
+                            resident.birthday,
+                            null
+                    ));
+
+                    if (chunk.size() == chunkSize) {
+                        registerChunk(notarySelector, chunk, chunkIndexes, outcomes, reserved);
+                        chunk = new ArrayList<>(chunkSize);
+                        chunkIndexes = new ArrayList<>(chunkSize);
+                    }
+                }
+                if (!chunk.isEmpty()) {
+                    registerChunk(notarySelector, chunk, chunkIndexes, outcomes, reserved);
+                }
+            } finally {
+                for (String myNumber : reserved) {
+                    myNumberIndex.release(myNumber);
+                }
+            }
+
+            return outcomes;
+        }
+
+        /* validate
+         * Returns why the resident can not be registered, or null if it can.
+         * The myNumber of a resident that can be registered is reserved in the [MyNumberIndex].
+         */
+        private String validate(Resident resident, Set<String> seenMyNumbers, MyNumberIndex myNumberIndex) throws FlowException {
+            if (resident == null) return "The resident must not be null.";
+            if (resident.residentName == null || resident.residentName.equals("")) return "The resident must have a resident Name.";
+            if (resident.myNumber == null || resident.myNumber.equals("")) return "The resident must have a myNumber.";
+            if (resident.currentAddress == null || resident.currentAddress.equals("")) return "The resident must have a current address.";
+            if (!seenMyNumbers.add(resident.myNumber)) return "The myNumber appears more than once in this request.";
+            if (!myNumberIndex.tryReserve(resident.myNumber, getRunId().getUuid())) return "A resident with this myNumber is already registered in this city.";
+            return null;
+        }
+
+        /* registerChunk
+         * Registers all states of the chunk in one transaction and records their outcomes.
+         * A failing chunk is reported per resident and does not stop the following chunks.
+         * The myNumbers of a registered chunk are no longer released by the flow, those of a failed chunk are.
+         */
+        @Suspendable
+        private void registerChunk(NotarySelector notarySelector, List<ResidentInformationState> chunk, List<Integer> chunkIndexes,
+                                   List<Outcome> outcomes, Set<String> reserved) {
+            final Party notary = notarySelector.select(chunk.get(0).getLinearId());
+
+            // Step 3. Create one issue command for the whole chunk.
+            final Command<ResidentInformationContract.Commands.RegisterInformation> registerCommand = new Command<>(
+                    new ResidentInformationContract.Commands.RegisterInformation(), currentCity.getOwningKey());
+
+            // Step 4. Add every resident as an output state, as well as the command to the transaction builder.
+            final TransactionBuilder builder = new TransactionBuilder(notary);
+            for (ResidentInformationState state : chunk) {
+                builder.addOutputState(state, ResidentInformationContract.IOU_CONTRACT_ID);
+            }
+            builder.addCommand(registerCommand);
+            builder.setTimeWindow(TimeWindow.fromOnly(getServiceHub().getClock().instant()));
+
+            SecureHash txId = null;
+            String error = null;
+            try {
+                // Step 5. Verify and sign it with our KeyPair.
+                builder.verify(getServiceHub());
+                final SignedTransaction ptx = getServiceHub().signInitialTransaction(builder);
+
+                // Step 6. No signatures on other nodes are needed.
+                List<FlowSession> sessions = Collections.emptyList();
+                final Stopwatch finality = Stopwatch.start();
+                txId = subFlow(new FinalityFlow(ptx, sessions)).getId();
+                notarySelector.recordLatency(notary, finality.elapsedNanos());
+            } catch (FlowException e) {
+                error = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+            }
+
+            // The myNumbers of a failed chunk can be registered again; those of a registered chunk stay
+            // reserved until the vault update of its states reaches the MyNumberIndex.
+            final MyNumberIndex myNumberIndex = getServiceHub().cordaService(MyNumberIndex.class);
+            for (int i = 0; i < chunk.size(); i++) {
+                ResidentInformationState state = chunk.get(i);
+                if (error != null) {
+                    myNumberIndex.release(state.getMyNumber());
+                }
+                reserved.remove(state.getMyNumber());
+                outcomes.set(chunkIndexes.get(i), error == null
+                        ? new Outcome(state.getMyNumber(), state.getLinearId(), txId, null)
+                        : new Outcome(state.getMyNumber(), null, null, error));
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.schemas.ResidentInformationQueries;
+import com.template.services.BackchainPolicy;
+import com.template.states.ResidentInformationState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByRPC;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.serialization.CordaSerializable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+/**
+ * Reports the backchain depth of our city's residents, as measured by the [BackchainPolicy]:
+ * the spread over every resident, and the deepest residents with the number of transactions
+ * a city they move to would have to resolve.
+ */
+@StartableByRPC
+public class ChainDepthReportFlow extends FlowLogic<ChainDepthReportFlow.Report> {
+
+    private static final int PAGE_SIZE = 1000;
+    // Counting the transactions of a chain stops here.
+    private static final int MAX_TRANSACTIONS_COUNTED = 100_000;
+
+    private final int deepest;
+
+    public ChainDepthReportFlow(int deepest) {
+        if (deepest < 0) throw new IllegalArgumentException("deepest must not be negative.");
+        this.deepest = deepest;
+    }
+
+    /**
+     * The chain of one resident.
+     */
+    @CordaSerializable
+    public static class ChainDepth {
+        public final UniqueIdentifier linearId;
+        public final int depth;
+        public final int transactions;
+
+        public ChainDepth(UniqueIdentifier linearId, int depth, int transactions) {
+            this.linearId     = linearId;
+            this.depth        = depth;
+            this.transactions = transactions;
+        }
+    }
+
+    /**
+     * residentsByDepth[d] is the number of residents whose chain has depth d; the last entry counts every
+     * deeper one. reissueDepth is the depth at which residents are reissued before they move, 0 if never.
+     */
+    @CordaSerializable
+    public static class Report {
+        public final int residents;
+        public final int maxDepth;
+        public final double averageDepth;
+        public final int reissueDepth;
+        public final int[] residentsByDepth;
+        public final List<ChainDepth> deepest;
+
+        public Report(int residents, int maxDepth, double averageDepth, int reissueDepth, int[] residentsByDepth,
+                      List<ChainDepth> deepest) {
+            this.residents        = residents;
+            this.maxDepth         = maxDepth;
+            this.averageDepth     = averageDepth;
+            this.reissueDepth     = reissueDepth;
+            this.residentsByDepth = residentsByDepth;
+            this.deepest          = deepest;
+        }
+    }
+
+    @Suspendable
+    @Override
+    public Report call() throws FlowException {
+        BackchainPolicy policy = getServiceHub().cordaService(BackchainPolicy.class);
+
+        int residents = 0;
+        int maxDepth = 0;
+        long totalDepth = 0;
+        int[] residentsByDepth = new int[32];
+        PriorityQueue<StateAndRef<ResidentInformationState>> deepestStates = new PriorityQueue<>(
+                Comparator.comparingInt(stateAndRef -> policy.depth(stateAndRef.getRef().getTxhash())));
+
+        // Step 1. Measure every resident one page at a time, keeping the deepest ones.
+        for (int pageNumber = DEFAULT_PAGE_NUM; ; pageNumber++) {
+            Vault.Page<ResidentInformationState> page = getServiceHub().getVaultService().queryBy(
+                    ResidentInformationState.class,
+                    ResidentInformationQueries.byCurrentCity(getOurIdentity()),
+                    new PageSpecification(pageNumber, PAGE_SIZE));
+            for (StateAndRef<ResidentInformationState> stateAndRef : page.getStates()) {
+                int depth = policy.depth(stateAndRef.getRef().getTxhash());
+                residents++;
+                maxDepth = Math.max(maxDepth, depth);
+                totalDepth += depth;
+                residentsByDepth[Math.min(depth, residentsByDepth.length - 1)]++;
+                if (deepest > 0) {
+                    deepestStates.add(stateAndRef);
+                    if (deepestStates.size() > deepest) deepestStates.poll();
+                }
+            }
+            if (page.getStates().size() < PAGE_SIZE) break;
+        }
+
+        // Step 2. Count the transactions to resolve for the deepest residents only, deepest first.
+        List<ChainDepth> deepestChains = new ArrayList<>(deepestStates.size());
+        while (!deepestStates.isEmpty()) {
+            StateAndRef<ResidentInformationState> stateAndRef = deepestStates.poll();
+            deepestChains.add(0, new ChainDepth(stateAndRef.getState().getData().getLinearId(),
+                    policy.depth(stateAndRef.getRef().getTxhash()),
+                    policy.transactionsToResolve(stateAndRef.getRef().getTxhash(), MAX_TRANSACTIONS_COUNTED)));
+        }
+
+        return new Report(residents, maxDepth, residents == 0 ? 0.0 : (double) totalDepth / residents,
+                policy.getReissueDepth(), residentsByDepth, deepestChains);
+    }
+}
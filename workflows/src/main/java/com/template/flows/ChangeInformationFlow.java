@@ -4,19 +4,23 @@ import co.paralleluniverse.fibers.Suspendable;
 import com.sun.istack.NotNull;
 import com.template.contracts.ResidentInformationContract.Commands.ChangeInformation;
 import com.template.contracts.ResidentInformationContract;
+import com.template.services.BackchainPolicy;
+import com.template.services.FlowStepMetrics;
+import com.template.services.NotarySelector;
+import com.template.services.SpanLog;
 import com.template.states.ResidentInformationState;
 import net.corda.core.contracts.Command;
 import net.corda.core.contracts.ContractState;
 import net.corda.core.contracts.StateAndRef;
 import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.contracts.TimeWindow;
 import net.corda.core.crypto.SecureHash;
 import net.corda.core.flows.*;
 import net.corda.core.identity.AbstractParty;
 import net.corda.core.identity.Party;
-import net.corda.core.node.services.Vault;
-import net.corda.core.node.services.vault.QueryCriteria;
 import net.corda.core.transactions.SignedTransaction;
 import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.NonEmptySet;
 import net.corda.core.utilities.ProgressTracker;
 import static net.corda.core.contracts.ContractsDSL.requireThat;
 
@@ -26,15 +30,36 @@ import java.util.List;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
+import static com.template.flows.FlowSteps.*;
+
 // ******************
 // * Initiator flow *
 // ******************
+/**
+ * Moves a resident to a new city.
+ *
+ * The initiator starts a trace whose ID is its flow's run ID, and from version 2 sends it to each counterparty
+ * before collecting signatures, so that both sides record their spans of the move under the same trace
+ * in their [SpanLog]. The notary is called on its own, so the notarisation is a span of its own as well.
+ */
 public class ChangeInformationFlow {
 
-    @InitiatingFlow
+    // The first version of the flows that exchanges the trace ID.
+    private static final int TRACED_VERSION = 2;
+
+    @InitiatingFlow(version = TRACED_VERSION)
     @StartableByRPC
     public static class InitiatorFlow extends FlowLogic<SignedTransaction> {
-        private final ProgressTracker progressTracker = new ProgressTracker();
+        private final ProgressTracker progressTracker = new ProgressTracker(
+                QUERYING_VAULT,
+                REISSUING,
+                GENERATING_TRANSACTION,
+                VERIFYING_TRANSACTION,
+                SIGNING_TRANSACTION,
+                GATHERING_SIGNATURES,
+                NOTARISING_TRANSACTION,
+                FINALISING_TRANSACTION
+        );
 
         private final UniqueIdentifier stateLinearId;
         private final Party newCity;
@@ -54,20 +79,42 @@ public class ChangeInformationFlow {
        @Suspendable
        @Override
        public SignedTransaction call() throws FlowException {
+           final FlowTrace trace = new FlowTrace(
+                   getServiceHub().cordaService(SpanLog.class), getRunId().getUuid(), getClass());
+           final FlowStepTimer timer = new FlowStepTimer(
+                   getServiceHub().cordaService(FlowStepMetrics.class), getClass(), progressTracker, trace);
+           timer.step(QUERYING_VAULT);
 
-           // 1. Retrieve the IOU State from the vault using LinearStateQueryCriteria
-           List<UUID> listOfLinearIds = new ArrayList<>();
-           listOfLinearIds.add(stateLinearId.getId());
-           QueryCriteria queryCriteria = new QueryCriteria.LinearStateQueryCriteria(null, listOfLinearIds);
+           // 1. Retrieve the IOU State from the ResidentStateCache and soft lock it, waiting for any other change
+           //    or deletion of the resident on this node to finish first.
+           StateAndRef<ResidentInformationState> inputStateAndRefToChange =
+                   subFlow(new ReserveResidentFlow(stateLinearId));
+           if (inputStateAndRefToChange == null) {
+               throw new FlowException("No unconsumed resident was found for " + stateLinearId);
+           }
+
+           // A resident with a deep backchain is reissued first, so the new city resolves a short chain.
+           if (getServiceHub().cordaService(BackchainPolicy.class).shouldReissue(inputStateAndRefToChange)) {
+               timer.step(REISSUING);
+               inputStateAndRefToChange = subFlow(new ReissueResidentFlow.InitiatorFlow(stateLinearId))
+                       .getTx().outRef(0);
+               reserveReplacement(inputStateAndRefToChange);
+           }
 
            // 2. Get a reference to the inputState data that we are going to settle.
-           Vault.Page results = getServiceHub().getVaultService().queryBy(ResidentInformationState.class, queryCriteria);
-           StateAndRef inputStateAndRefToChange = (StateAndRef) results.getStates().get(0);
-           ResidentInformationState inputStateToChange = (ResidentInformationState) inputStateAndRefToChange.getState().getData();
+           ResidentInformationState inputStateToChange = inputStateAndRefToChange.getState().getData();
 
            // 3. We should now get some of the components required for to execute the transaction
-           // Here we get a reference to the default notary and instantiate a transaction builder.
-           Party notary = getServiceHub().getNetworkMapCache().getNotaryIdentities().get(0);
+           timer.step(GENERATING_TRANSACTION);
+           // Here we choose the notary with the NotarySelector and instantiate a transaction builder.
+           // If the state is pinned to another notary, it is moved to the chosen one first.
+           NotarySelector notarySelector = getServiceHub().cordaService(NotarySelector.class);
+           Party notary = notarySelector.selectFor(inputStateAndRefToChange, stateLinearId);
+           if (!notary.equals(inputStateAndRefToChange.getState().getNotary())) {
+               inputStateAndRefToChange = subFlow(new NotaryChangeFlow<>(inputStateAndRefToChange, notary,
+                       AbstractStateReplacementFlow.Instigator.Companion.tracker()));
+               reserveReplacement(inputStateAndRefToChange);
+           }
            TransactionBuilder tb = new TransactionBuilder(notary);
 
            // 4. Construct a transfer command to be added to the transaction.
@@ -85,6 +132,8 @@ public class ChangeInformationFlow {
            tb.addInputState(inputStateAndRefToChange);
            tb.addOutputState(inputStateToChange.withNewCurrentCity(newCity,newAddress), ResidentInformationContract.IOU_CONTRACT_ID);
            tb.addCommand(command);
+           // The start of the time window is when the resident moved, as kept by the ResidentAddressHistory.
+           tb.setTimeWindow(TimeWindow.fromOnly(getServiceHub().getClock().instant()));
 
            // 6. Ensure that this flow is being executed by the current lender.
            if (!inputStateToChange.currentCity.getOwningKey().equals(getOurIdentity().getOwningKey())) {
@@ -92,10 +141,14 @@ public class ChangeInformationFlow {
            }
 
            // 7. Verify and sign the transaction
+           timer.step(VERIFYING_TRANSACTION);
            tb.verify(getServiceHub());
+           timer.step(SIGNING_TRANSACTION);
            SignedTransaction partiallySignedTransaction = getServiceHub().signInitialTransaction(tb);
+           trace.setTransactionId(partiallySignedTransaction.getId());
 
            // 8. Collect all of the required signatures from other Corda nodes using the CollectSignaturesFlow
+           timer.step(GATHERING_SIGNATURES);
            List<FlowSession> sessions = new ArrayList<>();
 
            for (AbstractParty participant: inputStateToChange.getParticipants()) {
@@ -106,11 +159,32 @@ public class ChangeInformationFlow {
            }
 
            sessions.add(initiateFlow(newCity));
-           SignedTransaction fullySignedTransaction = subFlow(new CollectSignaturesFlow(partiallySignedTransaction, sessions));
+           for (FlowSession session : sessions) {
+               if (session.getCounterpartyFlowInfo().getFlowVersion() >= TRACED_VERSION) {
+                   session.send(trace.getTraceId());
+               }
+           }
+           SignedTransaction fullySignedTransaction = subFlow(new CollectSignaturesFlow(
+                   partiallySignedTransaction, sessions, GATHERING_SIGNATURES.childProgressTracker()));
            /* 9. Return the output of the FinalityFlow which sends the transaction to the notary for verification
             *     and the causes it to be persisted to the vault of appropriate nodes.
             */
-           return subFlow(new FinalityFlow(fullySignedTransaction, sessions));
+           timer.step(NOTARISING_TRANSACTION);
+           final Stopwatch finality = Stopwatch.start();
+           SignedTransaction notarised = fullySignedTransaction.withAdditionalSignatures(
+                   subFlow(new NotaryFlow.Client(fullySignedTransaction, NOTARISING_TRANSACTION.childProgressTracker())));
+           timer.step(FINALISING_TRANSACTION);
+           SignedTransaction stx = subFlow(new FinalityFlow(
+                   notarised, sessions, FINALISING_TRANSACTION.childProgressTracker()));
+           notarySelector.recordLatency(notary, finality.elapsedNanos());
+           timer.done();
+           return stx;
+       }
+
+       // Fails, rather than racing to the notary, if another flow has locked the replacement first.
+       @Suspendable
+       private void reserveReplacement(StateAndRef<ResidentInformationState> replacement) throws FlowException {
+           getServiceHub().getVaultService().softLockReserve(getRunId().getUuid(), NonEmptySet.of(replacement.getRef()));
        }
     }
 
@@ -121,6 +195,11 @@ public class ChangeInformationFlow {
     @InitiatedBy(ChangeInformationFlow.InitiatorFlow.class)
     public static class Responder extends FlowLogic<SignedTransaction> {
 
+        private final ProgressTracker progressTracker = new ProgressTracker(
+                CHECKING_AND_SIGNING,
+                RECEIVING_FINALITY
+        );
+
         private final FlowSession otherPartyFlow;
         private SecureHash txWeJustSignedId;
 
@@ -128,9 +207,23 @@ public class ChangeInformationFlow {
             this.otherPartyFlow = otherPartyFlow;
         }
 
+        @Override
+        public ProgressTracker getProgressTracker() {
+            return progressTracker;
+        }
+
         @Suspendable
         @Override
         public SignedTransaction call() throws FlowException {
+            final FlowStepTimer timer = new FlowStepTimer(
+                    getServiceHub().cordaService(FlowStepMetrics.class), getClass(), progressTracker);
+
+            // An initiator older than the traced version sends no trace ID, so the move is traced from here.
+            final UUID traceId = otherPartyFlow.getCounterpartyFlowInfo().getFlowVersion() >= TRACED_VERSION
+                    ? otherPartyFlow.receive(UUID.class).unwrap(id -> id)
+                    : getRunId().getUuid();
+            final FlowTrace trace = new FlowTrace(getServiceHub().cordaService(SpanLog.class), traceId, getClass());
+
             class SignTxFlow extends SignTransactionFlow {
                 private SignTxFlow(FlowSession otherPartyFlow, ProgressTracker progressTracker) {
                     super(otherPartyFlow, progressTracker);
@@ -139,6 +232,9 @@ public class ChangeInformationFlow {
                 @Override
                 @NotNull
                 protected void checkTransaction(SignedTransaction stx) {
+                    // The backchain has been resolved and the transaction verified by now.
+                    trace.setTransactionId(stx.getId());
+                    trace.begin("check_transaction");
                     requireThat(require -> {
                         ContractState output = stx.getTx().getOutputs().get(0).getData();
                         require.using("This must be an IOU transaction", output instanceof ResidentInformationState);
@@ -146,17 +242,26 @@ public class ChangeInformationFlow {
                     });
                     // Once the transaction has verified, initialize txWeJustSignedID variable.
                     txWeJustSignedId = stx.getId();
+                    trace.begin("sign");
                 }
             }
 
             // Create a sign transaction flow
-            SignTxFlow signTxFlow = new SignTxFlow(otherPartyFlow, SignTransactionFlow.Companion.tracker());
+            timer.step(CHECKING_AND_SIGNING);
+            SignTxFlow signTxFlow = new SignTxFlow(otherPartyFlow, CHECKING_AND_SIGNING.childProgressTracker());
 
             // Run the sign transaction flow to sign the transaction
+            trace.begin("resolve_and_verify");
             subFlow(signTxFlow);
 
             // Run the ReceiveFinalityFlow to finalize the transaction and persist it to the vault.
-            return subFlow(new ReceiveFinalityFlow(otherPartyFlow, txWeJustSignedId));
+            // This includes waiting for the initiator to notarise it.
+            timer.step(RECEIVING_FINALITY);
+            trace.begin("receive_finality");
+            SignedTransaction stx = subFlow(new ReceiveFinalityFlow(otherPartyFlow, txWeJustSignedId));
+            trace.end();
+            timer.done();
+            return stx;
         }
 
     }
@@ -2,22 +2,24 @@ package com.template.flows;
 
 import co.paralleluniverse.fibers.Suspendable;
 import com.template.contracts.ResidentInformationContract;
+import com.template.services.FlowStepMetrics;
+import com.template.services.NotarySelector;
 import com.template.states.ResidentInformationState;
 import net.corda.core.contracts.Command;
 import net.corda.core.contracts.StateAndRef;
 import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.contracts.TimeWindow;
 import net.corda.core.flows.*;
 import net.corda.core.identity.Party;
-import net.corda.core.node.services.Vault;
-import net.corda.core.node.services.vault.QueryCriteria;
 import net.corda.core.transactions.SignedTransaction;
 import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.NonEmptySet;
 import net.corda.core.utilities.ProgressTracker;
 
 import java.util.Collections;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.UUID;
+
+import static com.template.flows.FlowSteps.*;
 
 // ******************
 // * Initiator flow *
@@ -27,7 +29,14 @@ public class DeleteInformationFlow {
     @InitiatingFlow(version = 2)
     @StartableByRPC
     public static class InitiatorFlow extends FlowLogic<SignedTransaction> {
-        private final ProgressTracker progressTracker = new ProgressTracker();
+        private final ProgressTracker progressTracker = new ProgressTracker(
+                QUERYING_VAULT,
+                GENERATING_TRANSACTION,
+                VERIFYING_TRANSACTION,
+                SIGNING_TRANSACTION,
+                NOTARISING_TRANSACTION,
+                FINALISING_TRANSACTION
+        );
 
         private final UniqueIdentifier stateLinearId;
         private final Party currentCity;
@@ -45,19 +54,31 @@ public class DeleteInformationFlow {
         @Suspendable
         @Override
         public SignedTransaction call() throws FlowException {
+            final FlowStepTimer timer = new FlowStepTimer(
+                    getServiceHub().cordaService(FlowStepMetrics.class), getClass(), progressTracker);
+            timer.step(QUERYING_VAULT);
 
-            // 1. Retrieve the IOU State from the vault using LinearStateQueryCriteria
-            List<UUID> listOfLinearIds = new ArrayList<>();
-            listOfLinearIds.add(stateLinearId.getId());
-            QueryCriteria queryCriteria = new QueryCriteria.LinearStateQueryCriteria(null, listOfLinearIds);
-
+            // 1. Retrieve the IOU State from the ResidentStateCache and soft lock it, waiting for any other change
+            //    or deletion of the resident on this node to finish first.
             // 2. Get a reference to the inputState data that we are going to settle.
-            Vault.Page results = getServiceHub().getVaultService().queryBy(ResidentInformationState.class, queryCriteria);
-            StateAndRef inputStateAndRefToChange = (StateAndRef) results.getStates().get(0);
-
-            // Step 1. Get a reference to the notary service on our network and our key pair.
-            // Note: ongoing work to support multiple notary identities is still in progress.
-            final Party notary = getServiceHub().getNetworkMapCache().getNotaryIdentities().get(0);
+            StateAndRef<ResidentInformationState> inputStateAndRefToChange =
+                    subFlow(new ReserveResidentFlow(stateLinearId));
+            if (inputStateAndRefToChange == null) {
+                throw new FlowException("No unconsumed resident was found for " + stateLinearId);
+            }
+
+            // Step 1. Choose the notary service with the NotarySelector,
+            // and move the state to that notary first if it is pinned to another one.
+            timer.step(GENERATING_TRANSACTION);
+            final NotarySelector notarySelector = getServiceHub().cordaService(NotarySelector.class);
+            final Party notary = notarySelector.selectFor(inputStateAndRefToChange, stateLinearId);
+            if (!notary.equals(inputStateAndRefToChange.getState().getNotary())) {
+                inputStateAndRefToChange = subFlow(new NotaryChangeFlow<>(inputStateAndRefToChange, notary,
+                        AbstractStateReplacementFlow.Instigator.Companion.tracker()));
+                // Fails, rather than racing to the notary, if another flow has locked the replacement first.
+                getServiceHub().getVaultService().softLockReserve(
+                        getRunId().getUuid(), NonEmptySet.of(inputStateAndRefToChange.getRef()));
+            }
 
             // Step 2. Create a new issue command.
             final Command<ResidentInformationContract.Commands.DeleteInformation> deleteCommand = new Command<>(
@@ -69,15 +90,28 @@ public class DeleteInformationFlow {
             // Step 4. Add the iou as an output state, as well as a command to the transaction builder.
             builder.addInputState(inputStateAndRefToChange);
             builder.addCommand(deleteCommand);
+            // Dates the end of the last residence.
+            builder.setTimeWindow(TimeWindow.fromOnly(getServiceHub().getClock().instant()));
 
             // Step 5. Verify and sign it with our KeyPair.
+            timer.step(VERIFYING_TRANSACTION);
             builder.verify(getServiceHub());
+            timer.step(SIGNING_TRANSACTION);
             final SignedTransaction ptx = getServiceHub().signInitialTransaction(builder);
 
             // Step 6. The second argument of FinalityFlow should be empty,
             // as no signatures on other nodes are needed.
             List<FlowSession> sessions = Collections.emptyList();
-            return subFlow(new FinalityFlow(ptx, sessions));
+            // The notary is called apart from the FinalityFlow, so that its share of the latency is timed on its own.
+            timer.step(NOTARISING_TRANSACTION);
+            final Stopwatch finality = Stopwatch.start();
+            final SignedTransaction notarised = ptx.withAdditionalSignatures(
+                    subFlow(new NotaryFlow.Client(ptx, NOTARISING_TRANSACTION.childProgressTracker())));
+            timer.step(FINALISING_TRANSACTION);
+            final SignedTransaction stx = subFlow(new FinalityFlow(notarised, sessions, FINALISING_TRANSACTION.childProgressTracker()));
+            notarySelector.recordLatency(notary, finality.elapsedNanos());
+            timer.done();
+            return stx;
 
         }
     }
@@ -0,0 +1,21 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.services.FlowStepMetrics;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByRPC;
+
+/**
+ * Returns the step timings of this node's resident flows from the [FlowStepMetrics],
+ * in the Prometheus text exposition format.
+ */
+@StartableByRPC
+public class FlowStepMetricsFlow extends FlowLogic<String> {
+
+    @Suspendable
+    @Override
+    public String call() throws FlowException {
+        return getServiceHub().cordaService(FlowStepMetrics.class).prometheusText();
+    }
+}
@@ -0,0 +1,61 @@
+package com.template.flows;
+
+import com.template.services.FlowStepMetrics;
+import net.corda.core.utilities.ProgressTracker;
+
+/**
+ * Moves a flow's [ProgressTracker] from step to step, and records how long each step took into the
+ * [FlowStepMetrics]. A step is recorded when the next one starts or the flow is done, so a failed step is not.
+ * Given a [FlowTrace], each step is also recorded as a span of the trace.
+ */
+public class FlowStepTimer {
+
+    private final FlowStepMetrics metrics;
+    private final String flow;
+    private final ProgressTracker progressTracker;
+    private final FlowTrace trace;
+    private FlowSteps.Step current;
+    private Stopwatch stopwatch;
+
+    public FlowStepTimer(FlowStepMetrics metrics, Class<?> flowClass, ProgressTracker progressTracker) {
+        this(metrics, flowClass, progressTracker, null);
+    }
+
+    public FlowStepTimer(FlowStepMetrics metrics, Class<?> flowClass, ProgressTracker progressTracker, FlowTrace trace) {
+        this.metrics = metrics;
+        // RegisterInformationFlow$InitiatorFlow, as the flow is named in the shell.
+        this.flow = flowClass.getName().substring(flowClass.getName().lastIndexOf('.') + 1);
+        this.progressTracker = progressTracker;
+        this.trace = trace;
+    }
+
+    /* step
+     * Ends the current step, if any, and starts the next one.
+     */
+    public void step(FlowSteps.Step next) {
+        done();
+        progressTracker.setCurrentStep(next);
+        current = next;
+        stopwatch = Stopwatch.start();
+        if (trace != null) {
+            trace.begin(next.metric);
+        }
+    }
+
+    /* done
+     * Ends the current step.
+     */
+    public void done() {
+        if (current != null) {
+            long elapsed = stopwatch.elapsedNanos();
+            // A step the node restarted during is not recorded.
+            if (elapsed >= 0) {
+                metrics.record(flow, current.metric, elapsed);
+            }
+            current = null;
+        }
+        if (trace != null) {
+            trace.end();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.template.flows;
+
+import net.corda.core.flows.CollectSignaturesFlow;
+import net.corda.core.flows.FinalityFlow;
+import net.corda.core.flows.NotaryFlow;
+import net.corda.core.flows.SignTransactionFlow;
+import net.corda.core.utilities.ProgressTracker;
+
+/**
+ * The ProgressTracker steps of the resident flows. Each step has the short name its timings are recorded under
+ * by the [FlowStepTimer], so that the same phase is comparable across flows.
+ */
+public final class FlowSteps {
+
+    /**
+     * A ProgressTracker step whose timings are recorded under metric.
+     */
+    public static class Step extends ProgressTracker.Step {
+        public final String metric;
+
+        public Step(String metric, String label) {
+            super(label);
+            this.metric = metric;
+        }
+    }
+
+    public static final Step QUERYING_VAULT = new Step("vault_query", "Retrieving the resident's current state.");
+    public static final Step REISSUING = new Step("reissue", "Reissuing the resident to cut its backchain.");
+    public static final Step GENERATING_TRANSACTION = new Step("build", "Choosing the notary and building the transaction.");
+    public static final Step VERIFYING_TRANSACTION = new Step("verify", "Verifying the contract constraints.");
+    public static final Step SIGNING_TRANSACTION = new Step("sign", "Signing the transaction with our private key.");
+    public static final Step GATHERING_SIGNATURES = new Step("collect_signatures", "Gathering the counterparties' signatures.") {
+        @Override
+        public ProgressTracker childProgressTracker() {
+            return CollectSignaturesFlow.Companion.tracker();
+        }
+    };
+    public static final Step NOTARISING_TRANSACTION = new Step("notarise", "Obtaining the notary's signature.") {
+        @Override
+        public ProgressTracker childProgressTracker() {
+            return NotaryFlow.Client.Companion.tracker();
+        }
+    };
+    public static final Step FINALISING_TRANSACTION = new Step("finality", "Recording the transaction and sending it to the counterparties.") {
+        @Override
+        public ProgressTracker childProgressTracker() {
+            return FinalityFlow.Companion.tracker();
+        }
+    };
+
+    // The counterparty's side of a change.
+    public static final Step CHECKING_AND_SIGNING = new Step("check_and_sign", "Checking and signing the proposed transaction.") {
+        @Override
+        public ProgressTracker childProgressTracker() {
+            return SignTransactionFlow.Companion.tracker();
+        }
+    };
+    public static final Step RECEIVING_FINALITY = new Step("receive_finality", "Receiving and recording the notarised transaction.");
+
+    private FlowSteps() {
+    }
+}
@@ -0,0 +1,64 @@
+package com.template.flows;
+
+import com.template.services.SpanLog;
+import net.corda.core.crypto.SecureHash;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * The spans of one flow taking part in a trace, recorded into the [SpanLog]. One span is open at a time:
+ * beginning a span ends the previous one. The trace ID is generated by the flow that starts the trace
+ * and sent to its counterparties, so every node's spans of the transaction share it.
+ */
+public class FlowTrace {
+
+    private final SpanLog spanLog;
+    private final UUID traceId;
+    private final String flow;
+    private SecureHash txId;
+    private String current;
+    private Instant startedAt;
+    private Stopwatch stopwatch;
+
+    public FlowTrace(SpanLog spanLog, UUID traceId, Class<?> flowClass) {
+        this.spanLog = spanLog;
+        this.traceId = traceId;
+        this.flow = flowClass.getName().substring(flowClass.getName().lastIndexOf('.') + 1);
+    }
+
+    public UUID getTraceId() {
+        return traceId;
+    }
+
+    /* setTransactionId
+     * Tags the current and later spans with the transaction, once it is known.
+     */
+    public void setTransactionId(SecureHash txId) {
+        this.txId = txId;
+    }
+
+    /* begin
+     * Ends the open span, if any, and opens the next one.
+     */
+    public void begin(String span) {
+        end();
+        current = span;
+        startedAt = Instant.now();
+        stopwatch = Stopwatch.start();
+    }
+
+    /* end
+     * Ends the open span.
+     */
+    public void end() {
+        if (current != null) {
+            long elapsed = stopwatch.elapsedNanos();
+            // A span the node restarted during is not recorded.
+            if (elapsed >= 0) {
+                spanLog.record(traceId, txId, flow, current, startedAt, elapsed);
+            }
+            current = null;
+        }
+    }
+}
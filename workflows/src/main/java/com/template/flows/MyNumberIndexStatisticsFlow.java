@@ -0,0 +1,20 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.services.MyNumberIndex;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByRPC;
+
+/**
+ * Returns the size, memory use, false-positive rates and check counts of this node's [MyNumberIndex].
+ */
+@StartableByRPC
+public class MyNumberIndexStatisticsFlow extends FlowLogic<MyNumberIndex.Statistics> {
+
+    @Suspendable
+    @Override
+    public MyNumberIndex.Statistics call() throws FlowException {
+        return getServiceHub().cordaService(MyNumberIndex.class).getStatistics();
+    }
+}
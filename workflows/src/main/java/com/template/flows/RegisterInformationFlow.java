@@ -2,8 +2,12 @@ package com.template.flows;
 
 import co.paralleluniverse.fibers.Suspendable;
 import com.template.contracts.ResidentInformationContract;
+import com.template.services.FlowStepMetrics;
+import com.template.services.MyNumberIndex;
+import com.template.services.NotarySelector;
 import com.template.states.ResidentInformationState;
 import net.corda.core.contracts.Command;
+import net.corda.core.contracts.TimeWindow;
 import net.corda.core.flows.*;
 import net.corda.core.identity.Party;
 import net.corda.core.transactions.SignedTransaction;
@@ -13,6 +17,8 @@ import net.corda.core.utilities.ProgressTracker;
 import java.util.Collections;
 import java.util.List;
 
+import static com.template.flows.FlowSteps.*;
+
 // ******************
 // * Initiator flow *
 // ******************
@@ -21,7 +27,13 @@ public class RegisterInformationFlow{
     @InitiatingFlow(version = 2)
     @StartableByRPC
     public static class InitiatorFlow extends FlowLogic<SignedTransaction> {
-        private final ProgressTracker progressTracker = new ProgressTracker();
+        private final ProgressTracker progressTracker = new ProgressTracker(
+                GENERATING_TRANSACTION,
+                VERIFYING_TRANSACTION,
+                SIGNING_TRANSACTION,
+                NOTARISING_TRANSACTION,
+                FINALISING_TRANSACTION
+        );
 
         public final String     residentName;
         public final String     myNumber;
@@ -47,43 +59,75 @@ public class RegisterInformationFlow{
         @Suspendable
         @Override
         public SignedTransaction call() throws FlowException {
-            // Step 1. Get a reference to the notary service on our network and our key pair.
-            // Note: ongoing work to support multiple notary identities is still in progress.
-            final Party notary = getServiceHub().getNetworkMapCache().getNotaryIdentities().get(0);
-
-            // Step Create outputState
-            ResidentInformationState residentA =
-                    new ResidentInformationState(
-                            residentName,
-                            myNumber,
-                            currentCity,
-                            currentAddress,
-                            birthday,
-                            oldAddress
-                    );
-
-            // Step 2. Create a new issue command.
-            // Remember that a command is a CommandData object and a list of CompositeKeys
-
-            final Command<ResidentInformationContract.Commands.RegisterInformation> registerCommand = new Command<>(
-                    new ResidentInformationContract.Commands.RegisterInformation(),residentA.getCurrentCity().getOwningKey());
-
-            // Step 3. Create a new TransactionBuilder object.
-            final TransactionBuilder builder = new TransactionBuilder(notary);
-
-            // Step 4. Add the iou as an output state, as well as a command to the transaction builder.
-
-            builder.addOutputState(residentA, ResidentInformationContract.IOU_CONTRACT_ID);
-            builder.addCommand(registerCommand);
-
-            // Step 5. Verify and sign it with our KeyPair.
-            builder.verify(getServiceHub());
-            final SignedTransaction ptx = getServiceHub().signInitialTransaction(builder);
-
-            // Step 6. The second argument of FinalityFlow should be empty,
-            // as no signatures on other nodes are needed.
-            List<FlowSession> sessions = Collections.emptyList();
-            return subFlow(new FinalityFlow(ptx, sessions));
+            final FlowStepTimer timer = new FlowStepTimer(
+                    getServiceHub().cordaService(FlowStepMetrics.class), getClass(), progressTracker);
+            // Reject a myNumber already registered in this city, from the MyNumberIndex rather than the vault.
+            // It stays reserved until the registration is recorded, or is released however the flow fails.
+            final MyNumberIndex myNumberIndex = getServiceHub().cordaService(MyNumberIndex.class);
+            if (myNumber != null && !myNumberIndex.tryReserve(myNumber, getRunId().getUuid())) {
+                throw new FlowException("A resident with this myNumber is already registered in this city.");
+            }
+            boolean registered = false;
+            try {
+                timer.step(GENERATING_TRANSACTION);
+
+                // Step Create outputState
+                ResidentInformationState residentA =
+                        new ResidentInformationState(
+                                residentName,
+                                myNumber,
+                                currentCity,
+                                currentAddress,
+                                birthday,
+                                oldAddress
+                        );
+
+                // Step 1. Choose the notary service for the new resident with the NotarySelector.
+                final NotarySelector notarySelector = getServiceHub().cordaService(NotarySelector.class);
+                final Party notary = notarySelector.select(residentA.getLinearId());
+
+                // Step 2. Create a new issue command.
+                // Remember that a command is a CommandData object and a list of CompositeKeys
+
+                final Command<ResidentInformationContract.Commands.RegisterInformation> registerCommand = new Command<>(
+                        new ResidentInformationContract.Commands.RegisterInformation(),residentA.getCurrentCity().getOwningKey());
+
+                // Step 3. Create a new TransactionBuilder object.
+                final TransactionBuilder builder = new TransactionBuilder(notary);
+
+                // Step 4. Add the iou as an output state, as well as a command to the transaction builder.
+
+                builder.addOutputState(residentA, ResidentInformationContract.IOU_CONTRACT_ID);
+                builder.addCommand(registerCommand);
+                // Dates the first residence.
+                builder.setTimeWindow(TimeWindow.fromOnly(getServiceHub().getClock().instant()));
+
+                // Step 5. Verify and sign it with our KeyPair.
+                timer.step(VERIFYING_TRANSACTION);
+                builder.verify(getServiceHub());
+                timer.step(SIGNING_TRANSACTION);
+                final SignedTransaction ptx = getServiceHub().signInitialTransaction(builder);
+
+                // Step 6. The second argument of FinalityFlow should be empty,
+                // as no signatures on other nodes are needed.
+                List<FlowSession> sessions = Collections.emptyList();
+                // The notary is called apart from the FinalityFlow, so that its share of the latency is timed on its own.
+                timer.step(NOTARISING_TRANSACTION);
+                final Stopwatch finality = Stopwatch.start();
+                final SignedTransaction notarised = ptx.withAdditionalSignatures(
+                        subFlow(new NotaryFlow.Client(ptx, NOTARISING_TRANSACTION.childProgressTracker())));
+                timer.step(FINALISING_TRANSACTION);
+                final SignedTransaction stx = subFlow(new FinalityFlow(notarised, sessions, FINALISING_TRANSACTION.childProgressTracker()));
+                notarySelector.recordLatency(notary, finality.elapsedNanos());
+                timer.done();
+                registered = true;
+                return stx;
+            } finally {
+                // Once registered, the reservation ends when the vault update of the state reaches the index.
+                if (!registered) {
+                    myNumberIndex.release(getRunId().getUuid());
+                }
+            }
 
         }
     }
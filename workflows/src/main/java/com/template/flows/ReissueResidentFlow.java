@@ -0,0 +1,140 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.contracts.ResidentInformationContract;
+import com.template.services.MyNumberIndex;
+import com.template.services.NotarySelector;
+import com.template.states.ResidentInformationState;
+import net.corda.core.contracts.Command;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.contracts.TimeWindow;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.crypto.CryptoUtils;
+import net.corda.core.crypto.TransactionSignature;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.FilteredTransaction;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.ProgressTracker;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+// ******************
+// * Initiator flow *
+// ******************
+/**
+ * Cuts the backchain of a resident: the current state is exited, and the same resident, with the same linearId,
+ * is registered again in a new transaction without inputs. The new chain starts at that transaction, so a city
+ * the resident moves to next only resolves the transactions since.
+ *
+ * Only the current city signs either transaction, as for a registration, and the exit is notarised first, so the
+ * old state cannot be spent after it is reissued. The Reissue command carries the notarised exit, filtered down to
+ * its inputs and its ExitForReissue command, with the notary's signature, so the contract can check the link.
+ *
+ * The reissue is notarised by the notary of the exited state. Once the exit is final, only the notarisation and
+ * recording of the reissue can fail, and the flow retries them until they succeed: a transaction without inputs
+ * cannot conflict, and notarising it again is harmless. The flow is checkpointed, so a node restart resumes the
+ * retries instead of leaving the resident exited and not reissued.
+ */
+public class ReissueResidentFlow {
+
+    @InitiatingFlow
+    @StartableByRPC
+    public static class InitiatorFlow extends FlowLogic<SignedTransaction> {
+        private static final Duration FIRST_RETRY_PAUSE = Duration.ofSeconds(1);
+        private static final Duration LONGEST_RETRY_PAUSE = Duration.ofMinutes(1);
+
+        private final ProgressTracker progressTracker = new ProgressTracker();
+
+        private final UniqueIdentifier linearId;
+
+        public InitiatorFlow(UniqueIdentifier linearId) {
+            this.linearId = linearId;
+        }
+
+        @Override
+        public ProgressTracker getProgressTracker() {
+            return progressTracker;
+        }
+
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws FlowException {
+
+            // Step 1. Retrieve and soft lock the resident's current state, which must be ours.
+            StateAndRef<ResidentInformationState> exited = subFlow(new ReserveResidentFlow(linearId));
+            if (exited == null) {
+                throw new FlowException("No unconsumed resident was found for " + linearId);
+            }
+            ResidentInformationState resident = exited.getState().getData();
+            if (!resident.currentCity.getOwningKey().equals(getOurIdentity().getOwningKey())) {
+                throw new IllegalArgumentException("This flow must be run by the currentCity.");
+            }
+            List<FlowSession> sessions = Collections.emptyList();
+
+            // Step 2. Hold the resident's myNumber, so no registration takes it between the exit and the reissue.
+            // The reissued state ends the reservation once it is recorded.
+            final MyNumberIndex myNumberIndex = getServiceHub().cordaService(MyNumberIndex.class);
+            if (resident.getMyNumber() != null && !myNumberIndex.hold(resident.getMyNumber(), getRunId().getUuid())) {
+                throw new FlowException("The myNumber of resident " + linearId + " is reserved by another flow.");
+            }
+
+            // Step 3. Exit the state, showing the exited resident.
+            final Party notary = exited.getState().getNotary();
+            TransactionBuilder exit = new TransactionBuilder(notary);
+            exit.addInputState(exited);
+            exit.addCommand(new ResidentInformationContract.Commands.ExitForReissue(Collections.singletonList(resident)),
+                    resident.currentCity.getOwningKey());
+            final SignedTransaction notarisedExit;
+            try {
+                exit.verify(getServiceHub());
+                notarisedExit = subFlow(new FinalityFlow(getServiceHub().signInitialTransaction(exit), sessions));
+            } catch (FlowException | RuntimeException e) {
+                myNumberIndex.release(getRunId().getUuid());
+                throw e;
+            }
+
+            // Step 4. Register the same resident again with the notary the state was pinned to, proving the exit
+            // by the notary's signature over it and revealing only what the contract checks.
+            final TransactionSignature exitNotarySignature = notarisedExit.getSigs().stream()
+                    .filter(sig -> CryptoUtils.isFulfilledBy(notary.getOwningKey(), sig.getBy()))
+                    .findFirst()
+                    .orElseThrow(() -> new FlowException("The exit " + notarisedExit.getId() + " was not signed by " + notary));
+            final FilteredTransaction exitProof = notarisedExit.getTx().buildFilteredTransaction(component ->
+                    component instanceof StateRef || component instanceof Party
+                            || (component instanceof Command
+                                && ((Command<?>) component).getValue() instanceof ResidentInformationContract.Commands.ExitForReissue));
+            TransactionBuilder reissue = new TransactionBuilder(notary);
+            reissue.addOutputState(resident, ResidentInformationContract.IOU_CONTRACT_ID);
+            reissue.addCommand(new Command<>(new ResidentInformationContract.Commands.Reissue(exitProof, exitNotarySignature),
+                    resident.currentCity.getOwningKey()));
+            reissue.setTimeWindow(TimeWindow.fromOnly(getServiceHub().getClock().instant()));
+            reissue.verify(getServiceHub());
+            final SignedTransaction signedReissue = getServiceHub().signInitialTransaction(reissue);
+
+            // Step 5. Notarise and record the reissue, until it succeeds.
+            final NotarySelector notarySelector = getServiceHub().cordaService(NotarySelector.class);
+            Duration pause = FIRST_RETRY_PAUSE;
+            SignedTransaction stx;
+            while (true) {
+                final Stopwatch finality = Stopwatch.start();
+                try {
+                    stx = subFlow(new FinalityFlow(signedReissue, sessions));
+                    notarySelector.recordLatency(notary, finality.elapsedNanos());
+                    break;
+                } catch (FlowException e) {
+                    getLogger().warn("Reissue {} of resident {} failed, retrying in {}: {}",
+                            signedReissue.getId(), linearId, pause, e.getMessage());
+                }
+                sleep(pause);
+                Duration doubled = pause.multipliedBy(2);
+                pause = doubled.compareTo(LONGEST_RETRY_PAUSE) < 0 ? doubled : LONGEST_RETRY_PAUSE;
+            }
+            return stx;
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.contracts.ResidentInformationContract;
+import com.template.contracts.ResidentInformationContract.Commands.ChangeInformation;
+import com.template.flows.BulkChangeInformationFlow.Outcome;
+import com.template.flows.BulkChangeInformationFlow.Relocation;
+import com.template.services.BackchainPolicy;
+import com.template.services.NotarySelector;
+import com.template.services.ResidentStateCache;
+import com.template.states.ResidentInformationState;
+import net.corda.core.contracts.Command;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.TimeWindow;
+import net.corda.core.contracts.TransactionState;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.crypto.TransactionSignature;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.node.StatesToRecord;
+import net.corda.core.node.services.StatesNotAvailableException;
+import net.corda.core.serialization.CordaSerializable;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.NonEmptySet;
+import net.corda.core.utilities.ProgressTracker;
+
+import java.security.PublicKey;
+import java.security.SignatureException;
+import java.util.*;
+
+// ******************
+// * Initiator flow *
+// ******************
+/**
+ * Moves a stream of residents to the same new city over one session, each in a transaction of its own.
+ *
+ * Unlike [ChangeInformationFlow], which starts a session and a [Responder] flow on the new city for every move,
+ * the channel starts them once. The moves are proposed in windows: every transaction of a window is sent before
+ * any signature is awaited, and the new city resolves, checks and signs each in turn and sends the signatures back
+ * together. Each move is then notarised and handed over to the new city before this city records it and before
+ * anything else that could fail, so a channel that aborts never leaves a resident consumed here and missing there.
+ * A move that fails at the notary does not stop the others, unlike the chunks of the [BulkChangeInformationFlow].
+ *
+ * The channel ends once every relocation has been proposed, with the new city acknowledging how many
+ * transactions it recorded.
+ */
+public class RelocationChannelFlow {
+
+    // Number of moves proposed before waiting for their signatures when no window is given.
+    public static final int DEFAULT_WINDOW = 16;
+
+    /**
+     * Sent to the new city for each proposal once its notarisation is over: the notarised transaction to record,
+     * or no transaction if the notary rejected the move.
+     */
+    @CordaSerializable
+    public static class Notarised {
+        public final SecureHash id;
+        public final SignedTransaction transaction;
+
+        public Notarised(SecureHash id, SignedTransaction transaction) {
+            this.id          = id;
+            this.transaction = transaction;
+        }
+    }
+
+    @InitiatingFlow
+    @StartableByRPC
+    public static class InitiatorFlow extends FlowLogic<List<Outcome>> {
+        private final ProgressTracker progressTracker = new ProgressTracker();
+
+        private final List<Relocation> relocations;
+        private final Party newCity;
+        private final int window;
+
+        public InitiatorFlow(List<Relocation> relocations, Party newCity, int window) {
+            if (window < 1) throw new IllegalArgumentException("window must be at least 1.");
+            this.relocations = relocations;
+            this.newCity     = newCity;
+            this.window      = window;
+        }
+
+        public InitiatorFlow(List<Relocation> relocations, Party newCity) {
+            this(relocations, newCity, DEFAULT_WINDOW);
+        }
+
+        @Override
+        public ProgressTracker getProgressTracker() {
+            return progressTracker;
+        }
+
+        @Suspendable
+        @Override
+        public List<Outcome> call() throws FlowException {
+
+            final Party oldCity = getOurIdentity();
+            if (newCity.getOwningKey().equals(oldCity.getOwningKey())) {
+                throw new IllegalArgumentException("The currentCity property must change in a transfer.");
+            }
+
+            final NotarySelector notarySelector = getServiceHub().cordaService(NotarySelector.class);
+            List<Outcome> outcomes = new ArrayList<>(Collections.nCopies(relocations.size(), null));
+            Set<UUID> seenLinearIds = new HashSet<>();
+            FlowSession newCitySession = initiateFlow(newCity);
+
+            int moved = 0;
+            int next = 0;
+            while (true) {
+                // Step 1. Build and sign the transactions of the next window, without any remote work.
+                // A relocation that cannot be proposed is reported and skipped.
+                List<Integer> indexes = new ArrayList<>(window);
+                List<SignedTransaction> proposals = new ArrayList<>(window);
+                while (next < relocations.size() && proposals.size() < window) {
+                    int index = next++;
+                    try {
+                        proposals.add(propose(relocations.get(index), oldCity, seenLinearIds));
+                        indexes.add(index);
+                    } catch (FlowException e) {
+                        outcomes.set(index, new Outcome(relocations.get(index).linearId, null, message(e)));
+                    }
+                }
+
+                // Step 2. Announce the proposals. None close the channel.
+                newCitySession.send(proposals.size());
+                if (proposals.isEmpty()) {
+                    break;
+                }
+
+                // Step 3. Send every proposal of the window before waiting for the signatures.
+                for (SignedTransaction proposal : proposals) {
+                    subFlow(new SendTransactionFlow(newCitySession, proposal));
+                }
+                List<?> signatures = newCitySession.receive(List.class).unwrap(list -> {
+                    if (list.size() != proposals.size()) {
+                        throw new FlowException("Expected " + proposals.size() + " signatures, got " + list.size());
+                    }
+                    return list;
+                });
+
+                // Step 4. Check every signature of the window before notarising any of its moves.
+                List<SignedTransaction> fullySigned = new ArrayList<>(proposals.size());
+                for (int i = 0; i < proposals.size(); i++) {
+                    fullySigned.add(proposals.get(i).withAdditionalSignature(
+                            checkSignature(signatures.get(i), proposals.get(i))));
+                }
+
+                // Step 5. Notarise each move and hand it over to the new city at once, then record it here.
+                // The transactions were verified when they were built, so the notary client does not verify them again.
+                // A double spend only fails its own move.
+                for (int i = 0; i < fullySigned.size(); i++) {
+                    SignedTransaction ftx = fullySigned.get(i);
+                    Relocation relocation = relocations.get(indexes.get(i));
+                    Party notary = ftx.getNotary();
+                    final Stopwatch notarisation = Stopwatch.start();
+                    SignedTransaction stx;
+                    try {
+                        stx = ftx.withAdditionalSignatures(subFlow(new NotaryFlow.Client(ftx, true)));
+                    } catch (NotaryException e) {
+                        newCitySession.send(new Notarised(ftx.getId(), null));
+                        outcomes.set(indexes.get(i), new Outcome(relocation.linearId, null, message(e)));
+                        continue;
+                    }
+                    notarySelector.recordLatency(notary, notarisation.elapsedNanos());
+                    newCitySession.send(new Notarised(stx.getId(), stx));
+                    getServiceHub().recordTransactions(stx);
+                    outcomes.set(indexes.get(i), new Outcome(relocation.linearId, stx.getId(), null));
+                    moved++;
+                }
+            }
+
+            // Step 6. The new city acknowledges what it recorded once the channel is closed.
+            int recorded = newCitySession.receive(Integer.class).unwrap(count -> count);
+            if (recorded != moved) {
+                throw new FlowException("The new city recorded " + recorded + " of the " + moved + " moves.");
+            }
+            return outcomes;
+        }
+
+        /* propose
+         * Soft locks the resident's state, reissues it or moves it to the chosen notary if needed,
+         * and returns the move signed by this city. Throws a FlowException if the resident cannot be moved.
+         */
+        @Suspendable
+        private SignedTransaction propose(Relocation relocation, Party oldCity, Set<UUID> seenLinearIds) throws FlowException {
+            StateAndRef<ResidentInformationState> stateAndRef =
+                    getServiceHub().cordaService(ResidentStateCache.class).resolve(relocation.linearId);
+            String error = BulkChangeInformationFlow.InitiatorFlow.validate(relocation, stateAndRef, oldCity, seenLinearIds);
+            if (error != null) {
+                throw new FlowException(error);
+            }
+            // The channel does not wait for a resident another flow is changing.
+            reserve(stateAndRef);
+            if (getServiceHub().cordaService(BackchainPolicy.class).shouldReissue(stateAndRef)) {
+                stateAndRef = subFlow(new ReissueResidentFlow.InitiatorFlow(relocation.linearId)).getTx().outRef(0);
+                reserve(stateAndRef);
+            }
+            Party notary = getServiceHub().cordaService(NotarySelector.class).selectFor(stateAndRef, relocation.linearId);
+            if (!notary.equals(stateAndRef.getState().getNotary())) {
+                stateAndRef = subFlow(new NotaryChangeFlow<>(stateAndRef, notary,
+                        AbstractStateReplacementFlow.Instigator.Companion.tracker()));
+                reserve(stateAndRef);
+            }
+
+            List<PublicKey> listOfRequiredSigners = Arrays.asList(oldCity.getOwningKey(), newCity.getOwningKey());
+            TransactionBuilder tb = new TransactionBuilder(notary);
+            tb.addInputState(stateAndRef);
+            tb.addOutputState(stateAndRef.getState().getData().withNewCurrentCity(newCity, relocation.newAddress),
+                    ResidentInformationContract.IOU_CONTRACT_ID);
+            tb.addCommand(new Command<>(new ChangeInformation(), listOfRequiredSigners));
+            // Dates the move in the ResidentAddressHistory.
+            tb.setTimeWindow(TimeWindow.fromOnly(getServiceHub().getClock().instant()));
+            tb.verify(getServiceHub());
+            return getServiceHub().signInitialTransaction(tb);
+        }
+
+        @Suspendable
+        private void reserve(StateAndRef<ResidentInformationState> stateAndRef) throws FlowException {
+            try {
+                getServiceHub().getVaultService().softLockReserve(getRunId().getUuid(), NonEmptySet.of(stateAndRef.getRef()));
+            } catch (StatesNotAvailableException e) {
+                throw new FlowException("The resident is being changed by another flow.", e);
+            }
+        }
+
+        private TransactionSignature checkSignature(Object signature, SignedTransaction proposal) throws FlowException {
+            if (!(signature instanceof TransactionSignature)
+                    || !((TransactionSignature) signature).getBy().equals(newCity.getOwningKey())) {
+                throw new FlowException("The new city did not sign " + proposal.getId());
+            }
+            try {
+                ((TransactionSignature) signature).verify(proposal.getId());
+            } catch (SignatureException e) {
+                throw new FlowException("The new city's signature of " + proposal.getId() + " is invalid.", e);
+            }
+            return (TransactionSignature) signature;
+        }
+
+        private static String message(FlowException e) {
+            return e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+        }
+    }
+
+    /**
+     * The new city's end of the channel. It signs the proposals of each window after resolving and verifying them,
+     * and records each notarised transaction as soon as it is handed over, which must be one it signed in the window.
+     */
+    @InitiatedBy(RelocationChannelFlow.InitiatorFlow.class)
+    public static class Responder extends FlowLogic<Integer> {
+
+        private final FlowSession otherPartyFlow;
+
+        public Responder(FlowSession otherPartyFlow) {
+            this.otherPartyFlow = otherPartyFlow;
+        }
+
+        @Suspendable
+        @Override
+        public Integer call() throws FlowException {
+            final Party ourIdentity = getOurIdentity();
+            int recorded = 0;
+
+            while (true) {
+                int proposals = otherPartyFlow.receive(Integer.class).unwrap(count -> count);
+                if (proposals == 0) {
+                    break;
+                }
+
+                // Step 1. Resolve, verify and check each proposal, and send the signatures back together.
+                List<SecureHash> signedIds = new ArrayList<>(proposals);
+                List<TransactionSignature> signatures = new ArrayList<>(proposals);
+                for (int i = 0; i < proposals; i++) {
+                    SignedTransaction proposal = subFlow(new ReceiveTransactionFlow(otherPartyFlow, false, StatesToRecord.NONE));
+                    check(proposal, ourIdentity);
+                    signatures.add(getServiceHub().createSignature(proposal));
+                    signedIds.add(proposal.getId());
+                }
+                otherPartyFlow.send(signatures);
+
+                // Step 2. Record each move as soon as it is notarised, in the order they were proposed.
+                for (SecureHash signedId : signedIds) {
+                    Notarised notarised = otherPartyFlow.receive(Notarised.class).unwrap(received -> {
+                        if (!signedId.equals(received.id)) {
+                            throw new FlowException("Expected the notarisation of " + signedId + ", got " + received.id);
+                        }
+                        if (received.transaction != null && !signedId.equals(received.transaction.getId())) {
+                            throw new FlowException("The transaction " + received.transaction.getId() + " was not signed on this channel.");
+                        }
+                        return received;
+                    });
+                    if (notarised.transaction == null) {
+                        continue;
+                    }
+                    try {
+                        notarised.transaction.verifyRequiredSignatures();
+                    } catch (SignatureException e) {
+                        throw new FlowException("The transaction " + signedId + " is not fully signed.", e);
+                    }
+                    getServiceHub().recordTransactions(StatesToRecord.ONLY_RELEVANT, Collections.singletonList(notarised.transaction));
+                    recorded++;
+                }
+            }
+
+            otherPartyFlow.send(recorded);
+            return recorded;
+        }
+
+        /* check
+         * A proposal must move residents to our city, and be signed by the old city.
+         */
+        private void check(SignedTransaction proposal, Party ourIdentity) throws FlowException {
+            boolean isMove = false;
+            for (Command<?> command : proposal.getTx().getCommands()) {
+                isMove |= command.getValue() instanceof ChangeInformation;
+            }
+            if (!isMove) {
+                throw new FlowException("The transaction " + proposal.getId() + " is not a move.");
+            }
+            for (TransactionState<ContractState> output : proposal.getTx().getOutputs()) {
+                if (!(output.getData() instanceof ResidentInformationState)
+                        || !((ResidentInformationState) output.getData()).currentCity.getOwningKey().equals(ourIdentity.getOwningKey())) {
+                    throw new FlowException("Every resident of " + proposal.getId() + " must move to our city.");
+                }
+            }
+            try {
+                proposal.verifySignaturesExcept(Arrays.asList(ourIdentity.getOwningKey(), proposal.getNotary().getOwningKey()));
+            } catch (SignatureException e) {
+                throw new FlowException("The transaction " + proposal.getId() + " is not signed by the old city.", e);
+            }
+        }
+    }
+}
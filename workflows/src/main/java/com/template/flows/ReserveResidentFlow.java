@@ -0,0 +1,131 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.services.ResidentStateCache;
+import com.template.states.ResidentInformationState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.cordapp.CordappConfig;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.NotaryException;
+import net.corda.core.node.ServiceHub;
+import net.corda.core.node.services.StatesNotAvailableException;
+import net.corda.core.utilities.NonEmptySet;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Resolves the current state of a resident and soft locks it in the vault for the calling flow, so that
+ * the changes and deletions of the same resident started on this node run one after the other instead of
+ * racing to the notary, where all but one would fail after collecting their signatures.
+ *
+ * While another flow holds the lock, the resident is resolved again after a pause, so a flow that was
+ * waiting continues with the state the other flow left behind, or fails early if it is no longer this node's.
+ * The lock is released when the calling flow ends. A flow that replaces the resident's state before its own
+ * transaction, by a reissue or a notary change, reserves the replacement as well.
+ * Returns null if there is no unconsumed state of the resident.
+ *
+ * Locking can be turned off with "serializeResidentChanges = false" in the CorDapp config, and the time
+ * a flow waits for the lock is set with "residentLockTimeoutMillis" (30 seconds by default).
+ *
+ * The bulk flows lock all their residents at once with [reserveAll] instead, without waiting.
+ */
+public class ReserveResidentFlow extends FlowLogic<StateAndRef<ResidentInformationState>> {
+
+    public static final String ENABLED_CONFIG = "serializeResidentChanges";
+    public static final String TIMEOUT_CONFIG = "residentLockTimeoutMillis";
+    public static final long DEFAULT_TIMEOUT_MILLIS = 30_000;
+
+    private static final Duration FIRST_PAUSE = Duration.ofMillis(50);
+    private static final Duration LONGEST_PAUSE = Duration.ofSeconds(1);
+
+    private final UniqueIdentifier linearId;
+
+    public ReserveResidentFlow(UniqueIdentifier linearId) {
+        this.linearId = linearId;
+    }
+
+    @Suspendable
+    @Override
+    public StateAndRef<ResidentInformationState> call() throws FlowException {
+        CordappConfig config = getServiceHub().getAppContext().getConfig();
+        boolean enabled = isEnabled(getServiceHub());
+        long timeoutMillis = config.exists(TIMEOUT_CONFIG) ? config.getLong(TIMEOUT_CONFIG) : DEFAULT_TIMEOUT_MILLIS;
+
+        ResidentStateCache cache = getServiceHub().cordaService(ResidentStateCache.class);
+        long deadline = getServiceHub().getClock().millis() + timeoutMillis;
+        Duration pause = FIRST_PAUSE;
+        while (true) {
+            StateAndRef<ResidentInformationState> current = cache.resolve(linearId);
+            if (current == null || !enabled) {
+                return current;
+            }
+            // Reserving again a state this run has already locked, as a calling flow may have, succeeds.
+            try {
+                getServiceHub().getVaultService().softLockReserve(getRunId().getUuid(), NonEmptySet.of(current.getRef()));
+                return current;
+            } catch (StatesNotAvailableException e) {
+                if (getServiceHub().getClock().millis() >= deadline) {
+                    throw new FlowException("Resident " + linearId + " is still being changed by another flow", e);
+                }
+            }
+            sleep(pause);
+            Duration doubled = pause.multipliedBy(2);
+            pause = doubled.compareTo(LONGEST_PAUSE) < 0 ? doubled : LONGEST_PAUSE;
+        }
+    }
+
+    static boolean isEnabled(ServiceHub serviceHub) {
+        CordappConfig config = serviceHub.getAppContext().getConfig();
+        return !config.exists(ENABLED_CONFIG) || config.getBoolean(ENABLED_CONFIG);
+    }
+
+    /* reserveAll
+     * Soft locks the states for the flow without waiting, and returns the refs of those another flow holds.
+     * The states are locked in one call when none is held, and one by one otherwise, as the vault locks
+     * all the states of a call or none of them. Nothing is locked, and nothing returned, if locking is off.
+     */
+    static Set<StateRef> reserveAll(FlowLogic<?> flow, Collection<StateAndRef<ResidentInformationState>> states) {
+        Set<StateRef> held = new HashSet<>();
+        if (states.isEmpty() || !isEnabled(flow.getServiceHub())) {
+            return held;
+        }
+        Set<StateRef> refs = new LinkedHashSet<>(states.size() * 2);
+        for (StateAndRef<ResidentInformationState> stateAndRef : states) {
+            refs.add(stateAndRef.getRef());
+        }
+        try {
+            flow.getServiceHub().getVaultService().softLockReserve(flow.getRunId().getUuid(), NonEmptySet.copyOf(refs));
+            return held;
+        } catch (StatesNotAvailableException e) {
+            // Some of the states are held: lock the others one by one.
+        }
+        for (StateRef ref : refs) {
+            try {
+                flow.getServiceHub().getVaultService().softLockReserve(flow.getRunId().getUuid(), NonEmptySet.of(ref));
+            } catch (StatesNotAvailableException e) {
+                held.add(ref);
+            }
+        }
+        return held;
+    }
+
+    /* failedAtNotary
+     * Whether a flow failed because the notary had seen one of its inputs consumed already,
+     * the late and costly failure the soft locks are there to avoid.
+     */
+    public static boolean failedAtNotary(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof NotaryException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,29 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.services.ResidentAddressHistory;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByRPC;
+
+import java.util.List;
+
+/**
+ * Returns every residence of a resident, oldest first, from this node's [ResidentAddressHistory].
+ */
+@StartableByRPC
+public class ResidentHistoryFlow extends FlowLogic<List<ResidentAddressHistory.Residence>> {
+
+    private final UniqueIdentifier linearId;
+
+    public ResidentHistoryFlow(UniqueIdentifier linearId) {
+        this.linearId = linearId;
+    }
+
+    @Suspendable
+    @Override
+    public List<ResidentAddressHistory.Residence> call() throws FlowException {
+        return getServiceHub().cordaService(ResidentAddressHistory.class).history(linearId);
+    }
+}
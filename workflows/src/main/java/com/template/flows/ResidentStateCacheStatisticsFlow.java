@@ -0,0 +1,20 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.services.ResidentStateCache;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByRPC;
+
+/**
+ * Returns the hit/miss statistics of this node's [ResidentStateCache].
+ */
+@StartableByRPC
+public class ResidentStateCacheStatisticsFlow extends FlowLogic<ResidentStateCache.Statistics> {
+
+    @Suspendable
+    @Override
+    public ResidentStateCache.Statistics call() throws FlowException {
+        return getServiceHub().cordaService(ResidentStateCache.class).getStatistics();
+    }
+}
@@ -0,0 +1,33 @@
+package com.template.flows;
+
+import java.util.UUID;
+
+/**
+ * A start time that a flow can keep across its suspensions. System.nanoTime has an arbitrary origin in each JVM,
+ * and a flow restored from its checkpoint after a node restart runs in another one, so the stopwatch carries the
+ * id of the JVM it was started in and measures nothing once the flow has moved to another.
+ */
+public final class Stopwatch {
+
+    // A new id in each JVM; static, so it is not part of a checkpoint.
+    private static final UUID JVM_ID = UUID.randomUUID();
+
+    private final UUID jvmId;
+    private final long startedAt;
+
+    private Stopwatch(UUID jvmId, long startedAt) {
+        this.jvmId = jvmId;
+        this.startedAt = startedAt;
+    }
+
+    public static Stopwatch start() {
+        return new Stopwatch(JVM_ID, System.nanoTime());
+    }
+
+    /* elapsedNanos
+     * The nanoseconds since the start, or -1 if the flow was restored in another JVM since.
+     */
+    public long elapsedNanos() {
+        return JVM_ID.equals(jvmId) ? System.nanoTime() - startedAt : -1;
+    }
+}
@@ -0,0 +1,137 @@
+package com.template.services;
+
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.cordapp.CordappConfig;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.node.services.TransactionStorage;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import net.corda.core.transactions.SignedTransaction;
+
+import java.util.*;
+
+/**
+ * Measures the backchain of residents and decides when a resident is reissued to cut it.
+ *
+ * The depth of a transaction is the longest path of transactions from it back to an issuance, which is how
+ * many rounds of resolution a new city needs before it can verify a move. Depths never change, so they are
+ * kept in memory for the most recently measured transactions.
+ *
+ * A resident is reissued before it moves once the depth of its state reaches "reissueChainDepth"
+ * in the CorDapp config, 10 by default. 0 turns reissuance off.
+ */
+@CordaService
+public class BackchainPolicy extends SingletonSerializeAsToken {
+
+    public static final String REISSUE_DEPTH_CONFIG = "reissueChainDepth";
+    public static final int DEFAULT_REISSUE_DEPTH = 10;
+    private static final int MAX_CACHED_DEPTHS = 100_000;
+
+    private final AppServiceHub serviceHub;
+    private final int reissueDepth;
+    private final Map<SecureHash, Integer> depths = new LinkedHashMap<SecureHash, Integer>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<SecureHash, Integer> eldest) {
+            return size() > MAX_CACHED_DEPTHS;
+        }
+    };
+
+    public BackchainPolicy(AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+        CordappConfig config = serviceHub.getAppContext().getConfig();
+        this.reissueDepth = config.exists(REISSUE_DEPTH_CONFIG) ? config.getInt(REISSUE_DEPTH_CONFIG) : DEFAULT_REISSUE_DEPTH;
+    }
+
+    public int getReissueDepth() {
+        return reissueDepth;
+    }
+
+    /* shouldReissue
+     * Whether the resident's backchain is deep enough to be cut before the resident moves.
+     */
+    public boolean shouldReissue(StateAndRef<?> stateAndRef) {
+        return reissueDepth > 0 && depth(stateAndRef.getRef().getTxhash()) >= reissueDepth;
+    }
+
+    /* depth
+     * The depth of the transaction: 1 for an issuance, and one more than its deepest input's transaction
+     * otherwise. Transactions this node has not recorded count as 0.
+     * The chain is walked with an explicit stack, as it can be longer than the thread's stack allows.
+     */
+    public int depth(SecureHash txId) {
+        Integer cached = cachedDepth(txId);
+        if (cached != null) {
+            return cached;
+        }
+        TransactionStorage storage = serviceHub.getValidatedTransactions();
+        Map<SecureHash, Integer> measured = new HashMap<>();
+        Deque<SecureHash> stack = new ArrayDeque<>();
+        stack.push(txId);
+        while (!stack.isEmpty()) {
+            SecureHash id = stack.peek();
+            if (measured.containsKey(id)) {
+                stack.pop();
+                continue;
+            }
+            SignedTransaction stx = storage.getTransaction(id);
+            if (stx == null) {
+                measured.put(id, 0);
+                stack.pop();
+                continue;
+            }
+            int deepestInput = 0;
+            boolean inputsMeasured = true;
+            for (StateRef input : stx.getInputs()) {
+                Integer inputDepth = measured.get(input.getTxhash());
+                if (inputDepth == null) {
+                    inputDepth = cachedDepth(input.getTxhash());
+                }
+                if (inputDepth == null) {
+                    stack.push(input.getTxhash());
+                    inputsMeasured = false;
+                } else {
+                    measured.put(input.getTxhash(), inputDepth);
+                    deepestInput = Math.max(deepestInput, inputDepth);
+                }
+            }
+            if (inputsMeasured) {
+                measured.put(id, deepestInput + 1);
+                stack.pop();
+            }
+        }
+        synchronized (depths) {
+            depths.putAll(measured);
+        }
+        return measured.get(txId);
+    }
+
+    /* transactionsToResolve
+     * The number of distinct transactions in the backchain of the transaction, itself included,
+     * counting at most limit of them.
+     */
+    public int transactionsToResolve(SecureHash txId, int limit) {
+        TransactionStorage storage = serviceHub.getValidatedTransactions();
+        Set<SecureHash> seen = new HashSet<>();
+        Deque<SecureHash> toVisit = new ArrayDeque<>();
+        toVisit.add(txId);
+        seen.add(txId);
+        while (!toVisit.isEmpty() && seen.size() < limit) {
+            SignedTransaction stx = storage.getTransaction(toVisit.poll());
+            if (stx == null) continue;
+            for (StateRef input : stx.getInputs()) {
+                if (seen.add(input.getTxhash())) {
+                    toVisit.add(input.getTxhash());
+                }
+            }
+        }
+        return Math.min(seen.size(), limit);
+    }
+
+    private Integer cachedDepth(SecureHash txId) {
+        synchronized (depths) {
+            return depths.get(txId);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.template.services;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.TreeMap;
+
+/**
+ * Tells a cache whether a key changed while a load of it was in flight, so the load does not put back a stale value.
+ *
+ * Every change is stamped with the next generation, and a load remembers the generation it started at. The load's
+ * result may be cached only if its key has not changed since. A change only matters to the loads that started before
+ * it, so it is forgotten as soon as the oldest load in flight started after it, and nothing is kept while no load is
+ * in flight.
+ *
+ * Not thread-safe: the cache calls it with its own lock held.
+ */
+public class ChangeGenerations<K> {
+    private long generation;
+    private long changedAllAtGeneration;
+    // The generation at which each key last changed, oldest first.
+    private final LinkedHashMap<K, Long> changedAtGeneration = new LinkedHashMap<>();
+    // How many loads in flight started at each generation.
+    private final TreeMap<Long, Integer> loadsStartedAt = new TreeMap<>();
+
+    /* startLoad
+     * Records a load that starts now. Returns the generation to pass to [unchangedSince] and [endLoad].
+     */
+    public long startLoad() {
+        loadsStartedAt.merge(generation, 1, Integer::sum);
+        return generation;
+    }
+
+    /* endLoad
+     * Records that the load started at the generation has ended, and forgets the changes no load in flight needs.
+     */
+    public void endLoad(long startedAtGeneration) {
+        loadsStartedAt.computeIfPresent(startedAtGeneration, (startedAt, loads) -> loads == 1 ? null : loads - 1);
+        if (loadsStartedAt.isEmpty()) {
+            changedAtGeneration.clear();
+            return;
+        }
+        long oldestStart = loadsStartedAt.firstKey();
+        Iterator<Long> changes = changedAtGeneration.values().iterator();
+        while (changes.hasNext() && changes.next() <= oldestStart) {
+            changes.remove();
+        }
+    }
+
+    /* changed
+     * Records a change of the key.
+     */
+    public void changed(K key) {
+        generation++;
+        if (!loadsStartedAt.isEmpty()) {
+            // Removed first so that the entries stay in the order of their generations.
+            changedAtGeneration.remove(key);
+            changedAtGeneration.put(key, generation);
+        }
+    }
+
+    /* changedAll
+     * Records a change of every key, such as the cache being cleared.
+     */
+    public void changedAll() {
+        changedAllAtGeneration = ++generation;
+    }
+
+    /* unchangedSince
+     * Returns true if neither the key nor every key has changed since the load started at the generation.
+     */
+    public boolean unchangedSince(K key, long startedAtGeneration) {
+        if (changedAllAtGeneration > startedAtGeneration) {
+            return false;
+        }
+        Long changedAt = changedAtGeneration.get(key);
+        return changedAt == null || changedAt <= startedAtGeneration;
+    }
+
+    /* trackedChanges
+     * Returns how many changes are kept for the loads in flight.
+     */
+    public int trackedChanges() {
+        return changedAtGeneration.size();
+    }
+}
@@ -0,0 +1,240 @@
+package com.template.services;
+
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.serialization.CordaSerializable;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps a histogram of the time spent in each ProgressTracker step of the resident flows, so that the latency of
+ * a flow can be split between the vault, the contract, the counterparties and the notary.
+ *
+ * Each histogram is registered as an MXBean named com.template:type=FlowStep,node=...,flow=...,step=...,
+ * which the node's JMX and Jolokia endpoints serve. [prometheusText] renders all of them in the Prometheus text
+ * format, and is served by the [com.template.flows.FlowStepMetricsFlow].
+ */
+@CordaService
+public class FlowStepMetrics extends SingletonSerializeAsToken {
+    private final static Logger logger = LoggerFactory.getLogger(FlowStepMetrics.class);
+
+    public static final String METRIC_NAME = "resident_flow_step_seconds";
+
+    // The upper bounds of the histogram buckets, in milliseconds.
+    private static final long[] BUCKET_BOUNDS_MILLIS = {1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000};
+
+    private final AppServiceHub serviceHub;
+    // Sorted by flow and step, so that every rendering lists the histograms in the same order.
+    private final Map<String, StepTimings> timings = new ConcurrentSkipListMap<>();
+
+    public FlowStepMetrics(AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+    }
+
+    /* record
+     * Records that one run of the step of the flow took the given time.
+     */
+    public void record(String flow, String step, long nanos) {
+        String key = flow + '/' + step;
+        StepTimings stepTimings = timings.get(key);
+        if (stepTimings == null) {
+            StepTimings created = new StepTimings(flow, step);
+            stepTimings = timings.putIfAbsent(key, created);
+            if (stepTimings == null) {
+                stepTimings = register(created);
+            }
+        }
+        stepTimings.record(nanos);
+    }
+
+    public List<StepTimings> getTimings() {
+        return new ArrayList<>(timings.values());
+    }
+
+    /* prometheusText
+     * Renders every histogram in the Prometheus text exposition format, with the buckets in seconds.
+     */
+    public String prometheusText() {
+        StringBuilder text = new StringBuilder();
+        text.append("# HELP ").append(METRIC_NAME).append(" Time spent in each step of the resident flows.\n");
+        text.append("# TYPE ").append(METRIC_NAME).append(" histogram\n");
+        for (StepTimings stepTimings : timings.values()) {
+            String labels = "flow=\"" + stepTimings.flow + "\",step=\"" + stepTimings.step + "\"";
+            long cumulative = 0;
+            for (int bucket = 0; bucket <= BUCKET_BOUNDS_MILLIS.length; bucket++) {
+                cumulative += stepTimings.buckets.get(bucket);
+                String bound = bucket < BUCKET_BOUNDS_MILLIS.length
+                        ? Double.toString(BUCKET_BOUNDS_MILLIS[bucket] / 1000.0)
+                        : "+Inf";
+                text.append(METRIC_NAME).append("_bucket{").append(labels).append(",le=\"").append(bound).append("\"} ")
+                        .append(cumulative).append('\n');
+            }
+            text.append(METRIC_NAME).append("_sum{").append(labels).append("} ")
+                    .append(String.format(Locale.ROOT, "%.6f", stepTimings.totalNanos.get() / 1e9)).append('\n');
+            text.append(METRIC_NAME).append("_count{").append(labels).append("} ").append(cumulative).append('\n');
+        }
+        return text.toString();
+    }
+
+    // A histogram left behind by a node stopped in the same JVM, as in tests, is replaced.
+    private StepTimings register(StepTimings stepTimings) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("com.template:type=FlowStep"
+                    + ",node=" + ObjectName.quote(serviceHub.getMyInfo().getLegalIdentities().get(0).getName().toString())
+                    + ",flow=" + ObjectName.quote(stepTimings.flow)
+                    + ",step=" + ObjectName.quote(stepTimings.step));
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(stepTimings, name);
+        } catch (JMException e) {
+            logger.warn("The timings of {} {} are not exported over JMX", stepTimings.flow, stepTimings.step, e);
+        }
+        return stepTimings;
+    }
+
+    /**
+     * The attributes of a step's histogram over JMX, in milliseconds. The percentiles are the upper bounds
+     * of the buckets they fall in.
+     */
+    public interface StepTimingsMXBean {
+        long getCount();
+        double getMeanMillis();
+        double getMaxMillis();
+        double getP50Millis();
+        double getP95Millis();
+        double getP99Millis();
+    }
+
+    /**
+     * The histogram of one step of one flow.
+     */
+    public static class StepTimings implements StepTimingsMXBean {
+        public final String flow;
+        public final String step;
+
+        // The last bucket counts everything above the last bound.
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS_MILLIS.length + 1);
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        StepTimings(String flow, String step) {
+            this.flow = flow;
+            this.step = step;
+        }
+
+        void record(long nanos) {
+            long millis = nanos / 1_000_000;
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS_MILLIS.length && millis >= BUCKET_BOUNDS_MILLIS[bucket]) {
+                bucket++;
+            }
+            buckets.incrementAndGet(bucket);
+            totalNanos.addAndGet(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        @Override
+        public long getCount() {
+            long count = 0;
+            for (int bucket = 0; bucket < buckets.length(); bucket++) {
+                count += buckets.get(bucket);
+            }
+            return count;
+        }
+
+        @Override
+        public double getMeanMillis() {
+            long count = getCount();
+            return count == 0 ? 0.0 : totalNanos.get() / 1e6 / count;
+        }
+
+        @Override
+        public double getMaxMillis() {
+            return maxNanos.get() / 1e6;
+        }
+
+        @Override
+        public double getP50Millis() {
+            return percentile(0.50);
+        }
+
+        @Override
+        public double getP95Millis() {
+            return percentile(0.95);
+        }
+
+        @Override
+        public double getP99Millis() {
+            return percentile(0.99);
+        }
+
+        private double percentile(double quantile) {
+            long count = getCount();
+            if (count == 0) {
+                return 0.0;
+            }
+            long rank = (long) Math.ceil(quantile * count);
+            long cumulative = 0;
+            for (int bucket = 0; bucket < BUCKET_BOUNDS_MILLIS.length; bucket++) {
+                cumulative += buckets.get(bucket);
+                if (cumulative >= rank) {
+                    return Math.min(BUCKET_BOUNDS_MILLIS[bucket], getMaxMillis());
+                }
+            }
+            return getMaxMillis();
+        }
+
+        public Statistics getStatistics() {
+            return new Statistics(flow, step, getCount(), getMeanMillis(), getP50Millis(), getP95Millis(),
+                    getP99Millis(), getMaxMillis());
+        }
+    }
+
+    /**
+     * A snapshot of the histogram of one step, in milliseconds.
+     */
+    @CordaSerializable
+    public static class Statistics {
+        public final String flow;
+        public final String step;
+        public final long count;
+        public final double meanMillis;
+        public final double p50Millis;
+        public final double p95Millis;
+        public final double p99Millis;
+        public final double maxMillis;
+
+        public Statistics(String flow, String step, long count, double meanMillis, double p50Millis,
+                          double p95Millis, double p99Millis, double maxMillis) {
+            this.flow       = flow;
+            this.step       = step;
+            this.count      = count;
+            this.meanMillis = meanMillis;
+            this.p50Millis  = p50Millis;
+            this.p95Millis  = p95Millis;
+            this.p99Millis  = p99Millis;
+            this.maxMillis  = maxMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s %s: count=%d mean=%.1fms p50=%.0fms p95=%.0fms p99=%.0fms max=%.1fms",
+                    flow, step, count, meanMillis, p50Millis, p95Millis, p99Millis, maxMillis);
+        }
+    }
+}
@@ -0,0 +1,394 @@
+package com.template.services;
+
+import com.template.states.ResidentInformationState;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.cordapp.CordappConfig;
+import net.corda.core.flows.FlowException;
+import net.corda.core.messaging.DataFeed;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.node.services.ServiceLifecycleEvent;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.serialization.CordaSerializable;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+/**
+ * Keeps the myNumbers of the residents registered in this city, so that a registration can be checked for
+ * a duplicate myNumber without querying the vault.
+ *
+ * A Bloom filter answers most checks of a new myNumber without touching the exact index, which maps each myNumber
+ * to the unconsumed state holding it. Both are filled from the vault once the node has started, and kept up to date
+ * from the vault updates of [ResidentInformationState]. A myNumber is reserved
+ * by a registration until its state is recorded, so two registrations of the same myNumber cannot both pass.
+ * Checks made before the vault has been read fail at once with a FlowException, so no flow thread waits for it.
+ *
+ * Each reservation is held by the run id of its flow, and a registration releases those of its flow when it fails.
+ * Reservations live in memory only, so a node restart ends those of a flow that was killed before it could release them.
+ *
+ * Only the residents this node holds are indexed: a resident who moved to another city is not a duplicate here.
+ * A Bloom filter cannot forget a myNumber, so once more myNumbers have been added to it than it was sized for,
+ * counting those since removed, it is rebuilt from the exact index.
+ *
+ * The filter is sized for "myNumberIndexExpectedResidents" residents (1,000,000 by default) at a false-positive
+ * rate of "myNumberIndexFalsePositiveRate" (0.01 by default), set in the CorDapp config.
+ */
+@CordaService
+public class MyNumberIndex extends SingletonSerializeAsToken {
+    private final static Logger logger = LoggerFactory.getLogger(MyNumberIndex.class);
+
+    public static final String EXPECTED_RESIDENTS_CONFIG = "myNumberIndexExpectedResidents";
+    public static final String FALSE_POSITIVE_RATE_CONFIG = "myNumberIndexFalsePositiveRate";
+    public static final int DEFAULT_EXPECTED_RESIDENTS = 1_000_000;
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+    // The vault is read in pages of this size at startup.
+    private static final int PAGE_SIZE = 10_000;
+
+    private final AppServiceHub serviceHub;
+    private final int expectedResidents;
+    private final double falsePositiveRate;
+
+    // Set once the unconsumed states have been read from the vault.
+    private volatile boolean loaded;
+    private volatile boolean loadFailed;
+
+    // Guarded by this.
+    private final Map<String, StateRef> index = new HashMap<>();
+    // The run id of the flow holding each reserved myNumber, and the myNumbers each flow holds.
+    private final Map<String, UUID> pending = new HashMap<>();
+    private final Map<UUID, Set<String>> reservations = new HashMap<>();
+    private BloomFilter filter;
+
+    private long checks;
+    private long filterNegatives;
+    private long falsePositives;
+    private long duplicates;
+    private int rebuilds;
+
+    public MyNumberIndex(AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+        CordappConfig config = serviceHub.getAppContext().getConfig();
+        this.expectedResidents = config.exists(EXPECTED_RESIDENTS_CONFIG)
+                ? config.getInt(EXPECTED_RESIDENTS_CONFIG) : DEFAULT_EXPECTED_RESIDENTS;
+        this.falsePositiveRate = config.exists(FALSE_POSITIVE_RATE_CONFIG)
+                ? config.getDouble(FALSE_POSITIVE_RATE_CONFIG) : DEFAULT_FALSE_POSITIVE_RATE;
+        if (expectedResidents < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("The MyNumberIndex needs at least 1 expected resident " +
+                    "and a false-positive rate between 0 and 1");
+        }
+        this.filter = new BloomFilter(expectedResidents, falsePositiveRate);
+
+        // The vault can only be tracked once the node has fully started.
+        serviceHub.register(AppServiceHub.SERVICE_PRIORITY_NORMAL, event -> {
+            if (event == ServiceLifecycleEvent.STATE_MACHINE_STARTED) {
+                try {
+                    track(ResidentInformationState.class, ResidentInformationState::getMyNumber);
+                    logger.info("MyNumberIndex started: {}", getStatistics());
+                } catch (RuntimeException e) {
+                    loadFailed = true;
+                    logger.error("MyNumberIndex could not read the vault, registrations will fail", e);
+                } finally {
+                    loaded = true;
+                }
+            }
+        });
+    }
+
+    /* track
+     * Indexes every unconsumed state of the type, page by page, and applies every later vault update to the index.
+     * The updates are subscribed to before the first page is read, so none is missed.
+     */
+    private <T extends ContractState> void track(Class<T> type, Function<T, String> myNumber) {
+        QueryCriteria criteria = new QueryCriteria.VaultQueryCriteria();
+        DataFeed<Vault.Page<T>, Vault.Update<T>> feed = serviceHub.getVaultService().trackBy(
+                type, criteria, new PageSpecification(DEFAULT_PAGE_NUM, PAGE_SIZE));
+        feed.getUpdates().subscribe(update -> apply(update, myNumber),
+                error -> logger.error("Vault updates of {} failed", type.getSimpleName(), error));
+
+        Vault.Page<T> page = feed.getSnapshot();
+        for (int pageNumber = DEFAULT_PAGE_NUM; ; pageNumber++) {
+            if (pageNumber > DEFAULT_PAGE_NUM) {
+                page = serviceHub.getVaultService().queryBy(type, criteria, new PageSpecification(pageNumber, PAGE_SIZE));
+            }
+            synchronized (this) {
+                for (StateAndRef<T> stateAndRef : page.getStates()) {
+                    add(myNumber.apply(stateAndRef.getState().getData()), stateAndRef.getRef());
+                }
+            }
+            if ((long) pageNumber * PAGE_SIZE >= page.getTotalStatesAvailable()) {
+                break;
+            }
+        }
+    }
+
+    private synchronized <T extends ContractState> void apply(Vault.Update<T> update, Function<T, String> myNumber) {
+        // The consumed states go first, so a state replaced by one with the same myNumber, as on an upgrade, stays indexed.
+        for (StateAndRef<T> consumed : update.getConsumed()) {
+            String number = myNumber.apply(consumed.getState().getData());
+            if (consumed.getRef().equals(index.get(number))) {
+                index.remove(number);
+            }
+        }
+        for (StateAndRef<T> produced : update.getProduced()) {
+            add(myNumber.apply(produced.getState().getData()), produced.getRef());
+        }
+        if (filter.added > filter.capacity) {
+            rebuild();
+        }
+    }
+
+    // Called with the lock held. A reserved myNumber is already in the filter.
+    private void add(String myNumber, StateRef ref) {
+        boolean reserved = unreserve(myNumber);
+        if (index.put(myNumber, ref) == null && !reserved) {
+            filter.add(myNumber);
+        }
+    }
+
+    // Called with the lock held.
+    private void rebuild() {
+        BloomFilter rebuilt = new BloomFilter(Math.max(expectedResidents, index.size() * 2), falsePositiveRate);
+        for (String myNumber : index.keySet()) {
+            rebuilt.add(myNumber);
+        }
+        for (String myNumber : pending.keySet()) {
+            rebuilt.add(myNumber);
+        }
+        filter = rebuilt;
+        rebuilds++;
+    }
+
+    /* tryReserve
+     * Reserves the myNumber for a registration by the flow with the run id, and returns false if a resident of this
+     * city already has it or another registration has reserved it. The reservation ends when the registered state is
+     * recorded, or with [release] if the registration fails.
+     * Throws FlowException if the vault has not been read yet, or could not be.
+     */
+    public boolean tryReserve(String myNumber, UUID flowId) throws FlowException {
+        checkLoaded();
+        synchronized (this) {
+            return reserve(myNumber, flowId);
+        }
+    }
+
+    /* hold
+     * Reserves the myNumber of a resident of this city for the flow with the run id, while the flow replaces the
+     * resident's state through a transaction without it, as a reissue does. Returns false if another flow has
+     * reserved it. The reservation ends when the new state is recorded, or with [release] if the flow fails.
+     */
+    public boolean hold(String myNumber, UUID flowId) throws FlowException {
+        checkLoaded();
+        synchronized (this) {
+            UUID holder = pending.get(myNumber);
+            if (holder != null) {
+                return holder.equals(flowId);
+            }
+            if (!index.containsKey(myNumber)) {
+                filter.add(myNumber);
+            }
+            pending.put(myNumber, flowId);
+            reservations.computeIfAbsent(flowId, id -> new HashSet<>()).add(myNumber);
+            return true;
+        }
+    }
+
+    private void checkLoaded() throws FlowException {
+        if (!loaded) {
+            throw new FlowException("The MyNumberIndex is still reading the vault, try again shortly.");
+        }
+        if (loadFailed) {
+            throw new FlowException("The MyNumberIndex could not read the vault.");
+        }
+    }
+
+    // Called with the lock held.
+    private boolean reserve(String myNumber, UUID flowId) {
+        checks++;
+        if (!filter.mightContain(myNumber)) {
+            filterNegatives++;
+        } else if (!index.containsKey(myNumber) && !pending.containsKey(myNumber)) {
+            falsePositives++;
+        } else {
+            duplicates++;
+            return false;
+        }
+        pending.put(myNumber, flowId);
+        reservations.computeIfAbsent(flowId, id -> new HashSet<>()).add(myNumber);
+        filter.add(myNumber);
+        return true;
+    }
+
+    // Called with the lock held. Returns false if the myNumber was not reserved.
+    private boolean unreserve(String myNumber) {
+        UUID flowId = pending.remove(myNumber);
+        if (flowId == null) {
+            return false;
+        }
+        Set<String> held = reservations.get(flowId);
+        held.remove(myNumber);
+        if (held.isEmpty()) {
+            reservations.remove(flowId);
+        }
+        return true;
+    }
+
+    /* release
+     * Ends the reservation of a myNumber whose registration failed.
+     */
+    public synchronized void release(String myNumber) {
+        unreserve(myNumber);
+    }
+
+    /* release
+     * Ends every reservation held by the flow with the run id, once its registrations have failed.
+     */
+    public synchronized void release(UUID flowId) {
+        Set<String> held = reservations.remove(flowId);
+        if (held != null) {
+            pending.keySet().removeAll(held);
+        }
+    }
+
+    public synchronized Statistics getStatistics() {
+        return new Statistics(index.size(), pending.size(), expectedResidents, falsePositiveRate,
+                filter.estimatedFalsePositiveRate(), filter.bits.length * (long) Long.BYTES, filter.hashes,
+                checks, filterNegatives, falsePositives, duplicates, rebuilds);
+    }
+
+    /**
+     * A Bloom filter of strings over a bit array of the optimal size for the expected number of entries and
+     * false-positive rate. The bit indexes of an entry are derived from one 64-bit hash by double hashing.
+     */
+    static class BloomFilter {
+        final long[] bits;
+        final long size;
+        final int hashes;
+        final int capacity;
+        int added;
+
+        BloomFilter(int expectedEntries, double falsePositiveRate) {
+            this.capacity = expectedEntries;
+            long optimalSize = (long) Math.ceil(-expectedEntries * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            this.bits = new long[(int) Math.max(1, (optimalSize + 63) / 64)];
+            this.size = bits.length * 64L;
+            this.hashes = Math.max(1, (int) Math.round((double) size / expectedEntries * Math.log(2)));
+        }
+
+        void add(String value) {
+            long hash = hash(value);
+            long step = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(hash + i * step, size);
+                bits[(int) (bit >>> 6)] |= 1L << bit;
+            }
+            added++;
+        }
+
+        boolean mightContain(String value) {
+            long hash = hash(value);
+            long step = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(hash + i * step, size);
+                if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /* estimatedFalsePositiveRate
+         * The false-positive rate at the current fill, which grows past the configured one as entries are added.
+         */
+        double estimatedFalsePositiveRate() {
+            return Math.pow(1 - Math.exp(-(double) hashes * added / size), hashes);
+        }
+
+        // FNV-1a over the characters, finished with the MurmurHash3 mixer.
+        private static long hash(String value) {
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < value.length(); i++) {
+                hash ^= value.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            return mix(hash);
+        }
+
+        private static long mix(long hash) {
+            hash ^= hash >>> 33;
+            hash *= 0xff51afd7ed558ccdL;
+            hash ^= hash >>> 33;
+            hash *= 0xc4ceb9fe1a85ec53L;
+            hash ^= hash >>> 33;
+            return hash;
+        }
+    }
+
+    /**
+     * A snapshot of the index statistics. The filter's memory is that of its bit array.
+     */
+    @CordaSerializable
+    public static class Statistics {
+        public final int residents;
+        public final int pending;
+        public final int expectedResidents;
+        public final double configuredFalsePositiveRate;
+        public final double estimatedFalsePositiveRate;
+        public final long filterBytes;
+        public final int hashFunctions;
+        public final long checks;
+        public final long filterNegatives;
+        public final long falsePositives;
+        public final long duplicates;
+        public final int rebuilds;
+
+        public Statistics(int residents, int pending, int expectedResidents, double configuredFalsePositiveRate,
+                          double estimatedFalsePositiveRate, long filterBytes, int hashFunctions, long checks,
+                          long filterNegatives, long falsePositives, long duplicates, int rebuilds) {
+            this.residents                   = residents;
+            this.pending                     = pending;
+            this.expectedResidents           = expectedResidents;
+            this.configuredFalsePositiveRate = configuredFalsePositiveRate;
+            this.estimatedFalsePositiveRate  = estimatedFalsePositiveRate;
+            this.filterBytes                 = filterBytes;
+            this.hashFunctions               = hashFunctions;
+            this.checks                      = checks;
+            this.filterNegatives             = filterNegatives;
+            this.falsePositives              = falsePositives;
+            this.duplicates                  = duplicates;
+            this.rebuilds                    = rebuilds;
+        }
+
+        /* observedFalsePositiveRate
+         * The share of the checks of new myNumbers that the filter could not answer alone.
+         */
+        public double observedFalsePositiveRate() {
+            long newNumbers = filterNegatives + falsePositives;
+            return newNumbers == 0 ? 0.0 : (double) falsePositives / newNumbers;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "residents=%d pending=%d filter=%d bytes/%d hashes for %d residents at fpp=%.4f " +
+                            "(estimated %.4f, observed %.4f) checks=%d duplicates=%d rebuilds=%d",
+                    residents, pending, filterBytes, hashFunctions, expectedResidents, configuredFalsePositiveRate,
+                    estimatedFalsePositiveRate, observedFalsePositiveRate(), checks, duplicates, rebuilds);
+        }
+    }
+}
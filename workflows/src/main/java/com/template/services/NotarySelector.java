@@ -0,0 +1,114 @@
+package com.template.services;
+
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.cordapp.CordappConfig;
+import net.corda.core.identity.Party;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Chooses the notary of each new transaction, so that the load is spread over every notary
+ * on the network instead of always using getNotaryIdentities().get(0).
+ *
+ * The strategy can be set with "notarySelectionStrategy" in the CorDapp config:
+ * - ROUND_ROBIN: each transaction goes to the next notary (default).
+ * - LEAST_LATENCY: the notary with the lowest observed finality latency.
+ * - LINEAR_ID_HASH: a fixed notary per resident, from the hash of its linearId.
+ */
+@CordaService
+public class NotarySelector extends SingletonSerializeAsToken {
+
+    public enum Strategy { ROUND_ROBIN, LEAST_LATENCY, LINEAR_ID_HASH }
+
+    public static final String STRATEGY_CONFIG = "notarySelectionStrategy";
+
+    // Weight of the newest observation in the moving average of a notary's latency.
+    private static final double LATENCY_WEIGHT = 0.2;
+
+    private final AppServiceHub serviceHub;
+    private final Strategy strategy;
+    private final AtomicLong nextNotary = new AtomicLong();
+    private final Map<Party, Double> averageLatencyNanos = new ConcurrentHashMap<>();
+
+    public NotarySelector(AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+        CordappConfig config = serviceHub.getAppContext().getConfig();
+        this.strategy = config.exists(STRATEGY_CONFIG)
+                ? Strategy.valueOf(config.getString(STRATEGY_CONFIG))
+                : Strategy.ROUND_ROBIN;
+    }
+
+    public Strategy getStrategy() { return strategy; }
+
+    /* select
+     * Chooses the notary of a transaction that creates the resident with the given linearId.
+     */
+    public Party select(UniqueIdentifier linearId) {
+        List<Party> notaries = notaries();
+        switch (strategy) {
+            case LEAST_LATENCY:
+                Party fastest = notaries.get(0);
+                for (Party notary : notaries) {
+                    // A notary without observations is tried first, so that every notary gets measured.
+                    if (averageLatencyNanos.getOrDefault(notary, 0.0) < averageLatencyNanos.getOrDefault(fastest, 0.0)) {
+                        fastest = notary;
+                    }
+                }
+                return fastest;
+            case LINEAR_ID_HASH:
+                return notaries.get(Math.floorMod(linearId.getId().hashCode(), notaries.size()));
+            case ROUND_ROBIN:
+            default:
+                return notaries.get((int) Math.floorMod(nextNotary.getAndIncrement(), (long) notaries.size()));
+        }
+    }
+
+    /* selectFor
+     * Chooses the notary of a transaction that consumes the given state.
+     * The state's own notary is kept while it is still on the network, except with LINEAR_ID_HASH,
+     * which moves each resident to its own notary.
+     */
+    public Party selectFor(StateAndRef<? extends ContractState> stateAndRef, UniqueIdentifier linearId) {
+        Party currentNotary = stateAndRef.getState().getNotary();
+        if (strategy != Strategy.LINEAR_ID_HASH && notaries().contains(currentNotary)) {
+            return currentNotary;
+        }
+        return select(linearId);
+    }
+
+    /* recordLatency
+     * Records how long the notarisation and finality of one transaction took. A negative time, from a flow
+     * restored in another JVM during the notarisation, is ignored.
+     */
+    public void recordLatency(Party notary, long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        averageLatencyNanos.merge(notary, (double) nanos,
+                (average, latest) -> average + LATENCY_WEIGHT * (latest - average));
+    }
+
+    public Map<Party, Double> getAverageLatencyNanos() {
+        return new ConcurrentHashMap<>(averageLatencyNanos);
+    }
+
+    // The notaries sorted by name, so that every node and every call sees the same order.
+    private List<Party> notaries() {
+        List<Party> notaries = new ArrayList<>(serviceHub.getNetworkMapCache().getNotaryIdentities());
+        if (notaries.isEmpty()) {
+            throw new IllegalStateException("There is no notary on the network.");
+        }
+        notaries.sort(Comparator.comparing(notary -> notary.getName().toString()));
+        return notaries;
+    }
+}
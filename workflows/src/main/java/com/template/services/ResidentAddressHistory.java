@@ -0,0 +1,382 @@
+package com.template.services;
+
+import com.template.contracts.ResidentInformationContract;
+import com.template.schemas.ResidentAddressHistorySchemaV1.PersistentIndexMark;
+import com.template.schemas.ResidentAddressHistorySchemaV1.PersistentResidence;
+import com.template.states.ResidentInformationState;
+import net.corda.core.contracts.Command;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.LinearState;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.contracts.TimeWindow;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.node.services.ServiceLifecycleEvent;
+import net.corda.core.schemas.PersistentStateRef;
+import net.corda.core.serialization.CordaSerializable;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import net.corda.core.transactions.CoreTransaction;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.WireTransaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManager;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+/**
+ * Maintains the address history table of [ResidentAddressHistorySchemaV1] from the transactions this node records.
+ *
+ * Every recorded transaction is indexed, including the earlier transactions of a resident that the node resolves
+ * when the resident moves in, so a city node holds the whole history of its residents. A transaction that produces
+ * a resident begins a residence, and one that consumes it ends the residence. A notary change, a contract upgrade
+ * or a reissue hands the residence over to the replacing state. A move records the city the resident moved to in
+ * the residence it ends, and the city it came from in the one it begins; an exit for reissue marks the residences
+ * it will hand over, and the reissue the ones it takes over. So the transaction that began or ended the residence
+ * of a state can be classified from the table alone, as the webserver's resident feed does.
+ *
+ * The time of a move is the start of the transaction's time window, which is the same on every node,
+ * or else the time the transaction was recorded.
+ *
+ * How far the recorded transactions have been indexed is saved as a high-water mark with the index rows. When the node
+ * starts, the transactions recorded since the mark, while the CorDapp was not installed or the node was down, are
+ * indexed before any new one. A transaction that fails to index stops the mark, so it is indexed again at the next
+ * start, and is listed by [unindexedTransactions] until then, while [isComplete] is false.
+ */
+@CordaService
+public class ResidentAddressHistory extends SingletonSerializeAsToken {
+    private final static Logger logger = LoggerFactory.getLogger(ResidentAddressHistory.class);
+
+    private static final String MARK = "transactions";
+    // Transactions recorded up to this long before the mark are indexed again at startup, as concurrent flows
+    // may commit their transactions in another order than they were recorded. Indexing twice changes nothing.
+    private static final Duration MARK_OVERLAP = Duration.ofMinutes(1);
+    private static final int CATCH_UP_PAGE_SIZE = 500;
+
+    private final AppServiceHub serviceHub;
+    // Transactions are indexed off the recording thread, in the order they were recorded.
+    private final ExecutorService indexer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "resident-address-history");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Only used on the indexer thread.
+    private Instant indexedUntil;
+    private final Set<SecureHash> unindexed = ConcurrentHashMap.newKeySet();
+    private volatile boolean catchUpFailed;
+
+    public ResidentAddressHistory(AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+
+        serviceHub.register(AppServiceHub.SERVICE_PRIORITY_NORMAL, event -> {
+            if (event == ServiceLifecycleEvent.STATE_MACHINE_STARTED) {
+                // The catch-up is queued first but reads the recorded transactions only once the updates are
+                // subscribed to, so every transaction is indexed, and in the order it was recorded.
+                CountDownLatch subscribed = new CountDownLatch(1);
+                indexer.execute(() -> {
+                    try {
+                        subscribed.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    catchUp();
+                });
+                serviceHub.getValidatedTransactions().getUpdates().subscribe(
+                        stx -> indexer.execute(() -> index(stx, null)),
+                        error -> logger.error("Recorded transaction updates failed, the address history has stopped", error));
+                subscribed.countDown();
+            }
+        });
+    }
+
+    /* catchUp
+     * Indexes the transactions recorded since the high-water mark, page by page in the order they were recorded.
+     */
+    private void catchUp() {
+        try {
+            indexedUntil = serviceHub.withEntityManager(entityManager -> {
+                PersistentIndexMark mark = entityManager.find(PersistentIndexMark.class, MARK);
+                return mark == null ? null : mark.getIndexedUntil();
+            });
+            Instant since = indexedUntil == null ? Instant.EPOCH : indexedUntil.minus(MARK_OVERLAP);
+            long indexed = 0;
+            for (int first = 0; ; first += CATCH_UP_PAGE_SIZE) {
+                final int pageStart = first;
+                // The transaction of each row, or null if it is not verified yet, in which case it is indexed once it is.
+                List<Map.Entry<SignedTransaction, Instant>> page = serviceHub.withEntityManager(entityManager -> {
+                    @SuppressWarnings("unchecked")
+                    List<Object[]> rows = entityManager.createNativeQuery(
+                            "SELECT tx_id, timestamp FROM node_transactions WHERE timestamp >= :since ORDER BY timestamp, tx_id")
+                            .setParameter("since", Timestamp.from(since))
+                            .setFirstResult(pageStart)
+                            .setMaxResults(CATCH_UP_PAGE_SIZE)
+                            .getResultList();
+                    List<Map.Entry<SignedTransaction, Instant>> transactions = new ArrayList<>(rows.size());
+                    for (Object[] row : rows) {
+                        SignedTransaction stx = serviceHub.getValidatedTransactions().getTransaction(SecureHash.parse((String) row[0]));
+                        transactions.add(new AbstractMap.SimpleImmutableEntry<>(stx, ((Timestamp) row[1]).toInstant()));
+                    }
+                    return transactions;
+                });
+                for (Map.Entry<SignedTransaction, Instant> entry : page) {
+                    if (entry.getKey() != null) {
+                        index(entry.getKey(), entry.getValue());
+                        indexed++;
+                    }
+                }
+                if (page.size() < CATCH_UP_PAGE_SIZE) break;
+            }
+            logger.info("The address history caught up with {} transactions recorded since {}", indexed, since);
+        } catch (RuntimeException e) {
+            catchUpFailed = true;
+            logger.error("Could not catch up with the transactions recorded since the last start, the address history " +
+                    "is incomplete until the node restarts", e);
+        }
+    }
+
+    /* index
+     * Records the residences the transaction begins and ends, and moves the mark up to the time the transaction
+     * was recorded, looked up if not given. Indexing the same transaction twice changes nothing.
+     */
+    private void index(SignedTransaction stx, Instant recordedAt) {
+        try {
+            Instant recorded = serviceHub.withEntityManager(entityManager -> {
+                Instant recordedTime = recordedAt != null ? recordedAt : lookUpRecordedTime(entityManager, stx.getId());
+                CoreTransaction tx = stx.getCoreTransaction();
+                if (tx instanceof WireTransaction) {
+                    WireTransaction wtx = (WireTransaction) tx;
+                    TimeWindow timeWindow = wtx.getTimeWindow();
+                    Instant time = timeWindow != null && timeWindow.getFromTime() != null ? timeWindow.getFromTime()
+                            : recordedTime != null ? recordedTime : serviceHub.getClock().instant();
+                    ResidentInformationContract.Commands.Reissue reissue = reissueCommand(wtx);
+                    // An exit for reissue only marks the residences, which go on with the reissue.
+                    end(entityManager, wtx.getInputs(), stx.getId(), exitsForReissue(wtx) ? null : time);
+                    for (int i = 0; i < wtx.getOutputs().size(); i++) {
+                        StateRef output = new StateRef(stx.getId(), i);
+                        ContractState data = wtx.getOutputs().get(i).getData();
+                        // A reissued resident keeps living where it did, unless this node never saw the old chain.
+                        if (reissue == null || (handOverReissued(entityManager, reissue.reissuedFrom().get(i), output,
+                                ((LinearState) data).getLinearId()) == 0 && !isHeldBy(entityManager, output))) {
+                            begin(entityManager, output, data, time, reissue != null);
+                        }
+                    }
+                } else {
+                    // A notary change or contract upgrade replaces each input with the output at the same position.
+                    List<StateRef> inputs = tx.getInputs();
+                    for (int i = 0; i < inputs.size(); i++) {
+                        handOver(entityManager, inputs.get(i), new StateRef(stx.getId(), i));
+                    }
+                }
+                // The mark stops at the first transaction that failed, so it is indexed again at the next start.
+                if (isComplete() && recordedTime != null && (indexedUntil == null || recordedTime.isAfter(indexedUntil))) {
+                    PersistentIndexMark mark = entityManager.find(PersistentIndexMark.class, MARK);
+                    if (mark == null) {
+                        entityManager.persist(new PersistentIndexMark(MARK, recordedTime));
+                    } else {
+                        mark.setIndexedUntil(recordedTime);
+                    }
+                    return recordedTime;
+                }
+                return indexedUntil;
+            });
+            indexedUntil = recorded;
+        } catch (RuntimeException e) {
+            unindexed.add(stx.getId());
+            logger.error("Could not index transaction {} in the address history, it is indexed again when the node " +
+                    "restarts", stx.getId(), e);
+        }
+    }
+
+    private static Instant lookUpRecordedTime(EntityManager entityManager, SecureHash txId) {
+        List<?> times = entityManager.createNativeQuery("SELECT timestamp FROM node_transactions WHERE tx_id = :txId")
+                .setParameter("txId", txId.toString())
+                .getResultList();
+        return times.isEmpty() ? null : ((Timestamp) times.get(0)).toInstant();
+    }
+
+    /* begin
+     * Begins the residence of the state. If the same transaction ended a residence of the resident, the two are
+     * linked as a move by their cities.
+     */
+    private static void begin(EntityManager entityManager, StateRef ref, ContractState state, Instant time,
+                              boolean reissued) {
+        if (!(state instanceof ResidentInformationState)) {
+            return;
+        }
+        ResidentInformationState resident = (ResidentInformationState) state;
+        String linearId = resident.getLinearId().getId().toString();
+        String city = resident.currentCity.getName().toString();
+        PersistentStateRef key = new PersistentStateRef(ref);
+        if (entityManager.find(PersistentResidence.class, key) != null) {
+            return;
+        }
+        PersistentResidence residence = new PersistentResidence(key, linearId, city, resident.currentAddress, time);
+        if (reissued) {
+            residence.setReissuedBy(ref.getTxhash().toString());
+        } else {
+            List<PersistentResidence> left = entityManager.createQuery("SELECT r FROM PersistentResidence r " +
+                    "WHERE r.linearId = :linearId AND r.toTransactionId = :txId AND r.toTime IS NOT NULL",
+                    PersistentResidence.class)
+                    .setParameter("linearId", linearId)
+                    .setParameter("txId", ref.getTxhash().toString())
+                    .getResultList();
+            if (!left.isEmpty()) {
+                left.get(0).setToCity(city);
+                residence.setFromCity(left.get(0).getCity());
+            }
+        }
+        entityManager.persist(residence);
+    }
+
+    // Ends the residences held by the consumed states, one update per transaction they were produced by.
+    // With no time, the residences are only marked with the transaction, as when exited for a reissue.
+    private static void end(EntityManager entityManager, List<StateRef> inputs, SecureHash txId, Instant time) {
+        Map<SecureHash, List<Integer>> indexesByTx = inputs.stream().collect(Collectors.groupingBy(
+                StateRef::getTxhash, LinkedHashMap::new, Collectors.mapping(StateRef::getIndex, Collectors.toList())));
+        for (Map.Entry<SecureHash, List<Integer>> entry : indexesByTx.entrySet()) {
+            entityManager.createQuery("UPDATE PersistentResidence r " +
+                    "SET r.toTime = :time, r.toTransactionId = :txId " +
+                    "WHERE r.stateTransactionId = :inputTx AND r.stateOutputIndex IN :indexes AND r.toTime IS NULL")
+                    .setParameter("time", time)
+                    .setParameter("txId", txId.toString())
+                    .setParameter("inputTx", entry.getKey().toString())
+                    .setParameter("indexes", entry.getValue())
+                    .executeUpdate();
+        }
+    }
+
+    private static int handOver(EntityManager entityManager, StateRef from, StateRef to) {
+        return entityManager.createQuery("UPDATE PersistentResidence r " +
+                "SET r.stateTransactionId = :toTx, r.stateOutputIndex = :toIndex " +
+                "WHERE r.stateTransactionId = :fromTx AND r.stateOutputIndex = :fromIndex AND r.toTime IS NULL")
+                .setParameter("toTx", to.getTxhash().toString())
+                .setParameter("toIndex", to.getIndex())
+                .setParameter("fromTx", from.getTxhash().toString())
+                .setParameter("fromIndex", from.getIndex())
+                .executeUpdate();
+    }
+
+    // As handOver, but only to the same resident, so a reissue naming another resident's state begins afresh.
+    // The mark of the exit is replaced by the reissue's.
+    private static int handOverReissued(EntityManager entityManager, StateRef from, StateRef to, UniqueIdentifier linearId) {
+        return entityManager.createQuery("UPDATE PersistentResidence r " +
+                "SET r.stateTransactionId = :toTx, r.stateOutputIndex = :toIndex, " +
+                "r.toTransactionId = NULL, r.reissuedBy = :toTx " +
+                "WHERE r.stateTransactionId = :fromTx AND r.stateOutputIndex = :fromIndex AND r.toTime IS NULL " +
+                "AND r.linearId = :linearId")
+                .setParameter("toTx", to.getTxhash().toString())
+                .setParameter("toIndex", to.getIndex())
+                .setParameter("fromTx", from.getTxhash().toString())
+                .setParameter("fromIndex", from.getIndex())
+                .setParameter("linearId", linearId.getId().toString())
+                .executeUpdate();
+    }
+
+    // Whether a residence is held by the state already, as when a reissue is indexed twice.
+    private static boolean isHeldBy(EntityManager entityManager, StateRef ref) {
+        return entityManager.createQuery("SELECT COUNT(r) FROM PersistentResidence r " +
+                "WHERE r.stateTransactionId = :tx AND r.stateOutputIndex = :index", Long.class)
+                .setParameter("tx", ref.getTxhash().toString())
+                .setParameter("index", ref.getIndex())
+                .getSingleResult() > 0;
+    }
+
+    private static boolean exitsForReissue(WireTransaction wtx) {
+        for (Command<?> command : wtx.getCommands()) {
+            if (command.getValue() instanceof ResidentInformationContract.Commands.ExitForReissue) return true;
+        }
+        return false;
+    }
+
+    private static ResidentInformationContract.Commands.Reissue reissueCommand(WireTransaction wtx) {
+        for (Command<?> command : wtx.getCommands()) {
+            if (command.getValue() instanceof ResidentInformationContract.Commands.Reissue) {
+                return (ResidentInformationContract.Commands.Reissue) command.getValue();
+            }
+        }
+        return null;
+    }
+
+    /* isComplete
+     * False if the catch-up or a transaction failed to index since the node started, in which case the history
+     * may miss residences until the next start.
+     */
+    public boolean isComplete() {
+        return !catchUpFailed && unindexed.isEmpty();
+    }
+
+    /* unindexedTransactions
+     * The transactions that failed to index since the node started.
+     */
+    public Set<SecureHash> unindexedTransactions() {
+        return new HashSet<>(unindexed);
+    }
+
+    /* awaitIndexed
+     * Waits until every transaction recorded so far has been indexed. Returns false if the timeout elapsed first.
+     */
+    public boolean awaitIndexed(long timeout, TimeUnit unit) throws InterruptedException {
+        try {
+            indexer.submit(() -> { }).get(timeout, unit);
+            return true;
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
+        }
+    }
+
+    /* history
+     * The residences of the resident, oldest first. Empty if this node has recorded none of its transactions.
+     */
+    public List<Residence> history(UniqueIdentifier linearId) {
+        return serviceHub.withEntityManager(entityManager -> {
+            List<PersistentResidence> rows = entityManager.createQuery(
+                    "SELECT r FROM PersistentResidence r " +
+                            "WHERE r.linearId = :linearId ORDER BY r.fromTime", PersistentResidence.class)
+                    .setParameter("linearId", linearId.getId().toString())
+                    .getResultList();
+            List<Residence> history = new ArrayList<>(rows.size());
+            for (PersistentResidence row : rows) {
+                history.add(new Residence(row.getCity(), row.getAddress(), row.getFromTime(), row.getToTime(),
+                        SecureHash.parse(row.getStateRef().getTxId()),
+                        row.getToTime() == null ? null : SecureHash.parse(row.getToTransactionId())));
+            }
+            return history;
+        });
+    }
+
+    /**
+     * One residence: where the resident lived, from when until when (null while it still lives there),
+     * and the transactions that began and ended it.
+     */
+    @CordaSerializable
+    public static class Residence {
+        public final String city;
+        public final String address;
+        public final Instant from;
+        public final Instant to;
+        public final SecureHash fromTxId;
+        public final SecureHash toTxId;
+
+        public Residence(String city, String address, Instant from, Instant to, SecureHash fromTxId, SecureHash toTxId) {
+            this.city     = city;
+            this.address  = address;
+            this.from     = from;
+            this.to       = to;
+            this.fromTxId = fromTxId;
+            this.toTxId   = toTxId;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s, %s from %s to %s", address, city, from, to == null ? "now" : to);
+        }
+    }
+}
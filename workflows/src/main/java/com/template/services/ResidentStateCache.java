@@ -0,0 +1,197 @@
+package com.template.services;
+
+import com.template.states.ResidentInformationState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.cordapp.CordappConfig;
+import net.corda.core.messaging.DataFeed;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.node.services.ServiceLifecycleEvent;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.serialization.CordaSerializable;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+/**
+ * Keeps the current unconsumed [ResidentInformationState] of each linearId in memory,
+ * so the change and delete flows do not have to query the vault for every resident.
+ *
+ * The cache is filled from a vault snapshot once the node has started, and is kept up to date
+ * from the vault updates. It holds at most maxSize residents, evicting the least recently used.
+ * On a miss the vault is queried and the result is cached, unless a vault update changed the resident while
+ * the query ran (see [ChangeGenerations]), so a state consumed meanwhile is never put back.
+ *
+ * The size can be set with "residentStateCacheMaxSize" in the CorDapp config.
+ */
+@CordaService
+public class ResidentStateCache extends SingletonSerializeAsToken {
+    private final static Logger logger = LoggerFactory.getLogger(ResidentStateCache.class);
+
+    public static final String MAX_SIZE_CONFIG = "residentStateCacheMaxSize";
+    public static final int DEFAULT_MAX_SIZE = 100_000;
+
+    private final AppServiceHub serviceHub;
+    private final int maxSize;
+    private final Map<UUID, StateAndRef<ResidentInformationState>> states;
+
+    // Guarded by states.
+    private final ChangeGenerations<UUID> changes = new ChangeGenerations<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ResidentStateCache(AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+        this.maxSize = configuredMaxSize(serviceHub);
+        this.states = new LinkedHashMap<UUID, StateAndRef<ResidentInformationState>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, StateAndRef<ResidentInformationState>> eldest) {
+                if (size() > maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        // The vault can only be tracked once the node has fully started.
+        serviceHub.register(AppServiceHub.SERVICE_PRIORITY_NORMAL, event -> {
+            if (event == ServiceLifecycleEvent.STATE_MACHINE_STARTED) {
+                track();
+            }
+        });
+    }
+
+    private static int configuredMaxSize(AppServiceHub serviceHub) {
+        CordappConfig config = serviceHub.getAppContext().getConfig();
+        return config.exists(MAX_SIZE_CONFIG) ? config.getInt(MAX_SIZE_CONFIG) : DEFAULT_MAX_SIZE;
+    }
+
+    /* track
+     * Fills the cache from a snapshot of the vault, and applies every later vault update to it.
+     */
+    private void track() {
+        DataFeed<Vault.Page<ResidentInformationState>, Vault.Update<ResidentInformationState>> feed =
+                serviceHub.getVaultService().trackBy(ResidentInformationState.class,
+                        new QueryCriteria.VaultQueryCriteria(), new PageSpecification(DEFAULT_PAGE_NUM, maxSize));
+
+        synchronized (states) {
+            for (StateAndRef<ResidentInformationState> stateAndRef : feed.getSnapshot().getStates()) {
+                states.put(stateAndRef.getState().getData().getLinearId().getId(), stateAndRef);
+            }
+        }
+        feed.getUpdates().subscribe(this::apply, error -> logger.error("Resident vault updates failed", error));
+        logger.info("ResidentStateCache started with {} of at most {} residents", size(), maxSize);
+    }
+
+    private void apply(Vault.Update<ResidentInformationState> update) {
+        synchronized (states) {
+            for (StateAndRef<ResidentInformationState> consumed : update.getConsumed()) {
+                UUID id = consumed.getState().getData().getLinearId().getId();
+                changes.changed(id);
+                StateAndRef<ResidentInformationState> cached = states.get(id);
+                if (cached != null && cached.getRef().equals(consumed.getRef())) {
+                    states.remove(id);
+                }
+            }
+            for (StateAndRef<ResidentInformationState> produced : update.getProduced()) {
+                UUID id = produced.getState().getData().getLinearId().getId();
+                changes.changed(id);
+                states.put(id, produced);
+            }
+        }
+    }
+
+    /* resolve
+     * Returns the unconsumed state of the linearId, from the cache or else from the vault.
+     * Returns null if there is no unconsumed state of the linearId.
+     */
+    public StateAndRef<ResidentInformationState> resolve(UniqueIdentifier linearId) {
+        UUID id = linearId.getId();
+        synchronized (states) {
+            StateAndRef<ResidentInformationState> cached = states.get(id);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+        misses.incrementAndGet();
+        long startedAtGeneration;
+        synchronized (states) {
+            startedAtGeneration = changes.startLoad();
+        }
+
+        StateAndRef<ResidentInformationState> stateAndRef = null;
+        try {
+            List<UUID> listOfLinearIds = Collections.singletonList(id);
+            QueryCriteria queryCriteria = new QueryCriteria.LinearStateQueryCriteria(null, listOfLinearIds);
+            List<StateAndRef<ResidentInformationState>> results =
+                    serviceHub.getVaultService().queryBy(ResidentInformationState.class, queryCriteria).getStates();
+            stateAndRef = results.isEmpty() ? null : results.get(0);
+        } finally {
+            synchronized (states) {
+                // Cached only if no vault update changed the resident while the query ran.
+                if (stateAndRef != null && changes.unchangedSince(id, startedAtGeneration)) {
+                    states.put(id, stateAndRef);
+                }
+                changes.endLoad(startedAtGeneration);
+            }
+        }
+        return stateAndRef;
+    }
+
+    public int size() {
+        synchronized (states) {
+            return states.size();
+        }
+    }
+
+    public Statistics getStatistics() {
+        return new Statistics(size(), maxSize, hits.get(), misses.get(), evictions.get());
+    }
+
+    /**
+     * A snapshot of the cache statistics.
+     */
+    @CordaSerializable
+    public static class Statistics {
+        public final int size;
+        public final int maxSize;
+        public final long hits;
+        public final long misses;
+        public final long evictions;
+
+        public Statistics(int size, int maxSize, long hits, long misses, long evictions) {
+            this.size      = size;
+            this.maxSize   = maxSize;
+            this.hits      = hits;
+            this.misses    = misses;
+            this.evictions = evictions;
+        }
+
+        public double hitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0.0 : (double) hits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("size=%d/%d hits=%d misses=%d evictions=%d hitRate=%.3f",
+                    size, maxSize, hits, misses, evictions, hitRate());
+        }
+    }
+}
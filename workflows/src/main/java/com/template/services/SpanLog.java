@@ -0,0 +1,110 @@
+package com.template.services;
+
+import net.corda.core.cordapp.CordappConfig;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends the spans of traced flows to a local span log, one JSON object per line, so that the logs of every
+ * node taking part in a transaction can be joined into one timeline by trace ID.
+ *
+ * The log is written to spans-<organisation>.ndjson in the directory set with "spanLogDirectory"
+ * in the CorDapp config. Without it no spans are written. Spans are written by a background thread,
+ * so a flow never waits for the disk.
+ */
+@CordaService
+public class SpanLog extends SingletonSerializeAsToken {
+    private final static Logger logger = LoggerFactory.getLogger(SpanLog.class);
+
+    public static final String DIRECTORY_CONFIG = "spanLogDirectory";
+
+    private final String node;
+    private final Path file;
+    private final ThreadPoolExecutor writer;
+    private BufferedWriter out;
+
+    public SpanLog(AppServiceHub serviceHub) {
+        CordappConfig config = serviceHub.getAppContext().getConfig();
+        this.node = serviceHub.getMyInfo().getLegalIdentities().get(0).getName().toString();
+        if (config.exists(DIRECTORY_CONFIG)) {
+            String organisation = serviceHub.getMyInfo().getLegalIdentities().get(0).getName().getOrganisation();
+            this.file = Paths.get(config.getString(DIRECTORY_CONFIG))
+                    .resolve("spans-" + organisation.replaceAll("[^A-Za-z0-9._-]", "_") + ".ndjson");
+            this.writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "span-log");
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            this.file = null;
+            this.writer = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return writer != null;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /* record
+     * Appends one span: a named part of a flow of the trace, started at start and lasting durationNanos.
+     * txId is the transaction the flow was building or signing, if it was known by then.
+     */
+    public void record(UUID traceId, SecureHash txId, String flow, String span, Instant start, long durationNanos) {
+        if (writer == null) {
+            return;
+        }
+        String line = "{\"traceId\":\"" + traceId
+                + "\",\"txId\":" + (txId == null ? "null" : "\"" + txId + "\"")
+                + ",\"node\":\"" + escape(node)
+                + "\",\"flow\":\"" + escape(flow)
+                + "\",\"span\":\"" + escape(span)
+                + "\",\"start\":\"" + start
+                + "\",\"durationMicros\":" + durationNanos / 1000 + "}";
+        writer.execute(() -> append(line));
+    }
+
+    // Runs on the writer thread only.
+    private void append(String line) {
+        try {
+            if (out == null) {
+                Files.createDirectories(file.toAbsolutePath().getParent());
+                out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                logger.info("Writing spans to {}", file.toAbsolutePath());
+            }
+            out.write(line);
+            out.newLine();
+            // Flushed once the spans queued so far are written, so a burst costs one write.
+            if (writer.getQueue().isEmpty()) {
+                out.flush();
+            }
+        } catch (IOException e) {
+            logger.warn("Could not write a span to {}: {}", file, e.getMessage());
+        }
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,105 @@
+package com.template;
+
+import com.template.contracts.ResidentInformationContract;
+import com.template.flows.BulkChangeInformationFlow;
+import com.template.flows.BulkRegisterInformationFlow;
+import com.template.states.ResidentInformationState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.node.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import static net.corda.testing.common.internal.ParametersUtilitiesKt.testNetworkParameters;
+
+public class BulkChangeInformationFlowTests {
+
+    private MockNetwork mockNetwork;
+    private StartedMockNode b, c;
+
+    @Before
+    public void setup() {
+        MockNetworkParameters mockNetworkParameters = new MockNetworkParameters().withCordappsForAllNodes(
+                Arrays.asList(
+                        TestCordapp.findCordapp("com.template.flows"),
+                        TestCordapp.findCordapp("com.template.contracts")
+                )
+        ).withNetworkParameters(testNetworkParameters(Collections.emptyList(), 4));
+        mockNetwork = new MockNetwork(mockNetworkParameters);
+
+        b = mockNetwork.createNode(new MockNodeParameters());
+        c = mockNetwork.createNode(new MockNodeParameters());
+
+        // For real nodes this happens automatically, but we have to manually register the flow for tests
+        Arrays.asList(b, c).forEach(el -> el.registerInitiatedFlow(BulkChangeInformationFlow.Responder.class));
+        mockNetwork.runNetwork();
+    }
+
+    @After
+    public void tearDown() {
+        mockNetwork.stopNodes();
+    }
+
+    private List<BulkRegisterInformationFlow.Outcome> registerResidents(Party city, int count) throws InterruptedException, ExecutionException {
+        List<BulkRegisterInformationFlow.Resident> residents = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            residents.add(new BulkRegisterInformationFlow.Resident("Resident " + i, "1234567890" + (10 + i), "BCity YYY-" + i, "1990-02-10"));
+        }
+        Future<List<BulkRegisterInformationFlow.Outcome>> future = b.startFlow(new BulkRegisterInformationFlow.InitiatorFlow(residents, city));
+        mockNetwork.runNetwork();
+        return future.get();
+    }
+
+    /**
+     * Task 1.
+     * Move several residents in chunks, each chunk signed once by the new city.
+     */
+    @Test
+    public void flowMovesResidentsInChunks() throws Exception {
+
+        Party BCity = b.getInfo().getLegalIdentitiesAndCerts().get(0).getParty();
+        Party CCity = c.getInfo().getLegalIdentitiesAndCerts().get(0).getParty();
+
+        List<BulkRegisterInformationFlow.Outcome> registered = registerResidents(BCity, 3);
+        List<BulkChangeInformationFlow.Relocation> relocations = new ArrayList<>();
+        for (int i = 0; i < registered.size(); i++) {
+            relocations.add(new BulkChangeInformationFlow.Relocation(registered.get(i).linearId, "CCity DDD-" + i));
+        }
+        UniqueIdentifier unknown = new UniqueIdentifier();
+        relocations.add(new BulkChangeInformationFlow.Relocation(unknown, "CCity DDD-EEE"));
+
+        Future<List<BulkChangeInformationFlow.Outcome>> future =
+                b.startFlow(new BulkChangeInformationFlow.InitiatorFlow(relocations, CCity, 2));
+        mockNetwork.runNetwork();
+        List<BulkChangeInformationFlow.Outcome> outcomes = future.get();
+
+        assert (outcomes.get(0).moved() && outcomes.get(1).moved() && outcomes.get(2).moved());
+        assert (!outcomes.get(3).moved());
+        assert (outcomes.get(0).txId.equals(outcomes.get(1).txId));
+        assert (!outcomes.get(0).txId.equals(outcomes.get(2).txId));
+
+        SignedTransaction stx = c.getServices().getValidatedTransactions().getTransaction(outcomes.get(0).txId);
+        assert (stx.getTx().getInputs().size() == 2);
+        assert (stx.getTx().getOutputs().size() == 2);
+        assert (stx.getTx().getCommands().get(0).getValue() instanceof ResidentInformationContract.Commands.ChangeInformation);
+        stx.verifyRequiredSignatures();
+
+        List<StateAndRef<ResidentInformationState>> movedStates = c.transaction(() ->
+                c.getServices().getVaultService().queryBy(ResidentInformationState.class).getStates());
+        assert (movedStates.size() == 3);
+        for (StateAndRef<ResidentInformationState> movedState : movedStates) {
+            assert (movedState.getState().getData().getCurrentCity().equals(CCity));
+            assert (movedState.getState().getData().oldAddress.startsWith("BCity YYY-"));
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.template;
+
+import com.template.contracts.ResidentInformationContract;
+import com.template.flows.BulkDeleteInformationFlow;
+import com.template.flows.BulkRegisterInformationFlow;
+import com.template.states.ResidentInformationState;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.node.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import static net.corda.testing.common.internal.ParametersUtilitiesKt.testNetworkParameters;
+
+public class BulkDeleteInformationFlowTests {
+
+    private MockNetwork mockNetwork;
+    private StartedMockNode a;
+
+    @Before
+    public void setup() {
+        MockNetworkParameters mockNetworkParameters = new MockNetworkParameters().withCordappsForAllNodes(
+                Arrays.asList(
+                        TestCordapp.findCordapp("com.template.flows"),
+                        TestCordapp.findCordapp("com.template.contracts")
+                )
+        ).withNetworkParameters(testNetworkParameters(Collections.emptyList(), 4));
+        mockNetwork = new MockNetwork(mockNetworkParameters);
+
+        a = mockNetwork.createNode(new MockNodeParameters());
+
+        mockNetwork.runNetwork();
+    }
+
+    @After
+    public void tearDown() {
+        mockNetwork.stopNodes();
+    }
+
+    private List<UniqueIdentifier> registerResidents(Party city, int count) throws InterruptedException, ExecutionException {
+        List<BulkRegisterInformationFlow.Resident> residents = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            residents.add(new BulkRegisterInformationFlow.Resident("Resident " + i, "1234567890" + (10 + i), "ACity XXX-" + i, "1990-02-10"));
+        }
+        Future<List<BulkRegisterInformationFlow.Outcome>> future = a.startFlow(new BulkRegisterInformationFlow.InitiatorFlow(residents, city));
+        mockNetwork.runNetwork();
+
+        List<UniqueIdentifier> linearIds = new ArrayList<>();
+        for (BulkRegisterInformationFlow.Outcome outcome : future.get()) {
+            linearIds.add(outcome.linearId);
+        }
+        return linearIds;
+    }
+
+    private BulkDeleteInformationFlow.Result deleteResidents(List<UniqueIdentifier> linearIds, int chunkSize) throws InterruptedException, ExecutionException {
+        Future<BulkDeleteInformationFlow.Result> future = a.startFlow(new BulkDeleteInformationFlow.InitiatorFlow(linearIds, chunkSize));
+        mockNetwork.runNetwork();
+        return future.get();
+    }
+
+    /**
+     * Task 1.
+     * Delete several residents in chunks, and confirm that consumed and unknown linearIds are reported.
+     */
+    @Test
+    public void flowDeletesResidentsInChunks() throws Exception {
+
+        Party ACity = a.getInfo().getLegalIdentitiesAndCerts().get(0).getParty();
+        List<UniqueIdentifier> registered = registerResidents(ACity, 5);
+
+        BulkDeleteInformationFlow.Result first = deleteResidents(registered.subList(0, 3), 2);
+        assert (first.deleted.size() == 3);
+        assert (first.txIds.size() == 2);
+        assert (first.alreadyConsumed.isEmpty() && first.notOwned.isEmpty() && first.notFound.isEmpty() && first.failed.isEmpty());
+
+        SignedTransaction stx = a.getServices().getValidatedTransactions().getTransaction(first.txIds.get(0));
+        assert (stx.getTx().getInputs().size() == 2);
+        assert (stx.getTx().getOutputs().isEmpty());
+        assert (stx.getTx().getCommands().get(0).getValue() instanceof ResidentInformationContract.Commands.DeleteInformation);
+
+        UniqueIdentifier unknown = new UniqueIdentifier();
+        List<UniqueIdentifier> secondRequest = new ArrayList<>(registered);
+        secondRequest.add(unknown);
+        BulkDeleteInformationFlow.Result second = deleteResidents(secondRequest, 2);
+        assert (second.deleted.equals(registered.subList(3, 5)));
+        assert (second.alreadyConsumed.equals(registered.subList(0, 3)));
+        assert (second.notOwned.isEmpty());
+        assert (second.notFound.equals(Collections.singletonList(unknown)));
+
+        int remaining = a.transaction(() ->
+                a.getServices().getVaultService().queryBy(ResidentInformationState.class).getStates().size());
+        assert (remaining == 0);
+    }
+}
@@ -0,0 +1,117 @@
+package com.template;
+
+import com.template.contracts.ResidentInformationContract;
+import com.template.flows.BulkRegisterInformationFlow;
+import com.template.states.ResidentInformationState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.node.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+import static net.corda.testing.common.internal.ParametersUtilitiesKt.testNetworkParameters;
+
+public class BulkRegisterInformationFlowTests {
+
+    private MockNetwork mockNetwork;
+    private StartedMockNode a, b;
+
+    @Before
+    public void setup() {
+        MockNetworkParameters mockNetworkParameters = new MockNetworkParameters().withCordappsForAllNodes(
+                Arrays.asList(
+                        TestCordapp.findCordapp("com.template.flows"),
+                        TestCordapp.findCordapp("com.template.contracts")
+                )
+        ).withNetworkParameters(testNetworkParameters(Collections.emptyList(), 4));
+        mockNetwork = new MockNetwork(mockNetworkParameters);
+
+        a = mockNetwork.createNode(new MockNodeParameters());
+        b = mockNetwork.createNode(new MockNodeParameters());
+
+        mockNetwork.runNetwork();
+    }
+
+    @After
+    public void tearDown() {
+        mockNetwork.stopNodes();
+    }
+
+    /**
+     * Task 1.
+     * Register several residents in chunks, and confirm that every chunk is one transaction
+     * with one RegisterInformation command.
+     */
+    @Test
+    public void flowRegistersResidentsInChunks() throws Exception {
+
+        Party BCity = b.getInfo().getLegalIdentitiesAndCerts().get(0).getParty();
+
+        List<BulkRegisterInformationFlow.Resident> residents = Arrays.asList(
+                new BulkRegisterInformationFlow.Resident("Yamada Taro", "123456789012", "BCity YYY-ZZZ", "1990-02-10"),
+                new BulkRegisterInformationFlow.Resident("Yamada Hanako", "123456789013", "BCity YYY-ZZZ", "1992-05-01"),
+                new BulkRegisterInformationFlow.Resident("Suzuki Jiro", "123456789014", "BCity AAA-BBB", "1985-11-23"),
+                new BulkRegisterInformationFlow.Resident("Sato Saburo", "123456789015", "BCity CCC-DDD", "1979-07-07"),
+                new BulkRegisterInformationFlow.Resident("Tanaka Shiro", "123456789016", "BCity EEE-FFF", "2001-01-31")
+        );
+
+        Future<List<BulkRegisterInformationFlow.Outcome>> future =
+                b.startFlow(new BulkRegisterInformationFlow.InitiatorFlow(residents, BCity, 2));
+        mockNetwork.runNetwork();
+        List<BulkRegisterInformationFlow.Outcome> outcomes = future.get();
+
+        assert (outcomes.size() == residents.size());
+        Set<Object> txIds = new HashSet<>();
+        for (int i = 0; i < outcomes.size(); i++) {
+            BulkRegisterInformationFlow.Outcome outcome = outcomes.get(i);
+            assert (outcome.registered());
+            assert (outcome.myNumber.equals(residents.get(i).myNumber));
+            txIds.add(outcome.txId);
+        }
+        // 5 residents in chunks of 2 make 3 transactions.
+        assert (txIds.size() == 3);
+
+        SignedTransaction stx = b.getServices().getValidatedTransactions().getTransaction(outcomes.get(0).txId);
+        assert (stx.getTx().getOutputs().size() == 2);
+        assert (stx.getTx().getCommands().size() == 1);
+        assert (stx.getTx().getCommands().get(0).getValue() instanceof ResidentInformationContract.Commands.RegisterInformation);
+
+        List<StateAndRef<ResidentInformationState>> states = b.transaction(() ->
+                b.getServices().getVaultService().queryBy(ResidentInformationState.class).getStates());
+        assert (states.size() == residents.size());
+    }
+
+    /**
+     * Task 2.
+     * Invalid residents are reported and the valid ones are still registered.
+     */
+    @Test
+    public void flowReportsInvalidResidents() throws Exception {
+
+        Party BCity = b.getInfo().getLegalIdentitiesAndCerts().get(0).getParty();
+
+        List<BulkRegisterInformationFlow.Resident> residents = Arrays.asList(
+                new BulkRegisterInformationFlow.Resident("Yamada Taro", "123456789012", "BCity YYY-ZZZ", "1990-02-10"),
+                new BulkRegisterInformationFlow.Resident("", "123456789013", "BCity YYY-ZZZ", "1992-05-01"),
+                new BulkRegisterInformationFlow.Resident("Suzuki Jiro", "123456789012", "BCity AAA-BBB", "1985-11-23")
+        );
+
+        Future<List<BulkRegisterInformationFlow.Outcome>> future =
+                b.startFlow(new BulkRegisterInformationFlow.InitiatorFlow(residents, BCity));
+        mockNetwork.runNetwork();
+        List<BulkRegisterInformationFlow.Outcome> outcomes = future.get();
+
+        assert (outcomes.get(0).registered());
+        assert (!outcomes.get(1).registered());
+        assert (!outcomes.get(2).registered());
+    }
+}
@@ -0,0 +1,72 @@
+package com.template;
+
+import com.template.services.ChangeGenerations;
+import org.junit.Test;
+
+public class ChangeGenerationsTests {
+
+    /**
+     * Task 1.
+     * A load may cache its result unless its key changed after the load started.
+     */
+    @Test
+    public void loadSeesOnlyLaterChanges() {
+        ChangeGenerations<String> changes = new ChangeGenerations<>();
+        changes.changed("a");
+        long started = changes.startLoad();
+        changes.changed("b");
+
+        assert (changes.unchangedSince("a", started));
+        assert (!changes.unchangedSince("b", started));
+
+        changes.changedAll();
+        assert (!changes.unchangedSince("a", started));
+        changes.endLoad(started);
+    }
+
+    /**
+     * Task 2.
+     * Changes are forgotten once no load in flight started before them, even while other loads keep running.
+     */
+    @Test
+    public void changesArePrunedWhileLoadsOverlap() {
+        ChangeGenerations<String> changes = new ChangeGenerations<>();
+        long first = changes.startLoad();
+        changes.changed("a");
+        long second = changes.startLoad();
+        changes.changed("b");
+        assert (changes.trackedChanges() == 2);
+
+        // The second load still needs the change of "b", but no load needs the change of "a" any more.
+        changes.endLoad(first);
+        assert (changes.trackedChanges() == 1);
+        assert (!changes.unchangedSince("b", second));
+
+        long third = changes.startLoad();
+        changes.changed("c");
+        changes.endLoad(second);
+        assert (changes.trackedChanges() == 1);
+        assert (!changes.unchangedSince("c", third));
+
+        changes.endLoad(third);
+        assert (changes.trackedChanges() == 0);
+    }
+
+    /**
+     * Task 3.
+     * Loads started at the same generation are counted, so the changes are kept until the last of them ends.
+     */
+    @Test
+    public void loadsStartedTogetherAreCounted() {
+        ChangeGenerations<String> changes = new ChangeGenerations<>();
+        long first = changes.startLoad();
+        long second = changes.startLoad();
+        changes.changed("a");
+
+        changes.endLoad(first);
+        assert (!changes.unchangedSince("a", second));
+
+        changes.endLoad(second);
+        assert (changes.trackedChanges() == 0);
+    }
+}
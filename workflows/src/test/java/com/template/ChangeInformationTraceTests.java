@@ -0,0 +1,84 @@
+package com.template;
+
+import com.template.flows.ChangeInformationFlow;
+import com.template.services.SpanLog;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.node.StartedMockNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.template.ResidentNetwork.party;
+
+public class ChangeInformationTraceTests {
+
+    @Rule
+    public final TemporaryFolder spanLogs = new TemporaryFolder();
+
+    private ResidentNetwork network;
+    private StartedMockNode a, b;
+
+    @Before
+    public void setup() {
+        network = new ResidentNetwork(Collections.singletonMap(SpanLog.DIRECTORY_CONFIG, spanLogs.getRoot().getAbsolutePath()));
+        List<StartedMockNode> nodes = network.createNodes(2);
+        a = nodes.get(0);
+        b = nodes.get(1);
+    }
+
+    @After
+    public void tearDown() {
+        network.stopNodes();
+    }
+
+    // The spans are written in the background.
+    private List<String> spans(StartedMockNode node, int expected) throws Exception {
+        Path file = spanLogs.getRoot().toPath().resolve(
+                "spans-" + party(node).getName().getOrganisation().replace(' ', '_') + ".ndjson");
+        List<String> spans = Collections.emptyList();
+        for (int attempt = 0; attempt < 50 && spans.size() < expected; attempt++) {
+            Thread.sleep(100);
+            if (Files.exists(file)) {
+                spans = Files.readAllLines(file, StandardCharsets.UTF_8);
+            }
+        }
+        return spans;
+    }
+
+    /**
+     * Task 1.
+     * Both sides of a move record their spans under the initiator's trace ID, tagged with the transaction.
+     */
+    @Test
+    public void bothSidesOfAMoveShareTheTrace() throws Exception {
+        UniqueIdentifier linearId = network.register(a);
+
+        ChangeInformationFlow.InitiatorFlow flow = new ChangeInformationFlow.InitiatorFlow(linearId, party(b), "BCity YYY-ZZZ");
+        SignedTransaction stx = network.run(a, flow);
+        String traceId = flow.getRunId().getUuid().toString();
+
+        List<String> onA = spans(a, 7).stream().filter(span -> span.contains(traceId)).collect(Collectors.toList());
+        for (String span : Arrays.asList("vault_query", "build", "verify", "sign", "collect_signatures", "notarise", "finality")) {
+            assert (onA.stream().anyMatch(line -> line.contains("\"span\":\"" + span + "\"")));
+        }
+        assert (onA.stream().anyMatch(line -> line.contains("\"txId\":\"" + stx.getId() + "\"")));
+
+        List<String> onB = spans(b, 4);
+        for (String span : Arrays.asList("resolve_and_verify", "check_transaction", "sign", "receive_finality")) {
+            assert (onB.stream().anyMatch(line -> line.contains("\"span\":\"" + span + "\"")
+                    && line.contains("\"traceId\":\"" + traceId + "\"")
+                    && line.contains("ChangeInformationFlow$Responder")));
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.template;
+
+import com.template.flows.BulkChangeInformationFlow;
+import com.template.flows.BulkDeleteInformationFlow;
+import com.template.flows.ChangeInformationFlow;
+import com.template.flows.DeleteInformationFlow;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.node.StartedMockNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import static com.template.ResidentNetwork.party;
+import static com.template.flows.ReserveResidentFlow.failedAtNotary;
+
+public class ConcurrentChangeFlowTests {
+
+    private ResidentNetwork network;
+    private StartedMockNode a, b, c;
+
+    @Before
+    public void setup() {
+        network = new ResidentNetwork();
+        List<StartedMockNode> nodes = network.createNodes(3);
+        a = nodes.get(0);
+        b = nodes.get(1);
+        c = nodes.get(2);
+    }
+
+    @After
+    public void tearDown() {
+        network.stopNodes();
+    }
+
+    // A flow waiting for a soft lock sleeps, so the network is run until both flows are done.
+    private void runUntilDone(Future<?> first, Future<?> second) throws Exception {
+        for (int attempt = 0; attempt < 100 && !(first.isDone() && second.isDone()); attempt++) {
+            network.runNetwork();
+            Thread.sleep(50);
+        }
+        assert (first.isDone() && second.isDone());
+    }
+
+    private static Throwable failure(Future<?> future) throws InterruptedException {
+        try {
+            future.get();
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+    }
+
+    /**
+     * Task 1.
+     * Of two moves of the same resident, the second waits for the first, then fails before contacting anyone,
+     * instead of failing at the notary.
+     */
+    @Test
+    public void secondMoveOfTheSameResidentFailsBeforeTheNotary() throws Exception {
+        UniqueIdentifier linearId = network.register(a);
+
+        Future<SignedTransaction> toB = a.startFlow(new ChangeInformationFlow.InitiatorFlow(linearId, party(b), "BCity YYY-ZZZ"));
+        Future<SignedTransaction> toC = a.startFlow(new ChangeInformationFlow.InitiatorFlow(linearId, party(c), "CCity ZZZ-WWW"));
+        runUntilDone(toB, toC);
+
+        Throwable toBFailure = failure(toB);
+        Throwable toCFailure = failure(toC);
+        assert ((toBFailure == null) != (toCFailure == null));
+        Throwable loser = toBFailure != null ? toBFailure : toCFailure;
+        assert (!failedAtNotary(loser));
+    }
+
+    /**
+     * Task 2.
+     * A deletion started while the resident is being moved waits for the move, then fails before the notary.
+     */
+    @Test
+    public void deletionDuringAMoveFailsBeforeTheNotary() throws Exception {
+        UniqueIdentifier linearId = network.register(a);
+
+        Future<SignedTransaction> moved = a.startFlow(new ChangeInformationFlow.InitiatorFlow(linearId, party(b), "BCity YYY-ZZZ"));
+        Future<SignedTransaction> deleted = a.startFlow(new DeleteInformationFlow.InitiatorFlow(linearId, party(a)));
+        runUntilDone(moved, deleted);
+
+        Throwable moveFailure = failure(moved);
+        Throwable deleteFailure = failure(deleted);
+        assert ((moveFailure == null) != (deleteFailure == null));
+        assert (!failedAtNotary(moveFailure != null ? moveFailure : deleteFailure));
+    }
+
+    /**
+     * Task 3.
+     * A bulk move and a deletion of the same resident never race to the notary: either the deletion waits
+     * for the bulk move and fails before the notary, or the bulk move reports the resident as being changed.
+     */
+    @Test
+    public void bulkMoveAndDeletionOfTheSameResidentDoNotFailAtTheNotary() throws Exception {
+        UniqueIdentifier linearId = network.register(a);
+
+        Future<List<BulkChangeInformationFlow.Outcome>> moved = a.startFlow(new BulkChangeInformationFlow.InitiatorFlow(
+                Collections.singletonList(new BulkChangeInformationFlow.Relocation(linearId, "BCity YYY-ZZZ")), party(b)));
+        Future<SignedTransaction> deleted = a.startFlow(new DeleteInformationFlow.InitiatorFlow(linearId, party(a)));
+        runUntilDone(moved, deleted);
+
+        assert (failure(moved) == null);
+        Throwable deleteFailure = failure(deleted);
+        assert (moved.get().get(0).moved() == (deleteFailure != null));
+        assert (!failedAtNotary(deleteFailure));
+    }
+
+    /**
+     * Task 4.
+     * A bulk deletion and a move of the same resident never race to the notary either.
+     */
+    @Test
+    public void bulkDeletionAndMoveOfTheSameResidentDoNotFailAtTheNotary() throws Exception {
+        UniqueIdentifier linearId = network.register(a);
+
+        Future<BulkDeleteInformationFlow.Result> deleted =
+                a.startFlow(new BulkDeleteInformationFlow.InitiatorFlow(Collections.singletonList(linearId)));
+        Future<SignedTransaction> moved = a.startFlow(new ChangeInformationFlow.InitiatorFlow(linearId, party(b), "BCity YYY-ZZZ"));
+        runUntilDone(deleted, moved);
+
+        assert (failure(deleted) == null);
+        Throwable moveFailure = failure(moved);
+        assert (deleted.get().deleted.contains(linearId) == (moveFailure != null));
+        assert (!failedAtNotary(moveFailure));
+    }
+}
@@ -3,6 +3,8 @@ package com.template;
 import com.template.contracts.ResidentInformationContract;
 import com.template.flows.RegisterInformationFlow;
 import com.template.flows.DeleteInformationFlow;
+import com.template.flows.ResidentStateCacheStatisticsFlow;
+import com.template.services.ResidentStateCache;
 import com.template.states.ResidentInformationState;
 import net.corda.core.concurrent.CordaFuture;
 import net.corda.core.contracts.Command;
@@ -127,4 +129,37 @@ public class DeleteInformationFlowTests {
 
     }
 
+    /**
+     * Task 2.
+     * The state to delete is found in the ResidentStateCache, which was updated by the registration.
+     */
+    @Test
+    public void flowFindsRegisteredStateInCache() throws Exception {
+
+        Party BCity = a.getInfo().getLegalIdentitiesAndCerts().get(0).getParty();
+
+        ResidentInformationState iou =
+                new ResidentInformationState(
+                        "Yamada Taro",
+                        "123456789012",
+                        BCity,
+                        "BCity YYY-ZZZ",
+                        "1990-02-10",
+                        null
+                );
+
+        SignedTransaction stx = registerIOU(iou);
+        ResidentInformationState inputIOU = stx.getTx().outputsOfType(ResidentInformationState.class).get(0);
+
+        Future<SignedTransaction> future = a.startFlow(new DeleteInformationFlow.InitiatorFlow(inputIOU.getLinearId(), BCity));
+        mockNetwork.runNetwork();
+        future.get();
+
+        Future<ResidentStateCache.Statistics> statistics = a.startFlow(new ResidentStateCacheStatisticsFlow());
+        mockNetwork.runNetwork();
+        assert (statistics.get().hits == 1);
+        assert (statistics.get().misses == 0);
+        assert (statistics.get().size == 0);
+    }
+
 }
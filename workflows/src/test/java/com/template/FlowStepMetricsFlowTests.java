@@ -0,0 +1,68 @@
+package com.template;
+
+import com.template.flows.FlowStepMetricsFlow;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.testing.node.StartedMockNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.template.ResidentNetwork.party;
+
+public class FlowStepMetricsFlowTests {
+
+    private ResidentNetwork network;
+    private StartedMockNode a, b;
+
+    @Before
+    public void setup() {
+        network = new ResidentNetwork();
+        List<StartedMockNode> nodes = network.createNodes(2);
+        a = nodes.get(0);
+        b = nodes.get(1);
+    }
+
+    @After
+    public void tearDown() {
+        network.stopNodes();
+    }
+
+    /**
+     * Task 1.
+     * Every step of a register and a change is timed, on the initiator and on the responder.
+     */
+    @Test
+    public void everyStepIsTimed() throws Exception {
+        UniqueIdentifier linearId = network.register(a);
+        network.move(a, linearId, b, "BCity YYY-ZZZ");
+
+        String onA = network.run(a, new FlowStepMetricsFlow());
+        assert (onA.contains("# TYPE resident_flow_step_seconds histogram"));
+        for (String step : Arrays.asList("build", "verify", "sign", "notarise", "finality")) {
+            assert (onA.contains("resident_flow_step_seconds_count{flow=\"RegisterInformationFlow$InitiatorFlow\",step=\"" + step + "\"} 1"));
+        }
+        for (String step : Arrays.asList("vault_query", "build", "verify", "sign", "collect_signatures", "notarise", "finality")) {
+            assert (onA.contains("resident_flow_step_seconds_count{flow=\"ChangeInformationFlow$InitiatorFlow\",step=\"" + step + "\"} 1"));
+        }
+        // No reissue was needed.
+        assert (!onA.contains("step=\"reissue\""));
+
+        String onB = network.run(b, new FlowStepMetricsFlow());
+        for (String step : Arrays.asList("check_and_sign", "receive_finality")) {
+            assert (onB.contains("resident_flow_step_seconds_count{flow=\"ChangeInformationFlow$Responder\",step=\"" + step + "\"} 1"));
+        }
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName verify = new ObjectName("com.template:type=FlowStep"
+                + ",node=" + ObjectName.quote(party(a).getName().toString())
+                + ",flow=" + ObjectName.quote("RegisterInformationFlow$InitiatorFlow")
+                + ",step=" + ObjectName.quote("verify"));
+        assert ((Long) server.getAttribute(verify, "Count") == 1L);
+    }
+}
@@ -0,0 +1,118 @@
+package com.template;
+
+import com.template.flows.DeleteInformationFlow;
+import com.template.flows.MyNumberIndexStatisticsFlow;
+import com.template.services.MyNumberIndex;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.flows.FlowException;
+import net.corda.testing.node.StartedMockNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+
+import static com.template.ResidentNetwork.party;
+
+public class MyNumberIndexTests {
+
+    private ResidentNetwork network;
+    private StartedMockNode a, b;
+
+    @Before
+    public void setup() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(MyNumberIndex.EXPECTED_RESIDENTS_CONFIG, 1000);
+        config.put(MyNumberIndex.FALSE_POSITIVE_RATE_CONFIG, 0.01);
+        network = new ResidentNetwork(config);
+        List<StartedMockNode> nodes = network.createNodes(2);
+        a = nodes.get(0);
+        b = nodes.get(1);
+    }
+
+    @After
+    public void tearDown() {
+        network.stopNodes();
+    }
+
+    private MyNumberIndex.Statistics statistics(StartedMockNode node) throws Exception {
+        return network.run(node, new MyNumberIndexStatisticsFlow());
+    }
+
+    /**
+     * Task 1.
+     * A myNumber already registered in the city is rejected, while other myNumbers and other cities are not.
+     */
+    @Test
+    public void duplicateMyNumberIsRejectedInTheSameCity() throws Exception {
+        network.register(a, "123456789012");
+        network.register(a, "123456789013");
+        network.register(b, "123456789012");
+
+        try {
+            network.register(a, "123456789012");
+            assert (false);
+        } catch (ExecutionException e) {
+            assert (e.getCause() instanceof FlowException);
+            assert (e.getCause().getMessage().contains("already registered"));
+        }
+
+        MyNumberIndex.Statistics statistics = statistics(a);
+        assert (statistics.residents == 2);
+        assert (statistics.pending == 0);
+        assert (statistics.checks == 3);
+        assert (statistics.duplicates == 1);
+    }
+
+    /**
+     * Task 2.
+     * The myNumber of a deleted resident can be registered again.
+     */
+    @Test
+    public void myNumberOfADeletedResidentCanBeRegisteredAgain() throws Exception {
+        UniqueIdentifier linearId = network.register(a, "123456789012");
+        network.run(a, new DeleteInformationFlow.InitiatorFlow(linearId, party(a)));
+
+        network.register(a, "123456789012");
+        assert (statistics(a).residents == 1);
+    }
+
+    /**
+     * Task 3.
+     * The filter is sized from the configured residents and false-positive rate, and reports its memory.
+     */
+    @Test
+    public void filterIsSizedFromTheConfig() throws Exception {
+        MyNumberIndex.Statistics statistics = statistics(a);
+        assert (statistics.expectedResidents == 1000);
+        assert (statistics.configuredFalsePositiveRate == 0.01);
+        // 1000 residents at 1% need 9586 bits, rounded up to 150 longs, and 7 hash functions.
+        assert (statistics.filterBytes == 1200);
+        assert (statistics.hashFunctions == 7);
+        assert (statistics.estimatedFalsePositiveRate == 0.0);
+    }
+
+    /**
+     * Task 4.
+     * A reserved myNumber cannot be reserved again until it is released, on its own or with every
+     * reservation of the flow holding it.
+     */
+    @Test
+    public void releasedReservationCanBeReservedAgain() throws FlowException {
+        MyNumberIndex myNumberIndex = a.getServices().cordaService(MyNumberIndex.class);
+        UUID flowId = UUID.randomUUID();
+        assert (myNumberIndex.tryReserve("123456789099", flowId));
+        assert (!myNumberIndex.tryReserve("123456789099", UUID.randomUUID()));
+        myNumberIndex.release("123456789099");
+        assert (myNumberIndex.tryReserve("123456789099", flowId));
+        assert (myNumberIndex.tryReserve("123456789098", flowId));
+        assert (myNumberIndex.getStatistics().pending == 2);
+        myNumberIndex.release(flowId);
+        assert (myNumberIndex.getStatistics().pending == 0);
+        assert (myNumberIndex.tryReserve("123456789099", UUID.randomUUID()));
+    }
+}
@@ -0,0 +1,74 @@
+package com.template;
+
+import com.template.flows.RegisterInformationFlow;
+import com.template.flows.DeleteInformationFlow;
+import com.template.states.ResidentInformationState;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.node.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import static net.corda.testing.common.internal.ParametersUtilitiesKt.testNetworkParameters;
+
+public class NotarySelectionFlowTests {
+
+    private MockNetwork mockNetwork;
+    private StartedMockNode a;
+
+    @Before
+    public void setup() {
+        MockNetworkParameters mockNetworkParameters = new MockNetworkParameters().withCordappsForAllNodes(
+                Arrays.asList(
+                        TestCordapp.findCordapp("com.template.flows"),
+                        TestCordapp.findCordapp("com.template.contracts")
+                )
+        ).withNotarySpecs(Arrays.asList(
+                new MockNetworkNotarySpec(new CordaX500Name("Notary1", "London", "GB")),
+                new MockNetworkNotarySpec(new CordaX500Name("Notary2", "London", "GB"))
+        )).withNetworkParameters(testNetworkParameters(Collections.emptyList(), 4));
+        mockNetwork = new MockNetwork(mockNetworkParameters);
+
+        a = mockNetwork.createNode(new MockNodeParameters());
+
+        mockNetwork.runNetwork();
+    }
+
+    @After
+    public void tearDown() {
+        mockNetwork.stopNodes();
+    }
+
+    private SignedTransaction register(Party city, String myNumber) throws InterruptedException, ExecutionException {
+        Future<SignedTransaction> future = a.startFlow(new RegisterInformationFlow.InitiatorFlow(
+                "Yamada Taro", myNumber, city, "ACity XXX-YYY", "1990-02-10"));
+        mockNetwork.runNetwork();
+        return future.get();
+    }
+
+    /**
+     * Task 1.
+     * New registrations are spread over the notaries, and each resident keeps its notary when deleted.
+     */
+    @Test
+    public void registrationsAreSpreadOverNotaries() throws Exception {
+
+        Party ACity = a.getInfo().getLegalIdentitiesAndCerts().get(0).getParty();
+
+        SignedTransaction first = register(ACity, "123456789012");
+        SignedTransaction second = register(ACity, "123456789013");
+        assert (!first.getNotary().equals(second.getNotary()));
+
+        ResidentInformationState resident = second.getTx().outputsOfType(ResidentInformationState.class).get(0);
+        Future<SignedTransaction> future = a.startFlow(new DeleteInformationFlow.InitiatorFlow(resident.getLinearId(), ACity));
+        mockNetwork.runNetwork();
+        assert (future.get().getNotary().equals(second.getNotary()));
+    }
+}
@@ -8,6 +8,8 @@ import net.corda.testing.node.*;
 import com.template.flows.RegisterInformationFlow;
 import com.template.states.ResidentInformationState;
 import com.template.contracts.ResidentInformationContract;
+import com.template.schemas.ResidentInformationQueries;
+import net.corda.core.contracts.StateAndRef;
 
 import org.junit.After;
 import org.junit.Before;
@@ -111,4 +113,36 @@ public class RegisterInformationFlowTests {
 
     }
 
+    /**
+     * Task 2.
+     * Confirm that a registered resident can be found by the indexed myNumber column.
+     */
+    @Test
+    public void registeredResidentCanBeFoundByMyNumber() throws Exception {
+
+        Party BCity = b.getInfo().getLegalIdentitiesAndCerts().get(0).getParty();
+
+        RegisterInformationFlow.InitiatorFlow flow =
+                new RegisterInformationFlow.InitiatorFlow("Yamada Taro",
+                        "123456789012",
+                        BCity,
+                        "BCity YYY-ZZZ",
+                        "1990-02-10");
+
+        Future<SignedTransaction> future = b.startFlow(flow);
+        mockNetwork.runNetwork();
+        future.get();
+
+        List<StateAndRef<ResidentInformationState>> found = b.transaction(() ->
+                b.getServices().getVaultService().queryBy(ResidentInformationState.class,
+                        ResidentInformationQueries.byMyNumber("123456789012")).getStates());
+        assert (found.size() == 1);
+        assert (found.get(0).getState().getData().getResidentName().equals("Yamada Taro"));
+
+        List<StateAndRef<ResidentInformationState>> notFound = b.transaction(() ->
+                b.getServices().getVaultService().queryBy(ResidentInformationState.class,
+                        ResidentInformationQueries.byMyNumber("999999999999")).getStates());
+        assert (notFound.isEmpty());
+    }
+
 }
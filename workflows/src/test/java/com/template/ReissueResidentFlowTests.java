@@ -0,0 +1,103 @@
+package com.template;
+
+import com.template.contracts.ResidentInformationContract;
+import com.template.flows.ChainDepthReportFlow;
+import com.template.flows.ReissueResidentFlow;
+import com.template.services.BackchainPolicy;
+import com.template.states.ResidentInformationState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.node.StartedMockNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+public class ReissueResidentFlowTests {
+
+    private ResidentNetwork network;
+    private StartedMockNode a, b, c;
+
+    @Before
+    public void setup() {
+        network = new ResidentNetwork(Collections.singletonMap(BackchainPolicy.REISSUE_DEPTH_CONFIG, 2));
+        List<StartedMockNode> nodes = network.createNodes(3);
+        a = nodes.get(0);
+        b = nodes.get(1);
+        c = nodes.get(2);
+    }
+
+    @After
+    public void tearDown() {
+        network.stopNodes();
+    }
+
+    private ChainDepthReportFlow.Report report(StartedMockNode node) throws Exception {
+        return network.run(node, new ChainDepthReportFlow(10));
+    }
+
+    /**
+     * Task 1.
+     * Reissuing registers the same resident again in a transaction without inputs, naming the exited state,
+     * with the notary of the exited state.
+     */
+    @Test
+    public void reissueStartsANewChain() throws Exception {
+        UniqueIdentifier linearId = network.register(a);
+        network.move(a, linearId, b, "BCity YYY-ZZZ");
+        StateAndRef<ResidentInformationState> exited = b.getServices().getVaultService()
+                .queryBy(ResidentInformationState.class).getStates().get(0);
+
+        SignedTransaction reissue = network.run(b, new ReissueResidentFlow.InitiatorFlow(linearId));
+
+        assert (reissue.getInputs().isEmpty());
+        assert (reissue.getNotary().equals(exited.getState().getNotary()));
+        ResidentInformationState reissued = (ResidentInformationState) reissue.getTx().getOutputs().get(0).getData();
+        assert (reissued.getLinearId().equals(linearId));
+        assert (reissued.currentAddress.equals("BCity YYY-ZZZ"));
+        ResidentInformationContract.Commands.Reissue command =
+                (ResidentInformationContract.Commands.Reissue) reissue.getTx().getCommands().get(0).getValue();
+        assert (command.reissuedFrom().equals(Collections.singletonList(exited.getRef())));
+
+        List<StateAndRef<ResidentInformationState>> unconsumed = b.getServices().getVaultService()
+                .queryBy(ResidentInformationState.class).getStates();
+        assert (unconsumed.size() == 1);
+        assert (unconsumed.get(0).getRef().getTxhash().equals(reissue.getId()));
+
+        ChainDepthReportFlow.Report report = report(b);
+        assert (report.residents == 1);
+        assert (report.maxDepth == 1);
+        assert (report.deepest.get(0).linearId.equals(linearId));
+        assert (report.deepest.get(0).transactions == 1);
+    }
+
+    /**
+     * Task 2.
+     * A resident whose chain reached the configured depth is reissued before moving,
+     * so the new city only holds the chain since the reissue.
+     */
+    @Test
+    public void deepChainIsReissuedBeforeMoving() throws Exception {
+        UniqueIdentifier linearId = network.register(a);
+        network.move(a, linearId, b, "BCity YYY-ZZZ");
+        assert (report(b).maxDepth == 2);
+
+        SignedTransaction moved = network.move(b, linearId, c, "CCity ZZZ-000");
+
+        StateRef input = moved.getInputs().get(0);
+        SignedTransaction reissue = c.getServices().getValidatedTransactions().getTransaction(input.getTxhash());
+        assert (reissue != null);
+        assert (reissue.getInputs().isEmpty());
+        assert (reissue.getTx().getCommands().get(0).getValue() instanceof ResidentInformationContract.Commands.Reissue);
+
+        ChainDepthReportFlow.Report report = report(c);
+        assert (report.residents == 1);
+        assert (report.maxDepth == 2);
+        assert (report.reissueDepth == 2);
+        assert (report.deepest.get(0).transactions == 2);
+    }
+}
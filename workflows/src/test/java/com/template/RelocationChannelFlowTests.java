@@ -0,0 +1,164 @@
+package com.template;
+
+import com.template.contracts.ResidentInformationContract;
+import com.template.flows.BulkChangeInformationFlow;
+import com.template.flows.DeleteInformationFlow;
+import com.template.flows.RelocationChannelFlow;
+import com.template.flows.ReserveResidentFlow;
+import com.template.states.ResidentInformationState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.node.StartedMockNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.Future;
+
+import static com.template.ResidentNetwork.party;
+
+public class RelocationChannelFlowTests {
+
+    private ResidentNetwork network;
+    private StartedMockNode b, c;
+
+    @Before
+    public void setup() {
+        // A deletion must not wait for the channel's soft lock, so that it can beat a move to the notary.
+        network = new ResidentNetwork(Collections.singletonMap(ReserveResidentFlow.ENABLED_CONFIG, false));
+        List<StartedMockNode> nodes = network.createNodes(2);
+        b = nodes.get(0);
+        c = nodes.get(1);
+    }
+
+    @After
+    public void tearDown() {
+        network.stopNodes();
+    }
+
+    // Every move reported as done must have left its new state unconsumed in the new city's vault.
+    private void assertMovesAreRecorded(List<BulkChangeInformationFlow.Outcome> outcomes) {
+        Set<StateRef> recorded = new HashSet<>();
+        for (StateAndRef<ResidentInformationState> state : c.transaction(() ->
+                c.getServices().getVaultService().queryBy(ResidentInformationState.class).getStates())) {
+            recorded.add(state.getRef());
+        }
+        for (BulkChangeInformationFlow.Outcome outcome : outcomes) {
+            if (outcome.moved()) {
+                assert (recorded.contains(new StateRef(outcome.txId, 0)));
+            }
+        }
+    }
+
+    /**
+     * Task 1.
+     * Every resident is moved in a transaction of its own, over windows of one channel.
+     */
+    @Test
+    public void channelMovesEachResidentInItsOwnTransaction() throws Exception {
+        List<UniqueIdentifier> registered = network.registerResidents(b, 5);
+        List<BulkChangeInformationFlow.Relocation> relocations = new ArrayList<>();
+        for (int i = 0; i < registered.size(); i++) {
+            relocations.add(new BulkChangeInformationFlow.Relocation(registered.get(i), "CCity DDD-" + i));
+        }
+
+        List<BulkChangeInformationFlow.Outcome> outcomes =
+                network.run(b, new RelocationChannelFlow.InitiatorFlow(relocations, party(c), 2));
+
+        Set<Object> txIds = new HashSet<>();
+        for (BulkChangeInformationFlow.Outcome outcome : outcomes) {
+            assert (outcome.moved());
+            txIds.add(outcome.txId);
+
+            SignedTransaction stx = c.getServices().getValidatedTransactions().getTransaction(outcome.txId);
+            assert (stx.getTx().getInputs().size() == 1);
+            assert (stx.getTx().getCommands().get(0).getValue() instanceof ResidentInformationContract.Commands.ChangeInformation);
+            stx.verifyRequiredSignatures();
+        }
+        assert (txIds.size() == 5);
+
+        List<StateAndRef<ResidentInformationState>> movedStates = c.transaction(() ->
+                c.getServices().getVaultService().queryBy(ResidentInformationState.class).getStates());
+        assert (movedStates.size() == 5);
+        for (StateAndRef<ResidentInformationState> movedState : movedStates) {
+            assert (movedState.getState().getData().getCurrentCity().equals(party(c)));
+        }
+        assert (b.transaction(() ->
+                b.getServices().getVaultService().queryBy(ResidentInformationState.class).getStates()).isEmpty());
+    }
+
+    /**
+     * Task 2.
+     * A relocation that cannot be proposed is reported without stopping the others.
+     */
+    @Test
+    public void invalidRelocationDoesNotStopTheChannel() throws Exception {
+        List<UniqueIdentifier> registered = network.registerResidents(b, 2);
+        List<BulkChangeInformationFlow.Relocation> relocations = Arrays.asList(
+                new BulkChangeInformationFlow.Relocation(registered.get(0), "CCity DDD-0"),
+                new BulkChangeInformationFlow.Relocation(new UniqueIdentifier(), "CCity DDD-1"),
+                new BulkChangeInformationFlow.Relocation(registered.get(0), "CCity DDD-2"),
+                new BulkChangeInformationFlow.Relocation(registered.get(1), "CCity DDD-3"));
+
+        List<BulkChangeInformationFlow.Outcome> outcomes =
+                network.run(b, new RelocationChannelFlow.InitiatorFlow(relocations, party(c)));
+
+        assert (outcomes.get(0).moved());
+        assert (!outcomes.get(1).moved());
+        assert (!outcomes.get(2).moved());
+        assert (outcomes.get(3).moved());
+    }
+
+    /**
+     * Task 3.
+     * A move that fails at the notary is reported, the others still reach the new city.
+     */
+    @Test
+    public void moveFailingAtTheNotaryDoesNotStopTheChannel() throws Exception {
+        List<UniqueIdentifier> registered = network.registerResidents(b, 3);
+        List<BulkChangeInformationFlow.Relocation> relocations = new ArrayList<>();
+        for (int i = 0; i < registered.size(); i++) {
+            relocations.add(new BulkChangeInformationFlow.Relocation(registered.get(i), "CCity DDD-" + i));
+        }
+
+        // The deletion is started first, so it reaches the notary before the channel's move of the same resident.
+        Future<SignedTransaction> deleted = b.startFlow(new DeleteInformationFlow.InitiatorFlow(registered.get(0), party(b)));
+        Future<List<BulkChangeInformationFlow.Outcome>> future =
+                b.startFlow(new RelocationChannelFlow.InitiatorFlow(relocations, party(c), 2));
+        network.runNetwork();
+        deleted.get();
+        List<BulkChangeInformationFlow.Outcome> outcomes = future.get();
+
+        assert (!outcomes.get(0).moved());
+        assert (outcomes.get(0).error != null);
+        assert (outcomes.get(1).moved());
+        assert (outcomes.get(2).moved());
+        assertMovesAreRecorded(outcomes);
+        assert (c.transaction(() ->
+                c.getServices().getVaultService().queryBy(ResidentInformationState.class).getStates()).size() == 2);
+    }
+
+    /**
+     * Task 4.
+     * Every move notarised over several windows ends up in the new city's vault.
+     */
+    @Test
+    public void everyNotarisedMoveIsRecordedByTheNewCity() throws Exception {
+        List<UniqueIdentifier> registered = network.registerResidents(b, 7);
+        List<BulkChangeInformationFlow.Relocation> relocations = new ArrayList<>();
+        for (int i = 0; i < registered.size(); i++) {
+            relocations.add(new BulkChangeInformationFlow.Relocation(registered.get(i), "CCity DDD-" + i));
+        }
+
+        List<BulkChangeInformationFlow.Outcome> outcomes =
+                network.run(b, new RelocationChannelFlow.InitiatorFlow(relocations, party(c), 3));
+
+        for (BulkChangeInformationFlow.Outcome outcome : outcomes) {
+            assert (outcome.moved());
+        }
+        assertMovesAreRecorded(outcomes);
+    }
+}
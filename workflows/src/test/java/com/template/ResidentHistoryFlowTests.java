@@ -0,0 +1,96 @@
+package com.template;
+
+import com.template.flows.ResidentHistoryFlow;
+import com.template.schemas.ResidentAddressHistorySchemaV1.PersistentResidence;
+import com.template.services.ResidentAddressHistory;
+import com.template.services.ResidentAddressHistory.Residence;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.testing.node.StartedMockNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.template.ResidentNetwork.party;
+
+public class ResidentHistoryFlowTests {
+
+    private ResidentNetwork network;
+    private StartedMockNode a, b, c;
+
+    @Before
+    public void setup() {
+        network = new ResidentNetwork();
+        List<StartedMockNode> nodes = network.createNodes(3);
+        a = nodes.get(0);
+        b = nodes.get(1);
+        c = nodes.get(2);
+    }
+
+    @After
+    public void tearDown() {
+        network.stopNodes();
+    }
+
+    // The history is indexed in the background once a transaction is recorded, so it is read once that is done.
+    private List<Residence> history(StartedMockNode node, UniqueIdentifier linearId) throws Exception {
+        ResidentAddressHistory addressHistory = node.getServices().cordaService(ResidentAddressHistory.class);
+        assert (addressHistory.awaitIndexed(10, TimeUnit.SECONDS));
+        assert (addressHistory.isComplete());
+        return network.run(node, new ResidentHistoryFlow(linearId));
+    }
+
+    /**
+     * The city a resident moved into holds the whole history, resolved from the backchain.
+     */
+    @Test
+    public void historyFollowsTheResidentAcrossCities() throws Exception {
+
+        UniqueIdentifier linearId = network.register(a);
+
+        network.move(a, linearId, b, "BCity YYY-ZZZ");
+        network.move(b, linearId, c, "CCity ZZZ-000");
+
+        List<Residence> history = history(c, linearId);
+
+        assert (history.size() == 3);
+        assert (history.get(0).address.equals("ACity XXX-YYY"));
+        assert (history.get(0).city.equals(party(a).getName().toString()));
+        assert (history.get(0).to != null);
+        assert (history.get(1).address.equals("BCity YYY-ZZZ"));
+        assert (history.get(1).fromTxId.equals(history.get(0).toTxId));
+        assert (history.get(2).address.equals("CCity ZZZ-000"));
+        assert (history.get(2).city.equals(party(c).getName().toString()));
+        assert (history.get(2).to == null);
+        assert (!history.get(2).from.isBefore(history.get(1).from));
+    }
+
+    /**
+     * A move links the residence it ends and the one it begins by their cities, on both cities,
+     * so the resident feed can tell it from a deletion and a registration.
+     */
+    @Test
+    public void moveLinksTheTwoResidences() throws Exception {
+
+        UniqueIdentifier linearId = network.register(a);
+        network.move(a, linearId, b, "BCity YYY-ZZZ");
+
+        for (StartedMockNode node : Arrays.asList(a, b)) {
+            assert (node.getServices().cordaService(ResidentAddressHistory.class).awaitIndexed(10, TimeUnit.SECONDS));
+            List<PersistentResidence> rows = node.transaction(() -> node.getServices().withEntityManager(entityManager ->
+                    entityManager.createQuery("SELECT r FROM PersistentResidence r WHERE r.linearId = :linearId " +
+                            "ORDER BY r.fromTime", PersistentResidence.class)
+                            .setParameter("linearId", linearId.getId().toString())
+                            .getResultList()));
+
+            assert (rows.size() == 2);
+            assert (rows.get(0).getFromCity() == null);
+            assert (rows.get(0).getToCity().equals(party(b).getName().toString()));
+            assert (rows.get(1).getFromCity().equals(party(a).getName().toString()));
+            assert (rows.get(1).getToCity() == null);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.template;
+
+import com.template.flows.BulkRegisterInformationFlow;
+import com.template.flows.ChangeInformationFlow;
+import com.template.flows.RegisterInformationFlow;
+import com.template.states.ResidentInformationState;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.node.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import static net.corda.testing.common.internal.ParametersUtilitiesKt.testNetworkParameters;
+
+/**
+ * A MockNetwork of cities running the CorDapp, with the steps the flow tests share: starting a flow and running
+ * the network until it is done, registering residents and moving one to another city.
+ * A test creates one in its setup, with the CorDapp config its scenario needs, and stops it in its tearDown.
+ */
+class ResidentNetwork {
+
+    private final MockNetwork mockNetwork;
+
+    ResidentNetwork() {
+        this(Collections.emptyMap());
+    }
+
+    ResidentNetwork(Map<String, Object> flowsConfig) {
+        MockNetworkParameters mockNetworkParameters = new MockNetworkParameters().withCordappsForAllNodes(
+                Arrays.asList(
+                        TestCordapp.findCordapp("com.template.flows").withConfig(flowsConfig),
+                        TestCordapp.findCordapp("com.template.contracts")
+                )
+        ).withNetworkParameters(testNetworkParameters(Collections.emptyList(), 4));
+        mockNetwork = new MockNetwork(mockNetworkParameters);
+    }
+
+    /* createNodes
+     * Creates count cities and runs the network until they know each other.
+     */
+    List<StartedMockNode> createNodes(int count) {
+        List<StartedMockNode> nodes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            nodes.add(mockNetwork.createNode(new MockNodeParameters()));
+        }
+        mockNetwork.runNetwork();
+        return nodes;
+    }
+
+    void runNetwork() {
+        mockNetwork.runNetwork();
+    }
+
+    void stopNodes() {
+        mockNetwork.stopNodes();
+    }
+
+    static Party party(StartedMockNode node) {
+        return node.getInfo().getLegalIdentitiesAndCerts().get(0).getParty();
+    }
+
+    /* start
+     * Starts the flow on the node and runs the network until nothing is left to deliver.
+     */
+    <T> Future<T> start(StartedMockNode node, FlowLogic<T> flow) {
+        Future<T> future = node.startFlow(flow);
+        mockNetwork.runNetwork();
+        return future;
+    }
+
+    /* run
+     * Runs the flow on the node and returns its result.
+     */
+    <T> T run(StartedMockNode node, FlowLogic<T> flow) throws Exception {
+        return start(node, flow).get();
+    }
+
+    /* register
+     * Registers a resident with the myNumber in the node's city and returns its linearId.
+     */
+    UniqueIdentifier register(StartedMockNode node, String myNumber) throws Exception {
+        SignedTransaction stx = run(node, new RegisterInformationFlow.InitiatorFlow(
+                "Yamada Taro", myNumber, party(node), "ACity XXX-YYY", "1990-02-10"));
+        return ((ResidentInformationState) stx.getTx().getOutputs().get(0).getData()).getLinearId();
+    }
+
+    UniqueIdentifier register(StartedMockNode node) throws Exception {
+        return register(node, "123456789012");
+    }
+
+    /* registerResidents
+     * Registers count residents in the node's city in one bulk registration and returns their linearIds.
+     */
+    List<UniqueIdentifier> registerResidents(StartedMockNode node, int count) throws Exception {
+        List<BulkRegisterInformationFlow.Resident> residents = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            residents.add(new BulkRegisterInformationFlow.Resident("Resident " + i, "1234567890" + (10 + i), "City XXX-" + i, "1990-02-10"));
+        }
+        List<UniqueIdentifier> linearIds = new ArrayList<>();
+        for (BulkRegisterInformationFlow.Outcome outcome : run(node, new BulkRegisterInformationFlow.InitiatorFlow(residents, party(node)))) {
+            linearIds.add(outcome.linearId);
+        }
+        return linearIds;
+    }
+
+    /* move
+     * Moves the resident from the node's city to the city of another node.
+     */
+    SignedTransaction move(StartedMockNode from, UniqueIdentifier linearId, StartedMockNode to, String newAddress) throws Exception {
+        return run(from, new ChangeInformationFlow.InitiatorFlow(linearId, party(to), newAddress));
+    }
+}